@@ -28,9 +28,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.diet4j.cmdline.CmdlineParameters.Parameter;
 import org.diet4j.core.Module;
+import org.diet4j.core.ModuleDeactivationScheduler;
 import org.diet4j.core.ModuleMeta;
-import org.diet4j.core.ModuleRegistry;
 import org.diet4j.core.ModuleRequirement;
+import org.diet4j.core.ResolutionPlanCache;
 import org.diet4j.core.ScanningDirectoriesModuleRegistry;
 import org.diet4j.core.Version;
 
@@ -82,6 +83,8 @@ public abstract class CmdlineBootLoader
         CmdlineParameters parameters = new CmdlineParameters(
             new Parameter( "help",      0 ),
             new Parameter( "directory", 1, true ),
+            new Parameter( "indexfile", 1 ),
+            new Parameter( "planfile",  1 ),
             new Parameter( "run",       1 ),
             new Parameter( "method",    1 )
         );
@@ -116,6 +119,12 @@ public abstract class CmdlineBootLoader
         theModuleDirectories = new File[ fileDirs.size() ];
         fileDirs.toArray( theModuleDirectories );
 
+        String indexFile = parameters.get( "indexfile" );
+        theIndexFile = indexFile != null ? new File( indexFile ) : null;
+
+        String planFile = parameters.get( "planfile" );
+        thePlanFile = planFile != null ? new File( planFile ) : null;
+
         theRunClassName  = parameters.get( "run" );
         theRunMethodName = parameters.get( "method" );
     }
@@ -128,7 +137,10 @@ public abstract class CmdlineBootLoader
     static int activateRunDeactivate()
     {
         // create ModuleRegistry
-        ModuleRegistry registry = ScanningDirectoriesModuleRegistry.create( theModuleDirectories );
+        ScanningDirectoriesModuleRegistry registry = ScanningDirectoriesModuleRegistry.create(
+                theModuleDirectories,
+                ScanningDirectoriesModuleRegistry.DEFAULT_DO_NOT_LOAD_CLASS_PREFIXES,
+                theIndexFile );
 
         // find and resolve the main module
         ModuleMeta rootModuleMeta;
@@ -143,7 +155,13 @@ public abstract class CmdlineBootLoader
         Module rootModule;
         int ret;
         try {
-            rootModule = registry.resolve( rootModuleMeta );
+            if( thePlanFile != null ) {
+                ResolutionPlanCache plans = ResolutionPlanCache.load( thePlanFile );
+                rootModule = plans.resolve( registry, rootModuleMeta );
+                plans.save();
+            } else {
+                rootModule = registry.resolve( rootModuleMeta );
+            }
 
             rootModule.activateRecursively();
             
@@ -166,7 +184,7 @@ public abstract class CmdlineBootLoader
 
             } finally {
                 try {
-                    rootModule.deactivateRecursively();
+                    ModuleDeactivationScheduler.create().deactivateRecursively( rootModule );
                 } catch( Throwable ex ) {
                     log.log( Level.SEVERE, "Deactivation of module " + rootModuleMeta + " failed", ex );
 
@@ -185,9 +203,11 @@ public abstract class CmdlineBootLoader
         PrintStream w = System.out;
         
         w.println( "Synopsis: (diet4j-core " + Version.VERSION + ", built " + Version.BUILDTIME + ")" );
-        w.println( "[ --directory <directory> ]... [ --run <class> ][ --method <method> ] <rootmodule> [ <arg> ... ] " );
+        w.println( "[ --directory <directory> ]... [ --indexfile <indexfile> ][ --planfile <planfile> ][ --run <class> ][ --method <method> ] <rootmodule> [ <arg> ... ] " );
         w.println( "    where:" );
         w.println( "       <directory>:  directory in which to look for modules" );
+        w.println( "       <indexfile>:  file in which to remember the modules found, so unchanged modules are not parsed again" );
+        w.println( "       <planfile>:   file in which to remember how the root module was resolved, so it is not resolved again unless modules changed" );
         w.println( "       <class>:      name of a non-default class whose main() method to run" );
         w.println( "       <method>:     name of a method in the run class to run, instead of main()" );
         w.println( "       <rootmodule>: name of the root module to activate, given as groupId:artifactId:version or groupId:artifactId" );
@@ -214,6 +234,16 @@ public abstract class CmdlineBootLoader
      */
     protected static File [] theModuleDirectories;
 
+    /**
+     * The file containing the index of known modules, if any.
+     */
+    protected static File theIndexFile;
+
+    /**
+     * The file containing the resolution plans of root modules, if any.
+     */
+    protected static File thePlanFile;
+
     /**
      * The name of the run class in the root Module, if specified on the command-line.
      */
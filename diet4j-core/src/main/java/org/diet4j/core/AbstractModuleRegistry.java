@@ -19,10 +19,19 @@
 
 package org.diet4j.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -98,84 +107,354 @@ public abstract class AbstractModuleRegistry
         throws
             ModuleNotFoundException,
             ModuleResolutionException
+    {
+        return resolve( meta, recursive, null );
+    }
+
+    /**
+     * Recursively resolve a ModuleMeta, following a plan created by an earlier resolution.
+     * For the ModuleMetas contained in the plan, the planned dependencies are resolved
+     * instead of determining and trying the resolution candidates. This does not check
+     * whether the plan is still valid: that is the responsibility of the caller.
+     *
+     * @param meta the ModuleMeta to resolve
+     * @param planned the ModuleMetas chosen to meet the ModuleRequirements of ModuleMetas, keyed by
+     *        the ModuleMeta and in the sequence of its ModuleRequirements; null for an optional
+     *        ModuleRequirement that was not met
+     * @return the Module
+     * @throws ModuleNotFoundException thrown if the Module could not be found
+     * @throws ModuleResolutionException thrown if the Module could not be resolved
+     * @see ResolutionPlanCache
+     */
+    public final Module resolve(
+            ModuleMeta                    meta,
+            Map<ModuleMeta,ModuleMeta []> planned )
+        throws
+            ModuleNotFoundException,
+            ModuleResolutionException
+    {
+        return resolve( meta, true, planned );
+    }
+
+    /**
+     * Resolve a ModuleMeta, following a plan if one is given.
+     *
+     * @param meta the ModuleMeta to resolve
+     * @param recursive if true, resolve recursively
+     * @param planned the planned dependencies, keyed by ModuleMeta, or null
+     * @return the Module
+     * @throws ModuleNotFoundException thrown if the Module could not be found
+     * @throws ModuleResolutionException thrown if the Module could not be resolved
+     */
+    protected Module resolve(
+            ModuleMeta                    meta,
+            boolean                       recursive,
+            Map<ModuleMeta,ModuleMeta []> planned )
+        throws
+            ModuleNotFoundException,
+            ModuleResolutionException
     {
         if( meta == null ) {
             throw new NullPointerException( "Cannot resolve null ModuleMeta" );
         }
-        synchronized( RESOLVE_LOCK ) {
+        while( true ) {
             Module ret = theModules.get( meta );
+            if( ret != null ) {
+                return ret;
+            }
+
+            Resolution mine  = new Resolution( Thread.currentThread() );
+            Resolution other = theResolutions.putIfAbsent( meta, mine );
+            if( other == null ) {
+                return resolveAs( meta, recursive, planned, mine );
+            }
+
+            ret = awaitResolution( meta, other );
+            if( ret != null ) {
+                return ret;
+            }
+            // the other thread failed; try ourselves, as we would have if we had come first
+        }
+    }
+
+    /**
+     * Resolve a ModuleMeta, after having registered our Resolution for it.
+     *
+     * @param meta the ModuleMeta to resolve
+     * @param recursive if true, resolve recursively
+     * @param planned the planned dependencies, keyed by ModuleMeta, or null
+     * @param mine our Resolution
+     * @return the Module
+     * @throws ModuleNotFoundException thrown if the Module could not be found
+     * @throws ModuleResolutionException thrown if the Module could not be resolved
+     */
+    protected Module resolveAs(
+            ModuleMeta                    meta,
+            boolean                       recursive,
+            Map<ModuleMeta,ModuleMeta []> planned,
+            Resolution                    mine )
+        throws
+            ModuleNotFoundException,
+            ModuleResolutionException
+    {
+        Module ret = null;
+        try {
+            ret = theModules.get( meta ); // may have been completed before we registered
             if( ret == null ) {
-                Module [] dependentModules = null;
-                if( recursive ) {
-                    ModuleRequirement [] reqs = meta.getRuntimeModuleRequirements();
-                    dependentModules          = new Module[ reqs.length ];
-
-                    for( int i=0 ; i<reqs.length ; ++i ) {
-                        Module dependModule = null;
-                        ModuleMeta [] dependAds = determineResolutionCandidates( reqs[i] );
-
-                        Exception chained = null;
-                        for( int j=0 ; j<dependAds.length ; ++j ) {
-                            try {
-                                dependModule = resolve( dependAds[j], true );
-                                break; // found one that worked
-
-                            } catch( ModuleResolutionException ex ) {
-                                if( !reqs[i].isOptional() ) {
-                                    chained = ex;
-                                }
-                            } catch( ModuleNotFoundException ex ) {
-                                if( !reqs[i].isOptional() ) {
-                                    chained = ex;
-                                }
-                            }
+                ret = createAndRegisterModule( meta, recursive, planned );
+            }
+            return ret;
+
+        } finally {
+            mine.complete( ret ); // null if failed
+            theResolutions.remove( meta, mine );
+        }
+    }
+
+    /**
+     * Wait for another thread to complete its resolution of a ModuleMeta, unless that would
+     * wait forever because of a cyclic dependency.
+     *
+     * @param meta the ModuleMeta
+     * @param other the other thread's Resolution
+     * @return the Module, or null if the other thread failed
+     * @throws ModuleResolutionException thrown if the Module depends on itself
+     */
+    protected Module awaitResolution(
+            ModuleMeta meta,
+            Resolution other )
+        throws
+            ModuleResolutionException
+    {
+        Thread me = Thread.currentThread();
+
+        theWaitsFor.put( me, other );
+        try {
+            // follow the chain of threads waiting for each other. If it leads back to us, this is a cycle
+            Resolution current = other;
+            for( int i=0 ; current != null && i <= theWaitsFor.size() ; ++i ) {
+                if( current.theOwner == me ) {
+                    throw new ModuleResolutionException(
+                            meta,
+                            null,
+                            new IllegalStateException( "Cyclic dependency: " + meta + " depends on itself" ));
+                }
+                current = theWaitsFor.get( current.theOwner );
+            }
+            return other.await();
+
+        } finally {
+            theWaitsFor.remove( me );
+        }
+    }
+
+    /**
+     * Create the Module for a ModuleMeta, resolving its dependencies if requested, and register it.
+     * If the dependencies of the ModuleMeta have been planned, resolve the planned ones instead of
+     * trying the resolution candidates.
+     *
+     * @param meta the ModuleMeta to resolve
+     * @param recursive if true, resolve recursively
+     * @param planned the planned dependencies, keyed by ModuleMeta, or null
+     * @return the Module
+     * @throws ModuleNotFoundException thrown if the Module could not be found
+     * @throws ModuleResolutionException thrown if the Module could not be resolved
+     */
+    protected Module createAndRegisterModule(
+            ModuleMeta                    meta,
+            boolean                       recursive,
+            Map<ModuleMeta,ModuleMeta []> planned )
+        throws
+            ModuleNotFoundException,
+            ModuleResolutionException
+    {
+        Module [] dependentModules = null;
+        if( recursive ) {
+            ModuleRequirement [] reqs = meta.getRuntimeModuleRequirements();
+            dependentModules          = new Module[ reqs.length ];
+
+            ModuleMeta [] plannedDependencies = planned != null ? planned.get( meta ) : null;
+            if( plannedDependencies != null && plannedDependencies.length != reqs.length ) {
+                plannedDependencies = null; // does not fit, ignore
+            }
+
+            for( int i=0 ; i<reqs.length ; ++i ) {
+                if( plannedDependencies != null ) {
+                    if( plannedDependencies[i] != null ) {
+                        dependentModules[i] = resolve( plannedDependencies[i], true, planned );
+                    } else if( !reqs[i].isOptional() ) {
+                        throw new ModuleResolutionException( meta, reqs[i], null );
+                    }
+                    continue;
+                }
+
+                Module dependModule = null;
+                ModuleMeta [] dependAds = determineResolutionCandidates( reqs[i] );
+
+                Exception chained = null;
+                for( int j=0 ; j<dependAds.length ; ++j ) {
+                    try {
+                        dependModule = resolve( dependAds[j], true, planned );
+                        break; // found one that worked
+
+                    } catch( ModuleResolutionException ex ) {
+                        if( !reqs[i].isOptional() ) {
+                            chained = ex;
                         }
-                        if( dependModule != null ) {
-                            dependentModules[i] = dependModule;
-                        } else if( !reqs[i].isOptional() ) {
-                            throw new ModuleResolutionException( meta, reqs[i], chained );
+                    } catch( ModuleNotFoundException ex ) {
+                        if( !reqs[i].isOptional() ) {
+                            chained = ex;
                         }
                     }
                 }
-                ret = meta.createModule( this, getClass().getClassLoader() );
-
-                if( ret != null ) {
-                    theModules.put( meta, ret );
-
-                    if( recursive ) {
-                        theForwardRuntimeDependencies.put( ret, dependentModules );
-
-                        for( int i=0 ; i<dependentModules.length ; ++i ) {
-                            Module [] uses    = theRuntimeUses.get( dependentModules[i] );
-                            Module [] newUses = null;
-
-                            if( uses == null ) {
-                                newUses = new Module[] { ret };
-                            } else {
-                                // append one if not there already
-                                boolean found = false;
-                                for( int j=0 ; j<uses.length ; ++j ) {
-                                    if( ret == uses[j] ) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                                if( !found ) {
-                                    newUses = new Module[ uses.length+1 ];
-                                    System.arraycopy( uses, 0, newUses, 0, uses.length );
-                                    newUses[uses.length] = ret;
-                                }
-                            }
-                            if( dependentModules[i] != null ) {
-                                theRuntimeUses.put( dependentModules[i], newUses );
+                if( dependModule != null ) {
+                    dependentModules[i] = dependModule;
+                } else if( !reqs[i].isOptional() ) {
+                    throw new ModuleResolutionException( meta, reqs[i], chained );
+                }
+            }
+        }
+        final Module ret = meta.createModule( this, getClass().getClassLoader() );
+        if( ret == null ) {
+            throw new NullPointerException( "createModule returned null" );
+        }
+
+        // register the dependencies first, so they are known by the time the Module can be found
+        if( recursive ) {
+            theForwardRuntimeDependencies.put( ret, dependentModules );
+
+            for( int i=0 ; i<dependentModules.length ; ++i ) {
+                if( dependentModules[i] != null ) {
+                    // might be an optional dependency
+                    theRuntimeUses.compute( dependentModules[i], ( Module k, Module [] uses ) -> {
+                        if( uses == null ) {
+                            return new Module[] { ret };
+                        }
+                        // append one if not there already
+                        for( int j=0 ; j<uses.length ; ++j ) {
+                            if( ret == uses[j] ) {
+                                return uses;
                             }
                         }
-                    }
-                } else {
-                    throw new NullPointerException( "createModule returned null" );
+                        Module [] newUses = new Module[ uses.length+1 ];
+                        System.arraycopy( uses, 0, newUses, 0, uses.length );
+                        newUses[uses.length] = ret;
+                        return newUses;
+                    } );
                 }
             }
-            return ret;
+        }
+        theModules.put( meta, ret );
+
+        return ret;
+    }
+
+    /**
+     * Determine a fingerprint of what the resolution of a set of ModuleMetas depended on: for
+     * each of their ModuleRequirements, the resolution candidates up to the one that was chosen,
+     * and, for the candidates tried before it that failed to resolve, the same recursively.
+     * Other ModuleMetas, e.g. modules installed later that none of the ModuleRequirements
+     * match, do not change the fingerprint. If the fingerprint is unchanged, resolving the
+     * ModuleMetas again will make the same choices.
+     *
+     * @param metas the resolved ModuleMetas, in a well-defined sequence
+     * @param chosen for each resolved ModuleMeta, the ModuleMetas chosen to meet its ModuleRequirements,
+     *        in their sequence; null for an optional ModuleRequirement that was not met
+     * @return the fingerprint, a SHA-256 hash
+     */
+    public byte [] determineResolutionFingerprint(
+            ModuleMeta []   metas,
+            ModuleMeta [][] chosen )
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        } catch( NoSuchAlgorithmException ex ) {
+            throw new RuntimeException( ex ); // every JVM has SHA-256
+        }
+
+        HashSet<ModuleMeta> visited = new HashSet<>( Arrays.asList( metas ));
+        for( int i=0 ; i<metas.length ; ++i ) {
+            updateFingerprint( digest, metas[i] );
+            updateFingerprint( digest, metas[i], chosen[i], visited );
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Helper to add the resolution candidates of the ModuleRequirements of a ModuleMeta to a
+     * fingerprint, up to the chosen ones.
+     *
+     * @param digest the MessageDigest calculating the fingerprint
+     * @param meta the ModuleMeta
+     * @param chosen the ModuleMetas chosen to meet its ModuleRequirements, or null if it failed to resolve
+     * @param visited the ModuleMetas whose ModuleRequirements are in the fingerprint already, or will be
+     */
+    protected void updateFingerprint(
+            MessageDigest   digest,
+            ModuleMeta      meta,
+            ModuleMeta []   chosen,
+            Set<ModuleMeta> visited )
+    {
+        ModuleRequirement [] reqs = meta.getRuntimeModuleRequirements();
+        updateFingerprint( digest, String.valueOf( reqs.length ));
+
+        for( int i=0 ; i<reqs.length ; ++i ) {
+            updateFingerprint( digest, reqs[i].getRequiredModuleGroupId() );
+            updateFingerprint( digest, reqs[i].getRequiredModuleArtifactId() );
+            updateFingerprint( digest, reqs[i].getUninterpretedRequiredModuleVersion() );
+            updateFingerprint( digest, reqs[i].isOptional() ? "optional" : "required" );
+
+            ModuleMeta current = chosen != null && i < chosen.length ? chosen[i] : null;
+            for( ModuleMeta candidate : determineResolutionCandidates( reqs[i] )) {
+                updateFingerprint( digest, candidate );
+                if( candidate.equals( current )) {
+                    break; // later candidates were not looked at
+                }
+                // tried first, and failed: whether it still fails depends on its own dependencies
+                if( visited.add( candidate )) {
+                    updateFingerprint( digest, candidate, null, visited );
+                }
+            }
+            updateFingerprint( digest, (String) null );
+        }
+    }
+
+    /**
+     * Helper to add the coordinates of a ModuleMeta to a fingerprint.
+     *
+     * @param digest the MessageDigest calculating the fingerprint
+     * @param meta the ModuleMeta
+     */
+    protected static void updateFingerprint(
+            MessageDigest digest,
+            ModuleMeta    meta )
+    {
+        updateFingerprint( digest, meta.getModuleGroupId() );
+        updateFingerprint( digest, meta.getModuleArtifactId() );
+        updateFingerprint( digest, meta.getModuleVersion() );
+    }
+
+    /**
+     * Helper to add a String that may be null to a fingerprint, unambiguously.
+     *
+     * @param digest the MessageDigest calculating the fingerprint
+     * @param s the String, or null
+     */
+    protected static void updateFingerprint(
+            MessageDigest digest,
+            String        s )
+    {
+        if( s != null ) {
+            byte [] bytes = s.getBytes( StandardCharsets.UTF_8 );
+            digest.update( (byte) 1 );
+            digest.update( (byte) ( bytes.length >>> 24 ));
+            digest.update( (byte) ( bytes.length >>> 16 ));
+            digest.update( (byte) ( bytes.length >>> 8 ));
+            digest.update( (byte) bytes.length );
+            digest.update( bytes );
+        } else {
+            digest.update( (byte) 0 );
         }
     }
 
@@ -186,9 +465,7 @@ public abstract class AbstractModuleRegistry
     public final Module getResolutionOf(
             ModuleMeta meta )
     {
-        synchronized( RESOLVE_LOCK ) {
-            return theModules.get( meta );
-        }
+        return theModules.get( meta );
     }
 
     /**
@@ -198,9 +475,7 @@ public abstract class AbstractModuleRegistry
     public final Module [] determineRuntimeDependencies(
             Module theModule )
     {
-        synchronized( RESOLVE_LOCK ) {
-            return theForwardRuntimeDependencies.get( theModule );
-        }
+        return theForwardRuntimeDependencies.get( theModule );
     }
 
     /**
@@ -210,9 +485,7 @@ public abstract class AbstractModuleRegistry
     public final Module [] determineRuntimeUses(
             Module theModule )
     {
-        synchronized( RESOLVE_LOCK ) {
-            return theRuntimeUses.get( theModule );
-        }
+        return theRuntimeUses.get( theModule );
     }
 
     /**
@@ -240,7 +513,13 @@ public abstract class AbstractModuleRegistry
                     dependencyClassLoaders[i] = null;
                 }
             }
-            ret = new ModuleClassLoader( module, parentClassLoader, dependencyClassLoaders, theDoNotLoadClassPrefixes );
+            ret = new ModuleClassLoader(
+                    module,
+                    parentClassLoader,
+                    dependencyClassLoaders,
+                    theDoNotLoadClassPrefixes,
+                    theNegativeLookupCache,
+                    determineExplodedDirectory( module ));
 
         } catch( MalformedURLException ex ) {
             log.log( Level.SEVERE, "Failed to create ModuleClassLoader for " + module, ex );
@@ -248,6 +527,40 @@ public abstract class AbstractModuleRegistry
         return ret;
     }
 
+    /**
+     * Determine the directory into which the JAR of a Module has been extracted by the
+     * ExplodedJarCache, extracting it first if needed.
+     *
+     * @param module the Module
+     * @return the directory, or null if no ExplodedJarCache is used or extraction failed
+     */
+    protected File determineExplodedDirectory(
+            Module module )
+    {
+        File jarFile = module.getModuleMeta().getProvidesJarFile();
+        if( theExplodedJarCache == null || jarFile == null ) {
+            return null;
+        }
+        try {
+            return theExplodedJarCache.obtainExplodedDirectory( jarFile );
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to extract " + jarFile + ", loading from JAR instead", ex );
+            return null;
+        }
+    }
+
+    /**
+     * Obtain the NegativeLookupCache shared by the ModuleClassLoaders created by this ModuleRegistry,
+     * e.g. to look at its statistics.
+     *
+     * @return the NegativeLookupCache
+     */
+    public NegativeLookupCache getNegativeLookupCache()
+    {
+        return theNegativeLookupCache;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -289,7 +602,13 @@ public abstract class AbstractModuleRegistry
 
         while( theIter.hasNext() ) {
             ModuleRegistryListener current = theIter.next();
-            current.newModuleAvailable( theEvent );
+            try {
+                current.newModuleAvailable( theEvent );
+
+            } catch( RuntimeException ex ) {
+                // one misbehaving listener must not keep the others from hearing about it
+                log.log( Level.WARNING, "ModuleRegistryListener " + current + " failed for " + theEvent.getModuleMeta(), ex );
+            }
         }
     }
 
@@ -307,7 +626,7 @@ public abstract class AbstractModuleRegistry
     /**
      * The set of currently available Modules, keyed by ModuleMeta.
      */
-    private final HashMap<ModuleMeta,Module> theModules = new HashMap<>();
+    private final ConcurrentHashMap<ModuleMeta,Module> theModules = new ConcurrentHashMap<>();
 
     /**
      * This maps from Module to Module[], reflecting the dependency of one
@@ -317,14 +636,25 @@ public abstract class AbstractModuleRegistry
      * The sequence of the items in the Module[] is the same as the sequence
      * of the items in the ModuleMeta's ModuleRequirements array.
      */
-    private final HashMap<Module,Module[]> theForwardRuntimeDependencies = new HashMap<>();
+    private final ConcurrentHashMap<Module,Module[]> theForwardRuntimeDependencies = new ConcurrentHashMap<>();
 
     /**
      * This maps from Module to Module[], reflecting the use of one Module
      * by a set of others. This is the inverse relationship of what is
-     * captured in theForwardRuntimeDependencies.
+     * captured in theForwardRuntimeDependencies. The arrays are replaced, never modified.
+     */
+    private final ConcurrentHashMap<Module,Module[]> theRuntimeUses = new ConcurrentHashMap<>();
+
+    /**
+     * The resolutions currently in progress, keyed by the ModuleMeta being resolved.
+     */
+    private final ConcurrentHashMap<ModuleMeta,Resolution> theResolutions = new ConcurrentHashMap<>();
+
+    /**
+     * The resolutions of other threads that threads are currently waiting for, keyed by the waiting thread.
+     * Used to detect cyclic dependencies across threads.
      */
-    private final HashMap<Module,Module[]> theRuntimeUses = new HashMap<>();
+    private final ConcurrentHashMap<Thread,Resolution> theWaitsFor = new ConcurrentHashMap<>();
 
     /**
      * The set of currently subscribed ModuleRegistryListeners. Allocated as needed.
@@ -337,9 +667,15 @@ public abstract class AbstractModuleRegistry
     protected String [] theDoNotLoadClassPrefixes;
 
     /**
-     * This object is used as a semaphore for Module loads.
+     * Extracts Module JARs for the ModuleClassLoaders created by this ModuleRegistry, if configured.
      */
-    protected final Object RESOLVE_LOCK = new Object();
+    protected final ExplodedJarCache theExplodedJarCache = ExplodedJarCache.DEFAULT;
+
+    /**
+     * Shared by the ModuleClassLoaders created by this ModuleRegistry, to remember the classes
+     * they could not load.
+     */
+    protected final NegativeLookupCache theNegativeLookupCache = new NegativeLookupCache( NegativeLookupCache.DEFAULT_MAX_SIZE );
 
     /**
      * Logger.
@@ -379,4 +715,71 @@ public abstract class AbstractModuleRegistry
         "org.w3c.dom",
         "org.xml.sax"
     };
+
+    /**
+     * The resolution of a ModuleMeta by a thread, which other threads resolving the same
+     * ModuleMeta wait for.
+     */
+    protected static class Resolution
+    {
+        /**
+         * Constructor.
+         *
+         * @param owner the thread performing the resolution
+         */
+        protected Resolution(
+                Thread owner )
+        {
+            theOwner = owner;
+        }
+
+        /**
+         * Complete the resolution.
+         *
+         * @param module the resolved Module, or null if resolution failed
+         */
+        protected synchronized void complete(
+                Module module )
+        {
+            theModule = module;
+            theDone   = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the resolution to complete.
+         *
+         * @return the resolved Module, or null if resolution failed
+         */
+        protected synchronized Module await()
+        {
+            boolean interrupted = false;
+            while( !theDone ) {
+                try {
+                    wait();
+                } catch( InterruptedException ex ) {
+                    interrupted = true; // resolution has never been interruptible
+                }
+            }
+            if( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+            return theModule;
+        }
+
+        /**
+         * The thread performing the resolution.
+         */
+        protected final Thread theOwner;
+
+        /**
+         * The resolved Module, once done, or null if resolution failed.
+         */
+        protected Module theModule;
+
+        /**
+         * True once the resolution has completed.
+         */
+        protected boolean theDone;
+    }
 }
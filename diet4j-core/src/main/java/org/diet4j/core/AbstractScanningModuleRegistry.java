@@ -19,7 +19,6 @@
 
 package org.diet4j.core;
 
-import java.io.CharConversionException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -28,29 +27,30 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /**
  * Collections functionality common to ModuleRegistry implementations that determine the
@@ -84,11 +84,7 @@ public abstract class AbstractScanningModuleRegistry
     public ModuleMeta [] determineResolutionCandidates(
             ModuleRequirement req )
     {
-        MiniModuleMetaMap found1;
-
-        synchronized( RESOLVE_LOCK ) {
-            found1 = theMetas.get( req.getRequiredModuleArtifactId() );
-        }
+        MiniModuleMetaMap found1 = theMetas.get( req.getRequiredModuleArtifactId() ); // no lock: published copy-on-write
         if( found1 == null ) {
             return new ModuleMeta[0];
         }
@@ -99,67 +95,127 @@ public abstract class AbstractScanningModuleRegistry
             if( found2 == null ) {
                 return new ModuleMeta[0];
             }
-            return req.findVersionMatchesFrom( found2 );
+            return req.findVersionMatchesPreferredFirst( found2 );
 
         } else {
             // no groupId was specified
-            ModuleMeta [] found2 = found1.allValues();
+            ModuleMeta [][] found2 = found1.allValueArrays();
+            if( found2.length == 1 ) {
+                return req.findVersionMatchesPreferredFirst( found2[0] );
+            }
 
-            return req.findVersionMatchesFrom( found2 );
+            // same preference as with a single groupId: candidates with the preferred version first
+            ModuleMeta [][] matches   = new ModuleMeta[ found2.length ][];
+            boolean []      preferred = new boolean[ found2.length ];
+            int             count     = 0;
+            for( int i=0 ; i<found2.length ; ++i ) {
+                matches[i] = req.findVersionMatchesPreferredFirst( found2[i] );
+                count += matches[i].length;
+
+                preferred[i] = matches[i].length > 0 && req.isPreferredVersion( matches[i][0].getParsedModuleVersion() );
+            }
+            ModuleMeta [] ret   = new ModuleMeta[ count ];
+            int           index = 0;
+            for( int i=0 ; i<matches.length ; ++i ) {
+                if( preferred[i] ) {
+                    ret[index++] = matches[i][0];
+                }
+            }
+            for( int i=0 ; i<matches.length ; ++i ) {
+                int start = preferred[i] ? 1 : 0;
+                System.arraycopy( matches[i], start, ret, index, matches[i].length - start );
+                index += matches[i].length - start;
+            }
+            return ret;
         }
     }
 
     /**
-     * Add another ModuleMeta during runtime. Take care that we don't accidentally
-     * add the same one again.
+     * Add another ModuleMeta to ModuleMetas that are being assembled. Take care that we don't
+     * accidentally add the same one again. To add to the ModuleMetas of a ModuleRegistry that
+     * is in use, use publishModuleMetas().
      *
      * @param add the ModuleMeta to be added
      * @param metas the existing ModuleMetas
+     * @return true if the ModuleMeta was added, false if it was known already
      */
-    protected static void addModuleMeta(
-            ModuleMeta                        add,
-            HashMap<String,MiniModuleMetaMap> metas )
+    protected static boolean addModuleMeta(
+            ModuleMeta                    add,
+            Map<String,MiniModuleMetaMap> metas )
     {
-        MiniModuleMetaMap map = metas.get( add.getModuleArtifactId() );
-        if( map == null ) {
-            map = new MiniModuleMetaMap();
-            metas.put( add.getModuleArtifactId(), map );
-        }
+        MiniModuleMetaMap map = metas.computeIfAbsent( add.getModuleArtifactId(), ( String k ) -> new MiniModuleMetaMap() );
 
         ModuleMeta [] already = map.get( add.getModuleGroupId() );
         ModuleMeta [] newArray;
 
         if( already != null ) {
-            String version = add.getModuleVersion();
-            newArray = new ModuleMeta[ already.length + 1 ];
-            int offset = 0;
-            for( int i=0 ; i<already.length ; ++i ) {
-                if( offset == 0 ) { // not found yet
-                    int comp = rpmvercmp( already[i].getModuleVersion(), version );
-                    if( comp == 0 ) {
-                        log.log( Level.WARNING,
-                                "Adding module again: {0}: {1}, was: {2}",
-                                new Object[] {
-                                        add.toString(),
-                                        add.getProvidesJar() != null ? add.getProvidesJar().getName() : "<no jar>",
-                                        already[i].getProvidesJar() != null ? already[i].getProvidesJar().getName() : "<no jar>"
-                                });
-                        return;
-                    }
-                    if( comp < 0 ) {
-                        newArray[i] = add;
-                        offset = 1;
-                    }
+            // binary search for the insertion point; newest first
+            ParsedVersion version = add.getParsedModuleVersion();
+            int           low     = 0;
+            int           high    = already.length;
+            while( low < high ) {
+                int mid  = ( low + high ) >>> 1;
+                int comp = already[mid].getParsedModuleVersion().compareTo( version );
+                if( comp == 0 ) {
+                    log.log( Level.WARNING,
+                            "Adding module again: {0}: {1}, was: {2}",
+                            new Object[] {
+                                    add.toString(),
+                                    add.getProvidesJarFile() != null ? add.getProvidesJarFile().getPath() : "<no jar>",
+                                    already[mid].getProvidesJarFile() != null ? already[mid].getProvidesJarFile().getPath() : "<no jar>"
+                            });
+                    return false;
+                }
+                if( comp > 0 ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
                 }
-                newArray[i+offset] = already[i];
-            }
-            if( offset == 0 ) { // add at end
-                newArray[ newArray.length-1 ] = add;
             }
+            newArray = new ModuleMeta[ already.length + 1 ];
+            System.arraycopy( already, 0, newArray, 0, low );
+            newArray[low] = add;
+            System.arraycopy( already, low, newArray, low+1, already.length - low );
         } else {
             newArray = new ModuleMeta[] { add };
         }
         map.put( add.getModuleGroupId(), newArray );
+        return true;
+    }
+
+    /**
+     * Add ModuleMetas during runtime, while others may be reading the ModuleMetas. The
+     * known ModuleMetas are copied, the new ones added to the copy, and the copy published
+     * in a single step, so readers never need to lock, and see either none or all of the
+     * new ModuleMetas.
+     *
+     * @param adds the ModuleMetas to be added
+     * @return the ModuleMetas that were added, i.e. without those that were known already
+     */
+    protected synchronized List<ModuleMeta> publishModuleMetas(
+            List<ModuleMeta> adds )
+    {
+        HashMap<String,MiniModuleMetaMap> newMetas = new HashMap<>( theMetas );
+        HashSet<String>                   copied   = new HashSet<>();
+        ArrayList<ModuleMeta>             ret      = new ArrayList<>( adds.size() );
+
+        for( ModuleMeta add : adds ) {
+            String artifactId = add.getModuleArtifactId();
+            if( copied.add( artifactId )) {
+                // do not modify what readers may see
+                MiniModuleMetaMap old = newMetas.get( artifactId );
+                if( old != null ) {
+                    newMetas.put( artifactId, new MiniModuleMetaMap( old ));
+                }
+            }
+            if( addModuleMeta( add, newMetas )) {
+                ret.add( add );
+            }
+        }
+        if( !ret.isEmpty() ) {
+            theMetas = newMetas;
+        }
+        return ret;
     }
 
     /**
@@ -198,74 +254,372 @@ public abstract class AbstractScanningModuleRegistry
             List<JarFile>                     jars,
             HashMap<String,MiniModuleMetaMap> result )
     {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        addParsedModuleMetasFromJars( jars, DEFAULT_SCAN_PARALLELISM, result );
+    }
 
-        try {
-            for( JarFile jarFile : jars ) {
-                JarEntry pomXmlEntry        = null;
-                JarEntry pomPropertiesEntry = null;
-                JarEntry manifestEntry      = null;
-                File     pomSibling         = null;
+    /**
+     * Given a list of Jar filenames, parse the JARs and determine the ModuleMetas that they contain.
+     * Add them to the provided hash. The JARs are parsed concurrently, but the results are added
+     * in the sequence of the list, so the result does not depend on the parallelism.
+     *
+     * @param jars the JarFiles to parse
+     * @param parallelism the maximum number of JARs to parse concurrently
+     * @param result the hash to add results to
+     */
+    protected static void addParsedModuleMetasFromJars(
+            List<JarFile>                     jars,
+            int                               parallelism,
+            HashMap<String,MiniModuleMetaMap> result )
+    {
+        ModuleMeta [] metas = new ModuleMeta[ jars.size() ];
+
+        ThreadLocal<DocumentBuilderFactory> dbfs    = ThreadLocal.withInitial( DocumentBuilderFactory::newInstance );
+        ParentPomCache                      parents = new ParentPomCache();
 
+        runConcurrently( metas.length, parallelism, ( int i ) -> {
+                JarFile jarFile = jars.get( i );
                 try {
-                    String pomSiblingName = jarFile.getName();
-                    pomSiblingName        = pomSiblingName.substring( 0, pomSiblingName.length()-3 ) + "pom";
-                    pomSibling            = new File( pomSiblingName );
-                    if( !pomSibling.canRead() ) {
-                        pomSibling = null;
-                    }
+                    metas[i] = parseModuleMetaFromJar( dbfs.get(), jarFile, parents, null );
 
-                    Stream<JarEntry> metaFiles = jarFile.stream().filter( f -> f.getName().startsWith( "META-INF/" ) );
-                    // does not like to be processed twice, and doesn't like to be an iterable
+                } catch( IOException|SAXException ex ) {
+                    log.log( Level.WARNING, "Failed to read/parse {0}", ex.getMessage() );
 
-                    Iterator<JarEntry> iter = metaFiles.iterator();
-                    while( iter.hasNext() ) {
-                        JarEntry f = iter.next();
-                        String   n = f.getName();
-
-                        if( n.startsWith( "META-INF/maven" )) {
-                            if( n.endsWith( "pom.xml")) {
-                                pomXmlEntry = f;
-                            } else if( f.getName().endsWith( "pom.properties")) {
-                                pomPropertiesEntry = f;
-                            }
-                        } else if( f.getName().equals( "META-INF/MANIFEST.MF")) {
-                            manifestEntry = f;
-                        }
-                    }
+                } catch( ParserConfigurationException ex ) {
+                    log.log( Level.SEVERE, "Failed to instantiate XML parser", ex );
+                }
+        } );
 
-                    ModuleMeta meta = parseMetadataFiles(
-                            dbf,
-                            jarFile,
-                            pomXmlEntry != null        ? jarFile.getInputStream( pomXmlEntry )        : null,
-                            pomPropertiesEntry != null ? jarFile.getInputStream( pomPropertiesEntry ) : null,
-                            manifestEntry != null      ? jarFile.getInputStream( manifestEntry )      : null,
-                            pomSibling != null         ? new FileInputStream( pomSibling )            : null );
-                    if( meta != null ) {
-                        addModuleMeta( meta, result );
-                    }
-                } catch( IOException|SAXException ex ) {
-                    if( pomXmlEntry != null ) {
-                        if( pomSibling != null ) {
-                            log.log( Level.WARNING,
-                                     "Failed to read/parse either entry {0} in file {1} or POM file {2}: {3}",
-                                     new Object[] { pomXmlEntry.getName(), jarFile.getName(), pomSibling.getAbsolutePath(), ex.getMessage() });
-                        } else {
-                            log.log( Level.WARNING,
-                                     "Failed to read/parse entry {0} in file {1}: {2}",
-                                     new Object[] { pomXmlEntry.getName(), jarFile.getName(), ex.getMessage() });
-                        }
-                    } else if( pomSibling != null ) {
-                        log.log( Level.WARNING,
-                                 "Failed to read/parse POM file {0}: {1}",
-                                 new Object[] { pomSibling.getAbsolutePath(), ex.getMessage() });
-                    } else {
-                        log.log( Level.WARNING, "Failed to read/parse a file, but don't know which.", ex ); // not expected to happen
+        for( ModuleMeta meta : metas ) {
+            if( meta != null ) {
+                addModuleMeta( meta, result );
+            }
+        }
+    }
+
+    /**
+     * Given a list of JAR files, determine the ModuleMetas that they contain, and
+     * add them to the provided hash. If a ModuleMetaIndex is given, only parse those
+     * JAR files that the index does not know about or that have changed, and update the index.
+     *
+     * @param jarFiles the JAR files
+     * @param index the ModuleMetaIndex to consult and update, or null
+     * @param result the hash to add results to
+     */
+    protected static void addParsedModuleMetasFromJarFiles(
+            List<File>                    jarFiles,
+            ModuleMetaIndex               index,
+            Map<String,MiniModuleMetaMap> result )
+    {
+        addParsedModuleMetasFromJarFiles( jarFiles, index, DEFAULT_SCAN_PARALLELISM, result );
+    }
+
+    /**
+     * Given a list of JAR files, determine the ModuleMetas that they contain, and
+     * add them to the provided hash. If a ModuleMetaIndex is given, only parse those
+     * JAR files that the index does not know about or that have changed, and update the index.
+     * The JAR files are opened and parsed concurrently, but the results are added in the
+     * sequence of the list, so the result does not depend on the parallelism.
+     *
+     * @param jarFiles the JAR files
+     * @param index the ModuleMetaIndex to consult and update, or null
+     * @param parallelism the maximum number of JAR files to parse concurrently
+     * @param result the hash to add results to
+     */
+    protected static void addParsedModuleMetasFromJarFiles(
+            List<File>                    jarFiles,
+            ModuleMetaIndex               index,
+            int                           parallelism,
+            Map<String,MiniModuleMetaMap> result )
+    {
+        ModuleMeta [] metas = parseModuleMetasFromJarFiles( jarFiles, index, parallelism );
+
+        for( int i=0 ; i<metas.length ; ++i ) {
+            if( metas[i] != null ) {
+                addModuleMeta( metas[i], result );
+            }
+        }
+    }
+
+    /**
+     * Given a list of JAR files, determine the ModuleMetas that they contain. If a
+     * ModuleMetaIndex is given, only parse those JAR files that the index does not know
+     * about or that have changed, and update the index. The JAR files are opened and
+     * parsed concurrently.
+     *
+     * @param jarFiles the JAR files
+     * @param index the ModuleMetaIndex to consult and update, or null
+     * @param parallelism the maximum number of JAR files to parse concurrently
+     * @return the ModuleMetas, in the sequence of the list; null for JAR files that do not
+     *         contain a Module or could not be parsed
+     */
+    protected static ModuleMeta [] parseModuleMetasFromJarFiles(
+            List<File>      jarFiles,
+            ModuleMetaIndex index,
+            int             parallelism )
+    {
+        ModuleMetaIndex.Entry [] entries = new ModuleMetaIndex.Entry[ jarFiles.size() ];
+        ModuleMeta []            metas   = new ModuleMeta[ entries.length ];
+        boolean []               parsed  = new boolean[ entries.length ]; // successfully parsed, not taken from the index
+        long []                  sizes   = new long[ entries.length ];    // of the JAR files before parsing
+        long []                  mtimes  = new long[ entries.length ];
+        List<List<File>>         inputs  = new ArrayList<>( Collections.nCopies( entries.length, null )); // parent POMs that went into the ModuleMeta
+
+        if( index != null ) {
+            for( int i=0 ; i<entries.length ; ++i ) {
+                entries[i] = index.lookup( jarFiles.get( i ));
+            }
+        }
+
+        ThreadLocal<DocumentBuilderFactory> dbfs    = ThreadLocal.withInitial( DocumentBuilderFactory::newInstance );
+        ParentPomCache                      parents = new ParentPomCache(); // parents are shared by many modules
+
+        runConcurrently( entries.length, parallelism, ( int i ) -> {
+                File f = jarFiles.get( i );
+
+                if( entries[i] != null ) {
+                    // no need to open the JAR file at all; null if known not to be a module
+                    metas[i] = entries[i].createModuleMeta( f );
+                    return;
+                }
+
+                sizes[i]  = f.length();
+                mtimes[i] = f.lastModified();
+
+                // only keep the JAR file open during parsing; the ModuleMeta opens it again when needed
+                try( JarFile jarFile = new JarFile( f )) {
+                    try {
+                        List<File> parentPoms = new ArrayList<>();
+                        inputs.set( i, parentPoms );
+                        metas[i] = parseModuleMetaFromJar( dbfs.get(), jarFile, parents, parentPoms );
+                        parsed[i] = true;
+
+                    } catch( IOException|SAXException ex ) {
+                        log.log( Level.WARNING, "Failed to read/parse {0}", ex.getMessage() );
+
+                    } catch( ParserConfigurationException ex ) {
+                        log.log( Level.SEVERE, "Failed to instantiate XML parser", ex );
                     }
+                } catch( IOException ex ) {
+                    log.log( Level.SEVERE, "Cannot access {0}: {1}", new Object[]{ f.toString(), ex.getLocalizedMessage() });
+                }
+        } );
+
+        if( index != null ) {
+            for( int i=0 ; i<metas.length ; ++i ) {
+                if( !parsed[i] ) {
+                    continue;
+                }
+                File f = jarFiles.get( i );
+                if( f.length() != sizes[i] || f.lastModified() != mtimes[i] ) {
+                    // still being written: the index would consider what we parsed to be current
+                    log.log( Level.FINE, "Not indexing {0}, which changed while being parsed", f );
+                    continue;
                 }
+                index.put( f, metas[i], inputs.get( i ));
             }
-        } catch( ParserConfigurationException ex ) {
-            log.log( Level.SEVERE, "Failed to instantiate XML parser", ex );
+        }
+        return metas;
+    }
+
+    /**
+     * Helper to run a task for each index in a range, using up to the given number of threads.
+     * Returns once all tasks have completed. The task must handle its own Exceptions.
+     *
+     * @param count the number of indices, starting with 0
+     * @param parallelism the maximum number of threads to use
+     * @param task the task to run for each index
+     */
+    protected static void runConcurrently(
+            int         count,
+            int         parallelism,
+            IntConsumer task )
+    {
+        int nThreads = Math.min( parallelism, count );
+        if( nThreads <= 1 ) {
+            for( int i=0 ; i<count ; ++i ) {
+                task.accept( i );
+            }
+            return;
+        }
+
+        AtomicInteger   threadCounter = new AtomicInteger();
+        ExecutorService exec          = Executors.newFixedThreadPool( nThreads, ( Runnable r ) -> {
+                Thread ret = new Thread( r, "diet4j-scan-" + threadCounter.incrementAndGet() );
+                ret.setDaemon( true );
+                return ret;
+        } );
+
+        try {
+            List<Future<?>> futures = new ArrayList<>( count );
+            for( int i=0 ; i<count ; ++i ) {
+                int index = i;
+                futures.add( exec.submit( () -> task.accept( index )));
+            }
+            for( Future<?> future : futures ) {
+                try {
+                    future.get();
+
+                } catch( ExecutionException ex ) {
+                    log.log( Level.SEVERE, "Scanning failed", ex.getCause() );
+                }
+            }
+        } catch( InterruptedException ex ) {
+            log.log( Level.WARNING, "Interrupted while scanning", ex );
+            Thread.currentThread().interrupt();
+
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    /**
+     * Parse a single JAR file and determine the ModuleMeta that it contains.
+     *
+     * @param dbf the XML parser factory
+     * @param jarFile the JAR file
+     * @return the ModuleMeta, or null if the JAR file does not contain a Module
+     * @throws ParserConfigurationException misconfigured XML parser
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    protected static ModuleMeta parseModuleMetaFromJar(
+            DocumentBuilderFactory dbf,
+            JarFile                jarFile )
+        throws
+            ParserConfigurationException,
+            IOException,
+            SAXException
+    {
+        return parseModuleMetaFromJar( dbf, jarFile, null, null );
+    }
+
+    /**
+     * Parse a single JAR file and determine the ModuleMeta that it contains, applying
+     * what its POM inherits from parent POMs.
+     *
+     * @param dbf the XML parser factory
+     * @param jarFile the JAR file
+     * @param parents the cache of parent POMs and BOMs to use, or null to ignore parent POMs and BOM imports
+     * @param parentPoms the list to add the files of the parent POMs and BOMs to that were used or looked for, or null
+     * @return the ModuleMeta, or null if the JAR file does not contain a Module
+     * @throws ParserConfigurationException misconfigured XML parser
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    protected static ModuleMeta parseModuleMetaFromJar(
+            DocumentBuilderFactory dbf,
+            JarFile                jarFile,
+            ParentPomCache         parents,
+            List<File>             parentPoms )
+        throws
+            ParserConfigurationException,
+            IOException,
+            SAXException
+    {
+        JarEntry pomXmlEntry        = null;
+        JarEntry pomPropertiesEntry = null;
+        JarEntry manifestEntry      = null;
+        File     jarFileFile        = new File( jarFile.getName() );
+        File     pomSibling         = pomSiblingOf( jarFileFile );
+
+        // Looking at the central directory ourselves avoids creating a JarEntry for each class file
+        JarCentralDirectory centralDirectory = JarCentralDirectory.read( jarFileFile );
+        Iterator<String>    iter;
+        if( centralDirectory != null ) {
+            iter = centralDirectory.findEntryNames( "META-INF/" ).iterator();
+        } else {
+            Stream<String> metaFiles = jarFile.stream().map( f -> f.getName() ).filter( n -> n.startsWith( "META-INF/" ) );
+            // does not like to be processed twice, and doesn't like to be an iterable
+            iter = metaFiles.iterator();
+        }
+
+        String pomXmlName        = null;
+        String pomPropertiesName = null;
+        String manifestName      = null;
+        while( iter.hasNext() ) {
+            String n = iter.next();
+
+            if( n.startsWith( "META-INF/maven" )) {
+                if( n.endsWith( "pom.xml")) {
+                    pomXmlName = n;
+                } else if( n.endsWith( "pom.properties")) {
+                    pomPropertiesName = n;
+                }
+            } else if( n.equals( "META-INF/MANIFEST.MF")) {
+                manifestName = n;
+            }
+        }
+        if( pomXmlName != null ) {
+            pomXmlEntry = jarFile.getJarEntry( pomXmlName );
+        }
+        if( pomPropertiesName != null ) {
+            pomPropertiesEntry = jarFile.getJarEntry( pomPropertiesName );
+        }
+        if( manifestName != null ) {
+            manifestEntry = jarFile.getJarEntry( manifestName );
+        }
+
+        // the entry streams are closed with the JarFile, but the sibling POM's stream is ours to close
+        try( InputStream pomSiblingStream = pomSibling != null ? new FileInputStream( pomSibling ) : null ) {
+            return parseMetadataFiles(
+                    dbf,
+                    jarFile,
+                    pomXmlEntry != null        ? jarFile.getInputStream( pomXmlEntry )        : null,
+                    pomPropertiesEntry != null ? jarFile.getInputStream( pomPropertiesEntry ) : null,
+                    manifestEntry != null      ? jarFile.getInputStream( manifestEntry )      : null,
+                    pomSiblingStream,
+                    parents,
+                    parentPoms );
+
+        } catch( IOException ex ) {
+            throw new IOException( describeMetadataSources( jarFile, pomXmlEntry, pomSibling ) + ": " + ex.getMessage(), ex );
+        } catch( SAXException ex ) {
+            throw new SAXException( describeMetadataSources( jarFile, pomXmlEntry, pomSibling ) + ": " + ex.getMessage(), ex );
+        }
+    }
+
+    /**
+     * Helper to describe where we attempted to read metadata from, for error messages.
+     *
+     * @param jarFile the JAR file
+     * @param pomXmlEntry the pom.xml entry in the JAR file, if any
+     * @param pomSibling the POM file next to the JAR file, if any
+     * @return the description
+     */
+    protected static String describeMetadataSources(
+            JarFile  jarFile,
+            JarEntry pomXmlEntry,
+            File     pomSibling )
+    {
+        if( pomXmlEntry != null ) {
+            if( pomSibling != null ) {
+                return "either entry " + pomXmlEntry.getName() + " in file " + jarFile.getName() + " or POM file " + pomSibling.getAbsolutePath();
+            } else {
+                return "entry " + pomXmlEntry.getName() + " in file " + jarFile.getName();
+            }
+        } else if( pomSibling != null ) {
+            return "POM file " + pomSibling.getAbsolutePath();
+        } else {
+            return "file " + jarFile.getName();
+        }
+    }
+
+    /**
+     * Determine the POM file that sits next to a JAR file in a Maven-style repository, if any.
+     *
+     * @param jarFile the JAR file
+     * @return the POM file, or null if there is none or it cannot be read
+     */
+    protected static File pomSiblingOf(
+            File jarFile )
+    {
+        String name = jarFile.getPath();
+        File   ret  = new File( name.substring( 0, name.length()-3 ) + "pom" );
+
+        if( ret.canRead() ) {
+            return ret;
+        } else {
+            return null;
         }
     }
 
@@ -299,15 +653,17 @@ public abstract class AbstractScanningModuleRegistry
 
                         if( n.endsWith( "pom.xml" )) {
                             currentlyParsing = new File( dir, n );
-                            ModuleMeta meta = parseMetadataFiles(
-                                    dbf,
-                                    null,
-                                    new FileInputStream( currentlyParsing ),
-                                    null,
-                                    null,
-                                    null );
-                            if( meta != null ) {
-                                addModuleMeta( meta, result );
+                            try( InputStream pomStream = new FileInputStream( currentlyParsing )) {
+                                ModuleMeta meta = parseMetadataFiles(
+                                        dbf,
+                                        null,
+                                        pomStream,
+                                        null,
+                                        null,
+                                        null );
+                                if( meta != null ) {
+                                    addModuleMeta( meta, result );
+                                }
                             }
                         }
                     }
@@ -348,6 +704,40 @@ public abstract class AbstractScanningModuleRegistry
             ParserConfigurationException,
             IOException,
             SAXException
+    {
+        return parseMetadataFiles( dbf, jar, pomXmlEntryStream, pomPropertiesEntryStream, manifestEntryStream, pomFileStream, null, null );
+    }
+
+    /**
+     * Helper method to parse metadata jar file entries into a ModuleMeta, applying what
+     * the POM inherits from parent POMs. Parent POMs can only be found for JAR files.
+     *
+     * @param dbf the XML parser factory
+     * @param jar the JAR file containing the entries
+     * @param pomXmlEntryStream reading the maven pom.xml file
+     * @param pomPropertiesEntryStream reading the maven pom.properties file (if any)
+     * @param manifestEntryStream reading the MANIFEST.MF file
+     * @param pomFileStream read the POM from this stream, if given, otherwise use what's inside the JAR
+     * @param parents the cache of parent POMs and BOMs to use, or null to ignore parent POMs and BOM imports
+     * @param parentPoms the list to add the files of the parent POMs and BOMs to that were used or looked for, or null
+     * @return the created ModuleMeta
+     * @throws ParserConfigurationException misconfigured XML parser
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    protected static ModuleMeta parseMetadataFiles(
+            DocumentBuilderFactory dbf,
+            JarFile                jar,
+            InputStream            pomXmlEntryStream,
+            InputStream            pomPropertiesEntryStream,
+            InputStream            manifestEntryStream,
+            InputStream            pomFileStream,
+            ParentPomCache         parents,
+            List<File>             parentPoms )
+        throws
+            ParserConfigurationException,
+            IOException,
+            SAXException
     {
         HashMap<String,String> pomProperties = new HashMap<>();
         if( pomPropertiesEntryStream != null ) {
@@ -362,177 +752,74 @@ public abstract class AbstractScanningModuleRegistry
             pomProperties.put( "mavenVersion", null );
         }
 
-        DocumentBuilder parser = dbf.newDocumentBuilder();
-        Document        doc    = null;
-
-        // swallow everything, we get the exception anyway. If we don't set that error handler,
-        // some piece of code deep inside the JDK, in its wisdom, will print a "Fatal error"
-        // to stderr, having the guts to explain in a comment that this is a good thing because
-        // it addresses "the most frequent user complaint" with the parser.
-        parser.setErrorHandler( new ErrorHandler() {
-            @Override
-            public void fatalError( SAXParseException ex ) {}
-            @Override
-            public void error( SAXParseException ex ) {}
-            @Override
-            public void warning( SAXParseException ex ) {}
-        } );
-
+        ParsedPom pom = null;
         if( pomFileStream != null ) {
-            try {
-                doc = parser.parse( pomFileStream );
-            } catch( CharConversionException ex ) {
-                // happens when an XML document is in a weird character encoding, not something the parser can deal with
-            }
+            pom = parsePom( dbf, pomFileStream );
         }
-        if( doc == null && pomXmlEntryStream != null ) {
-            try {
-                doc = parser.parse( pomXmlEntryStream );
-            } catch( CharConversionException ex ) {
-                // happens when an XML document is in a weird character encoding, not something the parser can deal with
-                return null;
-            }
+        if( pom == null && pomXmlEntryStream != null ) {
+            pom = parsePom( dbf, pomXmlEntryStream );
         }
-        if( doc == null ) {
+        if( pom == null ) {
             // cannot read pom, skipping
             return null;
         }
-
-        Element root = doc.getDocumentElement();
-        root.normalize();
+        if( parents != null && jar != null ) {
+            pom = parents.applyInheritance( dbf, new File( jar.getName() ), pom );
+            if( parentPoms != null ) {
+                parentPoms.addAll( pom.getInheritedFrom() );
+                parentPoms.addAll( pom.getUnresolvedParents() );
+            }
+        }
 
         String moduleGroupId    = "${project.groupId}"; // default to what's in the Properties
         String moduleArtifactId = "${project.artifactId}"; // default to what's in the Properties
         String moduleVersion    = "${project.version}";    // default to what's in the Properties
-        String parentGroupId    = null;
-        String parentVersion    = null;
+        String parentGroupId    = pom.getParentGroupId();
+        String parentVersion    = pom.getParentVersion();
 
-        ArrayList<ModuleRequirement> runTimeRequirements   = new ArrayList<>();
-
-        NodeList rootChildren = root.getChildNodes();
-        for( int i=0 ; i<rootChildren.getLength(); ++i ) {
-            Node   rootChild     = rootChildren.item( i );
-            String rootChildName = rootChild.getNodeName();
-
-            if( rootChildName == null ) {
-                continue;
+        if( pom.getGroupId() != null ) {
+            moduleGroupId = pom.getGroupId();
+            if( !pomProperties.containsKey( "project.groupId" )) {
+                pomProperties.put( "project.groupId", moduleGroupId );
             }
+        }
+        if( pom.getArtifactId() != null ) {
+            moduleArtifactId = pom.getArtifactId();
+            if( !pomProperties.containsKey( "project.artifactId" )) {
+                pomProperties.put( "project.artifactId", moduleArtifactId );
+            }
+        }
+        if( pom.getVersion() != null ) {
+            moduleVersion = pom.getVersion();
+            if( !pomProperties.containsKey( "project.version" )) {
+                pomProperties.put( "project.version", moduleVersion );
+            }
+        }
+        pomProperties.putAll( pom.getProperties() );
 
-            switch( rootChildName ) {
-                case "groupId":
-                    moduleGroupId = rootChild.getTextContent();
-                    if( !pomProperties.containsKey( "project.groupId" )) {
-                        pomProperties.put( "project.groupId", moduleGroupId );
-                    }
-                    break;
-                case "artifactId":
-                    moduleArtifactId = rootChild.getTextContent();
-                    if( !pomProperties.containsKey( "project.artifactId" )) {
-                        pomProperties.put( "project.artifactId", moduleArtifactId );
-                    }
-                    break;
-                case "version":
-                    moduleVersion = rootChild.getTextContent();
-                    if( !pomProperties.containsKey( "project.version" )) {
-                        pomProperties.put( "project.version", moduleVersion );
-                    }
-                    break;
-                case "properties":
-                    NodeList propertiesChildren = rootChild.getChildNodes();
-                    for( int j=0 ; j<propertiesChildren.getLength() ; ++j ) {
-                        Node   propertiesChild     = propertiesChildren.item( j );
-                        String propertiesChildName = propertiesChild.getNodeName();
-
-                        if( propertiesChild.getNodeType() != Node.ELEMENT_NODE ) {
-                            continue;
-                        }
-                        if( propertiesChildName == null ) {
-                            continue;
-                        }
-                        pomProperties.put( propertiesChildName, propertiesChild.getTextContent() );
-                    }
-                    break;
-                case "parent":
-                    NodeList parentChildren = rootChild.getChildNodes();
-                    for( int j=0 ; j<parentChildren.getLength() ; ++j ) {
-                        Node   parentChild     = parentChildren.item( j );
-                        String parentChildName = parentChild.getNodeName();
-
-                        if( parentChildName == null ) {
-                            continue;
-                        }
-                        if( parentChildName.equals( "version" )) {
-                            parentVersion = parentChild.getTextContent();
-                        } else if( parentChildName.equals( "groupId" )) {
-                            parentGroupId = parentChild.getTextContent();
-                        }
-                    }
-                    break;
-                case "dependencies":
-                    NodeList dependenciesChildren = rootChild.getChildNodes();
-                    for( int j=0 ; j<dependenciesChildren.getLength() ; ++j ) {
-                        Node   dependenciesChild     = dependenciesChildren.item( j );
-                        String dependenciesChildName = dependenciesChild.getNodeName();
-
-                        if( dependenciesChildName == null ) {
-                            continue;
-                        }
-
-                        if( dependenciesChildName.equals( "dependency" )) {
-                            NodeList dependencyChildren = dependenciesChild.getChildNodes();
-
-                            String  dependencyGroupdId   = null;
-                            String  dependencyArtifactId = null;
-                            String  dependencyVersion    = null;
-                            String  dependencyScope      = null;
-                            boolean isOptional           = false;
-
-                            for( int k=0 ; k<dependencyChildren.getLength() ; ++k ) {
-                                Node   dependencyChild     = dependencyChildren.item( k );
-                                String dependencyChildName = dependencyChild.getNodeName();
-
-                                if( dependencyChildName == null ) {
-                                    continue;
-                                }
+        ArrayList<ModuleRequirement> runTimeRequirements   = new ArrayList<>();
 
-                                switch( dependencyChildName ) {
-                                    case "groupId":
-                                        dependencyGroupdId = dependencyChild.getTextContent();
-                                        break;
-                                    case "artifactId":
-                                        dependencyArtifactId = dependencyChild.getTextContent();
-                                        break;
-                                    case "version":
-                                        dependencyVersion = dependencyChild.getTextContent();
-                                        break;
-                                    case "scope":
-                                        dependencyScope = dependencyChild.getTextContent();
-                                        break;
-                                    case "optional":
-                                        isOptional = "true".equalsIgnoreCase( dependencyChild.getTextContent() );
-                                        break;
-                                }
-                            }
-                            if( dependencyGroupdId != null && dependencyArtifactId != null ) {
-                                // there are some poms that do not have a dependency version
-                                if( "compile".equals( dependencyScope )) {
-                                    // ignore
-
-                                } else if( "test".equals( dependencyScope )) {
-                                    // ignore
-
-                                } else if( !"provided".equals( dependencyScope )) {
-                                    ModuleRequirement req = ModuleRequirement.create(
-                                            dependencyGroupdId,
-                                            dependencyArtifactId,
-                                            dependencyVersion,
-                                            isOptional ); // this may use symbolic names for version and groupId
-                                    runTimeRequirements.add( req );
-                                } // Just like Maven, we ignore "provided" modules
-                            }
-                        }
-                    }
-                    break;
+        for( ParsedPom.Dependency dependency : pom.getDependencies() ) {
+            String dependencyGroupdId   = dependency.getGroupId();
+            String dependencyArtifactId = dependency.getArtifactId();
+            String dependencyScope      = dependency.getScope();
+
+            if( dependencyGroupdId != null && dependencyArtifactId != null ) {
+                // there are some poms that do not have a dependency version
+                if( "compile".equals( dependencyScope )) {
+                    // ignore
+
+                } else if( "test".equals( dependencyScope )) {
+                    // ignore
+
+                } else if( !"provided".equals( dependencyScope )) {
+                    ModuleRequirement req = ModuleRequirement.create(
+                            dependencyGroupdId,
+                            dependencyArtifactId,
+                            dependency.getVersion(),
+                            dependency.isOptional() ); // this may use symbolic names for version and groupId
+                    runTimeRequirements.add( req );
+                } // Just like Maven, we ignore "provided" modules
             }
         }
         if( !pomProperties.containsKey( "project.version" )) {
@@ -542,9 +829,11 @@ public abstract class AbstractScanningModuleRegistry
             pomProperties.put( "project.groupId", parentGroupId );
         }
 
-        moduleGroupId    = replaceProperties( pomProperties, moduleGroupId );
-        moduleArtifactId = replaceProperties( pomProperties, moduleArtifactId );
-        moduleVersion    = replaceProperties( pomProperties, moduleVersion );
+        PropertyExpander expander = new PropertyExpander( pomProperties ); // no more changes to pomProperties from here
+
+        moduleGroupId    = expander.expand( moduleGroupId );
+        moduleArtifactId = expander.expand( moduleArtifactId );
+        moduleVersion    = expander.expand( moduleVersion );
 
         if( moduleVersion == null || moduleVersion.isEmpty() ) {
             moduleVersion = parentVersion;
@@ -597,15 +886,30 @@ public abstract class AbstractScanningModuleRegistry
         if( moduleArtifactId != null ) {
             ModuleRequirement [] runTime = new ModuleRequirement[ runTimeRequirements.size() ];
 
+            HashMap<String,String> managedVersions = null;
+            if( !pom.getDependencyManagement().isEmpty() ) {
+                managedVersions = new HashMap<>();
+                if( parents != null && jar != null ) {
+                    // also imports BOMs
+                    parents.addManagedVersions( dbf, new File( jar.getName() ), pom, expander, managedVersions, parentPoms );
+                } else {
+                    ParentPomCache.addDeclaredManagedVersions( pom, expander, managedVersions );
+                }
+            }
+
             // copy into arrays, and while we are at it, replace symbolic names in version and groupId where needed
             for( int i=0 ; i<runTime.length ; ++i ) {
                 ModuleRequirement current  = runTimeRequirements.get( i );
                 String            groupId  = current.getRequiredModuleGroupId();
                 String            version  = current.getUninterpretedRequiredModuleVersion();
-                String            groupId2 = replaceProperties( pomProperties, groupId );
-                String            version2 = version != null ? replaceProperties( pomProperties, version ) : null;
+                String            groupId2 = expander.expand( groupId );
+                if( version == null && managedVersions != null ) {
+                    // like Maven, take the version from dependencyManagement, which may have been inherited or imported
+                    version = managedVersions.get( groupId2 + ":" + current.getRequiredModuleArtifactId() );
+                }
+                String            version2 = expander.expand( version );
 
-                if(    ( version == null || version.equals( version2 ) )
+                if(    Objects.equals( version2, current.getUninterpretedRequiredModuleVersion() )
                     && groupId.equals( groupId2 ))
                 {
                     runTime[i] = current;
@@ -620,7 +924,7 @@ public abstract class AbstractScanningModuleRegistry
 
             String activationClassName = pomProperties.get( ACTIVATION_CLASS_PROPERTY );
             if( activationClassName != null ) {
-                activationClassName = replaceProperties( pomProperties, activationClassName );
+                activationClassName = expander.expand( activationClassName );
             }
 
             ret = new ModuleMeta( // FIXME: extract more info from pom files
@@ -632,7 +936,7 @@ public abstract class AbstractScanningModuleRegistry
                     0,
                     null,
                     runTime,
-                    jar,
+                    jar != null ? new File( jar.getName() ) : null,
                     activationClassName,
                     runClassName );
         }
@@ -640,53 +944,43 @@ public abstract class AbstractScanningModuleRegistry
     }
 
     /**
-     * Replace properties in Strings.
+     * Parse a POM with the configured parser.
+     *
+     * @param dbf the XML parser factory, used if the DOM parser has been configured
+     * @param in the stream to read the POM from
+     * @return the ParsedPom, or null if the POM uses a character encoding the parser cannot handle
+     * @throws ParserConfigurationException misconfigured XML parser
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    protected static ParsedPom parsePom(
+            DocumentBuilderFactory dbf,
+            InputStream            in )
+        throws
+            ParserConfigurationException,
+            IOException,
+            SAXException
+    {
+        if( USE_DOM_POM_PARSER ) {
+            return ParsedPom.parseWithDom( dbf, in );
+        } else {
+            return ParsedPom.parseWithStax( in );
+        }
+    }
+
+    /**
+     * Replace properties in Strings. To replace properties in several Strings, create a
+     * PropertyExpander instead, which only expands the value of each property once.
      *
      * @param prop the map of properties
      * @param s the String
-     * @return the replaced string
+     * @return the replaced string, or null if nothing remains
      */
     protected static String replaceProperties(
-            HashMap<String,String> prop,
-            String                 s )
+            Map<String,String> prop,
+            String             s )
     {
-        Pattern p = Pattern.compile( "\\$\\{(.+)\\}" );
-        Matcher m = p.matcher( s );
-
-        // attempt to keep return value at null, if all we have is a String consisting of replacements to null
-        StringBuffer b = null;
-
-        while( m.find() ) {
-            String value = prop.get( m.group(1) );
-            if( value != null ) {
-                if( b == null ) {
-                    b = new StringBuffer();
-                }
-                m.appendReplacement( b, Matcher.quoteReplacement( value ));
-            } else {
-                if( b != null ) {
-                    m.appendReplacement( b, "" );
-                } else {
-                    b = new StringBuffer();
-                    m.appendReplacement( b, "" );
-                    if( b.length() == 0 ) {
-                        b = null;
-                    }
-                }
-            }
-        }
-        if( b != null ) {
-            m.appendTail( b );
-            return b.toString();
-        } else {
-            b = new StringBuffer();
-            m.appendTail( b );
-            if( b.length() > 0 ) {
-                return b.toString();
-            } else {
-                return null;
-            }
-        }
+        return new PropertyExpander( prop ).expand( s );
     }
 
     /**
@@ -812,8 +1106,8 @@ public abstract class AbstractScanningModuleRegistry
             // strcmp will return which one is greater - even if the two
             // segments are alpha or if they are numeric.  don't return
             // if they are equal because there might be more segments to
-            // compare
-            int rc = a.substring( one, i1 ).compareTo( b.substring( two, i2 ));
+            // compare. Compare in place, without creating substrings.
+            int rc = ParsedVersion.compareRegions( a, one, i1, b, two, i2 );
             if( rc != 0 ) {
                 ret = rc < 1 ? -1 : 1;
                 return ret;
@@ -837,7 +1131,7 @@ public abstract class AbstractScanningModuleRegistry
         // - if one is an alpha, two is newer.
         // - otherwise one is newer.
         if(    ( one == aLen && !Character.isLetter( b.charAt( two )))
-            || Character.isLetter( a.charAt( one )))
+            || ( one < aLen && Character.isLetter( a.charAt( one ))))
         {
             ret = -1;
         } else {
@@ -849,8 +1143,10 @@ public abstract class AbstractScanningModuleRegistry
     /**
      * The set of known ModuleMetas, keyed by artifactId and then by
      * groupId. Multiple  versions of the ModuleMeta are ordered with the newest first.
+     * Once published here, neither the Map nor its MiniModuleMetaMaps are modified any more;
+     * changes are made to a copy, which then replaces it.
      */
-    protected final Map<String,MiniModuleMetaMap> theMetas;
+    protected volatile Map<String,MiniModuleMetaMap> theMetas;
 
     /**
      * Logger.
@@ -862,4 +1158,28 @@ public abstract class AbstractScanningModuleRegistry
      * in a Module JAR.
      */
     public static final String ACTIVATION_CLASS_PROPERTY = "diet4j.activationclass";
+
+    /**
+     * Name of the system property that, if set to true, makes us parse POMs into a DOM tree
+     * instead of streaming through them.
+     */
+    public static final String DOM_POM_PARSER_PROPERTY = "org.diet4j.core.domparser";
+
+    /**
+     * If true, parse POMs into a DOM tree instead of streaming through them.
+     */
+    public static final boolean USE_DOM_POM_PARSER = Boolean.getBoolean( DOM_POM_PARSER_PROPERTY );
+
+    /**
+     * Name of the system property that specifies how many JAR files may be parsed concurrently.
+     */
+    public static final String SCAN_PARALLELISM_PROPERTY = "org.diet4j.core.scanparallelism";
+
+    /**
+     * The maximum number of JAR files parsed concurrently, unless specified otherwise.
+     * Defaults to the number of available processors.
+     */
+    public static final int DEFAULT_SCAN_PARALLELISM = Integer.getInteger(
+            SCAN_PARALLELISM_PROPERTY,
+            Runtime.getRuntime().availableProcessors() );
 }
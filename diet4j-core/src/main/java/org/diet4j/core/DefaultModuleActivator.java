@@ -19,8 +19,6 @@
 
 package org.diet4j.core;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +26,8 @@ import java.util.logging.Logger;
  * This is the default implementation of ModuleActivator. If an activation class
  * was provided for the Module, it looks for static methods 'moduleActivate' and 'moduleDeactivate'
  * in this class. If they exist, they will be invoked when the Module is activated or deactivated.
+ * The methods are looked up once per Module, and then invoked through MethodHandles.
+ * Alternatively, the activation class may implement ModuleLifecycle.
  *
  * The methods must have the following signature:
  *
@@ -83,41 +83,38 @@ public class DefaultModuleActivator
             return null;
         }
 
+        ModuleActivationMethods methods;
         try {
             log.log( Level.FINER, "moduleActivateStarted: {0}", theModule );
 
             // FIXME? I think this does not distinguish between ClassNotFoundExceptions that are triggered
             // by not finding the activationClass, and those triggered by those not finding a class while
             // running it.
-            Class<?> activationClass = Class.forName( activationClassName, true, theModule.getClassLoader() );
+            methods = theModule.getActivationMethods();
 
-            Method activationMethod = activationClass.getMethod(
-                    ACTIVATION_METHOD_NAME,
-                    new Class[] { Module.class } );
-
-            log.log( Level.FINER, "moduleActivate {0} ({1} {2})", new Object[] { theModule, activationClassName, activationMethod } );
-
-            Object ret = activationMethod.invoke(
-                    null,
-                    new Object[] { theModule } ); // may throw activation exception
+        } catch( Throwable ex ) {
+            log.log( Level.FINE, "moduleActivateFailed: " + theModule, ex );
+            throw new ModuleActivationException( meta, ex );
+        }
 
-            log.log( Level.FINER, "moduleActivateSucceeded: {0}", theModule );
+        if( !methods.canActivate() ) {
+            log.log( Level.FINER, "moduleActivate no activation method: {0}", theModule );
 
-            return ret;
+            return null;
+        }
 
-        } catch( NoSuchMethodException ex ) {
-            log.log( Level.FINER, "moduleActivate no activation method: " + theModule, ex );
+        try {
+            log.log( Level.FINER, "moduleActivate {0} ({1})", new Object[] { theModule, activationClassName } );
 
-            return null;
+            Object ret = methods.activate( theModule ); // may throw activation exception
 
-        } catch( InvocationTargetException ex ) {
-            log.log( Level.FINE, "moduleActivateFailed: " + theModule, ex.getTargetException() );
+            log.log( Level.FINER, "moduleActivateSucceeded: {0}", theModule );
 
-            if( ex.getTargetException() instanceof ModuleActivationException ) {
-                throw (ModuleActivationException) ex.getTargetException();
-            }
+            return ret;
 
-            throw new ModuleActivationException( meta, ex.getTargetException() );
+        } catch( ModuleActivationException ex ) {
+            log.log( Level.FINE, "moduleActivateFailed: " + theModule, ex );
+            throw ex;
 
         } catch( Throwable ex ) {
             log.log( Level.FINE, "moduleActivateFailed: " + theModule, ex );
@@ -142,39 +139,37 @@ public class DefaultModuleActivator
             return;
         }
 
+        ModuleActivationMethods methods;
         try {
             log.log( Level.FINER, "moduleDeactivateStarted: {0}", theModule );
 
-            Class<?> deactivationClass = Class.forName( deactivationClassName, true, theModule.getClassLoader() );
+            methods = theModule.getActivationMethods();
 
-            Method deactivationMethod = deactivationClass.getMethod(
-                    DEACTIVATION_METHOD_NAME,
-                    new Class[] { Module.class } );
-
-            log.log( Level.FINER, "moduleDeactivate: {0} ({1} {2})", new Object[] { theModule, deactivationClassName, deactivationMethod } );
+        } catch( Throwable ex ) {
+            log.log( Level.FINE, "moduleDeactivateFailed: " + theModule, ex );
+            throw new ModuleDeactivationException( meta, ex );
+        }
 
-            deactivationMethod.invoke(
-                    null,
-                    new Object[] { theModule } );
+        if( !methods.canDeactivate() ) {
+            log.log( Level.FINER, "moduleDeactivate no deactivation method: {0}", theModule );
 
-            log.log( Level.FINER, "moduleDeactivateSucceeded: {0}", theModule );
+            return;
+        }
 
-        } catch( NoSuchMethodException ex ) {
-            log.log( Level.FINER, "moduleDeactivate no deactivation method: " + theModule, ex );
+        try {
+            log.log( Level.FINER, "moduleDeactivate: {0} ({1})", new Object[] { theModule, deactivationClassName } );
 
-        } catch( InvocationTargetException ex ) {
-            log.log( Level.FINE, "moduleDeactivateFailed: " + theModule, ex.getTargetException() );
+            methods.deactivate( theModule );
 
-            if( ex.getTargetException() instanceof ModuleDeactivationException ) {
-                throw (ModuleDeactivationException) ex.getTargetException();
-            }
+            log.log( Level.FINER, "moduleDeactivateSucceeded: {0}", theModule );
 
-            throw new ModuleDeactivationException( meta, ex.getTargetException() );
+        } catch( ModuleDeactivationException ex ) {
+            log.log( Level.FINE, "moduleDeactivateFailed: " + theModule, ex );
+            throw ex;
 
         } catch( Throwable ex ) {
             log.log( Level.FINE, "moduleDeactivateFailed: " + theModule, ex );
-
-            throw new ModuleDeactivationException( theModule.getModuleMeta(), ex );
+            throw new ModuleDeactivationException( meta, ex );
         }
     }
 
@@ -0,0 +1,417 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache directory into which Module JARs are extracted once, so their class files can
+ * be read without decompressing them again, including across restarts of the process.
+ *
+ * The content of a JAR is extracted into a subdirectory named after the SHA-256 hash of
+ * the JAR, so identical JARs share the same subdirectory regardless of where they are
+ * located. To avoid hashing every JAR upon every start, a small sidecar file per JAR
+ * path remembers the size, modification time and hash of the JAR when last seen.
+ *
+ * Subdirectories are extracted under a temporary name and then renamed, so several
+ * processes may safely share the same cache directory.
+ */
+public class ExplodedJarCache
+{
+    /**
+     * Constructor.
+     *
+     * @param dir the cache directory; created if it does not exist
+     */
+    public ExplodedJarCache(
+            File dir )
+    {
+        theDirectory = dir;
+    }
+
+    /**
+     * Obtain the cache directory.
+     *
+     * @return the cache directory
+     */
+    public File getDirectory()
+    {
+        return theDirectory;
+    }
+
+    /**
+     * Obtain the directory into which the provided JAR file has been extracted, extracting
+     * it first if needed. Entry names in the JAR are relative paths in the returned directory.
+     *
+     * @param jarFile the JAR file
+     * @return the directory with the extracted content
+     * @throws IOException the JAR file could not be read, or the cache could not be written
+     */
+    public File obtainExplodedDirectory(
+            File jarFile )
+        throws
+            IOException
+    {
+        File ret;
+        synchronized( theKnown ) {
+            ret = theKnown.get( jarFile );
+        }
+        if( ret != null ) {
+            return ret;
+        }
+
+        String hash = lookupHash( jarFile );
+        if( hash == null ) {
+            hash = hashFile( jarFile );
+            saveHash( jarFile, hash );
+        }
+
+        ret = new File( theDirectory, hash );
+        if( !ret.isDirectory() ) {
+            extract( jarFile, ret );
+        }
+
+        synchronized( theKnown ) {
+            theKnown.put( jarFile, ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Look up the hash of the JAR file in its sidecar file, if the JAR file has not
+     * changed since the sidecar file was written.
+     *
+     * @param jarFile the JAR file
+     * @return the hash, or null if not known
+     */
+    protected String lookupHash(
+            File jarFile )
+    {
+        File sidecar = sidecarFor( jarFile );
+        if( !sidecar.isFile() ) {
+            return null;
+        }
+        Properties props = new Properties();
+        try( InputStream in = new FileInputStream( sidecar )) {
+            props.load( in );
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to read " + sidecar, ex );
+            return null;
+        }
+
+        if(    !jarFile.getAbsolutePath().equals( props.getProperty( PATH_KEY ))
+            || !String.valueOf( jarFile.length() ).equals( props.getProperty( SIZE_KEY ))
+            || !String.valueOf( jarFile.lastModified() ).equals( props.getProperty( LAST_MODIFIED_KEY )))
+        {
+            return null;
+        }
+        return props.getProperty( HASH_KEY );
+    }
+
+    /**
+     * Remember the hash of the JAR file in its sidecar file.
+     *
+     * @param jarFile the JAR file
+     * @param hash the hash
+     */
+    protected void saveHash(
+            File   jarFile,
+            String hash )
+    {
+        File sidecar = sidecarFor( jarFile );
+
+        Properties props = new Properties();
+        props.setProperty( PATH_KEY,          jarFile.getAbsolutePath() );
+        props.setProperty( SIZE_KEY,          String.valueOf( jarFile.length() ));
+        props.setProperty( LAST_MODIFIED_KEY, String.valueOf( jarFile.lastModified() ));
+        props.setProperty( HASH_KEY,          hash );
+
+        File tmp = null;
+        try {
+            sidecar.getParentFile().mkdirs();
+            tmp = File.createTempFile( sidecar.getName(), ".tmp", sidecar.getParentFile() );
+            try( OutputStream out = new FileOutputStream( tmp )) {
+                props.store( out, null );
+            }
+            moveIntoPlace( tmp.toPath(), sidecar.toPath(), true );
+            tmp = null;
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to write " + sidecar, ex );
+
+        } finally {
+            if( tmp != null ) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Extract the JAR file into the provided directory.
+     *
+     * @param jarFile the JAR file
+     * @param target the directory to create
+     * @throws IOException the JAR file could not be read, or the directory could not be written
+     */
+    protected void extract(
+            File jarFile,
+            File target )
+        throws
+            IOException
+    {
+        theDirectory.mkdirs();
+        Path tmp = Files.createTempDirectory( theDirectory.toPath(), TEMP_PREFIX );
+
+        try {
+            try( JarFile jar = new JarFile( jarFile )) {
+                Enumeration<JarEntry> iter = jar.entries();
+                while( iter.hasMoreElements() ) {
+                    JarEntry entry = iter.nextElement();
+                    if( entry.isDirectory() ) {
+                        continue;
+                    }
+                    Path entryPath = tmp.resolve( entry.getName() ).normalize();
+                    if( !entryPath.startsWith( tmp )) {
+                        log.log( Level.WARNING, "Skipping entry outside of the JAR: {0} in {1}", new Object[] { entry.getName(), jarFile } );
+                        continue;
+                    }
+                    Files.createDirectories( entryPath.getParent() );
+                    try( InputStream in = jar.getInputStream( entry )) {
+                        Files.copy( in, entryPath );
+                    } catch( FileAlreadyExistsException ex ) {
+                        // duplicate entry; the first one wins, as with JarFile.getJarEntry
+                    }
+                }
+            }
+            moveIntoPlace( tmp, target.toPath(), false );
+            tmp = null;
+
+        } catch( IOException ex ) {
+            if( !target.isDirectory() ) {
+                throw ex;
+            } // else somebody else extracted the same JAR concurrently, use theirs
+
+        } finally {
+            if( tmp != null ) {
+                deleteRecursively( tmp.toFile() );
+            }
+        }
+    }
+
+    /**
+     * Determine the sidecar file for a JAR file.
+     *
+     * @param jarFile the JAR file
+     * @return the sidecar file
+     */
+    protected File sidecarFor(
+            File jarFile )
+    {
+        String name = toHex( digest().digest( jarFile.getAbsolutePath().getBytes( StandardCharsets.UTF_8 )));
+        return new File( new File( theDirectory, SIDECAR_DIRECTORY ), name + ".properties" );
+    }
+
+    /**
+     * Helper to calculate the SHA-256 hash of a file.
+     *
+     * @param file the file
+     * @return the hash, in hexadecimal
+     * @throws IOException the file could not be read
+     */
+    protected static String hashFile(
+            File file )
+        throws
+            IOException
+    {
+        MessageDigest md  = digest();
+        byte []       buf = new byte[ 64 * 1024 ];
+        try( InputStream in = new FileInputStream( file )) {
+            int n;
+            while( ( n = in.read( buf )) > 0 ) {
+                md.update( buf, 0, n );
+            }
+        }
+        return toHex( md.digest() );
+    }
+
+    /**
+     * Helper to move a file or directory into place, atomically if the file system supports it.
+     *
+     * @param from the file or directory to move
+     * @param to the destination
+     * @param replace if true, replace an existing destination
+     * @throws IOException the move failed
+     */
+    protected static void moveIntoPlace(
+            Path    from,
+            Path    to,
+            boolean replace )
+        throws
+            IOException
+    {
+        try {
+            if( replace ) {
+                Files.move( from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            } else {
+                Files.move( from, to, StandardCopyOption.ATOMIC_MOVE );
+            }
+        } catch( AtomicMoveNotSupportedException ex ) {
+            if( replace ) {
+                Files.move( from, to, StandardCopyOption.REPLACE_EXISTING );
+            } else {
+                Files.move( from, to );
+            }
+        }
+    }
+
+    /**
+     * Helper to delete a file or directory with all its content.
+     *
+     * @param file the file or directory
+     */
+    protected static void deleteRecursively(
+            File file )
+    {
+        File [] children = file.listFiles();
+        if( children != null ) {
+            for( File child : children ) {
+                deleteRecursively( child );
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Helper to create a SHA-256 MessageDigest.
+     *
+     * @return the MessageDigest
+     */
+    protected static MessageDigest digest()
+    {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        } catch( NoSuchAlgorithmException ex ) {
+            throw new RuntimeException( ex ); // every JVM has SHA-256
+        }
+    }
+
+    /**
+     * Helper to convert bytes to a hexadecimal String.
+     *
+     * @param bytes the bytes
+     * @return the String
+     */
+    protected static String toHex(
+            byte [] bytes )
+    {
+        StringBuilder ret = new StringBuilder( bytes.length * 2 );
+        for( byte b : bytes ) {
+            ret.append( HEX[ ( b >> 4 ) & 0xf ] );
+            ret.append( HEX[ b & 0xf ] );
+        }
+        return ret.toString();
+    }
+
+    /**
+     * The cache directory.
+     */
+    protected final File theDirectory;
+
+    /**
+     * The JAR files known to this instance, mapped to their extracted directories.
+     */
+    protected final HashMap<File,File> theKnown = new HashMap<>();
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ExplodedJarCache.class.getName() );
+
+    /**
+     * Name of the system property that contains the cache directory. If not given,
+     * no ExplodedJarCache is used.
+     */
+    public static final String DIRECTORY_PROPERTY = "org.diet4j.core.explodedcache";
+
+    /**
+     * The ExplodedJarCache used by ModuleRegistries unless specified otherwise, or null
+     * if none has been configured.
+     */
+    public static final ExplodedJarCache DEFAULT
+            = System.getProperty( DIRECTORY_PROPERTY ) != null
+            ? new ExplodedJarCache( new File( System.getProperty( DIRECTORY_PROPERTY )))
+            : null;
+
+    /**
+     * Name of the subdirectory of the cache directory that contains the sidecar files.
+     */
+    public static final String SIDECAR_DIRECTORY = "jars";
+
+    /**
+     * Prefix of the names of subdirectories that are still being extracted.
+     */
+    public static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * Key in a sidecar file for the absolute path of the JAR file.
+     */
+    protected static final String PATH_KEY = "path";
+
+    /**
+     * Key in a sidecar file for the size of the JAR file.
+     */
+    protected static final String SIZE_KEY = "size";
+
+    /**
+     * Key in a sidecar file for the modification time of the JAR file.
+     */
+    protected static final String LAST_MODIFIED_KEY = "lastModified";
+
+    /**
+     * Key in a sidecar file for the hash of the JAR file.
+     */
+    protected static final String HASH_KEY = "sha256";
+
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char [] HEX = "0123456789abcdef".toCharArray();
+}
@@ -0,0 +1,645 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The central directory of a JAR file, read directly from the file without going through
+ * java.util.zip. This allows us to look for a few entries (such as those below META-INF/)
+ * without creating a JarEntry object, or even a String, for each of the potentially
+ * many thousands of other entries in the JAR.
+ *
+ * Only plain ZIP archives are supported: if the archive uses ZIP64 extensions, or its
+ * structure is otherwise unexpected (e.g. data has been prepended), the factory method
+ * returns null, and the caller is expected to fall back to java.util.zip.
+ */
+public class JarCentralDirectory
+{
+    /**
+     * Factory method. Read the central directory of the provided JAR file.
+     *
+     * @param file the JAR file
+     * @return the JarCentralDirectory, or null if the archive cannot be handled by this class
+     * @throws IOException reading the file failed
+     */
+    public static JarCentralDirectory read(
+            File file )
+        throws
+            IOException
+    {
+        try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ )) {
+            long fileSize = channel.size();
+            if( fileSize < END_HEADER_SIZE ) {
+                return null;
+            }
+
+            // the end-of-central-directory record is at the end, followed only by a comment of up to 64k
+            int        tailSize = (int) Math.min( fileSize, END_HEADER_SIZE + MAX_COMMENT_SIZE );
+            long       tailPos  = fileSize - tailSize;
+            ByteBuffer tail     = readFully( channel, tailPos, tailSize );
+
+            long [] found = findCentralDirectory( tail, tailPos );
+            if( found == null ) {
+                return null;
+            }
+            int  entryCount = (int) found[0];
+            long dirSize    = found[1];
+            long dirOffset  = found[2];
+
+            ByteBuffer dir;
+            if( dirSize > MAP_THRESHOLD ) {
+                dir = channel.map( FileChannel.MapMode.READ_ONLY, dirOffset, dirSize );
+            } else {
+                dir = readFully( channel, dirOffset, (int) dirSize );
+            }
+            dir.order( ByteOrder.LITTLE_ENDIAN );
+
+            return new JarCentralDirectory( file, dir, entryCount );
+        }
+    }
+
+    /**
+     * Factory method. Find the central directory in a memory-mapped JAR file.
+     *
+     * @param file the JAR file
+     * @param mapping the entire content of the JAR file
+     * @return the JarCentralDirectory, or null if the archive cannot be handled by this class
+     */
+    public static JarCentralDirectory fromMapping(
+            File       file,
+            ByteBuffer mapping )
+    {
+        int fileSize = mapping.limit();
+        if( fileSize < END_HEADER_SIZE ) {
+            return null;
+        }
+        int     tailSize = Math.min( fileSize, END_HEADER_SIZE + MAX_COMMENT_SIZE );
+        long    tailPos  = fileSize - tailSize;
+        long [] found    = findCentralDirectory( slice( mapping, (int) tailPos, tailSize ), tailPos );
+        if( found == null ) {
+            return null;
+        }
+        return new JarCentralDirectory( file, slice( mapping, (int) found[2], (int) found[1] ), (int) found[0] );
+    }
+
+    /**
+     * Helper to find the end-of-central-directory record at the end of a JAR file, and
+     * extract the location of the central directory from it.
+     *
+     * @param tail the last bytes of the file, in little-endian byte order
+     * @param tailPos the position of the tail in the file
+     * @return the number of entries, the size and the offset of the central directory; or null if the archive cannot be handled by this class
+     */
+    protected static long [] findCentralDirectory(
+            ByteBuffer tail,
+            long       tailPos )
+    {
+        int endPos = -1;
+        for( int i = tail.limit() - END_HEADER_SIZE ; i >= 0 ; --i ) {
+            // the comment may contain the signature, but then the comment length does not reach the end
+            if(    tail.getInt( i ) == END_HEADER_SIGNATURE
+                && i + END_HEADER_SIZE + ( tail.getShort( i + 20 ) & 0xffff ) == tail.limit() )
+            {
+                endPos = i;
+                break;
+            }
+        }
+        if( endPos < 0 ) {
+            return null;
+        }
+        if( endPos >= ZIP64_LOCATOR_SIZE && tail.getInt( endPos - ZIP64_LOCATOR_SIZE ) == ZIP64_LOCATOR_SIGNATURE ) {
+            return null;
+        }
+
+        int  entryCount = tail.getShort( endPos + 10 ) & 0xffff;
+        long dirSize    = tail.getInt( endPos + 12 ) & 0xffffffffL;
+        long dirOffset  = tail.getInt( endPos + 16 ) & 0xffffffffL;
+
+        if( entryCount == 0xffff || dirSize == 0xffffffffL || dirOffset == 0xffffffffL ) {
+            return null; // ZIP64
+        }
+        if( dirOffset + dirSize != tailPos + endPos ) {
+            return null; // something has been prepended or inserted, let java.util.zip deal with it
+        }
+        return new long[] { entryCount, dirSize, dirOffset };
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param file the JAR file
+     * @param dir the central directory, in little-endian byte order
+     * @param entryCount the number of entries in the central directory
+     */
+    protected JarCentralDirectory(
+            File       file,
+            ByteBuffer dir,
+            int        entryCount )
+    {
+        theFile       = file;
+        theDirectory  = dir;
+        theEntryCount = entryCount;
+    }
+
+    /**
+     * Obtain the JAR file whose central directory this is.
+     *
+     * @return the JAR file
+     */
+    public File getFile()
+    {
+        return theFile;
+    }
+
+    /**
+     * Obtain the number of entries in the JAR file.
+     *
+     * @return the number of entries
+     */
+    public int getEntryCount()
+    {
+        return theEntryCount;
+    }
+
+    /**
+     * Find the names of all entries whose names start with the provided prefix, in the
+     * sequence in which they are listed in the central directory. Only entries that
+     * match have their names decoded.
+     *
+     * @param prefix the prefix, which must only contain ASCII characters
+     * @return the names of the matching entries
+     * @throws IOException the central directory is corrupted
+     */
+    public List<String> findEntryNames(
+            String prefix )
+        throws
+            IOException
+    {
+        byte [] prefixBytes = prefix.getBytes( StandardCharsets.US_ASCII );
+
+        ArrayList<String> ret   = new ArrayList<>();
+        byte []           name  = null;
+        int               pos   = 0;
+        int               limit = theDirectory.limit();
+
+        for( int i=0 ; i<theEntryCount ; ++i ) {
+            if( pos + DIR_HEADER_SIZE > limit || theDirectory.getInt( pos ) != DIR_HEADER_SIGNATURE ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            int nameLength    = theDirectory.getShort( pos + 28 ) & 0xffff;
+            int extraLength   = theDirectory.getShort( pos + 30 ) & 0xffff;
+            int commentLength = theDirectory.getShort( pos + 32 ) & 0xffff;
+            int namePos       = pos + DIR_HEADER_SIZE;
+
+            if( namePos + nameLength > limit ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            if( nameLength >= prefixBytes.length && startsWith( namePos, prefixBytes )) {
+                if( name == null || name.length < nameLength ) {
+                    name = new byte[ Math.max( nameLength, 256 ) ];
+                }
+                for( int j=0 ; j<nameLength ; ++j ) {
+                    name[j] = theDirectory.get( namePos + j );
+                }
+                ret.add( new String( name, 0, nameLength, StandardCharsets.UTF_8 ));
+            }
+            pos = namePos + nameLength + extraLength + commentLength;
+        }
+        return ret;
+    }
+
+    /**
+     * Determine the names of the Java packages that contain at least one class file,
+     * considering only entries whose names start with the provided prefix. The prefix
+     * is not part of the package name. A String is only created for each directory
+     * that contains a class file, not for each class file.
+     *
+     * @param prefix the prefix, which must only contain ASCII characters, e.g. "WEB-INF/classes/"
+     * @return the package names, in dot notation; the default package is given as the empty String
+     * @throws IOException the central directory is corrupted
+     */
+    public Set<String> findPackages(
+            String prefix )
+        throws
+            IOException
+    {
+        byte [] prefixBytes = prefix.getBytes( StandardCharsets.US_ASCII );
+
+        HashSet<String> ret            = new HashSet<>();
+        byte []         name           = null;
+        int             lastPackagePos = -1; // position of the directory of the most recently found class, to avoid decoding it again
+        int             lastPackageLen = -1;
+        int             pos            = 0;
+        int             limit          = theDirectory.limit();
+
+        for( int i=0 ; i<theEntryCount ; ++i ) {
+            if( pos + DIR_HEADER_SIZE > limit || theDirectory.getInt( pos ) != DIR_HEADER_SIGNATURE ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            int nameLength    = theDirectory.getShort( pos + 28 ) & 0xffff;
+            int extraLength   = theDirectory.getShort( pos + 30 ) & 0xffff;
+            int commentLength = theDirectory.getShort( pos + 32 ) & 0xffff;
+            int namePos       = pos + DIR_HEADER_SIZE;
+
+            if( namePos + nameLength > limit ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            if(    nameLength >= prefixBytes.length + CLASS_SUFFIX.length
+                && startsWith( namePos, prefixBytes )
+                && startsWith( namePos + nameLength - CLASS_SUFFIX.length, CLASS_SUFFIX ))
+            {
+                int packagePos = namePos + prefixBytes.length;
+                int packageLen = 0;
+                for( int j = namePos + nameLength - CLASS_SUFFIX.length - 1 ; j >= packagePos ; --j ) {
+                    if( theDirectory.get( j ) == '/' ) {
+                        packageLen = j - packagePos;
+                        break;
+                    }
+                }
+                if( packageLen != lastPackageLen || !sameBytes( packagePos, lastPackagePos, packageLen )) {
+                    if( name == null || name.length < packageLen ) {
+                        name = new byte[ Math.max( packageLen, 256 ) ];
+                    }
+                    for( int j=0 ; j<packageLen ; ++j ) {
+                        byte b = theDirectory.get( packagePos + j );
+                        name[j] = b == '/' ? (byte) '.' : b;
+                    }
+                    ret.add( new String( name, 0, packageLen, StandardCharsets.UTF_8 ));
+
+                    lastPackagePos = packagePos;
+                    lastPackageLen = packageLen;
+                }
+            }
+            pos = namePos + nameLength + extraLength + commentLength;
+        }
+        return ret;
+    }
+
+    /**
+     * Find the entry with the provided name.
+     *
+     * @param name the name of the entry
+     * @return the position of the entry's header in the central directory, or -1 if not found
+     * @throws IOException the central directory is corrupted
+     */
+    public int findEntry(
+            String name )
+        throws
+            IOException
+    {
+        int [] table = theHashTable;
+        if( table == null ) {
+            table = createHashTable();
+            theHashTable = table;
+        }
+
+        byte [] nameBytes = name.getBytes( StandardCharsets.UTF_8 );
+        int     hash      = 0;
+        for( byte b : nameBytes ) {
+            hash = 31 * hash + b;
+        }
+        int mask = table.length - 1;
+        for( int i = spread( hash ) & mask ; table[i] != 0 ; i = ( i+1 ) & mask ) {
+            int pos        = table[i] - 1;
+            int nameLength = theDirectory.getShort( pos + 28 ) & 0xffff;
+            if( nameLength == nameBytes.length && startsWith( pos + DIR_HEADER_SIZE, nameBytes )) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtain the general purpose flags of the entry at this position.
+     *
+     * @param pos the position of the entry's header in the central directory
+     * @return the flags
+     */
+    public int getFlags(
+            int pos )
+    {
+        return theDirectory.getShort( pos + 8 ) & 0xffff;
+    }
+
+    /**
+     * Obtain the compression method of the entry at this position.
+     *
+     * @param pos the position of the entry's header in the central directory
+     * @return the compression method, such as METHOD_STORED or METHOD_DEFLATED
+     */
+    public int getMethod(
+            int pos )
+    {
+        return theDirectory.getShort( pos + 10 ) & 0xffff;
+    }
+
+    /**
+     * Obtain the compressed size of the entry at this position.
+     *
+     * @param pos the position of the entry's header in the central directory
+     * @return the compressed size
+     */
+    public long getCompressedSize(
+            int pos )
+    {
+        return theDirectory.getInt( pos + 20 ) & 0xffffffffL;
+    }
+
+    /**
+     * Obtain the uncompressed size of the entry at this position.
+     *
+     * @param pos the position of the entry's header in the central directory
+     * @return the uncompressed size
+     */
+    public long getSize(
+            int pos )
+    {
+        return theDirectory.getInt( pos + 24 ) & 0xffffffffL;
+    }
+
+    /**
+     * Obtain the offset of the local header of the entry at this position, relative to the start of the file.
+     *
+     * @param pos the position of the entry's header in the central directory
+     * @return the offset
+     */
+    public long getLocalHeaderOffset(
+            int pos )
+    {
+        return theDirectory.getInt( pos + 42 ) & 0xffffffffL;
+    }
+
+    /**
+     * Create the open-addressing hash table from the hash of an entry's name to the position
+     * of its header in the central directory, plus one (so zero means empty). The names are
+     * hashed in place, without creating Strings. If an entry name occurs more than once, the
+     * first one wins.
+     *
+     * @return the hash table
+     * @throws IOException the central directory is corrupted
+     */
+    protected int [] createHashTable()
+        throws
+            IOException
+    {
+        int size = 16;
+        while( size < theEntryCount * 2 ) {
+            size <<= 1;
+        }
+        int [] ret   = new int[ size ];
+        int    mask  = size - 1;
+        int    pos   = 0;
+        int    limit = theDirectory.limit();
+
+        for( int i=0 ; i<theEntryCount ; ++i ) {
+            if( pos + DIR_HEADER_SIZE > limit || theDirectory.getInt( pos ) != DIR_HEADER_SIGNATURE ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            int nameLength    = theDirectory.getShort( pos + 28 ) & 0xffff;
+            int extraLength   = theDirectory.getShort( pos + 30 ) & 0xffff;
+            int commentLength = theDirectory.getShort( pos + 32 ) & 0xffff;
+            int namePos       = pos + DIR_HEADER_SIZE;
+
+            if( namePos + nameLength > limit ) {
+                throw new IOException( "Invalid central directory in JAR file " + theFile.getAbsolutePath() );
+            }
+            int hash = 0;
+            for( int j=0 ; j<nameLength ; ++j ) {
+                hash = 31 * hash + theDirectory.get( namePos + j );
+            }
+            int slot = spread( hash ) & mask;
+            while( ret[slot] != 0 ) {
+                int other = ret[slot] - 1;
+                if(    ( theDirectory.getShort( other + 28 ) & 0xffff ) == nameLength
+                    && sameBytes( other + DIR_HEADER_SIZE, namePos, nameLength ))
+                {
+                    break; // duplicate
+                }
+                slot = ( slot+1 ) & mask;
+            }
+            if( ret[slot] == 0 ) {
+                ret[slot] = pos + 1;
+            }
+            pos = namePos + nameLength + extraLength + commentLength;
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to spread the bits of a hash code, so the lower bits are usable as index.
+     *
+     * @param hash the hash code
+     * @return the spread hash code
+     */
+    protected static int spread(
+            int hash )
+    {
+        return hash ^ ( hash >>> 16 );
+    }
+
+    /**
+     * Helper to determine whether the bytes at a position in the central directory
+     * match the provided bytes.
+     *
+     * @param pos the position in the central directory
+     * @param bytes the bytes to match
+     * @return true if they match
+     */
+    protected boolean startsWith(
+            int     pos,
+            byte [] bytes )
+    {
+        for( int i=0 ; i<bytes.length ; ++i ) {
+            if( theDirectory.get( pos + i ) != bytes[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper to determine whether two regions of the central directory contain the same bytes.
+     *
+     * @param pos1 the start of the first region
+     * @param pos2 the start of the second region
+     * @param length the length of both regions
+     * @return true if they are the same
+     */
+    protected boolean sameBytes(
+            int pos1,
+            int pos2,
+            int length )
+    {
+        for( int i=0 ; i<length ; ++i ) {
+            if( theDirectory.get( pos1 + i ) != theDirectory.get( pos2 + i )) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper to create a little-endian slice of a buffer.
+     *
+     * @param buf the buffer
+     * @param pos the start of the slice
+     * @param length the length of the slice
+     * @return the slice
+     */
+    protected static ByteBuffer slice(
+            ByteBuffer buf,
+            int        pos,
+            int        length )
+    {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit( pos + length );
+        dup.position( pos );
+
+        ByteBuffer ret = dup.slice();
+        ret.order( ByteOrder.LITTLE_ENDIAN );
+        return ret;
+    }
+
+    /**
+     * Helper to read a region of a file into a little-endian heap buffer.
+     *
+     * @param channel the channel to read from
+     * @param pos the position in the file from which to read
+     * @param size the number of bytes to read
+     * @return the buffer
+     * @throws IOException reading failed, or the file is shorter than expected
+     */
+    protected static ByteBuffer readFully(
+            FileChannel channel,
+            long        pos,
+            int         size )
+        throws
+            IOException
+    {
+        ByteBuffer ret = ByteBuffer.allocate( size );
+        ret.order( ByteOrder.LITTLE_ENDIAN );
+
+        while( ret.hasRemaining() ) {
+            int read = channel.read( ret, pos + ret.position() );
+            if( read < 0 ) {
+                throw new IOException( "Unexpected end of file" );
+            }
+        }
+        ret.flip();
+        return ret;
+    }
+
+    /**
+     * The JAR file.
+     */
+    protected final File theFile;
+
+    /**
+     * The central directory, in little-endian byte order.
+     */
+    protected final ByteBuffer theDirectory;
+
+    /**
+     * The number of entries in the central directory.
+     */
+    protected final int theEntryCount;
+
+    /**
+     * Maps the hash of an entry name to the position of its header in the central directory, plus one.
+     * Allocated as needed.
+     */
+    protected volatile int [] theHashTable;
+
+    /**
+     * Compression method: stored without compression.
+     */
+    public static final int METHOD_STORED = 0;
+
+    /**
+     * Compression method: deflated.
+     */
+    public static final int METHOD_DEFLATED = 8;
+
+    /**
+     * Signature of a local file header.
+     */
+    public static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    /**
+     * Size of a local file header, without name and extra field.
+     */
+    public static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * Signature of the end-of-central-directory record.
+     */
+    protected static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+    /**
+     * Size of the end-of-central-directory record, without the comment.
+     */
+    protected static final int END_HEADER_SIZE = 22;
+
+    /**
+     * Maximum size of the comment at the end of the archive.
+     */
+    protected static final int MAX_COMMENT_SIZE = 0xffff;
+
+    /**
+     * Signature of the ZIP64 end-of-central-directory locator.
+     */
+    protected static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * Size of the ZIP64 end-of-central-directory locator.
+     */
+    protected static final int ZIP64_LOCATOR_SIZE = 20;
+
+    /**
+     * Signature of a central directory file header.
+     */
+    protected static final int DIR_HEADER_SIGNATURE = 0x02014b50;
+
+    /**
+     * Size of a central directory file header, without name, extra field and comment.
+     */
+    protected static final int DIR_HEADER_SIZE = 46;
+
+    /**
+     * The file name extension of class files.
+     */
+    protected static final byte [] CLASS_SUFFIX = ".class".getBytes( StandardCharsets.US_ASCII );
+
+    /**
+     * Central directories larger than this are memory-mapped instead of read.
+     */
+    protected static final int MAP_THRESHOLD = 64 * 1024;
+}
@@ -0,0 +1,258 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of open JarFiles. JarFiles are opened when first obtained, and kept open
+ * after they have been released, so subsequent accesses are cheap. Once more than the
+ * maximum number of JarFiles are open, the least recently used ones that are not
+ * currently obtained by anybody are closed; they are transparently reopened when
+ * obtained again.
+ *
+ * Every successful obtain() must be paired with a release() of the same file.
+ */
+public class JarFilePool
+{
+    /**
+     * Constructor.
+     *
+     * @param maxOpen the maximum number of idle JarFiles to keep open
+     */
+    public JarFilePool(
+            int maxOpen )
+    {
+        theMaxOpen = maxOpen;
+    }
+
+    /**
+     * Obtain the JarFile for the provided file, opening it if needed. The JarFile
+     * will not be closed by the pool until it has been released again.
+     *
+     * @param file the file
+     * @return the JarFile
+     * @throws IOException the file could not be opened
+     */
+    public JarFile obtain(
+            File file )
+        throws
+            IOException
+    {
+        Handle handle;
+        synchronized( this ) {
+            handle = theHandles.get( file ); // moves it to the end of the LRU order
+            if( handle == null ) {
+                handle = new Handle();
+                theHandles.put( file, handle );
+            }
+            ++handle.theLeases;
+        }
+
+        JarFile ret;
+        try {
+            synchronized( handle ) { // only one thread opens a given file
+                synchronized( this ) {
+                    ret = handle.theJar;
+                }
+                if( ret == null ) {
+                    ret = new JarFile( file );
+                    synchronized( this ) {
+                        handle.theJar = ret;
+                        ++theOpenCount;
+                    }
+                }
+            }
+        } catch( IOException ex ) {
+            release( file );
+            throw ex;
+        }
+
+        closeAll( evictIdle() );
+
+        return ret;
+    }
+
+    /**
+     * Release a JarFile previously obtained.
+     *
+     * @param file the file
+     */
+    public void release(
+            File file )
+    {
+        List<JarFile> toClose;
+        synchronized( this ) {
+            Handle handle = theHandles.get( file );
+            if( handle == null || handle.theLeases <= 0 ) {
+                log.log( Level.WARNING, "Releasing JarFile that was not obtained: {0}", file );
+                return;
+            }
+            --handle.theLeases;
+
+            toClose = evictIdle();
+        }
+        closeAll( toClose );
+    }
+
+    /**
+     * Determine the number of JarFiles currently open.
+     *
+     * @return the number of open JarFiles
+     */
+    public synchronized int getOpenCount()
+    {
+        return theOpenCount;
+    }
+
+    /**
+     * Close all JarFiles that are not currently obtained by anybody.
+     */
+    public void closeIdle()
+    {
+        List<JarFile> toClose = new ArrayList<>();
+        synchronized( this ) {
+            Iterator<Handle> iter = theHandles.values().iterator();
+            while( iter.hasNext() ) {
+                Handle handle = iter.next();
+                if( handle.theLeases == 0 ) {
+                    if( handle.theJar != null ) {
+                        toClose.add( handle.theJar );
+                        handle.theJar = null;
+                        --theOpenCount;
+                    }
+                    iter.remove();
+                }
+            }
+        }
+        closeAll( toClose );
+    }
+
+    /**
+     * Determine which JarFiles to close, least recently used first, so we don't have
+     * more than the maximum number open. JarFiles that are currently obtained are skipped.
+     *
+     * @return the JarFiles to close, or null
+     */
+    protected List<JarFile> evictIdle()
+    {
+        List<JarFile> ret = null;
+
+        synchronized( this ) {
+            if( theOpenCount <= theMaxOpen ) {
+                return null;
+            }
+            Iterator<Handle> iter = theHandles.values().iterator();
+            while( theOpenCount > theMaxOpen && iter.hasNext() ) {
+                Handle handle = iter.next();
+                if( handle.theLeases == 0 && handle.theJar != null ) {
+                    if( ret == null ) {
+                        ret = new ArrayList<>();
+                    }
+                    ret.add( handle.theJar );
+                    handle.theJar = null;
+                    --theOpenCount;
+                    iter.remove();
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to close JarFiles outside of the lock.
+     *
+     * @param jars the JarFiles, or null
+     */
+    protected static void closeAll(
+            List<JarFile> jars )
+    {
+        if( jars == null ) {
+            return;
+        }
+        for( JarFile jar : jars ) {
+            try {
+                jar.close();
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Failed to close " + jar.getName(), ex );
+            }
+        }
+    }
+
+    /**
+     * The maximum number of JarFiles to keep open, unless they are obtained.
+     */
+    protected final int theMaxOpen;
+
+    /**
+     * The number of JarFiles currently open.
+     */
+    protected int theOpenCount;
+
+    /**
+     * The known files, in least-recently-used-first sequence.
+     */
+    protected final LinkedHashMap<File,Handle> theHandles = new LinkedHashMap<>( 64, 0.75f, true );
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( JarFilePool.class.getName() );
+
+    /**
+     * Name of the system property that contains the maximum number of JarFiles the default pool keeps open.
+     */
+    public static final String MAX_OPEN_PROPERTY = "org.diet4j.core.maxopenjars";
+
+    /**
+     * The maximum number of JarFiles the default pool keeps open.
+     */
+    public static final int DEFAULT_MAX_OPEN = Integer.getInteger( MAX_OPEN_PROPERTY, 256 );
+
+    /**
+     * The default pool, used by ModuleMetas unless specified otherwise.
+     */
+    public static final JarFilePool DEFAULT = new JarFilePool( DEFAULT_MAX_OPEN );
+
+    /**
+     * The state kept for each known file. The fields are guarded by the pool's lock;
+     * the Handle's own lock is only used to avoid opening the same file twice.
+     */
+    protected static class Handle
+    {
+        /**
+         * The JarFile, if currently open.
+         */
+        protected JarFile theJar;
+
+        /**
+         * The number of times the JarFile has been obtained but not released.
+         */
+        protected int theLeases;
+    }
+}
@@ -0,0 +1,302 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A JAR file that has been memory-mapped in its entirety, so the content of its entries
+ * can be obtained without going through java.util.zip. Entries that are stored without
+ * compression are returned as a slice of the mapping, without copying. Entries that are
+ * deflated are inflated into a buffer taken from a pool, which must be returned to the
+ * pool with recycle() once the content is not needed any more.
+ *
+ * The mapping remains valid after the file has been closed, and is released by the
+ * garbage collector once the MappedJar is not referenced any more.
+ */
+public class MappedJar
+{
+    /**
+     * Factory method. Map the provided JAR file.
+     *
+     * @param file the JAR file
+     * @return the MappedJar, or null if the JAR file cannot be handled by this class
+     * @throws IOException reading the file failed
+     */
+    public static MappedJar map(
+            File file )
+        throws
+            IOException
+    {
+        ByteBuffer mapping;
+        try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ )) {
+            long size = channel.size();
+            if( size > Integer.MAX_VALUE ) {
+                return null;
+            }
+            mapping = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+        }
+        mapping.order( ByteOrder.LITTLE_ENDIAN );
+
+        JarCentralDirectory dir = JarCentralDirectory.fromMapping( file, mapping );
+        if( dir == null ) {
+            return null;
+        }
+        return new MappedJar( file, mapping, dir );
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param file the JAR file
+     * @param mapping the entire content of the JAR file
+     * @param dir the central directory of the JAR file
+     */
+    protected MappedJar(
+            File                file,
+            ByteBuffer          mapping,
+            JarCentralDirectory dir )
+    {
+        theFile      = file;
+        theMapping   = mapping;
+        theDirectory = dir;
+    }
+
+    /**
+     * Obtain the JAR file.
+     *
+     * @return the JAR file
+     */
+    public File getFile()
+    {
+        return theFile;
+    }
+
+    /**
+     * Obtain the content of the entry with the provided name. The returned buffer must be
+     * passed to recycle() once not needed any more.
+     *
+     * @param name the name of the entry
+     * @return the content, from position to limit, or null if there is no such entry
+     * @throws IOException the entry could not be read
+     */
+    public ByteBuffer getEntryBytes(
+            String name )
+        throws
+            IOException
+    {
+        int pos = theDirectory.findEntry( name );
+        if( pos < 0 ) {
+            return null;
+        }
+        if(( theDirectory.getFlags( pos ) & 1 ) != 0 ) {
+            throw new ZipException( "Encrypted entry " + name + " in " + theFile.getAbsolutePath() );
+        }
+
+        long compressedSize = theDirectory.getCompressedSize( pos );
+        long size           = theDirectory.getSize( pos );
+        long headerOffset   = theDirectory.getLocalHeaderOffset( pos );
+
+        if(    headerOffset + JarCentralDirectory.LOCAL_HEADER_SIZE > theMapping.limit()
+            || theMapping.getInt( (int) headerOffset ) != JarCentralDirectory.LOCAL_HEADER_SIGNATURE )
+        {
+            throw new ZipException( "Invalid local header for entry " + name + " in " + theFile.getAbsolutePath() );
+        }
+        // the local header may have a different extra field than the central directory
+        long dataOffset = headerOffset
+                + JarCentralDirectory.LOCAL_HEADER_SIZE
+                + ( theMapping.getShort( (int) headerOffset + 26 ) & 0xffff )
+                + ( theMapping.getShort( (int) headerOffset + 28 ) & 0xffff );
+
+        if( dataOffset + compressedSize > theMapping.limit() || size > Integer.MAX_VALUE - 1 ) {
+            throw new ZipException( "Invalid size for entry " + name + " in " + theFile.getAbsolutePath() );
+        }
+
+        switch( theDirectory.getMethod( pos ) ) {
+            case JarCentralDirectory.METHOD_STORED:
+                return JarCentralDirectory.slice( theMapping, (int) dataOffset, (int) compressedSize ).asReadOnlyBuffer();
+
+            case JarCentralDirectory.METHOD_DEFLATED:
+                return inflate( name, (int) dataOffset, (int) compressedSize, (int) size );
+
+            default:
+                throw new ZipException( "Unsupported compression method for entry " + name + " in " + theFile.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Return a buffer obtained from getEntryBytes() once its content is not needed any more.
+     *
+     * @param buf the buffer
+     */
+    public void recycle(
+            ByteBuffer buf )
+    {
+        if( buf.hasArray() ) {
+            returnArray( buf.array() );
+        } // slices of the mapping do not need to be returned
+    }
+
+    /**
+     * Helper to inflate a deflated entry into a pooled buffer.
+     *
+     * @param name the name of the entry, for error messages
+     * @param dataOffset the position of the compressed data in the mapping
+     * @param compressedSize the size of the compressed data
+     * @param size the size of the uncompressed data
+     * @return the uncompressed data
+     * @throws IOException the data could not be inflated
+     */
+    protected ByteBuffer inflate(
+            String name,
+            int    dataOffset,
+            int    compressedSize,
+            int    size )
+        throws
+            IOException
+    {
+        // Inflater cannot read from a ByteBuffer in this JDK version, so we need to copy
+        byte [] in  = takeArray( compressedSize + 1 ); // the "nowrap" Inflater wants an extra dummy byte
+        byte [] out = takeArray( size );
+
+        ByteBuffer dup = theMapping.duplicate();
+        dup.position( dataOffset );
+        dup.get( in, 0, compressedSize );
+        in[ compressedSize ] = 0;
+
+        Inflater inflater = INFLATERS.poll();
+        if( inflater == null ) {
+            inflater = new Inflater( true );
+        }
+        boolean ok = false;
+        try {
+            inflater.setInput( in, 0, compressedSize + 1 );
+
+            int done = 0;
+            while( done < size ) {
+                int n = inflater.inflate( out, done, size - done );
+                if( n == 0 && ( inflater.finished() || inflater.needsInput() || inflater.needsDictionary() )) {
+                    break;
+                }
+                done += n;
+            }
+            if( done != size ) {
+                throw new ZipException( "Inflated " + done + " instead of " + size + " bytes for entry " + name + " in " + theFile.getAbsolutePath() );
+            }
+            ok = true;
+            return ByteBuffer.wrap( out, 0, size );
+
+        } catch( DataFormatException ex ) {
+            throw new ZipException( "Invalid compressed data for entry " + name + " in " + theFile.getAbsolutePath() + ": " + ex.getMessage() );
+
+        } finally {
+            returnArray( in );
+            if( !ok ) {
+                returnArray( out );
+            }
+            inflater.reset();
+            if( !INFLATERS.offer( inflater )) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Helper to take an array of at least the provided size from the pool, or allocate one.
+     *
+     * @param size the minimum size
+     * @return the array
+     */
+    protected static byte [] takeArray(
+            int size )
+    {
+        if( size <= MAX_POOLED_ARRAY_SIZE ) {
+            byte [] ret = ARRAYS.poll();
+            if( ret != null && ret.length >= size ) {
+                return ret;
+            }
+            // too small, drop it; we will return a bigger one later
+            return new byte[ Math.max( size, MIN_POOLED_ARRAY_SIZE ) ];
+        }
+        return new byte[ size ];
+    }
+
+    /**
+     * Helper to return an array to the pool.
+     *
+     * @param array the array
+     */
+    protected static void returnArray(
+            byte [] array )
+    {
+        if( array.length >= MIN_POOLED_ARRAY_SIZE && array.length <= MAX_POOLED_ARRAY_SIZE ) {
+            ARRAYS.offer( array ); // dropped if the pool is full
+        }
+    }
+
+    /**
+     * The JAR file.
+     */
+    protected final File theFile;
+
+    /**
+     * The entire content of the JAR file, in little-endian byte order.
+     */
+    protected final ByteBuffer theMapping;
+
+    /**
+     * The central directory of the JAR file.
+     */
+    protected final JarCentralDirectory theDirectory;
+
+    /**
+     * The number of Inflaters and of arrays kept in the pools.
+     */
+    protected static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors() + 2;
+
+    /**
+     * Pooled arrays are at least this big, so they can be reused for most class files.
+     */
+    protected static final int MIN_POOLED_ARRAY_SIZE = 16 * 1024;
+
+    /**
+     * Arrays bigger than this are not pooled.
+     */
+    protected static final int MAX_POOLED_ARRAY_SIZE = 1024 * 1024;
+
+    /**
+     * Pool of Inflaters, shared by all MappedJars.
+     */
+    protected static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>( POOL_SIZE );
+
+    /**
+     * Pool of arrays, shared by all MappedJars.
+     */
+    protected static final ArrayBlockingQueue<byte []> ARRAYS = new ArrayBlockingQueue<>( POOL_SIZE );
+}
@@ -21,32 +21,46 @@ package org.diet4j.core;
 
 /**
  * A minimal, resource-efficient Map implementation for ModuleMetas.
+ * Readers do not lock: the keys and values are kept in an array that is never
+ * modified once published, and put() publishes a new one. Writers
+ * lock against each other, but there should rarely be more than one.
  */
 public class MiniModuleMetaMap
 {
     /**
-     * Constructor with default initial size.
+     * Constructor for an empty map.
      */
     public MiniModuleMetaMap()
     {
-        this( DEFAULT_SIZE );
+        theData = EMPTY;
     }
-    
+
     /**
-     * Constructor with specified initial size.
-     * 
+     * Constructor with specified initial size. As the map grows one entry at a time,
+     * the initial size is ignored; this is kept for compatibility.
+     *
      * @param size the initial size
      */
     public MiniModuleMetaMap(
             int size )
     {
-        theData  = new Object[size*2];
-        theIndex = 0;
+        this();
     }
-    
+
+    /**
+     * Copy constructor. Subsequent changes to either map are not visible in the other.
+     *
+     * @param toCopy the map to copy
+     */
+    public MiniModuleMetaMap(
+            MiniModuleMetaMap toCopy )
+    {
+        theData = toCopy.theData; // never modified, so it can be shared
+    }
+
     /**
      * Add a key-value mapping to the map. Replace if exists already.
-     * 
+     *
      * @param key the key
      * @param value the value
      * @return the previous value, or null
@@ -55,72 +69,90 @@ public class MiniModuleMetaMap
             String        key,
             ModuleMeta [] value )
     {
-        for( int i=0 ; i<theIndex ; i+=2 ) {
-            if( key.equals( theData[i] )) {
-                ModuleMeta [] ret = (ModuleMeta []) theData[i+1];
-                theData[i+1] = value;
-                return ret;
+        Object [] data = theData;
+        for( int i=0 ; i<data.length ; i+=2 ) {
+            if( key.equals( data[i] )) {
+                Object [] newData = data.clone();
+                newData[i+1] = value;
+                theData = newData;
+                return (ModuleMeta []) data[i+1];
             }
         }
-        if( theIndex == theData.length ) {
-            Object [] oldData = theData;
-            theData = new Object[ oldData.length * 2 ];
-            System.arraycopy( oldData, 0, theData, 0, oldData.length );
-        }
-        theData[theIndex++] = key;
-        theData[theIndex++] = value;
-        
+        Object [] newData = new Object[ data.length + 2 ];
+        System.arraycopy( data, 0, newData, 0, data.length );
+        newData[ data.length ]   = key;
+        newData[ data.length+1 ] = value;
+        theData = newData;
+
         return null;
     }
-    
+
     /**
      * Obtain the value for a given key.
-     * 
+     *
      * @param key the key
      * @return the value, or null
      */
-    public synchronized ModuleMeta [] get(
+    public ModuleMeta [] get(
             String key )
     {
-        for( int i=0 ; i<theIndex ; i+=2 ) {
-            if( key.equals( theData[i] )) {
-                return (ModuleMeta []) theData[i+1];
+        Object [] data = theData;
+        for( int i=0 ; i<data.length ; i+=2 ) {
+            if( key.equals( data[i] )) {
+                return (ModuleMeta []) data[i+1];
             }
         }
         return null;
     }
-    
+
     /**
      * Obtain all values in the map, regardless of key.
-     * 
+     *
      * @return all values
      */
-    public synchronized ModuleMeta [] allValues()
+    public ModuleMeta [] allValues()
     {
-        int count=0;
-        for( int i=0 ; i<theIndex ; i+=2 ) {
-            count += ((ModuleMeta []) theData[i+1]).length;
+        Object [] data  = theData;
+        int       count = 0;
+        for( int i=1 ; i<data.length ; i+=2 ) {
+            count += ((ModuleMeta []) data[i]).length;
         }
-        ModuleMeta [] ret = new ModuleMeta[ count ];
-        int index = 0;
-        for( int i=0 ; i<theIndex ; i+=2 ) {
-            for( int j=0 ; j<((ModuleMeta []) theData[i+1]).length ; ++j ) {
-                ret[index++] = ((ModuleMeta []) theData[i+1])[j];
-            }
+        ModuleMeta [] ret   = new ModuleMeta[ count ];
+        int           index = 0;
+        for( int i=1 ; i<data.length ; i+=2 ) {
+            ModuleMeta [] value = (ModuleMeta []) data[i];
+            System.arraycopy( value, 0, ret, index, value.length );
+            index += value.length;
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain all values in the map, regardless of key, as one array per key.
+     *
+     * @return all values
+     */
+    public ModuleMeta [][] allValueArrays()
+    {
+        Object []       data = theData;
+        ModuleMeta [][] ret  = new ModuleMeta[ data.length/2 ][];
+        for( int i=1 ; i<data.length ; i+=2 ) {
+            ret[i/2] = (ModuleMeta []) data[i];
         }
         return ret;
     }
 
     /**
      * Contains the map's data. Keys are at even indices,
-     * values at the element following the key.
+     * values at the element following the key. The array is exactly as long
+     * as needed, and never modified after it has been assigned here.
      */
-    protected Object [] theData;
+    protected volatile Object [] theData;
 
     /**
-     * The index of the next free element in the array.
+     * Shared data of all empty maps.
      */
-    protected int theIndex;
+    protected static final Object [] EMPTY = new Object[0];
 
     /**
      * The initial default size for the MiniModuleMetaMap.
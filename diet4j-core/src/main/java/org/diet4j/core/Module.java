@@ -19,9 +19,14 @@
 
 package org.diet4j.core;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -196,6 +201,10 @@ public class Module
             ModuleNotFoundException,
             ModuleActivationException
     {
+        if( theActivationCount == 0 && ModuleActivationScheduler.DEFAULT_THREADS > 1 ) {
+            new ModuleActivationScheduler( ModuleActivationScheduler.DEFAULT_THREADS ).activateRecursively( this, activator );
+            return;
+        }
         if( theActivationCount == 0 ) {
             boolean success = false;
             try {
@@ -230,6 +239,43 @@ public class Module
         ++theActivationCount;
     }
 
+    /**
+     * Activate only this Module, not the Modules it depends on, and remember the context object.
+     * Used by ModuleActivationScheduler, which takes care of the dependencies.
+     *
+     * @param activator a ModuleActivator instance that knows how to activate this Module
+     * @throws ModuleActivationException thrown if this Module could not be activated
+     */
+    final void activateOnly(
+            ModuleActivator activator )
+        throws
+            ModuleActivationException
+    {
+        theContextObject = activator.activate();
+    }
+
+    /**
+     * Obtain the activation count of this Module. Used by ModuleDeactivationScheduler.
+     *
+     * @return the activation count
+     */
+    final int getActivationCount()
+    {
+        return theActivationCount;
+    }
+
+    /**
+     * Increment the activation count of this Module. Used by ModuleActivationScheduler
+     * and ModuleDeactivationScheduler.
+     *
+     * @param n the increment, negative to decrement
+     */
+    final void incrementActivationCount(
+            int n )
+    {
+        theActivationCount += n;
+    }
+
     /**
      * This recursively deactivates this Module. First, this method deactivates itself, and then
      * it recursively activates all Modules that this Module depends on
@@ -333,6 +379,7 @@ public class Module
         String runClassName  = overriddenRunClassName;
         String runMethodName = overriddenRunMethodName;
 
+        MethodHandle runHandle;
         try {
             if( runClassName == null ) {
                 runClassName = theModuleMeta.getRunClassName();
@@ -345,7 +392,59 @@ public class Module
                 throw new NoRunMethodException( theModuleMeta, runClassName, runMethodName, null );
             }
 
-            // invoke
+            runHandle = getRunMethod( runClassName, runMethodName );
+
+        } catch( MalformedURLException ex ) {
+            log.log( Level.SEVERE, "run failed: " + this, ex );
+            return 1;
+
+        } catch( Throwable ex ) {
+            throw new NoRunMethodException( theModuleMeta, runClassName, runMethodName, ex );
+        }
+
+        log.log( Level.FINER, "run: {0} ({1} {2})", new Object[] { this, runClassName, runMethodName } );
+
+        // invoke
+        Object ret;
+        try {
+            ret = (Object) runHandle.invokeExact( arguments );
+
+        } catch( ModuleRunException ex ) {
+            throw ex;
+
+        } catch( Throwable ex ) {
+            throw new ModuleRunException( theModuleMeta, runClassName, runMethodName, ex );
+        }
+
+        log.log( Level.FINER, "runSucceeded: {0}", this );
+
+        if( ret instanceof Number ) {
+            return ((Number)ret).intValue();
+        }  else {
+            return 0; // everything seems fine
+        }
+    }
+
+    /**
+     * Find the static run method with the provided name in the class with the provided name.
+     * It is looked up once, and then remembered.
+     *
+     * @param runClassName name of the class
+     * @param runMethodName name of the method
+     * @return the MethodHandle, taking a String array, and returning Object
+     * @throws ReflectiveOperationException the class or the method could not be found or accessed
+     * @throws MalformedURLException thrown if one of the URLs identifying the Module's JAR files is malformed
+     */
+    protected MethodHandle getRunMethod(
+            String runClassName,
+            String runMethodName )
+        throws
+            ReflectiveOperationException,
+            MalformedURLException
+    {
+        String       key = runClassName + '#' + runMethodName;
+        MethodHandle ret = theRunMethods.get( key );
+        if( ret == null ) {
             Class<?> runClass = Class.forName( runClassName, true, getClassLoader() );
 
             Method runMethod = runClass.getMethod(
@@ -353,35 +452,45 @@ public class Module
                     new Class[] {
                             String[].class } );
 
-            log.log( Level.FINER, "run: {0} ({1} {2})", new Object[] { this, runClass, runMethod } );
-
-            Object ret = runMethod.invoke(
-                    null,
-                    new Object[] {
-                            arguments } );
-
-            log.log( Level.FINER, "runSucceeded: {0}", this );
-
-            if( ret instanceof Number ) {
-                return ((Number)ret).intValue();
-            }  else {
-                return 0; // everything seems fine
+            if( !Modifier.isStatic( runMethod.getModifiers() )) {
+                throw new NoSuchMethodException( "Run method is not static: " + runMethod );
             }
+            ret = MethodHandles.publicLookup().unreflect( runMethod ).asType( RUN_METHOD_TYPE );
+            theRunMethods.putIfAbsent( key, ret );
+        }
+        return ret;
+    }
 
-        } catch( MalformedURLException ex ) {
-            log.log( Level.SEVERE, "run failed: " + this, ex );
-            return 1;
-
-        } catch( InvocationTargetException ex ) {
-            if( ex.getTargetException() instanceof ModuleRunException ) {
-                throw (ModuleRunException) ex.getTargetException();
-            } else {
-                throw new ModuleRunException( theModuleMeta, runClassName, runMethodName, ex.getTargetException() );
+    /**
+     * Obtain the activation and deactivation methods of this Module's activation class.
+     * They are resolved when first needed, and then remembered.
+     *
+     * @return the ModuleActivationMethods, or null if this Module does not have an activation class
+     * @throws ReflectiveOperationException the activation class could not be found, or its methods or constructor could not be accessed
+     * @throws MalformedURLException thrown if one of the URLs identifying the Module's JAR files is malformed
+     */
+    public final ModuleActivationMethods getActivationMethods()
+        throws
+            ReflectiveOperationException,
+            MalformedURLException
+    {
+        ModuleActivationMethods ret = theActivationMethods;
+        if( ret == null ) {
+            String activationClassName = theModuleMeta.getActivationClassName();
+            if( activationClassName == null ) {
+                return null;
             }
-
-        } catch( Throwable ex ) {
-            throw new NoRunMethodException( theModuleMeta, runClassName, runMethodName, ex );
-       }
+            // not resolved while holding our lock, as this runs static initializers of the activation class
+            ret = ModuleActivationMethods.resolve( this, activationClassName );
+            synchronized( this ) {
+                if( theActivationMethods == null ) {
+                    theActivationMethods = ret;
+                } else {
+                    ret = theActivationMethods; // another thread was faster, use the same instance
+                }
+            }
+        }
+        return ret;
     }
 
     /**
@@ -467,6 +576,21 @@ public class Module
      */
     private Object theContextObject;
 
+    /**
+     * The resolved activation and deactivation methods. Allocated as needed.
+     */
+    private volatile ModuleActivationMethods theActivationMethods;
+
+    /**
+     * The resolved run methods, keyed by class name and method name.
+     */
+    private final ConcurrentHashMap<String,MethodHandle> theRunMethods = new ConcurrentHashMap<>();
+
+    /**
+     * The type to which run methods are adapted, so they can be invoked exactly.
+     */
+    private static final MethodType RUN_METHOD_TYPE = MethodType.methodType( Object.class, String[].class );
+
     /**
      * Name of the run method on a class.
      */
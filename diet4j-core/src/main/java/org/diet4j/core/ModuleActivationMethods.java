@@ -0,0 +1,215 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+
+/**
+ * The activation and deactivation methods of a Module's activation class, resolved once,
+ * so they can be invoked repeatedly without reflection. If the activation class implements
+ * ModuleLifecycle, an instance is created and invoked directly; otherwise, its static
+ * 'moduleActivate' and 'moduleDeactivate' methods are invoked through MethodHandles.
+ */
+public class ModuleActivationMethods
+{
+    /**
+     * Factory method. Load the activation class of the Module and resolve its methods.
+     *
+     * @param module the Module
+     * @param activationClassName name of the activation class
+     * @return the created ModuleActivationMethods
+     * @throws ReflectiveOperationException the activation class could not be found, or its methods or constructor could not be accessed
+     * @throws MalformedURLException the Module's ClassLoader could not be created
+     */
+    public static ModuleActivationMethods resolve(
+            Module module,
+            String activationClassName )
+        throws
+            ReflectiveOperationException,
+            MalformedURLException
+    {
+        Class<?> activationClass = Class.forName( activationClassName, true, module.getClassLoader() );
+
+        if( ModuleLifecycle.class.isAssignableFrom( activationClass )) {
+            try {
+                ModuleLifecycle lifecycle = (ModuleLifecycle) activationClass.getConstructor().newInstance();
+                return new ModuleActivationMethods( activationClass, lifecycle, null, null );
+
+            } catch( NoSuchMethodException ex ) {
+                // no public no-arg constructor, fall back to the static methods
+            }
+        }
+
+        return new ModuleActivationMethods(
+                activationClass,
+                null,
+                findStatic( activationClass, DefaultModuleActivator.ACTIVATION_METHOD_NAME ),
+                findStatic( activationClass, DefaultModuleActivator.DEACTIVATION_METHOD_NAME ));
+    }
+
+    /**
+     * Helper to find a public static method with a single Module argument, and adapt it to
+     * return Object.
+     *
+     * @param activationClass the class to look in
+     * @param name name of the method
+     * @return the MethodHandle, or null if there is no such method
+     * @throws IllegalAccessException the method cannot be accessed
+     */
+    protected static MethodHandle findStatic(
+            Class<?> activationClass,
+            String   name )
+        throws
+            IllegalAccessException
+    {
+        Method method;
+        try {
+            method = activationClass.getMethod( name, Module.class );
+        } catch( NoSuchMethodException ex ) {
+            return null;
+        }
+        if( !Modifier.isStatic( method.getModifiers() )) {
+            // fail upon invocation, like Method.invoke( null, ... ) would
+            return MethodHandles.dropArguments(
+                    MethodHandles.throwException( Object.class, NullPointerException.class ).bindTo(
+                            new NullPointerException( "Method " + name + " of " + activationClass.getName() + " is not static" )),
+                    0,
+                    Module.class );
+        }
+        return MethodHandles.publicLookup().unreflect( method ).asType( INVOKE_TYPE );
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param activationClass the activation class
+     * @param lifecycle the instance of the activation class, if it implements ModuleLifecycle
+     * @param activateHandle the static activation method, if any
+     * @param deactivateHandle the static deactivation method, if any
+     */
+    protected ModuleActivationMethods(
+            Class<?>        activationClass,
+            ModuleLifecycle lifecycle,
+            MethodHandle    activateHandle,
+            MethodHandle    deactivateHandle )
+    {
+        theActivationClass  = activationClass;
+        theLifecycle        = lifecycle;
+        theActivateHandle   = activateHandle;
+        theDeactivateHandle = deactivateHandle;
+    }
+
+    /**
+     * Obtain the activation class.
+     *
+     * @return the activation class
+     */
+    public Class<?> getActivationClass()
+    {
+        return theActivationClass;
+    }
+
+    /**
+     * Determine whether there is anything to invoke upon activation.
+     *
+     * @return true if there is
+     */
+    public boolean canActivate()
+    {
+        return theLifecycle != null || theActivateHandle != null;
+    }
+
+    /**
+     * Determine whether there is anything to invoke upon deactivation.
+     *
+     * @return true if there is
+     */
+    public boolean canDeactivate()
+    {
+        return theLifecycle != null || theDeactivateHandle != null;
+    }
+
+    /**
+     * Invoke the activation method. Only invoke if canActivate() returns true.
+     *
+     * @param module the Module being activated
+     * @return the context object returned by the activation method
+     * @throws Throwable whatever the activation method threw
+     */
+    public Object activate(
+            Module module )
+        throws
+            Throwable
+    {
+        if( theLifecycle != null ) {
+            return theLifecycle.activate( module );
+        } else {
+            return (Object) theActivateHandle.invokeExact( module );
+        }
+    }
+
+    /**
+     * Invoke the deactivation method. Only invoke if canDeactivate() returns true.
+     *
+     * @param module the Module being deactivated
+     * @throws Throwable whatever the deactivation method threw
+     */
+    public void deactivate(
+            Module module )
+        throws
+            Throwable
+    {
+        if( theLifecycle != null ) {
+            theLifecycle.deactivate( module );
+        } else {
+            Object ignored = (Object) theDeactivateHandle.invokeExact( module );
+        }
+    }
+
+    /**
+     * The activation class.
+     */
+    protected final Class<?> theActivationClass;
+
+    /**
+     * The instance of the activation class, if it implements ModuleLifecycle.
+     */
+    protected final ModuleLifecycle theLifecycle;
+
+    /**
+     * The static activation method, if any.
+     */
+    protected final MethodHandle theActivateHandle;
+
+    /**
+     * The static deactivation method, if any.
+     */
+    protected final MethodHandle theDeactivateHandle;
+
+    /**
+     * The type to which the static methods are adapted, so they can be invoked exactly.
+     */
+    protected static final MethodType INVOKE_TYPE = MethodType.methodType( Object.class, Module.class );
+}
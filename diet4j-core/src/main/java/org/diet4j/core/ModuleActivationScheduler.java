@@ -0,0 +1,391 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Activates a Module and the Modules it depends on, like Module.activateRecursively() does,
+ * but activates Modules concurrently whose dependencies have all been activated already.
+ *
+ * First, the dependencies are traversed in the same sequence as Module.activateRecursively()
+ * would, which determines the ModuleActivator used for each Module, and by how much the
+ * activation count of each Module is incremented. Then, the Modules are activated on a pool
+ * of threads; a Module is only activated once all the Modules it depends on have been
+ * activated successfully.
+ *
+ * If an activation fails, no further activations are started, and the failure is thrown
+ * once the activations already running have completed. The exception is wrapped as
+ * Module.activateRecursively() would have wrapped it. Modules activated successfully
+ * remain active.
+ *
+ * The state of an invocation is kept separately from the scheduler, so the same scheduler
+ * may be used for several invocations, including concurrent ones.
+ */
+public class ModuleActivationScheduler
+{
+    /**
+     * Constructor.
+     *
+     * @param threads the maximum number of Modules to activate concurrently
+     */
+    public ModuleActivationScheduler(
+            int threads )
+    {
+        theThreads = threads;
+    }
+
+    /**
+     * Recursively activate the provided Module.
+     *
+     * @param root the Module to activate
+     * @param activator the ModuleActivator for the root Module
+     * @throws ModuleActivationException thrown if the Module, or a dependent Module could not be activated
+     */
+    public void activateRecursively(
+            Module          root,
+            ModuleActivator activator )
+        throws
+            ModuleActivationException
+    {
+        Map<Module,Node>  nodes         = new IdentityHashMap<>();
+        ArrayList<Node>   sequence      = new ArrayList<>();
+        Map<Module,int[]> alreadyActive = new IdentityHashMap<>();
+
+        plan( root, activator, null, nodes, sequence, alreadyActive );
+
+        for( Map.Entry<Module,int[]> entry : alreadyActive.entrySet() ) {
+            entry.getKey().incrementActivationCount( entry.getValue()[0] );
+        }
+        if( sequence.isEmpty() ) {
+            return;
+        }
+
+        log.log( Level.FINER, "Activating {0} Modules with up to {1} threads for {2}", new Object[] { sequence.size(), theThreads, root } );
+
+        ExecutorService exec = Executors.newFixedThreadPool( Math.min( theThreads, sequence.size() ), THREAD_FACTORY );
+        Run             run  = new Run();
+        boolean         interrupted = false;
+        try {
+            synchronized( run ) {
+                for( Node current : sequence ) {
+                    if( current.theRemaining.get() == 0 ) {
+                        submit( exec, run, current );
+                    }
+                }
+                while( run.theRunning > 0 ) {
+                    try {
+                        run.wait();
+                    } catch( InterruptedException ex ) {
+                        interrupted = true; // activations cannot be abandoned half-way, keep waiting
+                    }
+                }
+            }
+        } finally {
+            exec.shutdown();
+            if( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized( run ) {
+            if( run.theFailedNode != null ) {
+                throwFailure( run );
+            }
+        }
+    }
+
+    /**
+     * Traverse the dependencies of a Module in the sequence Module.activateRecursively() would.
+     *
+     * @param module the Module
+     * @param activator the ModuleActivator for the Module
+     * @param user the Node of the Module that depends on this Module, or null for the root
+     * @param nodes the Nodes created so far, keyed by their Module
+     * @param sequence the Nodes in the sequence in which Module.activateRecursively() would activate them
+     * @param alreadyActive the Modules that are active already, with the number of times they were visited
+     * @throws ModuleActivationException thrown if the dependencies contain a cycle
+     */
+    protected void plan(
+            Module            module,
+            ModuleActivator   activator,
+            Node              user,
+            Map<Module,Node>  nodes,
+            ArrayList<Node>   sequence,
+            Map<Module,int[]> alreadyActive )
+        throws
+            ModuleActivationException
+    {
+        Node node = nodes.get( module );
+        if( node != null ) {
+            if( !node.thePlanned ) {
+                throw new ModuleActivationException( module.getModuleMeta(), "Cyclic dependency, " + module + " depends on itself" );
+            }
+            ++node.theVisits;
+            node.addUser( user );
+            return;
+        }
+        if( module.isActive() ) {
+            alreadyActive.computeIfAbsent( module, ( Module k ) -> new int[1] )[0]++;
+            return;
+        }
+
+        node = new Node( module, activator, user );
+        nodes.put( module, node );
+
+        Module [] dependencies = module.determineRuntimeDependencies();
+        for( int i=0 ; i<dependencies.length ; ++i ) {
+            if( dependencies[i] != null ) {
+                plan( dependencies[i], activator.dependentModuleActivator( dependencies[i] ), node, nodes, sequence, alreadyActive );
+            }
+        }
+        node.thePlanned = true;
+        node.addUser( user );
+        sequence.add( node );
+    }
+
+    /**
+     * Submit a Node for activation. Must be invoked while holding the lock of the Run.
+     *
+     * @param exec the ExecutorService
+     * @param run the invocation the Node belongs to
+     * @param node the Node
+     */
+    protected void submit(
+            ExecutorService exec,
+            Run             run,
+            Node            node )
+    {
+        ++run.theRunning;
+        exec.execute( () -> activate( exec, run, node ));
+    }
+
+    /**
+     * Activate the Module of a Node, and submit the Nodes that have become ready as a result.
+     *
+     * @param exec the ExecutorService
+     * @param run the invocation the Node belongs to
+     * @param node the Node
+     */
+    protected void activate(
+            ExecutorService exec,
+            Run             run,
+            Node            node )
+    {
+        Throwable failure = null;
+        try {
+            log.log( Level.FINER, "moduleActivateRecursivelyStarted: {0}", node.theModule );
+
+            node.theModule.activateOnly( node.theActivator );
+            node.theModule.incrementActivationCount( node.theVisits );
+
+            log.log( Level.FINER, "moduleActivateRecursivelySucceeded: {0}", node.theModule );
+
+        } catch( Throwable ex ) {
+            log.log( Level.FINER, "moduleActivateRecursivelyFailed: {0}", node.theModule );
+            failure = ex;
+        }
+
+        synchronized( run ) {
+            if( failure != null ) {
+                if( run.theFailedNode == null ) {
+                    run.theFailedNode = node;
+                    run.theFailure    = failure;
+                }
+            } else if( run.theFailedNode == null ) {
+                for( Node user : node.theUsers ) {
+                    if( user.theRemaining.decrementAndGet() == 0 ) {
+                        submit( exec, run, user );
+                    }
+                }
+            }
+            --run.theRunning;
+            run.notifyAll();
+        }
+    }
+
+    /**
+     * Throw the failure of an invocation, wrapped the way nested invocations of
+     * Module.activateRecursively() would have.
+     *
+     * @param run the invocation that failed
+     * @throws ModuleActivationException the wrapped failure
+     */
+    protected void throwFailure(
+            Run run )
+        throws
+            ModuleActivationException
+    {
+        if( run.theFailure instanceof Error ) {
+            throw (Error) run.theFailure;
+        }
+        if( run.theFailedNode.theFirstUser == null ) {
+            // the root itself failed
+            if( run.theFailure instanceof RuntimeException ) {
+                throw (RuntimeException) run.theFailure;
+            }
+            throw (ModuleActivationException) run.theFailure;
+        }
+
+        Throwable current = run.theFailure;
+        for( Node user = run.theFailedNode.theFirstUser ; user != null ; user = user.theFirstUser ) {
+            current = new ModuleActivationException( user.theModule.getModuleMeta(), current );
+        }
+        throw (ModuleActivationException) current;
+    }
+
+    /**
+     * The maximum number of Modules to activate concurrently.
+     */
+    protected final int theThreads;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ModuleActivationScheduler.class.getName() );
+
+    /**
+     * Name of the system property that contains the maximum number of Modules to activate
+     * concurrently. If 1, Modules are activated one after the other.
+     */
+    public static final String THREADS_PROPERTY = "org.diet4j.core.activationthreads";
+
+    /**
+     * The maximum number of Modules to activate concurrently.
+     */
+    public static final int DEFAULT_THREADS = Integer.getInteger( THREADS_PROPERTY, 1 );
+
+    /**
+     * Creates the daemon threads on which Modules are activated.
+     */
+    protected static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+            private final AtomicInteger theCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(
+                    Runnable r )
+            {
+                Thread ret = new Thread( r, "diet4j-activation-" + theCounter.incrementAndGet() );
+                ret.setDaemon( true );
+                return ret;
+            }
+    };
+
+    /**
+     * The state of one invocation of activateRecursively(). Guarded by its own lock.
+     */
+    protected static class Run
+    {
+        /**
+         * The number of activations submitted but not completed yet.
+         */
+        protected int theRunning;
+
+        /**
+         * The Node whose activation failed first, if any.
+         */
+        protected Node theFailedNode;
+
+        /**
+         * The failure of theFailedNode.
+         */
+        protected Throwable theFailure;
+    }
+
+    /**
+     * A Module to be activated.
+     */
+    protected static class Node
+    {
+        /**
+         * Constructor.
+         *
+         * @param module the Module
+         * @param activator the ModuleActivator for the Module
+         * @param firstUser the Node of the Module through which this Module was first reached, or null for the root
+         */
+        protected Node(
+                Module          module,
+                ModuleActivator activator,
+                Node            firstUser )
+        {
+            theModule    = module;
+            theActivator = activator;
+            theFirstUser = firstUser;
+        }
+
+        /**
+         * Record that the Module of the provided Node may only be activated after ours.
+         *
+         * @param user the Node, or null for none
+         */
+        protected void addUser(
+                Node user )
+        {
+            if( user != null ) {
+                theUsers.add( user );
+                user.theRemaining.incrementAndGet();
+            }
+        }
+
+        /**
+         * The Module.
+         */
+        protected final Module theModule;
+
+        /**
+         * The ModuleActivator for the Module.
+         */
+        protected final ModuleActivator theActivator;
+
+        /**
+         * The Node of the Module through which this Module was first reached, or null for the root.
+         */
+        protected final Node theFirstUser;
+
+        /**
+         * The Nodes whose Modules depend on this one. May contain duplicates, one per dependency.
+         */
+        protected final ArrayList<Node> theUsers = new ArrayList<>();
+
+        /**
+         * The number of dependencies that have not been activated yet.
+         */
+        protected final AtomicInteger theRemaining = new AtomicInteger();
+
+        /**
+         * The number of times this Module is reached, i.e. by how much its activation count is incremented.
+         */
+        protected int theVisits = 1;
+
+        /**
+         * True once all dependencies of this Module have been traversed.
+         */
+        protected boolean thePlanned;
+    }
+}
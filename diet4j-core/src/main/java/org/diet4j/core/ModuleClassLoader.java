@@ -25,10 +25,19 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarEntry;
@@ -50,9 +59,15 @@ public class ModuleClassLoader
         extends
             ClassLoader
 {
+    static {
+        // we lock per class name, so threads loading different classes do not block each other
+        registerAsParallelCapable();
+    }
+
     /**
       * Construct one with the Module whose classes this ModuleClassLoader is
       * supposed to load, the parent/system ClassLoader, and the ClassLoaders of dependent Modules.
+      * This ModuleClassLoader remembers the classes it could not load in its own NegativeLookupCache.
       *
       * @param mod the Module whose classes this ClassLoader will load
       * @param parent the parent ClassLoader of this ClassLoader
@@ -64,12 +79,59 @@ public class ModuleClassLoader
             ClassLoader          parent,
             ModuleClassLoader [] dependencyClassLoaders,
             String []            doNotLoadClassPrefixes )
+    {
+        this( mod, parent, dependencyClassLoaders, doNotLoadClassPrefixes, new NegativeLookupCache( NegativeLookupCache.DEFAULT_MAX_SIZE, 1 ));
+    }
+
+    /**
+      * Construct one with the Module whose classes this ModuleClassLoader is
+      * supposed to load, the parent/system ClassLoader, the ClassLoaders of dependent Modules,
+      * and the NegativeLookupCache in which to remember the classes that could not be loaded.
+      *
+      * @param mod the Module whose classes this ClassLoader will load
+      * @param parent the parent ClassLoader of this ClassLoader
+      * @param dependencyClassLoaders  the ModuleClassLoaders of the Module's dependent Modules
+      * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
+      * @param negativeLookupCache remembers the classes that could not be loaded, usually shared with other ModuleClassLoaders
+      */
+    public ModuleClassLoader(
+            Module               mod,
+            ClassLoader          parent,
+            ModuleClassLoader [] dependencyClassLoaders,
+            String []            doNotLoadClassPrefixes,
+            NegativeLookupCache  negativeLookupCache )
+    {
+        this( mod, parent, dependencyClassLoaders, doNotLoadClassPrefixes, negativeLookupCache, null );
+    }
+
+    /**
+      * Construct one with the Module whose classes this ModuleClassLoader is
+      * supposed to load, the parent/system ClassLoader, the ClassLoaders of dependent Modules,
+      * the NegativeLookupCache in which to remember the classes that could not be loaded,
+      * and the directory into which the Module's JAR has been extracted.
+      *
+      * @param mod the Module whose classes this ClassLoader will load
+      * @param parent the parent ClassLoader of this ClassLoader
+      * @param dependencyClassLoaders  the ModuleClassLoaders of the Module's dependent Modules
+      * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
+      * @param negativeLookupCache remembers the classes that could not be loaded, usually shared with other ModuleClassLoaders
+      * @param explodedDirectory the directory into which the Module's JAR has been extracted, if any, from which class files are read
+      */
+    public ModuleClassLoader(
+            Module               mod,
+            ClassLoader          parent,
+            ModuleClassLoader [] dependencyClassLoaders,
+            String []            doNotLoadClassPrefixes,
+            NegativeLookupCache  negativeLookupCache,
+            File                 explodedDirectory )
     {
         super( parent );
 
         theModule                 = mod;
         theDependencyClassLoaders = dependencyClassLoaders;
         theDoNotLoadClassPrefixes = doNotLoadClassPrefixes;
+        theNegativeLookupCache    = negativeLookupCache;
+        theExplodedDirectory      = explodedDirectory;
     }
 
     /**
@@ -105,7 +167,7 @@ public class ModuleClassLoader
         throws
             MalformedURLException
     {
-        set.add( ( new File( theModule.getModuleMeta().getProvidesJar().getName() )).toURI().toURL() );
+        set.add( theModule.getModuleMeta().getProvidesJarFile().toURI().toURL() );
 
         for( ModuleClassLoader dep : theDependencyClassLoaders ) {
             if( dep != null ) {
@@ -173,115 +235,457 @@ public class ModuleClassLoader
      * @throws ClassNotFoundException loading the class failed, it could not be found
      */
     @Override
-    public synchronized Class loadClass(
+    public Class loadClass(
             String  name,
             boolean resolve )
         throws
             ClassNotFoundException
     {
-        boolean closeReporting = false;
+        synchronized( getClassLoadingLock( name )) {
+            boolean closeReporting = false;
 
-        Class c = findLoadedClass( name );
-        if( c == null ) {
-            closeReporting = true;
-            log.log( Level.FINER, "loadClassAttemptStart: {0} ({1})", new Object [] { theModule, name } );
+            Class c = findLoadedClass( name );
+            if( c == null ) {
+                closeReporting = true;
+                log.log( Level.FINER, "loadClassAttemptStart: {0} ({1})", new Object [] { theModule, name } );
 
-            if( cannotFindTable.get( name ) == null ) {
+                if( !theNegativeLookupCache.contains( this, name )) {
 
-                ClassLoader consultDefaultClassLoader = null;
-                for( String prefix : theDoNotLoadClassPrefixes ) {
-                    if( name.startsWith( prefix )) {
-                        consultDefaultClassLoader = getClass().getClassLoader();
-                        break; // we won't have more than one prefix match
+                    ClassLoader consultDefaultClassLoader = null;
+                    for( String prefix : theDoNotLoadClassPrefixes ) {
+                        if( name.startsWith( prefix )) {
+                            consultDefaultClassLoader = getClass().getClassLoader();
+                            break; // we won't have more than one prefix match
+                        }
+                    }
+                    if( consultDefaultClassLoader != null ) {
+                        try {
+                            c = consultDefaultClassLoader.loadClass( name );
+                        } catch( ClassNotFoundException ex ) {
+                            // do nothing
+                        }
+                    }
+
+                    if( c == null ) {
+                        c = findLocalClass( name );
+                    }
+
+                    if( c == null ) {
+                        c = loadClassFromDependencies( name );
                     }
                 }
-                if( consultDefaultClassLoader != null ) {
-                    try {
-                        c = consultDefaultClassLoader.loadClass( name );
-                    } catch( ClassNotFoundException ex ) {
-                        // do nothing
+            }
+            if( c == null ) {
+                // we caught all exceptions, so we need to throw ourselves
+                theNegativeLookupCache.add( this, name );
+
+                if( closeReporting ) {
+                    log.log( Level.FINE, "loadClass failed: Module {0} (class: {1})", new Object[] { theModule, name } );
+                }
+                throw new ClassNotFoundException( name + " (ClassLoader for module " + theModule.toString() + ")" );
+            }
+
+            if( resolve ) {
+                resolveClass( c );
+            }
+            if( closeReporting ) {
+                log.log( Level.FINER, "loadClass succeeded: {0} ({1})", new Object[] { theModule, name } );
+            }
+
+            return c;
+        }
+    }
+
+    /**
+     * Load a class from this ClassLoader's own JAR only, without delegating to
+     * the parent ClassLoader or the ClassLoaders of dependent Modules.
+     * Used when routing a request from a ModuleClassLoader that depends on this one.
+     *
+     * @param name name of the to-be-loaded class
+     * @return the loaded class, or null if not found in this ClassLoader's own JAR
+     */
+    protected Class<?> loadLocalClass(
+            String name )
+    {
+        synchronized( getClassLoadingLock( name )) {
+            Class<?> c = findLoadedClass( name );
+            if( c == null && !theNegativeLookupCache.contains( this, name )) {
+                c = findLocalClass( name );
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Find and define a class from this ClassLoader's own JAR. The caller must
+     * hold the class loading lock for this name.
+     *
+     * @param name name of the to-be-loaded class
+     * @return the defined class, or null if not found
+     */
+    protected Class<?> findLocalClass(
+            String name )
+    {
+        Class<?> c = null;
+
+        String     path        = name.replace('.', '/').concat(".class");
+        ModuleMeta meta        = theModule.getModuleMeta();
+        String     entryName   = meta.getResourceJarEntryPrefix() + path;
+        MappedJar  mapped      = theExplodedDirectory == null ? getMappedJar() : null;
+        ByteBuffer mappedBytes = null;
+        JarFile    jar         = null;
+
+        try {
+            if( theExplodedDirectory != null ) {
+                File classFile = new File( theExplodedDirectory, entryName );
+                if( classFile.isFile() ) {
+                    byte [] classBytes = Files.readAllBytes( classFile.toPath() );
+                    if( classBytes.length > 0 ) {
+                        definePackageFor( name );
+
+                        c = defineClass( name, classBytes, 0, classBytes.length );
                     }
                 }
 
-                if( c == null ) {
-                    String  path  = name.replace('.', '/').concat(".class");
-                    ModuleMeta meta   = theModule.getModuleMeta();
-                    JarFile    jar    = meta.getProvidesJar();
-                    String     prefix = meta.getResourceJarEntryPrefix();
-                    JarEntry   entry  = jar.getJarEntry( prefix + path );
+            } else if( mapped != null ) {
+                mappedBytes = mapped.getEntryBytes( entryName );
+                if( mappedBytes != null && mappedBytes.hasRemaining() ) {
+                    definePackageFor( name );
 
-                    try {
-                        byte [] classBytes = slurpJarEntry( jar, entry );
-                        if( classBytes != null && classBytes.length > 0 ) {
-                            // Define a Package if there is one
-                            int lastDot = name.lastIndexOf( '.' );
-                            if( lastDot != -1 ) {
-                                String pkgName = name.substring( 0, lastDot );
+                    c = defineClass( name, mappedBytes, (ProtectionDomain) null );
+                }
 
-                                URL      url = new URL( "file://" + jar.getName() );
+            } else {
+                jar = meta.obtainProvidesJar();
 
-                                Manifest man = jar.getManifest();
+                JarEntry entry      = jar.getJarEntry( entryName );
+                byte []  classBytes = slurpJarEntry( jar, entry );
+                if( classBytes != null && classBytes.length > 0 ) {
+                    definePackageFor( name );
 
-                                if( getAndVerifyPackage( pkgName, man, url ) == null ) {
-                                    if( man != null ) {
-                                        definePackage( pkgName, man, url );
-                                    } else {
-                                        definePackage( pkgName, null, null, null, null, null, null, null );
-                                    }
-                                }
-                            }
+                    c = defineClass( name, classBytes, 0, classBytes.length );
+                }
+            }
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to read from Jar file " + meta.getProvidesJarFile(), ex );
 
-                            c = defineClass( name, classBytes, 0, classBytes.length );
+        } catch( NoClassDefFoundWithClassLoaderError ex ) {
+            throw ex; // just rethrow
 
-                        }
-                    } catch( IOException ex ) {
-                        log.log( Level.WARNING, "Failed to read from Jar file " + jar, ex );
+        } catch( NoClassDefFoundError ex ) {
+            throw new NoClassDefFoundWithClassLoaderError( ex.getMessage(), this );
+
+        } catch( ClassFormatError ex ) {
+            log.log( Level.SEVERE, "loadClassAttemptStart: " + this + " (" + name + ")", ex );
+
+        } finally {
+            if( jar != null ) {
+                meta.releaseProvidesJar( jar );
+            }
+            if( mappedBytes != null ) {
+                mapped.recycle( mappedBytes );
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Obtain the memory-mapped JAR from which we load, if memory-mapping has been enabled.
+     * The JAR is mapped when first needed.
+     *
+     * @return the MappedJar, or null if not enabled or the JAR cannot be mapped
+     */
+    protected MappedJar getMappedJar()
+    {
+        if( !USE_MAPPED_JARS || theMappedJarUnavailable ) {
+            return null;
+        }
+        MappedJar ret = theMappedJar;
+        if( ret == null ) {
+            File jarFile = theModule.getModuleMeta().getProvidesJarFile();
+            try {
+                if( jarFile != null ) {
+                    ret = MappedJar.map( jarFile );
+                }
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Failed to map Jar file " + jarFile, ex );
+            }
+            if( ret != null ) {
+                theMappedJar = ret;
+            } else {
+                theMappedJarUnavailable = true; // fall back to JarFile
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Define the Package of the class with the provided name, if it is in a package
+     * and we haven't done so already.
+     *
+     * @param name name of the class
+     * @throws IOException reading the Manifest failed
+     */
+    protected void definePackageFor(
+            String name )
+        throws
+            IOException
+    {
+        int lastDot = name.lastIndexOf( '.' );
+        if( lastDot != -1 ) {
+            String pkgName = name.substring( 0, lastDot );
+
+            if( !theDefinedPackages.contains( pkgName )) {
+                definePackageIfNeeded( pkgName );
+            }
+        }
+    }
+
+    /**
+     * Define the Package with the provided name, unless it has been defined already, and
+     * verify it against our Manifest. Afterwards, remember that we have done so, so we
+     * only do this once per package.
+     *
+     * @param pkgName name of the package
+     * @throws IOException reading the Manifest failed
+     */
+    protected void definePackageIfNeeded(
+            String pkgName )
+        throws
+            IOException
+    {
+        URL      url = getCodeSourceUrl();
+        Manifest man = getManifest();
+
+        if( getAndVerifyPackage( pkgName, man, url ) == null ) {
+            try {
+                if( man != null ) {
+                    definePackage( pkgName, man, url );
+                } else {
+                    definePackage( pkgName, null, null, null, null, null, null, null );
+                }
+            } catch( IllegalArgumentException ex ) {
+                // another thread loading a class in the same package beat us to it
+                if( getAndVerifyPackage( pkgName, man, url ) == null ) {
+                    throw new AssertionError( "Cannot find package " + pkgName );
+                }
+            }
+        }
+        theDefinedPackages.add( pkgName );
+    }
+
+    /**
+     * Obtain the URL of the JAR from which we load, as used for Package sealing.
+     * It is created when first needed.
+     *
+     * @return the URL
+     * @throws MalformedURLException the URL could not be created
+     */
+    protected URL getCodeSourceUrl()
+        throws
+            MalformedURLException
+    {
+        URL ret = theCodeSourceUrl;
+        if( ret == null ) {
+            ret = new URL( "file://" + theModule.getModuleMeta().getProvidesJarFile().getPath() );
+            theCodeSourceUrl = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the Manifest of the JAR from which we load. It is read when first needed.
+     *
+     * @return the Manifest, or null if none
+     * @throws IOException reading the Manifest failed
+     */
+    protected Manifest getManifest()
+        throws
+            IOException
+    {
+        Manifest ret = theManifest;
+        if( ret == null ) {
+            ModuleMeta meta = theModule.getModuleMeta();
+            JarFile    jar  = meta.obtainProvidesJar();
+            try {
+                ret = jar.getManifest();
+            } finally {
+                meta.releaseProvidesJar( jar );
+            }
+            if( ret == null ) {
+                ret = NO_MANIFEST;
+            }
+            theManifest = ret;
+        }
+        return ret == NO_MANIFEST ? null : ret;
+    }
 
-                    } catch( NoClassDefFoundWithClassLoaderError ex ) {
-                        throw ex; // just rethrow
+    /**
+     * Load a class from the ClassLoaders of the dependent Modules. If all of them
+     * know the Java packages in their JARs, this goes directly to those ClassLoaders
+     * that contain the class's package, in the same sequence in which the recursive
+     * search would have visited them. Otherwise, it searches recursively.
+     *
+     * @param name name of the to-be-loaded class
+     * @return the loaded class, or null if not found
+     */
+    protected Class<?> loadClassFromDependencies(
+            String name )
+    {
+        Class<?> c = null;
 
-                    } catch( NoClassDefFoundError ex ) {
-                        throw new NoClassDefFoundWithClassLoaderError( ex.getMessage(), this );
+        Map<String,ModuleClassLoader []> routes = getPackageRoutes();
+        if( routes != null ) {
+            int                  lastDot    = name.lastIndexOf( '.' );
+            ModuleClassLoader [] candidates = routes.get( lastDot >= 0 ? name.substring( 0, lastDot ) : "" );
 
-                    } catch( ClassFormatError ex ) {
-                        log.log( Level.SEVERE, "loadClassAttemptStart: " + this + " (" + name + ")", ex );
+            if( candidates != null ) {
+                for( ModuleClassLoader candidate : candidates ) {
+                    c = candidate.loadLocalClass( name );
+                    if( c != null ) {
+                        break;
                     }
                 }
+            }
 
-                if( c == null ) {
-                    for( int i=0 ; i<theDependencyClassLoaders.length ; ++i ) {
-                        if( theDependencyClassLoaders[i] != null ) {
-                            try {
-                                c = theDependencyClassLoaders[i].loadClass( name, false );
-                            } catch( ClassNotFoundException ex ) {
-                                // do nothing
-                            }
-                            if( c != null ) {
-                                break;
-                            }
-                        }
+        } else {
+            for( int i=0 ; i<theDependencyClassLoaders.length ; ++i ) {
+                if( theDependencyClassLoaders[i] != null ) {
+                    try {
+                        c = theDependencyClassLoaders[i].loadClass( name, false );
+                    } catch( ClassNotFoundException ex ) {
+                        // do nothing
+                    }
+                    if( c != null ) {
+                        break;
                     }
                 }
             }
         }
-        if( c == null ) {
-            // we caught all exceptions, so we need to throw ourselves
-            cannotFindTable.put( name, CANNOT_FIND_OBJECT );
+        return c;
+    }
+
+    /**
+     * Obtain the map from Java package name to the ModuleClassLoaders of dependent Modules,
+     * direct and indirect, whose JARs contain classes in that package. Each array is in the
+     * sequence of a depth-first traversal of the dependencies. If a package is split across
+     * several Modules, the array has more than one element. The map is created when first needed.
+     *
+     * @return the map, or null if one of the dependent Modules does not know its packages
+     */
+    protected Map<String,ModuleClassLoader []> getPackageRoutes()
+    {
+        Map<String,ModuleClassLoader []> ret = thePackageRoutes;
+        if( ret == null ) {
+            // may be computed more than once concurrently, that's fine, it's always the same
+            ret = determinePackageRoutes();
+            if( ret == null ) {
+                ret = NO_PACKAGE_ROUTES;
+            }
+            thePackageRoutes = ret;
+        }
+        return ret == NO_PACKAGE_ROUTES ? null : ret;
+    }
 
-            if( closeReporting ) {
-                log.log( Level.FINE, "loadClass failed: Module {0} (class: {1})", new Object[] { theModule, name } );
+    /**
+     * Compute the map from Java package name to ModuleClassLoaders of dependent Modules.
+     *
+     * @return the map, or null if one of the dependent Modules does not know its packages
+     */
+    protected Map<String,ModuleClassLoader []> determinePackageRoutes()
+    {
+        ArrayList<ModuleClassLoader> closure = new ArrayList<>();
+        Set<ModuleClassLoader>       seen    = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+        seen.add( this ); // we already looked locally
+        addDependencyClosure( theDependencyClassLoaders, seen, closure );
+
+        HashMap<String,ArrayList<ModuleClassLoader>> found = new HashMap<>();
+        for( ModuleClassLoader current : closure ) {
+            Set<String> packages = current.getLocalPackages();
+            if( packages == null ) {
+                return null;
             }
-            throw new ClassNotFoundException( name + " (ClassLoader for module " + theModule.toString() + ")" );
+            for( String pkg : packages ) {
+                found.computeIfAbsent( pkg, ( String k ) -> new ArrayList<>( 1 ) ).add( current );
+            }
+        }
+
+        HashMap<String,ModuleClassLoader []> ret = new HashMap<>( found.size() * 4 / 3 + 1 );
+        for( Map.Entry<String,ArrayList<ModuleClassLoader>> entry : found.entrySet() ) {
+            ret.put( entry.getKey(), entry.getValue().toArray( new ModuleClassLoader[ entry.getValue().size() ] ));
         }
+        return ret;
+    }
 
-        if( resolve ) {
-            resolveClass( c );
+    /**
+     * Helper to collect the ModuleClassLoaders of the dependent Modules, direct and indirect,
+     * in depth-first sequence, without duplicates.
+     *
+     * @param loaders the ModuleClassLoaders to start with
+     * @param seen the ModuleClassLoaders already visited
+     * @param closure the list to add to
+     */
+    protected static void addDependencyClosure(
+            ModuleClassLoader []         loaders,
+            Set<ModuleClassLoader>       seen,
+            ArrayList<ModuleClassLoader> closure )
+    {
+        if( loaders == null ) {
+            return;
         }
-        if( closeReporting ) {
-            log.log( Level.FINER, "loadClass succeeded: {0} ({1})", new Object[] { theModule, name } );
+        for( ModuleClassLoader current : loaders ) {
+            if( current != null && seen.add( current )) {
+                closure.add( current );
+                addDependencyClosure( current.theDependencyClassLoaders, seen, closure );
+            }
         }
+    }
 
-        return c;
+    /**
+     * Obtain the names of the Java packages that have classes in this ClassLoader's own JAR.
+     * These are determined when first needed.
+     *
+     * @return the package names, or null if not known
+     */
+    public Set<String> getLocalPackages()
+    {
+        Set<String> ret = theLocalPackages;
+        if( ret == null ) {
+            ret = determineLocalPackages();
+            if( ret == null ) {
+                ret = NO_LOCAL_PACKAGES;
+            }
+            theLocalPackages = ret;
+        }
+        return ret == NO_LOCAL_PACKAGES ? null : ret;
+    }
+
+    /**
+     * Determine the names of the Java packages that have classes in this ClassLoader's own JAR,
+     * by looking at the JAR's central directory. Subclasses that load classes from elsewhere
+     * should override this, or return null.
+     *
+     * @return the package names, or null if they cannot be determined
+     */
+    protected Set<String> determineLocalPackages()
+    {
+        if( theModule == null ) {
+            return null;
+        }
+        ModuleMeta meta = theModule.getModuleMeta();
+        if( meta.getProvidesJarFile() == null ) {
+            return null;
+        }
+        try {
+            JarCentralDirectory dir = JarCentralDirectory.read( meta.getProvidesJarFile() );
+            if( dir != null ) {
+                return dir.findPackages( meta.getResourceJarEntryPrefix() );
+            }
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to read from Jar file " + meta.getProvidesJarFile(), ex );
+        }
+        return null;
     }
 
     /**
@@ -291,13 +695,27 @@ public class ModuleClassLoader
      * @return the URL of the resource, if found
      */
     @Override
-    public synchronized URL findResource(
+    public URL findResource(
             String name )
     {
         ModuleMeta meta       = theModule.getModuleMeta();
-        JarFile    jar        = meta.getProvidesJar();
         String     prefix     = meta.getResourceJarEntryPrefix();
-        JarEntry   foundEntry = jar.getJarEntry( prefix + name );
+        JarEntry   foundEntry;
+
+        JarFile jar = null;
+        try {
+            jar        = meta.obtainProvidesJar();
+            foundEntry = jar.getJarEntry( prefix + name );
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Failed to read from Jar file " + meta.getProvidesJarFile(), ex );
+            return null;
+
+        } finally {
+            if( jar != null ) {
+                meta.releaseProvidesJar( jar );
+            }
+        }
 
         if( foundEntry == null ) {
             return null;
@@ -305,7 +723,7 @@ public class ModuleClassLoader
         try {
             StringBuilder urlSpec = new StringBuilder();
             urlSpec.append( "jar:file:" );
-            urlSpec.append( jar.getName() );
+            urlSpec.append( meta.getProvidesJarFile().getPath() );
             urlSpec.append( "!/" );
             return new URL( new URL( urlSpec.toString() ), foundEntry.getName() );
 
@@ -353,6 +771,17 @@ public class ModuleClassLoader
         return buf;
     }
 
+    /**
+     * Obtain the NegativeLookupCache in which this ModuleClassLoader remembers the classes
+     * it could not load, e.g. to look at its statistics.
+     *
+     * @return the NegativeLookupCache
+     */
+    public NegativeLookupCache getNegativeLookupCache()
+    {
+        return theNegativeLookupCache;
+    }
+
     /**
      * Obtain the ClassLoaders from dependent Modules.
      *
@@ -528,15 +957,78 @@ public class ModuleClassLoader
     protected String [] theDoNotLoadClassPrefixes;
 
     /**
-     * This map maps names of resources that we know for sure we can't load to a
-     * marker object, so we stop attempting to load here and not delegate.
+     * Remembers the names of the classes that we know for sure we can't load, so we stop
+     * attempting to load here and not delegate.
+     */
+    protected final NegativeLookupCache theNegativeLookupCache;
+
+    /**
+     * Maps Java package names to the ModuleClassLoaders of dependent Modules that contain them.
+     * Allocated as needed. NO_PACKAGE_ROUTES if it cannot be determined.
+     */
+    protected volatile Map<String,ModuleClassLoader []> thePackageRoutes;
+
+    /**
+     * The names of the Java packages in this ClassLoader's own JAR. Allocated as needed.
+     * NO_LOCAL_PACKAGES if they cannot be determined.
+     */
+    protected volatile Set<String> theLocalPackages;
+
+    /**
+     * The URL of the JAR from which we load. Allocated as needed.
+     */
+    protected volatile URL theCodeSourceUrl;
+
+    /**
+     * The Manifest of the JAR from which we load. Allocated as needed. NO_MANIFEST if there is none.
+     */
+    protected volatile Manifest theManifest;
+
+    /**
+     * The names of the packages that we have already defined, or verified, for classes we loaded.
+     */
+    protected final Set<String> theDefinedPackages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The directory into which our JAR has been extracted, if any. If given, class files are read from here.
+     */
+    protected final File theExplodedDirectory;
+
+    /**
+     * The memory-mapped JAR from which we load, if enabled. Allocated as needed.
+     */
+    protected volatile MappedJar theMappedJar;
+
+    /**
+     * Set to true if our JAR cannot be memory-mapped, so we don't try again.
+     */
+    protected volatile boolean theMappedJarUnavailable;
+
+    /**
+     * Name of the system property that, if set to true, makes ModuleClassLoaders memory-map
+     * their JARs and read class files from the mapping.
+     */
+    public static final String MAPPED_JARS_PROPERTY = "org.diet4j.core.mmap";
+
+    /**
+     * If true, ModuleClassLoaders memory-map their JARs and read class files from the mapping.
+     */
+    public static final boolean USE_MAPPED_JARS = Boolean.getBoolean( MAPPED_JARS_PROPERTY );
+
+    /**
+     * Marker for theManifest, indicating that the JAR does not have one.
+     */
+    protected static final Manifest NO_MANIFEST = new Manifest();
+
+    /**
+     * Marker for thePackageRoutes, indicating that the routes cannot be determined.
      */
-    protected HashMap<String,Object> cannotFindTable = new HashMap<>( 20 );
+    protected static final Map<String,ModuleClassLoader []> NO_PACKAGE_ROUTES = Collections.unmodifiableMap( new HashMap<>() );
 
     /**
-     * Marker object to be inserted into the cannotFindTable.
+     * Marker for theLocalPackages, indicating that the packages cannot be determined.
      */
-    protected static final Object CANNOT_FIND_OBJECT = new Object();
+    protected static final Set<String> NO_LOCAL_PACKAGES = Collections.unmodifiableSet( new HashSet<>() );
 
     /**
      * Logger.
@@ -0,0 +1,470 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deactivates a Module and the Modules it depends on, like Module.deactivateRecursively() does,
+ * but deactivates Modules concurrently once all the Modules that use them have been deactivated,
+ * i.e. in reverse topological sequence. Optionally, deactivation gives up on Modules whose
+ * deactivation takes longer than a timeout, so a single misbehaving Module cannot hold up
+ * shutdown forever; the Modules that blocked are reported.
+ *
+ * First, the dependencies are traversed in the same sequence as Module.deactivateRecursively()
+ * would, which determines the ModuleActivator used for each Module, and which Modules' activation
+ * counts drop to zero. Then, those Modules are deactivated on a pool of threads. The activation
+ * count of a dependency is decremented once the deactivation of the Module using it has
+ * completed successfully, just like Module.deactivateRecursively() does not descend into the
+ * dependencies of a Module whose deactivation failed.
+ *
+ * If a deactivation fails, no further deactivations are started, and the failure is thrown
+ * once the deactivations already running have completed or timed out.
+ *
+ * The state of an invocation is kept separately from the scheduler, so the same scheduler
+ * may be used for several invocations, including concurrent ones.
+ */
+public class ModuleDeactivationScheduler
+{
+    /**
+     * Constructor.
+     *
+     * @param threads the maximum number of Modules to deactivate concurrently
+     * @param timeout the maximum number of milliseconds to wait for the deactivation of a single Module, or 0 to wait forever
+     */
+    public ModuleDeactivationScheduler(
+            int  threads,
+            long timeout )
+    {
+        theThreads = threads;
+        theTimeout = timeout;
+    }
+
+    /**
+     * Factory method for an instance with the default number of threads and timeout.
+     *
+     * @return the created ModuleDeactivationScheduler
+     */
+    public static ModuleDeactivationScheduler create()
+    {
+        return new ModuleDeactivationScheduler( DEFAULT_THREADS, DEFAULT_TIMEOUT );
+    }
+
+    /**
+     * Recursively deactivate the provided Module, using its default ModuleActivator.
+     *
+     * @param root the Module to deactivate
+     * @throws ModuleDeactivationException thrown if the Module, or a dependent Module could not be deactivated in time
+     */
+    public void deactivateRecursively(
+            Module root )
+        throws
+            ModuleDeactivationException
+    {
+        deactivateRecursively( root, root.getDefaultModuleActivator() );
+    }
+
+    /**
+     * Recursively deactivate the provided Module.
+     *
+     * @param root the Module to deactivate
+     * @param activator the ModuleActivator for the root Module
+     * @throws ModuleDeactivationException thrown if the Module, or a dependent Module could not be deactivated in time
+     */
+    public void deactivateRecursively(
+            Module          root,
+            ModuleActivator activator )
+        throws
+            ModuleDeactivationException
+    {
+        Map<Module,int[]>           counts   = new IdentityHashMap<>();
+        Map<Module,ArrayList<Node>> users    = new IdentityHashMap<>();
+        ArrayList<Node>             sequence = new ArrayList<>();
+
+        plan( root, activator, null, counts, users, sequence );
+
+        if( sequence.isEmpty() ) {
+            return;
+        }
+
+        log.log( Level.FINER, "Deactivating {0} Modules with up to {1} threads for {2}", new Object[] { sequence.size(), theThreads, root } );
+
+        ExecutorService exec = Executors.newFixedThreadPool( Math.min( theThreads, sequence.size() ), THREAD_FACTORY );
+        Run             run  = new Run();
+        boolean         interrupted = false;
+        ArrayList<Node> blocked     = new ArrayList<>();
+        try {
+            synchronized( run ) {
+                for( Node current : sequence ) {
+                    if( current.theRemaining == 0 ) {
+                        submit( exec, run, current );
+                    }
+                }
+                while( run.theSubmitted > 0 ) {
+                    try {
+                        if( theTimeout > 0 ) {
+                            long now      = System.nanoTime();
+                            long deadline = Long.MAX_VALUE;
+                            for( Node current : run.theRunning ) {
+                                if( now - current.theStarted >= TimeUnit.MILLISECONDS.toNanos( theTimeout )) {
+                                    blocked.add( current );
+                                } else {
+                                    deadline = Math.min( deadline, current.theStarted + TimeUnit.MILLISECONDS.toNanos( theTimeout ));
+                                }
+                            }
+                            if( !blocked.isEmpty() ) {
+                                run.theGivenUp = true;
+                                break;
+                            }
+                            if( deadline == Long.MAX_VALUE ) {
+                                run.wait(); // everything submitted is still queued
+                            } else {
+                                TimeUnit.NANOSECONDS.timedWait( run, deadline - now );
+                            }
+                        } else {
+                            run.wait();
+                        }
+                    } catch( InterruptedException ex ) {
+                        interrupted = true; // deactivations cannot be abandoned half-way, keep waiting
+                    }
+                }
+            }
+        } finally {
+            exec.shutdown(); // blocked deactivations continue on their daemon threads
+            if( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for( Node current : blocked ) {
+            StringBuilder buf = new StringBuilder();
+            buf.append( "Deactivation of " ).append( current.theModule );
+            buf.append( " did not complete within " ).append( theTimeout ).append( " msec, currently at:" );
+            for( StackTraceElement frame : current.theThread.getStackTrace() ) {
+                buf.append( "\n    at " ).append( frame );
+            }
+            log.log( Level.SEVERE, buf.toString() );
+        }
+
+        synchronized( run ) {
+            if( run.theFailure != null ) {
+                throwFailure( run );
+            }
+        }
+        if( !blocked.isEmpty() ) {
+            StringBuilder buf = new StringBuilder();
+            buf.append( "Deactivation did not complete within " ).append( theTimeout ).append( " msec, blocked by:" );
+            for( Node current : blocked ) {
+                buf.append( ' ' ).append( current.theModule );
+            }
+            throw new ModuleDeactivationException( blocked.get( 0 ).theModule.getModuleMeta(), buf.toString() );
+        }
+    }
+
+    /**
+     * Traverse the dependencies of a Module in the sequence Module.deactivateRecursively() would.
+     *
+     * @param module the Module
+     * @param activator the ModuleActivator for the Module
+     * @param user the Node of the Module whose deactivation reached this Module, or null for the root
+     * @param counts the activation counts of the Modules reached so far, as they will be after deactivation
+     * @param users the Nodes from which each Module has been reached so far
+     * @param sequence the Nodes in the sequence in which Module.deactivateRecursively() would deactivate them
+     */
+    protected void plan(
+            Module                      module,
+            ModuleActivator             activator,
+            Node                        user,
+            Map<Module,int[]>           counts,
+            Map<Module,ArrayList<Node>> users,
+            ArrayList<Node>             sequence )
+    {
+        int [] count = counts.computeIfAbsent( module, ( Module k ) -> new int[] { k.getActivationCount() } );
+        --count[0];
+
+        ArrayList<Node> moduleUsers = users.computeIfAbsent( module, ( Module k ) -> new ArrayList<>() );
+        if( user != null ) {
+            user.theDecrements.add( module );
+            moduleUsers.add( user );
+        } else {
+            module.incrementActivationCount( -1 );
+        }
+
+        if( count[0] != 0 ) {
+            return;
+        }
+        Node node = new Node( module, activator );
+        for( Node current : moduleUsers ) {
+            current.theFollowers.add( node );
+            ++node.theRemaining;
+        }
+        sequence.add( node );
+
+        Module [] dependencies = module.determineRuntimeDependencies();
+        for( int i=0 ; i<dependencies.length ; ++i ) {
+            if( dependencies[i] != null ) {
+                // might be an optional dependency
+                plan( dependencies[i], activator.dependentModuleActivator( dependencies[i] ), node, counts, users, sequence );
+            }
+        }
+    }
+
+    /**
+     * Submit a Node for deactivation. Must be invoked while holding the lock of the Run.
+     *
+     * @param exec the ExecutorService
+     * @param run the invocation the Node belongs to
+     * @param node the Node
+     */
+    protected void submit(
+            ExecutorService exec,
+            Run             run,
+            Node            node )
+    {
+        ++run.theSubmitted;
+        exec.execute( () -> deactivate( exec, run, node ));
+    }
+
+    /**
+     * Deactivate the Module of a Node, and submit the Nodes that have become ready as a result.
+     *
+     * @param exec the ExecutorService
+     * @param run the invocation the Node belongs to
+     * @param node the Node
+     */
+    protected void deactivate(
+            ExecutorService exec,
+            Run             run,
+            Node            node )
+    {
+        synchronized( run ) {
+            if( run.theFailure != null || run.theGivenUp ) {
+                --run.theSubmitted;
+                run.notifyAll();
+                return;
+            }
+            node.theStarted = System.nanoTime();
+            node.theThread  = Thread.currentThread();
+            run.theRunning.add( node );
+            run.notifyAll(); // so the timeout is tracked
+        }
+
+        Throwable failure = null;
+        try {
+            log.log( Level.FINER, "moduleDeactivateRecursivelyStarted: {0}", node.theModule );
+
+            node.theActivator.deactivate();
+
+            log.log( Level.FINER, "moduleDeactivateRecursivelySucceeded: {0}", node.theModule );
+
+        } catch( Throwable ex ) {
+            log.log( Level.FINER, "moduleDeactivateRecursivelyFailed: {0}", node.theModule );
+            failure = ex;
+        }
+
+        synchronized( run ) {
+            run.theRunning.remove( node );
+            if( failure != null ) {
+                if( run.theFailure == null ) {
+                    run.theFailure = failure;
+                }
+            } else {
+                // several users of the same dependency may complete at the same time,
+                // and activation counts are not atomic
+                for( Module current : node.theDecrements ) {
+                    current.incrementActivationCount( -1 );
+                }
+                if( run.theFailure == null && !run.theGivenUp ) {
+                    for( Node follower : node.theFollowers ) {
+                        if( --follower.theRemaining == 0 ) {
+                            submit( exec, run, follower );
+                        }
+                    }
+                }
+            }
+            --run.theSubmitted;
+            run.notifyAll();
+        }
+    }
+
+    /**
+     * Throw the failure of an invocation, unwrapped, like Module.deactivateRecursively() would have.
+     *
+     * @param run the invocation that failed
+     * @throws ModuleDeactivationException the failure
+     */
+    protected void throwFailure(
+            Run run )
+        throws
+            ModuleDeactivationException
+    {
+        if( run.theFailure instanceof Error ) {
+            throw (Error) run.theFailure;
+        }
+        if( run.theFailure instanceof RuntimeException ) {
+            throw (RuntimeException) run.theFailure;
+        }
+        throw (ModuleDeactivationException) run.theFailure;
+    }
+
+    /**
+     * The maximum number of Modules to deactivate concurrently.
+     */
+    protected final int theThreads;
+
+    /**
+     * The maximum number of milliseconds to wait for the deactivation of a single Module, or 0 to wait forever.
+     */
+    protected final long theTimeout;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ModuleDeactivationScheduler.class.getName() );
+
+    /**
+     * Name of the system property that contains the maximum number of Modules to deactivate concurrently.
+     */
+    public static final String THREADS_PROPERTY = "org.diet4j.core.deactivationthreads";
+
+    /**
+     * The maximum number of Modules to deactivate concurrently.
+     */
+    public static final int DEFAULT_THREADS = Integer.getInteger( THREADS_PROPERTY, 1 );
+
+    /**
+     * Name of the system property that contains the maximum number of milliseconds to wait for
+     * the deactivation of a single Module. If 0, wait forever.
+     */
+    public static final String TIMEOUT_PROPERTY = "org.diet4j.core.deactivationtimeout";
+
+    /**
+     * The maximum number of milliseconds to wait for the deactivation of a single Module, or 0 to wait forever.
+     */
+    public static final long DEFAULT_TIMEOUT = Long.getLong( TIMEOUT_PROPERTY, 0L );
+
+    /**
+     * Creates the daemon threads on which Modules are deactivated.
+     */
+    protected static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+            private final AtomicInteger theCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(
+                    Runnable r )
+            {
+                Thread ret = new Thread( r, "diet4j-deactivation-" + theCounter.incrementAndGet() );
+                ret.setDaemon( true );
+                return ret;
+            }
+    };
+
+    /**
+     * The state of one invocation of deactivateRecursively(). Guarded by its own lock.
+     */
+    protected static class Run
+    {
+        /**
+         * The number of deactivations submitted but not completed yet.
+         */
+        protected int theSubmitted;
+
+        /**
+         * The Nodes whose deactivation is currently running.
+         */
+        protected final LinkedHashSet<Node> theRunning = new LinkedHashSet<>();
+
+        /**
+         * The first failure, if any.
+         */
+        protected Throwable theFailure;
+
+        /**
+         * True once we have given up waiting for a blocked deactivation.
+         */
+        protected boolean theGivenUp;
+    }
+
+    /**
+     * A Module to be deactivated.
+     */
+    protected static class Node
+    {
+        /**
+         * Constructor.
+         *
+         * @param module the Module
+         * @param activator the ModuleActivator for the Module
+         */
+        protected Node(
+                Module          module,
+                ModuleActivator activator )
+        {
+            theModule    = module;
+            theActivator = activator;
+        }
+
+        /**
+         * The Module.
+         */
+        protected final Module theModule;
+
+        /**
+         * The ModuleActivator for the Module.
+         */
+        protected final ModuleActivator theActivator;
+
+        /**
+         * The dependencies whose activation count to decrement once this Module has been deactivated.
+         * May contain duplicates, one per dependency.
+         */
+        protected final ArrayList<Module> theDecrements = new ArrayList<>();
+
+        /**
+         * The Nodes that may only be deactivated after this one. May contain duplicates, one per dependency.
+         */
+        protected final ArrayList<Node> theFollowers = new ArrayList<>();
+
+        /**
+         * The number of Nodes that have to be deactivated before this one. Guarded by the scheduler's lock.
+         */
+        protected int theRemaining;
+
+        /**
+         * When the deactivation started, in System.nanoTime(). Guarded by the scheduler's lock.
+         */
+        protected long theStarted;
+
+        /**
+         * The Thread on which the deactivation runs. Guarded by the scheduler's lock.
+         */
+        protected Thread theThread;
+    }
+}
@@ -0,0 +1,55 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+/**
+ * May be implemented by the activation class of a Module, instead of providing static
+ * 'moduleActivate' and 'moduleDeactivate' methods. The DefaultModuleActivator then
+ * instantiates the activation class once, using its public no-argument constructor,
+ * and invokes these methods on the instance directly, without reflection.
+ */
+public interface ModuleLifecycle
+{
+    /**
+     * Activate the Module.
+     *
+     * @param thisModule the Module being activated
+     * @return a context object that is Module-specific, or null if none
+     * @throws Exception the Module could not be activated
+     */
+    public Object activate(
+            Module thisModule )
+        throws
+            Exception;
+
+    /**
+     * Deactivate the Module. By default, this does nothing.
+     *
+     * @param thisModule the Module being deactivated
+     * @throws Exception the Module could not be deactivated
+     */
+    public default void deactivate(
+            Module thisModule )
+        throws
+            Exception
+    {
+        // nothing
+    }
+}
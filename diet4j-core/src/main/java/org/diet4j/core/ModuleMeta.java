@@ -19,9 +19,13 @@
 
 package org.diet4j.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
 import java.util.Map;
 import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The metadata for a software Module.
@@ -56,21 +60,68 @@ public class ModuleMeta
             String               activationClassName,
             String               runClassName )
     {
-        theModuleGroupId               = moduleGroupId;
-        theModuleArtifactId            = moduleArtifactId;
-        theModuleVersion               = moduleVersion;
+        this(   moduleGroupId,
+                moduleArtifactId,
+                moduleVersion,
+                moduleUserNames,
+                moduleUserDescriptions,
+                moduleBuildDate,
+                license,
+                runtimeModuleRequirements,
+                moduleJar != null ? new File( moduleJar.getName() ) : null,
+                activationClassName,
+                runClassName );
+
+        theModuleJar = moduleJar;
+    }
+
+    /**
+      * Constructor. This should not be directly invoked by the application programmer.
+      * The JAR file will only be opened when needed, and may be closed and reopened again
+      * by the JarFilePool.
+      *
+      * @param moduleGroupId the Maven groupId of the to-be-created Module
+      * @param moduleArtifactId the Maven artifactId of the to-be-created Module
+      * @param moduleVersion the version of the to-be-created Module, may be null (but that's discouraged)
+      * @param moduleUserNames the name shown to the user of the to-be-created Module, keyed by the locale
+      * @param moduleUserDescriptions the description shown to the user of the to-be-created Module, keyed by the locale
+      * @param moduleBuildDate the time when this Module was built
+      * @param license the license for the to-be-created Module
+      * @param runtimeModuleRequirements the ModuleRequirements of this Module at run time
+      * @param moduleJarFile JAR file provided by this Module
+      * @param activationClassName name of the Module's activation/deactivation class, or null
+      * @param runClassName name of the class contained in this Module that contains the Module's run method, or null
+      */
+    protected ModuleMeta(
+            String               moduleGroupId,
+            String               moduleArtifactId,
+            String               moduleVersion,
+            Map<String,String>   moduleUserNames,
+            Map<String,String>   moduleUserDescriptions,
+            long                 moduleBuildDate,
+            ModuleLicense        license,
+            ModuleRequirement [] runtimeModuleRequirements,
+            File                 moduleJarFile,
+            String               activationClassName,
+            String               runClassName )
+    {
+        theModuleGroupId               = intern( moduleGroupId );
+        theModuleArtifactId            = intern( moduleArtifactId );
+        theModuleVersion               = intern( moduleVersion );
+        theParsedModuleVersion         = ParsedVersion.parse( theModuleVersion );
+        theHashCode                    = hashOf( theModuleGroupId, theModuleArtifactId, theModuleVersion );
         theModuleUserNames             = moduleUserNames;
         theModuleUserDescriptions      = moduleUserDescriptions;
         theModuleBuildDate             = moduleBuildDate;
         theModuleLicense               = license;
         theRuntimeModuleRequirements   = runtimeModuleRequirements;
-        theModuleJar                   = moduleJar;
+        theModuleJarFile               = moduleJarFile;
         theActivationClassName         = activationClassName;
         theRunClassName                = runClassName;
 
-        if( moduleJar == null ) {
+        if( moduleJarFile == null ) {
             theResourceJarEntryPrefix = UNPACKED_RESOURCE_JAR_ENTRY_PREFIX;
-        } else if( moduleJar.getName().endsWith( ".war" )) {
+        } else if( moduleJarFile.getName().endsWith( ".war" )) {
             theResourceJarEntryPrefix = WAR_RESOURCE_JAR_ENTRY_PREFIX;
         } else {
             theResourceJarEntryPrefix = JAR_RESOURCE_JAR_ENTRY_PREFIX;
@@ -200,6 +251,16 @@ public class ModuleMeta
         return theModuleVersion;
     }
 
+    /**
+     * Obtain the version of this Module, parsed for fast comparison with other versions.
+     *
+     * @return the parsed version of this Module
+     */
+    public final ParsedVersion getParsedModuleVersion()
+    {
+        return theParsedModuleVersion;
+    }
+
     /**
      * Obtain the time at which this Module was built, in System.currentTimeMillis() format.
      *
@@ -232,15 +293,73 @@ public class ModuleMeta
     }
 
     /**
-     * Obtain the JAR file that this Module provides as JarFile.
+     * Obtain the JAR file that this Module provides as JarFile. The JarFile is opened
+     * if needed, and kept open from then on. Code in this package uses
+     * obtainProvidesJar() and releaseProvidesJar() instead, which allow the JarFile to be
+     * closed when not in use.
      *
-     * @return the JarFile
+     * @return the JarFile, or null if there is none or it could not be opened
      */
-    public final JarFile getProvidesJar()
+    public final synchronized JarFile getProvidesJar()
     {
+        if( theModuleJar == null && theModuleJarFile != null ) {
+            try {
+                theModuleJar = new JarFile( theModuleJarFile );
+
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Cannot open " + theModuleJarFile.getAbsolutePath(), ex );
+            }
+        }
         return theModuleJar;
     }
 
+    /**
+     * Obtain the JAR file that this Module provides as File.
+     *
+     * @return the File, or null if none
+     */
+    public final File getProvidesJarFile()
+    {
+        return theModuleJarFile;
+    }
+
+    /**
+     * Obtain the JarFile that this Module provides, for temporary use. Every successful
+     * invocation must be followed by an invocation of releaseProvidesJar().
+     *
+     * @return the JarFile
+     * @throws IOException the JarFile could not be opened
+     */
+    public JarFile obtainProvidesJar()
+        throws
+            IOException
+    {
+        JarFile ret;
+        synchronized( this ) {
+            ret = theModuleJar; // if we have one that's open anyway, use it
+        }
+        if( ret == null ) {
+            ret = JarFilePool.DEFAULT.obtain( theModuleJarFile );
+        }
+        return ret;
+    }
+
+    /**
+     * Release the JarFile previously obtained with obtainProvidesJar().
+     *
+     * @param jar the JarFile returned by obtainProvidesJar()
+     */
+    public void releaseProvidesJar(
+            JarFile jar )
+    {
+        synchronized( this ) {
+            if( jar == theModuleJar ) {
+                return;
+            }
+        }
+        JarFilePool.DEFAULT.release( theModuleJarFile );
+    }
+
     /**
      * Obtain the relative path below which resources, such as a class files,
      * are to be found. In a WAR file, for example, that would be "WEB-INF/classes/".
@@ -284,6 +403,9 @@ public class ModuleMeta
     public boolean equals(
             Object other )
     {
+        if( this == other ) {
+            return true;
+        }
         if( other == null ) {
             return false;
         }
@@ -292,28 +414,87 @@ public class ModuleMeta
         }
         ModuleMeta realOther = (ModuleMeta) other;
 
-        if( ! theModuleGroupId.equals( realOther.theModuleGroupId )) {
+        if( theHashCode != realOther.theHashCode ) {
+            return false;
+        }
+        // the coordinates are interned, so this is usually decided by identity
+        if( !sameCoordinate( theModuleGroupId, realOther.theModuleGroupId )) {
             return false;
         }
-        if( ! theModuleArtifactId.equals( realOther.theModuleArtifactId )) {
+        if( !sameCoordinate( theModuleArtifactId, realOther.theModuleArtifactId )) {
             return false;
         }
-        return theModuleVersion.equals( realOther.theModuleVersion );
+        return sameCoordinate( theModuleVersion, realOther.theModuleVersion );
     }
 
     /**
      * We determine the hash code by looking at the Module's name and version.
+     * It is calculated once, when the ModuleMeta is created.
      *
      * @return a hash code
      */
     @Override
     public int hashCode()
     {
-        int ret = theModuleGroupId.hashCode() % theModuleArtifactId.hashCode() % theModuleVersion.hashCode();
+        return theHashCode;
+    }
 
+    /**
+     * Helper to calculate the hash code from the Module's name and version.
+     *
+     * @param groupId the groupId, may be null
+     * @param artifactId the artifactId, may be null
+     * @param version the version, may be null
+     * @return the hash code
+     */
+    protected static int hashOf(
+            String groupId,
+            String artifactId,
+            String version )
+    {
+        int ret = groupId != null ? groupId.hashCode() : 0;
+        ret = 31 * ret + ( artifactId != null ? artifactId.hashCode() : 0 );
+        ret = 31 * ret + ( version    != null ? version.hashCode()    : 0 );
+
+        // similar coordinates differ in few low bits only; spread them over all bits
+        ret ^= ret >>> 16;
+        ret *= 0x85ebca6b;
+        ret ^= ret >>> 13;
+        ret *= 0xc2b2ae35;
+        ret ^= ret >>> 16;
         return ret;
     }
 
+    /**
+     * Helper to compare two coordinates, either of which may be null.
+     *
+     * @param one the first coordinate
+     * @param two the second coordinate
+     * @return true if they are the same
+     */
+    protected static boolean sameCoordinate(
+            String one,
+            String two )
+    {
+        if( one == two ) {
+            return true;
+        }
+        return one != null && one.equals( two );
+    }
+
+    /**
+     * Helper to intern a coordinate, so ModuleMetas with the same coordinates share the
+     * same String instances, and compare quickly.
+     *
+     * @param coordinate the coordinate, may be null
+     * @return the interned coordinate, or null
+     */
+    protected static String intern(
+            String coordinate )
+    {
+        return coordinate != null ? coordinate.intern() : null;
+    }
+
     /**
      * Create a Module from this ModuleMeta. This is not supposed to be invoked
      * by the application programmer.
@@ -347,19 +528,29 @@ public class ModuleMeta
     }
 
     /**
-     * The groupId of the module
+     * The groupId of the module, interned.
      */
-    protected String theModuleGroupId;
+    protected final String theModuleGroupId;
 
     /**
-     * The artifactId of the module.
+     * The artifactId of the module, interned.
      */
-    protected String theModuleArtifactId;
+    protected final String theModuleArtifactId;
 
     /**
-     * The version of the module.
+     * The version of the module, interned.
      */
-    protected String theModuleVersion;
+    protected final String theModuleVersion;
+
+    /**
+     * The version of the module, parsed once.
+     */
+    protected final ParsedVersion theParsedModuleVersion;
+
+    /**
+     * The hash code, calculated from groupId, artifactId and version.
+     */
+    protected final int theHashCode;
 
     /**
      * The time when this Module was built.
@@ -387,7 +578,12 @@ public class ModuleMeta
     protected ModuleLicense theModuleLicense;
 
     /**
-     * The JAR that this Module provides.
+     * The JAR file that this Module provides.
+     */
+    protected File theModuleJarFile;
+
+    /**
+     * The JAR that this Module provides, if it has been opened outside of the JarFilePool.
      */
     protected JarFile theModuleJar;
 
@@ -423,4 +619,9 @@ public class ModuleMeta
      * run this Module.
      */
     protected String theRunClassName;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ModuleMeta.class.getName() );
 }
@@ -0,0 +1,553 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent index of the ModuleMetas previously parsed from JAR files. Each entry
+ * is keyed by the path of the JAR file, and remembers the size and last-modified time
+ * of all files that went into the ModuleMeta (e.g. the JAR and a sibling POM file), so
+ * that a subsequent scan only needs to stat the files and re-parses only those that changed.
+ * Also remembers JAR files that turned out not to contain a Module.
+ *
+ * This class is not thread-safe.
+ */
+public class ModuleMetaIndex
+{
+    /**
+     * Factory method. Read the index from the provided file. If the file does not exist
+     * or cannot be read, the returned index is empty.
+     *
+     * @param file the file that contains the index
+     * @return the created ModuleMetaIndex
+     */
+    public static ModuleMetaIndex load(
+            File file )
+    {
+        ModuleMetaIndex ret = new ModuleMetaIndex( file );
+
+        if( file.exists() ) {
+            try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file )))) {
+                ret.read( in );
+
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Cannot read module index {0}, rescanning: {1}", new Object[] { file.getAbsolutePath(), ex.getMessage() } );
+                ret.theEntries.clear();
+                ret.theIsDirty = true;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param file the file that contains the index
+     */
+    protected ModuleMetaIndex(
+            File file )
+    {
+        theFile = file;
+    }
+
+    /**
+     * Obtain the file that contains the index.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return theFile;
+    }
+
+    /**
+     * Look up the entry for a JAR file. Only returns an entry if none of the files that
+     * went into it have changed since the entry was created.
+     *
+     * @param jarFile the JAR file
+     * @return the entry, or null if none or if it is out of date
+     */
+    public Entry lookup(
+            File jarFile )
+    {
+        String key   = jarFile.getAbsolutePath();
+        Entry  found = theEntries.get( key );
+
+        if( found == null ) {
+            return null;
+        }
+        if( !found.isCurrent() ) {
+            theEntries.remove( key );
+            theIsDirty = true;
+            return null;
+        }
+        found.theIsUsed = true;
+        return found;
+    }
+
+    /**
+     * Remember the result of parsing a JAR file.
+     *
+     * @param jarFile the JAR file
+     * @param meta the ModuleMeta found in the JAR file, or null if the JAR file does not contain a Module
+     */
+    public void put(
+            File       jarFile,
+            ModuleMeta meta )
+    {
+        put( jarFile, meta, null );
+    }
+
+    /**
+     * Remember the result of parsing a JAR file, whose POM inherited from parent POMs or imported BOMs.
+     *
+     * @param jarFile the JAR file
+     * @param meta the ModuleMeta found in the JAR file, or null if the JAR file does not contain a Module
+     * @param parentPoms the files of the parent POMs and imported BOMs that went into the ModuleMeta, or were
+     *        looked for but could not be found, or null
+     */
+    public void put(
+            File       jarFile,
+            ModuleMeta meta,
+            List<File> parentPoms )
+    {
+        ArrayList<File> inputList  = new ArrayList<>();
+        File            pomSibling = AbstractScanningModuleRegistry.pomSiblingOf( jarFile );
+
+        inputList.add( jarFile );
+        if( pomSibling != null ) {
+            inputList.add( pomSibling );
+        }
+        if( parentPoms != null ) {
+            inputList.addAll( parentPoms );
+        }
+        File [] inputs = inputList.toArray( new File[ inputList.size() ] );
+
+        Entry entry = new Entry( inputs, meta );
+        entry.theIsUsed = true;
+
+        theEntries.put( jarFile.getAbsolutePath(), entry );
+        theIsDirty = true;
+    }
+
+    /**
+     * Write the index back to its file, if it has changed. Entries that were not looked up or
+     * put since the index was loaded are dropped, as their JAR files have gone away.
+     */
+    public void save()
+    {
+        theEntries.values().removeIf( ( Entry e ) -> {
+                if( e.theIsUsed ) {
+                    return false;
+                }
+                theIsDirty = true;
+                return true;
+        } );
+        if( !theIsDirty ) {
+            return;
+        }
+
+        File tmp = new File( theFile.getPath() + ".tmp" );
+        try {
+            File parent = theFile.getAbsoluteFile().getParentFile();
+            if( parent != null && !parent.isDirectory() ) {
+                parent.mkdirs();
+            }
+            try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp )))) {
+                write( out );
+            }
+            Files.move( tmp.toPath(), theFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            theIsDirty = false;
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Cannot write module index " + theFile.getAbsolutePath(), ex );
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Read the entries from a stream.
+     *
+     * @param in the stream
+     * @throws IOException thrown if the stream could not be read, or has the wrong format
+     */
+    protected void read(
+            DataInputStream in )
+        throws
+            IOException
+    {
+        if( in.readInt() != MAGIC ) {
+            throw new IOException( "Not a module index" );
+        }
+        int formatVersion = in.readInt();
+        if( formatVersion != FORMAT_VERSION ) {
+            throw new IOException( "Unsupported module index format version " + formatVersion );
+        }
+
+        int nEntries = in.readInt();
+        for( int i=0 ; i<nEntries ; ++i ) {
+            String key = in.readUTF();
+
+            int     nInputs     = in.readInt();
+            File [] inputs      = new File[ nInputs ];
+            long [] inputSizes  = new long[ nInputs ];
+            long [] inputMtimes = new long[ nInputs ];
+            for( int j=0 ; j<nInputs ; ++j ) {
+                inputs[j]      = new File( in.readUTF() );
+                inputSizes[j]  = in.readLong();
+                inputMtimes[j] = in.readLong();
+            }
+
+            Entry entry;
+            if( in.readBoolean() ) {
+                String groupId             = readNullableUTF( in );
+                String artifactId          = in.readUTF();
+                String version             = readNullableUTF( in );
+                String activationClassName = readNullableUTF( in );
+                String runClassName        = readNullableUTF( in );
+
+                ModuleRequirement [] requirements = new ModuleRequirement[ in.readInt() ];
+                for( int j=0 ; j<requirements.length ; ++j ) {
+                    String  reqGroupId    = readNullableUTF( in );
+                    String  reqArtifactId = in.readUTF();
+                    String  reqVersion    = readNullableUTF( in );
+                    boolean reqIsOptional = in.readBoolean();
+
+                    requirements[j] = ModuleRequirement.create( reqGroupId, reqArtifactId, reqVersion, reqIsOptional );
+                }
+                entry = new Entry( inputs, inputSizes, inputMtimes, groupId, artifactId, version, activationClassName, runClassName, requirements );
+            } else {
+                entry = new Entry( inputs, inputSizes, inputMtimes, null, null, null, null, null, null );
+            }
+            theEntries.put( key, entry );
+        }
+    }
+
+    /**
+     * Write the entries to a stream.
+     *
+     * @param out the stream
+     * @throws IOException thrown if the stream could not be written
+     */
+    protected void write(
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        out.writeInt( MAGIC );
+        out.writeInt( FORMAT_VERSION );
+        out.writeInt( theEntries.size() );
+
+        for( Map.Entry<String,Entry> current : theEntries.entrySet() ) {
+            Entry entry = current.getValue();
+
+            out.writeUTF( current.getKey() );
+            out.writeInt( entry.theInputs.length );
+            for( int j=0 ; j<entry.theInputs.length ; ++j ) {
+                out.writeUTF( entry.theInputs[j].getPath() );
+                out.writeLong( entry.theInputSizes[j] );
+                out.writeLong( entry.theInputMtimes[j] );
+            }
+
+            out.writeBoolean( entry.providesModule() );
+            if( entry.providesModule() ) {
+                writeNullableUTF( out, entry.theGroupId );
+                out.writeUTF( entry.theArtifactId );
+                writeNullableUTF( out, entry.theVersion );
+                writeNullableUTF( out, entry.theActivationClassName );
+                writeNullableUTF( out, entry.theRunClassName );
+
+                out.writeInt( entry.theRequirements.length );
+                for( ModuleRequirement req : entry.theRequirements ) {
+                    writeNullableUTF( out, req.getRequiredModuleGroupId() );
+                    out.writeUTF( req.getRequiredModuleArtifactId() );
+                    writeNullableUTF( out, req.getUninterpretedRequiredModuleVersion() );
+                    out.writeBoolean( req.isOptional() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper to read a String that may be null.
+     *
+     * @param in the stream
+     * @return the String, or null
+     * @throws IOException thrown if the stream could not be read
+     */
+    protected static String readNullableUTF(
+            DataInputStream in )
+        throws
+            IOException
+    {
+        if( in.readBoolean() ) {
+            return in.readUTF();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Helper to write a String that may be null.
+     *
+     * @param out the stream
+     * @param s the String, or null
+     * @throws IOException thrown if the stream could not be written
+     */
+    protected static void writeNullableUTF(
+            DataOutputStream out,
+            String           s )
+        throws
+            IOException
+    {
+        if( s != null ) {
+            out.writeBoolean( true );
+            out.writeUTF( s );
+        } else {
+            out.writeBoolean( false );
+        }
+    }
+
+    /**
+     * The file that contains the index.
+     */
+    protected final File theFile;
+
+    /**
+     * The entries in the index, keyed by the absolute path of the JAR file.
+     */
+    protected final HashMap<String,Entry> theEntries = new HashMap<>();
+
+    /**
+     * Set to true if the index needs to be written back.
+     */
+    protected boolean theIsDirty = false;
+
+    /**
+     * Identifies a file as a module index.
+     */
+    protected static final int MAGIC = 0x64346a69; // "d4ji"
+
+    /**
+     * Version of the file format. Increment when making incompatible changes.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ModuleMetaIndex.class.getName() );
+
+    /**
+     * One entry in the index.
+     */
+    public static class Entry
+    {
+        /**
+         * Constructor for an entry created from a freshly parsed ModuleMeta.
+         *
+         * @param inputs the files that went into the ModuleMeta; the JAR file comes first
+         * @param meta the ModuleMeta, or null if the JAR file does not contain a Module
+         */
+        protected Entry(
+                File []    inputs,
+                ModuleMeta meta )
+        {
+            theInputs      = inputs;
+            theInputSizes  = new long[ inputs.length ];
+            theInputMtimes = new long[ inputs.length ];
+
+            for( int i=0 ; i<inputs.length ; ++i ) {
+                theInputSizes[i]  = inputs[i].length();
+                theInputMtimes[i] = inputs[i].lastModified();
+            }
+            if( meta != null ) {
+                theGroupId             = meta.getModuleGroupId();
+                theArtifactId          = meta.getModuleArtifactId();
+                theVersion             = meta.getModuleVersion();
+                theActivationClassName = meta.getActivationClassName();
+                theRunClassName        = meta.getRunClassName();
+                theRequirements        = meta.getRuntimeModuleRequirements();
+            }
+        }
+
+        /**
+         * Constructor for an entry read from the index file.
+         *
+         * @param inputs the files that went into the ModuleMeta; the JAR file comes first
+         * @param inputSizes the sizes of the inputs when the entry was created
+         * @param inputMtimes the last-modified times of the inputs when the entry was created
+         * @param groupId the groupId of the Module
+         * @param artifactId the artifactId of the Module, or null if the JAR file does not contain a Module
+         * @param version the version of the Module
+         * @param activationClassName name of the Module's activation/deactivation class, or null
+         * @param runClassName name of the Module's run class, or null
+         * @param requirements the ModuleRequirements of the Module at run time
+         */
+        protected Entry(
+                File []              inputs,
+                long []              inputSizes,
+                long []              inputMtimes,
+                String               groupId,
+                String               artifactId,
+                String               version,
+                String               activationClassName,
+                String               runClassName,
+                ModuleRequirement [] requirements )
+        {
+            theInputs              = inputs;
+            theInputSizes          = inputSizes;
+            theInputMtimes         = inputMtimes;
+            theGroupId             = groupId;
+            theArtifactId          = artifactId;
+            theVersion             = version;
+            theActivationClassName = activationClassName;
+            theRunClassName        = runClassName;
+            theRequirements        = requirements;
+        }
+
+        /**
+         * Determine whether the JAR file contains a Module.
+         *
+         * @return true if it does
+         */
+        public boolean providesModule()
+        {
+            return theArtifactId != null;
+        }
+
+        /**
+         * Re-create the ModuleMeta from this entry.
+         *
+         * @param jar the JAR file
+         * @return the ModuleMeta, or null if the JAR file does not contain a Module
+         */
+        public ModuleMeta createModuleMeta(
+                File jar )
+        {
+            if( !providesModule() ) {
+                return null;
+            }
+            return new ModuleMeta(
+                    theGroupId,
+                    theArtifactId,
+                    theVersion,
+                    null,
+                    null,
+                    0,
+                    null,
+                    theRequirements,
+                    jar,
+                    theActivationClassName,
+                    theRunClassName );
+        }
+
+        /**
+         * Determine whether none of the inputs has changed since this entry was created.
+         * A sibling POM file that did not exist then must not exist now either. Parent POMs
+         * that went into the entry must not have changed either.
+         *
+         * @return true if the entry is current
+         */
+        protected boolean isCurrent()
+        {
+            for( int i=0 ; i<theInputs.length ; ++i ) {
+                if( theInputSizes[i] != theInputs[i].length() ) {
+                    return false;
+                }
+                if( theInputMtimes[i] != theInputs[i].lastModified() ) {
+                    return false;
+                }
+            }
+            File pomSibling = AbstractScanningModuleRegistry.pomSiblingOf( theInputs[0] );
+            if( pomSibling != null ) {
+                return theInputs.length > 1 && pomSibling.equals( theInputs[1] );
+            }
+            return true;
+        }
+
+        /**
+         * The files that went into the ModuleMeta. The JAR file comes first, followed by
+         * the sibling POM file if there is one, and the parent POM and BOM files, if any.
+         */
+        protected final File [] theInputs;
+
+        /**
+         * The sizes of the inputs when the entry was created.
+         */
+        protected final long [] theInputSizes;
+
+        /**
+         * The last-modified times of the inputs when the entry was created.
+         */
+        protected final long [] theInputMtimes;
+
+        /**
+         * The groupId of the Module.
+         */
+        protected String theGroupId;
+
+        /**
+         * The artifactId of the Module. Null if the JAR file does not contain a Module.
+         */
+        protected String theArtifactId;
+
+        /**
+         * The version of the Module.
+         */
+        protected String theVersion;
+
+        /**
+         * Name of the Module's activation/deactivation class, if any.
+         */
+        protected String theActivationClassName;
+
+        /**
+         * Name of the Module's run class, if any.
+         */
+        protected String theRunClassName;
+
+        /**
+         * The ModuleRequirements of the Module at run time.
+         */
+        protected ModuleRequirement [] theRequirements;
+
+        /**
+         * Set to true once the entry has been looked up or created during this run.
+         */
+        protected boolean theIsUsed = false;
+    }
+}
@@ -55,7 +55,7 @@ public class ModuleNotFoundException
 
         buf.append( theModuleMeta.toString() );
         buf.append( ", was looking for JAR file: " );
-        buf.append( theModuleMeta.getProvidesJar() );
+        buf.append( theModuleMeta.getProvidesJarFile() );
 
         return buf.toString();
     }
@@ -204,7 +204,7 @@ public class ModuleRequirement
         if( !theRequiredModuleArtifactId.equals( candidate.getModuleArtifactId()) ) {
             return false;
         }
-        return matchesVersionRequirement( candidate.getModuleVersion() );
+        return matchesVersionRequirement( candidate.getParsedModuleVersion() );
     }
 
     /**
@@ -232,6 +232,108 @@ public class ModuleRequirement
         return ret;
     }
     
+    /**
+     * Given ModuleMetas with the groupId and artifactId required by this ModuleRequirement,
+     * ordered by version with the newest first, find the matching versions. As the matching
+     * versions are adjacent, they are found by binary search, without comparing every candidate.
+     * 
+     * @param candidates the ModuleMeta candidates, newest first
+     * @return the matched ModuleMetas, newest first
+     */
+    public ModuleMeta [] findVersionMatchesFromOrdered(
+            ModuleMeta [] candidates )
+    {
+        int start;
+        int end;
+
+        if( theParsedMaxRequiredModuleVersion != null ) {
+            start = findFirstBelow( candidates, theParsedMaxRequiredModuleVersion, theMaxRequiredModuleVersionIsInclusive );
+        } else {
+            start = 0;
+        }
+        if( theParsedMinRequiredModuleVersion != null ) {
+            end = findFirstBelow( candidates, theParsedMinRequiredModuleVersion, !theMinRequiredModuleVersionIsInclusive );
+        } else {
+            end = candidates.length;
+        }
+
+        if( start >= end ) {
+            return new ModuleMeta[0];
+        }
+        ModuleMeta [] ret = new ModuleMeta[ end - start ];
+        System.arraycopy( candidates, start, ret, 0, ret.length );
+        return ret;
+    }
+
+    /**
+     * Like findVersionMatchesFromOrdered, but if this ModuleRequirement has a soft version
+     * requirement, such as a version given in, or managed by, a POM, and a candidate has exactly
+     * that version, return that candidate first, so it is the one that will be resolved.
+     * The other matches follow, newest first.
+     * 
+     * @param candidates the ModuleMeta candidates, newest first
+     * @return the matched ModuleMetas, the preferred one first
+     */
+    public ModuleMeta [] findVersionMatchesPreferredFirst(
+            ModuleMeta [] candidates )
+    {
+        ModuleMeta [] ret = findVersionMatchesFromOrdered( candidates );
+
+        if( theParsedSoftRequiredModuleVersion != null && ret.length > 1 ) {
+            int index = findFirstBelow( ret, theParsedSoftRequiredModuleVersion, true );
+            if(    index > 0
+                && index < ret.length
+                && isPreferredVersion( ret[index].getParsedModuleVersion() ))
+            {
+                ModuleMeta preferred = ret[index];
+                System.arraycopy( ret, 0, ret, 1, index );
+                ret[0] = preferred;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Determine whether a version is the one preferred by this ModuleRequirement, i.e.
+     * it has a soft version requirement for exactly this version.
+     * 
+     * @param version the parsed version
+     * @return true if it is preferred
+     */
+    public boolean isPreferredVersion(
+            ParsedVersion version )
+    {
+        return theParsedSoftRequiredModuleVersion != null && theParsedSoftRequiredModuleVersion.compareTo( version ) == 0;
+    }
+
+    /**
+     * Helper to find, by binary search, the index of the first ModuleMeta whose version
+     * is older than the provided version, in an array ordered with the newest first.
+     * 
+     * @param candidates the ModuleMetas, newest first
+     * @param version the version
+     * @param orEqual if true, find the first ModuleMeta whose version is older or equal instead
+     * @return the index, or candidates.length if there is none
+     */
+    protected static int findFirstBelow(
+            ModuleMeta [] candidates,
+            ParsedVersion version,
+            boolean       orEqual )
+    {
+        int low  = 0;
+        int high = candidates.length;
+        while( low < high ) {
+            int mid  = ( low + high ) >>> 1;
+            int comp = candidates[mid].getParsedModuleVersion().compareTo( version );
+            if( comp < 0 || ( comp == 0 && orEqual )) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
     /**
      * Determine whether the provided version String matches the version requirement
      * in this ModuleRequirement.
@@ -242,17 +344,21 @@ public class ModuleRequirement
     public boolean matchesVersionRequirement(
             String version )
     {
-        // for speed purposes, get exact min version requirement out of the way
-        if( theMinRequiredModuleVersionIsInclusive && version != null && version.equals( theMaxRequiredModuleVersion )) {
-            return true;
-        }
-        
-        ensureVersionsParsed();
-        
-        Object [][] parsedVersion = parseVersion( version );
+        return matchesVersionRequirement( ParsedVersion.parse( version ));
+    }
 
+    /**
+     * Determine whether the provided parsed version matches the version requirement
+     * in this ModuleRequirement.
+     * 
+     * @param version the parsed version
+     * @return true or false
+     */
+    public boolean matchesVersionRequirement(
+            ParsedVersion version )
+    {
         if( theParsedMinRequiredModuleVersion != null ) {
-            int comp = compareParsedVersions( theParsedMinRequiredModuleVersion, parsedVersion );
+            int comp = theParsedMinRequiredModuleVersion.compareTo( version );
             if( comp > 0 ) {
                 return false;
             }
@@ -262,7 +368,7 @@ public class ModuleRequirement
         }
  
         if( theParsedMaxRequiredModuleVersion != null ) {
-            int comp = compareParsedVersions( theParsedMaxRequiredModuleVersion, parsedVersion );
+            int comp = theParsedMaxRequiredModuleVersion.compareTo( version );
             if( comp < 0 ) {
                 return false;
             }
@@ -273,115 +379,12 @@ public class ModuleRequirement
         
         return true;
     }
-    
-    /**
-     * Compare two parsed versions.
-     * 
-     * @param a the first parsed version
-     * @param b the second parsed version
-     * @return -1, 0 or 1 like strcmp()
-     */
-    protected int compareParsedVersions(
-            Object [][] a,
-            Object [][] b )
-    {
-        int max = Math.min( a.length, b.length );
-        for( int i=0 ; i<max ; ++i ) {
-            if( a[i] != null ) {
-                if( b[i] != null ) {
-                    int found = compareParsedVersionParts( a[i], b[i] );
-                    if( found != 0 ) {
-                        return found;
-                    }
-                } else {
-                    return 1;
-                }
-            } else {
-                if( b[i] != null ) {
-                    return -1;
-                    
-                } else {
-                    // do nothing; should not really occur
-                }
-            }
-        }
-        if( a.length > max ) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-
-    /**
-     * Helper method to compare version parts.
-     * 
-     * @param a first version part
-     * @param b second version part
-     * @return -1, 0 or 1 like strcmp()
-     */
-    protected int compareParsedVersionParts(
-            Object [] a,
-            Object [] b )
-    {
-        int max = Math.min( a.length, b.length );
-        while( max > 0 && a[max-1] == null && b[max-1] == null ) {
-            --max;
-        }
-        if( max == 0 ) {
-            return 0;
-        }
-        for( int i=0 ; i<max ; ++i ) {
-            if( a[i] != null ) {
-                if( b[i] != null ) {
-                    if( a[i] instanceof String ) {
-                        if( b[i] instanceof String ) {
-                            int found = ((String)a[i]).compareTo( (String)b[i] );
-                            if( found != 0 ) {
-                                return found;
-                            }
-                        } else {
-                            return 1; // int before string
-                        }
-                    } else {
-                        if( b[i] instanceof String ) {
-                            return -1; // int before string
-                        } else {
-                            int found = ((Long)a[i]).compareTo( (Long)b[i] );
-                            if( found != 0 ) {
-                                return found;
-                            }
-                        }
-                    }
-                } else {
-                    return 1;
-                }
-            } else {
-                if( b[i] != null ) {
-                    return -1;
-                    
-                } else {
-                    return 0;
-                }
-            }
-        }
-        
-        if( a.length > max ) {
-            if( a[max] != null ) {
-                return 1; // so b[max] must not exist or be null
-            } else {
-                return -1;
-            }
-        } else {
-            if( b[max] != null ) {
-                return -1;
-            } else {
-                return 0;
-            }
-        }
-    }
 
     /**
      * Parse a version string, and set the properties on this instance accordingly.
+     * Like in Maven, a plain version is only a soft requirement that any version meets;
+     * only version ranges, including exact versions like [1.0], restrict the versions
+     * that match. Their bounds are parsed here once, so matching does not need to.
      * 
      * @param s the version string
      */
@@ -390,8 +393,9 @@ public class ModuleRequirement
     {
         theUninterpretedRequiredModuleVersion = s;
 
-        theParsedMinRequiredModuleVersion = null;
-        theParsedMaxRequiredModuleVersion = null;
+        theParsedMinRequiredModuleVersion  = null;
+        theParsedMaxRequiredModuleVersion  = null;
+        theParsedSoftRequiredModuleVersion = null;
 
         if( s == null ) {
             theMinRequiredModuleVersion = null;
@@ -405,89 +409,33 @@ public class ModuleRequirement
                 theMaxRequiredModuleVersion = m.group( 3 );
                 theMinRequiredModuleVersionIsInclusive = "[".equals( m.group( 1 ));
                 theMaxRequiredModuleVersionIsInclusive = "]".equals( m.group( 4 ));
+
+                if( !theMinRequiredModuleVersion.isEmpty() ) {
+                    theParsedMinRequiredModuleVersion = ParsedVersion.parse( theMinRequiredModuleVersion );
+                }
+                if( !theMaxRequiredModuleVersion.isEmpty() ) {
+                    theParsedMaxRequiredModuleVersion = ParsedVersion.parse( theMaxRequiredModuleVersion );
+                }
+
+            } else if( ( m = MAVEN_EXACT_VERSION_REGEX.matcher( s )).matches() ) {
+                theMinRequiredModuleVersion = m.group( 1 );
+                theMaxRequiredModuleVersion = m.group( 1 );
+                theMinRequiredModuleVersionIsInclusive = true;
+                theMaxRequiredModuleVersionIsInclusive = true;
+
+                theParsedMinRequiredModuleVersion = ParsedVersion.parse( theMinRequiredModuleVersion );
+                theParsedMaxRequiredModuleVersion = theParsedMinRequiredModuleVersion;
+
             } else {
+                // soft requirement
                 theMinRequiredModuleVersion = s;
                 theMaxRequiredModuleVersion = null;
                 theMinRequiredModuleVersionIsInclusive = true;
                 theMaxRequiredModuleVersionIsInclusive = true;
-            }
-        }
-    }
-
-    /**
-     * Ensure that the min and max versions have been parsed.
-     */
-    protected synchronized void ensureVersionsParsed()
-    {
-        if( theMinRequiredModuleVersion != null ) {
-            if( theParsedMinRequiredModuleVersion == null ) {
-                theParsedMinRequiredModuleVersion = parseVersion( theMinRequiredModuleVersion );
-            }
-        } else {
-            theParsedMinRequiredModuleVersion = null;
-        }
-        if( theMaxRequiredModuleVersion != null ) {
-            if( theParsedMaxRequiredModuleVersion == null ) {
-                theParsedMaxRequiredModuleVersion = parseVersion( theMaxRequiredModuleVersion );
-            }
-        } else {
-            theParsedMaxRequiredModuleVersion = null;
-        }        
-    }
 
-    /**
-     * Take a version string and parse it into its components.
-     * 
-     * @param v the version string
-     * @return the components, left to right
-     */
-    protected Object [][] parseVersion(
-            String v )
-    {
-        String []   major = v.split( "." );
-        Object [][] ret   = new Object[ major.length ][];
-        
-        for( int i=0 ; i<major.length ; ++i ) {
-            ret[i] = new Object[ major[i].length() ]; // over-allocated
-            
-            int count = 0;
-
-            StringBuilder currentString = null; // once non-null, we know we are parsing a string
-            long          currentLong   = -1;
-
-            for( int j=0 ; j<major[i].length() ; ++j ) {
-                char c = major[i].charAt( j );
-                if( Character.isDigit( c )) {
-                    if( currentString != null ) {
-                        ret[i][count++] = currentString.toString();
-                        currentString = null;
-                        
-                        currentLong = Character.digit( c, 10 );
-                    } else {
-                        if( currentLong == -1 ) {
-                            currentLong = Character.digit( c, 10 );
-                        } else {
-                            currentLong = currentLong * 10 + Character.digit( c, 10 );
-                        }
-                    }
-                } else {
-                    if( currentString != null ) {
-                        currentString.append( c );
-                    } else {
-                        currentString = new StringBuilder();
-                        currentString.append( c );
-                        ret[i][count++] = currentLong;
-                        currentLong = -1;
-                    }
-                }
-            }
-            if( currentString != null ) {
-                ret[i][count++] = currentString.toString();
-            } else if( currentLong != -1 ) {
-                ret[i][count++] = currentLong;
+                theParsedSoftRequiredModuleVersion = ParsedVersion.parse( s );
             }
         }
-        return ret;
     }
 
     /**
@@ -558,10 +506,10 @@ public class ModuleRequirement
     protected boolean theMinRequiredModuleVersionIsInclusive;
 
     /**
-     * Parsed form of the minimum version of the required Module.
-     * Calculated on demand.
+     * Parsed form of the minimum version of the required Module, or null if there is no
+     * minimum, or the version is only a soft requirement.
      */
-    protected Object [][] theParsedMinRequiredModuleVersion;
+    protected ParsedVersion theParsedMinRequiredModuleVersion;
 
     /**
      * The maximum version of the required Module.
@@ -574,10 +522,15 @@ public class ModuleRequirement
     protected boolean theMaxRequiredModuleVersionIsInclusive;
 
     /**
-     * Parsed form of the maximum version of the required Module.
-     * Calculated on demand.
+     * Parsed form of the maximum version of the required Module, or null if there is no maximum.
+     */
+    protected ParsedVersion theParsedMaxRequiredModuleVersion;
+
+    /**
+     * Parsed form of the soft version requirement, which any version meets, but which is
+     * preferred if available; null if the version requirement is not soft.
      */
-    protected Object [][] theParsedMaxRequiredModuleVersion;
+    protected ParsedVersion theParsedSoftRequiredModuleVersion;
 
     /**
      * Is this dependency optional.
@@ -588,5 +541,11 @@ public class ModuleRequirement
      * The regex defining Maven version expressions.
      */
     public static Pattern MAVEN_VERSION_REGEX = Pattern.compile(
-            "([\\[\\(])([^,\\[\\]\\(\\)]*),([^,\\[\\]\\(\\)]*)(\\]\\))" );
+            "([\\[\\(])([^,\\[\\]\\(\\)]*),([^,\\[\\]\\(\\)]*)([\\]\\)])" );
+
+    /**
+     * The regex defining Maven expressions for an exact version.
+     */
+    public static Pattern MAVEN_EXACT_VERSION_REGEX = Pattern.compile(
+            "\\[([^,\\[\\]\\(\\)]+)\\]" );
 }
@@ -0,0 +1,365 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which class names a ModuleClassLoader could not load, so the next attempt
+ * fails fast without searching again. The cache is bounded: it is split into segments,
+ * each of which evicts its least recently used entries once full. The segments are
+ * locked independently, so concurrent lookups rarely contend.
+ *
+ * One instance is usually shared by all ModuleClassLoaders created by the same
+ * ModuleRegistry. Entries are keyed by ClassLoader and class name, as a class missing
+ * from one ClassLoader may well be found by another one.
+ */
+public class NegativeLookupCache
+{
+    /**
+     * Constructor with the default number of segments.
+     *
+     * @param maxSize the maximum number of entries
+     */
+    public NegativeLookupCache(
+            int maxSize )
+    {
+        this( maxSize, DEFAULT_SEGMENTS );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of entries
+     * @param segments the number of independently locked segments; rounded up to a power of two
+     */
+    public NegativeLookupCache(
+            int maxSize,
+            int segments )
+    {
+        int n = 1;
+        while( n < segments ) {
+            n <<= 1;
+        }
+        int segmentSize = Math.max( 1, maxSize / n );
+
+        theSegments = new Segment[ n ];
+        for( int i=0 ; i<n ; ++i ) {
+            theSegments[i] = new Segment( segmentSize );
+        }
+        theMaxSize = segmentSize * n;
+    }
+
+    /**
+     * Determine whether the provided ClassLoader is known not to be able to load the class
+     * with the provided name.
+     *
+     * @param loader the ClassLoader
+     * @param name the class name
+     * @return true if the class is known to be missing
+     */
+    public boolean contains(
+            ClassLoader loader,
+            String      name )
+    {
+        Key     key = new Key( loader, name );
+        boolean ret;
+
+        Segment segment = segmentFor( key );
+        synchronized( segment ) {
+            ret = segment.get( key ) != null; // get, not containsKey, to update the LRU order
+        }
+        if( ret ) {
+            theHits.increment();
+        } else {
+            theMisses.increment();
+        }
+        return ret;
+    }
+
+    /**
+     * Remember that the provided ClassLoader cannot load the class with the provided name.
+     *
+     * @param loader the ClassLoader
+     * @param name the class name
+     */
+    public void add(
+            ClassLoader loader,
+            String      name )
+    {
+        Key key = new Key( loader, name );
+
+        Segment segment = segmentFor( key );
+        synchronized( segment ) {
+            segment.put( key, Boolean.TRUE );
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear()
+    {
+        for( Segment segment : theSegments ) {
+            synchronized( segment ) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Determine the current number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        int ret = 0;
+        for( Segment segment : theSegments ) {
+            synchronized( segment ) {
+                ret += segment.size();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxSize()
+    {
+        return theMaxSize;
+    }
+
+    /**
+     * Obtain the number of lookups that found the class to be known missing.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return theHits.sum();
+    }
+
+    /**
+     * Obtain the number of lookups that did not find the class to be known missing.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return theMisses.sum();
+    }
+
+    /**
+     * Obtain the number of entries that were evicted because the cache was full.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount()
+    {
+        return theEvictions.sum();
+    }
+
+    /**
+     * Obtain String representation.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName()
+                + "(size: "       + size() + "/" + theMaxSize
+                + ", hits: "      + getHitCount()
+                + ", misses: "    + getMissCount()
+                + ", evictions: " + getEvictionCount()
+                + ")";
+    }
+
+    /**
+     * Find the segment responsible for a key.
+     *
+     * @param key the key
+     * @return the segment
+     */
+    protected Segment segmentFor(
+            Key key )
+    {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return theSegments[ h & ( theSegments.length - 1 ) ];
+    }
+
+    /**
+     * The segments.
+     */
+    protected final Segment [] theSegments;
+
+    /**
+     * The maximum number of entries, across all segments.
+     */
+    protected final int theMaxSize;
+
+    /**
+     * Counts the hits.
+     */
+    protected final LongAdder theHits = new LongAdder();
+
+    /**
+     * Counts the misses.
+     */
+    protected final LongAdder theMisses = new LongAdder();
+
+    /**
+     * Counts the evictions.
+     */
+    protected final LongAdder theEvictions = new LongAdder();
+
+    /**
+     * Name of the system property that contains the maximum number of entries in the
+     * NegativeLookupCache of a ModuleRegistry.
+     */
+    public static final String MAX_SIZE_PROPERTY = "org.diet4j.core.negativecachesize";
+
+    /**
+     * The maximum number of entries in the NegativeLookupCache of a ModuleRegistry.
+     */
+    public static final int DEFAULT_MAX_SIZE = Integer.getInteger( MAX_SIZE_PROPERTY, 8192 );
+
+    /**
+     * The default number of segments.
+     */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * One segment of the cache: a LinkedHashMap in access order that evicts its eldest entry when full.
+     * Must be accessed while synchronized on the segment.
+     */
+    protected class Segment
+            extends
+                LinkedHashMap<Key,Boolean>
+    {
+        private static final long serialVersionUID = 1L; // helps with serialization
+
+        /**
+         * Constructor.
+         *
+         * @param maxSize the maximum number of entries in this segment
+         */
+        protected Segment(
+                int maxSize )
+        {
+            super( Math.min( maxSize, 16 ), 0.75f, true );
+
+            theSegmentMaxSize = maxSize;
+        }
+
+        /**
+         * Evict the least recently used entry once we are full.
+         *
+         * @param eldest the least recently used entry
+         * @return true if it shall be removed
+         */
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<Key,Boolean> eldest )
+        {
+            if( size() > theSegmentMaxSize ) {
+                theEvictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * The maximum number of entries in this segment.
+         */
+        protected final int theSegmentMaxSize;
+    }
+
+    /**
+     * The key of an entry: the ClassLoader, compared by identity, and the class name.
+     */
+    protected static final class Key
+    {
+        /**
+         * Constructor.
+         *
+         * @param loader the ClassLoader
+         * @param name the class name
+         */
+        protected Key(
+                ClassLoader loader,
+                String      name )
+        {
+            theLoader = loader;
+            theName   = name;
+            theHash   = System.identityHashCode( loader ) * 31 + name.hashCode();
+        }
+
+        /**
+         * Equality.
+         *
+         * @param other the Object to compare with
+         * @return true if equal
+         */
+        @Override
+        public boolean equals(
+                Object other )
+        {
+            if( !( other instanceof Key )) {
+                return false;
+            }
+            Key realOther = (Key) other;
+            return theLoader == realOther.theLoader && theName.equals( realOther.theName );
+        }
+
+        /**
+         * Hash code.
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode()
+        {
+            return theHash;
+        }
+
+        /**
+         * The ClassLoader.
+         */
+        protected final ClassLoader theLoader;
+
+        /**
+         * The class name.
+         */
+        protected final String theName;
+
+        /**
+         * The precomputed hash code.
+         */
+        protected final int theHash;
+    }
+}
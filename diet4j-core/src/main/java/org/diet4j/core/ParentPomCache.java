@@ -0,0 +1,485 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * Locates the parent POMs of the POMs found during a scan, and the BOMs they import
+ * in their dependencyManagement sections, and parses each of them once.
+ * They are looked for in the Maven repository layout that the child's file is in,
+ * and, for flat directories of modules, next to the child's file.
+ *
+ * May be used by several scanning threads at the same time. If two threads need the same
+ * parent at the same time, it may be parsed twice, but only one result is kept.
+ */
+public class ParentPomCache
+{
+    /**
+     * Constructor.
+     */
+    public ParentPomCache()
+    {}
+
+    /**
+     * Apply to a ParsedPom what it inherits from its parent POMs, if they can be found.
+     *
+     * @param dbf the XML parser factory, used if the DOM parser has been configured
+     * @param childFile the file that the ParsedPom, or the JAR file it belongs to, was read from
+     * @param child the ParsedPom
+     * @return the ParsedPom with inheritance applied, or the child itself if it has no parent or the parent cannot be found
+     */
+    public ParsedPom applyInheritance(
+            DocumentBuilderFactory dbf,
+            File                   childFile,
+            ParsedPom              child )
+    {
+        if( child.getParentArtifactId() == null ) {
+            return child;
+        }
+        return applyInheritance( dbf, childFile, child, new HashSet<>() );
+    }
+
+    /**
+     * Apply to a ParsedPom what it inherits from its parent POMs, keeping track of the
+     * POM files that are being looked at, to detect cycles.
+     *
+     * @param dbf the XML parser factory
+     * @param childFile the file that the ParsedPom, or the JAR file it belongs to, was read from
+     * @param child the freshly parsed ParsedPom
+     * @param seen the parent POM files being looked at in this thread
+     * @return the ParsedPom with inheritance applied, or the child itself, with the locations
+     *         of the parent recorded as unresolved
+     */
+    protected ParsedPom applyInheritance(
+            DocumentBuilderFactory dbf,
+            File                   childFile,
+            ParsedPom              child,
+            HashSet<File>          seen )
+    {
+        File parentFile = locateParent( childFile, child, child.theUnresolvedParents );
+        if( parentFile == null ) {
+            log.log( Level.FINE, "Cannot find parent POM of {0}", childFile );
+            return child;
+        }
+        ParsedPom parent = obtain( dbf, parentFile, seen );
+        if( parent == null ) {
+            child.theUnresolvedParents.add( parentFile );
+            return child;
+        }
+        return child.inheritFrom( parent, parentFile );
+    }
+
+    /**
+     * Determine the versions of the dependencies managed by a POM, keyed by groupId and artifactId,
+     * separated by a colon. Managed dependencies declared by the POM itself take precedence over
+     * those imported from BOMs; of the imported ones, the first import wins, as in Maven.
+     *
+     * @param dbf the XML parser factory, used if the DOM parser has been configured
+     * @param contextFile the file that the POM, or the JAR file it belongs to, was read from
+     * @param pom the POM, with inheritance from its parents applied
+     * @param properties replaces the properties in the POM's managed dependencies
+     * @param result the map to add the versions to; versions already in it are kept
+     * @param inputs the list to add the files of the imported BOMs to, including those that
+     *        were looked for but could not be found or read, or null
+     */
+    public void addManagedVersions(
+            DocumentBuilderFactory dbf,
+            File                   contextFile,
+            ParsedPom              pom,
+            PropertyExpander       properties,
+            Map<String,String>     result,
+            List<File>             inputs )
+    {
+        addManagedVersions( dbf, contextFile, pom, properties, result, inputs, new HashSet<>() );
+    }
+
+    /**
+     * Determine the versions of the dependencies managed by a POM, keeping track of the
+     * BOM files that are being imported, to detect cycles.
+     *
+     * @param dbf the XML parser factory
+     * @param contextFile the file that the POM, or the JAR file it belongs to, was read from
+     * @param pom the POM, with inheritance from its parents applied
+     * @param properties replaces the properties in the POM's managed dependencies
+     * @param result the map to add the versions to; versions already in it are kept
+     * @param inputs the list to add the files of the imported BOMs to, including those that
+     *        were looked for but could not be found or read, or null
+     * @param seen the BOM files being imported in this thread
+     */
+    protected void addManagedVersions(
+            DocumentBuilderFactory dbf,
+            File                   contextFile,
+            ParsedPom              pom,
+            PropertyExpander       properties,
+            Map<String,String>     result,
+            List<File>             inputs,
+            HashSet<File>          seen )
+    {
+        addDeclaredManagedVersions( pom, properties, result );
+
+        for( ParsedPom.Dependency managed : pom.getDependencyManagement() ) {
+            if( !managed.isImport() || managed.getArtifactId() == null ) {
+                continue;
+            }
+            String groupId    = properties.expand( managed.getGroupId() );
+            String artifactId = managed.getArtifactId();
+            String version    = properties.expand( managed.getVersion() );
+
+            File bomFile = locate( contextFile, pom, groupId, artifactId, version, inputs );
+            if( bomFile == null ) {
+                log.log( Level.FINE, "Cannot find BOM {0}:{1}:{2} imported by {3}", new Object[]{ groupId, artifactId, version, contextFile });
+                continue;
+            }
+            if( inputs != null ) {
+                inputs.add( bomFile );
+            }
+            ManagedVersions bom = obtainManagedVersions( dbf, bomFile, seen );
+            if( bom == null ) {
+                continue;
+            }
+            for( Map.Entry<String,String> current : bom.theVersions.entrySet() ) {
+                result.putIfAbsent( current.getKey(), current.getValue() );
+            }
+            if( inputs != null ) {
+                inputs.addAll( bom.theInputs );
+            }
+        }
+    }
+
+    /**
+     * Determine the versions of the dependencies managed by a POM itself, ignoring imports.
+     *
+     * @param pom the POM
+     * @param properties replaces the properties in the POM's managed dependencies
+     * @param result the map to add the versions to; versions already in it are kept
+     */
+    public static void addDeclaredManagedVersions(
+            ParsedPom          pom,
+            PropertyExpander   properties,
+            Map<String,String> result )
+    {
+        for( ParsedPom.Dependency managed : pom.getDependencyManagement() ) {
+            if( managed.isImport() || managed.getGroupId() == null || managed.getArtifactId() == null || managed.getVersion() == null ) {
+                continue;
+            }
+            String groupId = properties.expand( managed.getGroupId() );
+            String version = properties.expand( managed.getVersion() );
+            if( groupId != null && version != null ) {
+                result.putIfAbsent( groupId + ":" + managed.getArtifactId(), version );
+            }
+        }
+    }
+
+    /**
+     * Obtain the versions managed by a BOM, determining them if needed.
+     *
+     * @param dbf the XML parser factory
+     * @param bomFile the BOM file
+     * @param seen the BOM files being imported in this thread
+     * @return the managed versions, or null if the BOM cannot be read or imports itself
+     */
+    protected ManagedVersions obtainManagedVersions(
+            DocumentBuilderFactory dbf,
+            File                   bomFile,
+            HashSet<File>          seen )
+    {
+        ManagedVersions ret = theManagedVersions.get( bomFile );
+        if( ret == null ) {
+            if( !seen.add( bomFile )) {
+                log.log( Level.WARNING, "BOM imports itself: {0}", bomFile );
+                return null;
+            }
+            ParsedPom bom = obtain( dbf, bomFile, new HashSet<>() );
+            if( bom != null ) {
+                ret = new ManagedVersions();
+                ret.theInputs.addAll( bom.getInheritedFrom() );
+                ret.theInputs.addAll( bom.getUnresolvedParents() );
+                addManagedVersions( dbf, bomFile, bom, new PropertyExpander( propertiesOf( bom )), ret.theVersions, ret.theInputs, seen );
+            } else {
+                ret = ManagedVersions.UNAVAILABLE;
+            }
+            seen.remove( bomFile ); // the same BOM may be imported again elsewhere in the tree
+
+            ManagedVersions already = theManagedVersions.putIfAbsent( bomFile, ret );
+            if( already != null ) {
+                ret = already;
+            }
+        }
+        return ret != ManagedVersions.UNAVAILABLE ? ret : null;
+    }
+
+    /**
+     * Determine the properties of a POM that its own values refer to, including its coordinates.
+     *
+     * @param pom the POM, with inheritance from its parents applied
+     * @return the properties
+     */
+    protected static HashMap<String,String> propertiesOf(
+            ParsedPom pom )
+    {
+        HashMap<String,String> ret = new HashMap<>();
+        ret.put( "project.groupId",    pom.getGroupId() != null ? pom.getGroupId() : pom.getParentGroupId() );
+        ret.put( "project.artifactId", pom.getArtifactId() );
+        ret.put( "project.version",    pom.getVersion() != null ? pom.getVersion() : pom.getParentVersion() );
+        ret.putAll( pom.getProperties() );
+        return ret;
+    }
+
+    /**
+     * Obtain a parent POM, with inheritance from its own parents applied, parsing it if needed.
+     *
+     * @param dbf the XML parser factory
+     * @param pomFile the POM file
+     * @param seen the parent POM files being looked at in this thread
+     * @return the ParsedPom, or null if it cannot be read or inherits from itself
+     */
+    protected ParsedPom obtain(
+            DocumentBuilderFactory dbf,
+            File                   pomFile,
+            HashSet<File>          seen )
+    {
+        ParsedPom ret = theParsed.get( pomFile );
+        if( ret == null ) {
+            if( !seen.add( pomFile )) {
+                log.log( Level.WARNING, "Parent POM inherits from itself: {0}", pomFile );
+                return null;
+            }
+
+            ret = parse( dbf, pomFile );
+            if( ret != UNAVAILABLE && ret.getParentArtifactId() != null ) {
+                ret = applyInheritance( dbf, pomFile, ret, seen );
+            }
+            ParsedPom already = theParsed.putIfAbsent( pomFile, ret );
+            if( already != null ) {
+                ret = already;
+            }
+        }
+        return ret != UNAVAILABLE ? ret : null;
+    }
+
+    /**
+     * Parse a POM file.
+     *
+     * @param dbf the XML parser factory
+     * @param pomFile the POM file
+     * @return the ParsedPom, or UNAVAILABLE
+     */
+    protected static ParsedPom parse(
+            DocumentBuilderFactory dbf,
+            File                   pomFile )
+    {
+        try( InputStream in = new FileInputStream( pomFile )) {
+            ParsedPom ret = AbstractScanningModuleRegistry.parsePom( dbf, in );
+            if( ret != null ) {
+                return ret;
+            }
+        } catch( IOException|SAXException ex ) {
+            log.log( Level.WARNING, "Failed to read/parse parent POM {0}: {1}", new Object[]{ pomFile, ex.getMessage() });
+
+        } catch( ParserConfigurationException ex ) {
+            log.log( Level.SEVERE, "Failed to instantiate XML parser", ex );
+        }
+        return UNAVAILABLE;
+    }
+
+    /**
+     * Find the file containing the parent POM of a ParsedPom.
+     *
+     * @param childFile the file that the ParsedPom, or the JAR file it belongs to, was read from
+     * @param child the ParsedPom
+     * @param tried the list to add the locations to that were looked at, if the parent POM cannot be found, or null
+     * @return the parent POM file, or null if it cannot be found
+     */
+    protected static File locateParent(
+            File       childFile,
+            ParsedPom  child,
+            List<File> tried )
+    {
+        return locate( childFile, child, child.getParentGroupId(), child.getParentArtifactId(), child.getParentVersion(), tried );
+    }
+
+    /**
+     * Find the file containing a POM, given the POM that refers to it.
+     *
+     * @param childFile the file that the referring ParsedPom, or the JAR file it belongs to, was read from
+     * @param child the referring ParsedPom
+     * @param parentGroupId the groupId of the POM to find
+     * @param parentArtifactId the artifactId of the POM to find
+     * @param parentVersion the version of the POM to find
+     * @param tried the list to add the locations to that were looked at, if the POM cannot be found, or null
+     * @return the POM file, or null if it cannot be found
+     */
+    protected static File locate(
+            File       childFile,
+            ParsedPom  child,
+            String     parentGroupId,
+            String     parentArtifactId,
+            String     parentVersion,
+            List<File> tried )
+    {
+        if( !isLiteral( parentGroupId ) || !isLiteral( parentArtifactId ) || !isLiteral( parentVersion )) {
+            return null;
+        }
+        String parentPomName = parentArtifactId + "-" + parentVersion + ".pom";
+        File   dir           = childFile.getAbsoluteFile().getParentFile();
+        if( dir == null ) {
+            return null;
+        }
+
+        // Maven repository layout: <root>/<group path>/<artifactId>/<version>/<file>
+        File root = repositoryRootOf(
+                dir,
+                child.getGroupId()   != null ? child.getGroupId() : parentGroupId,
+                child.getArtifactId(),
+                child.getVersion()   != null ? child.getVersion() : parentVersion );
+        File inRepository = null;
+        if( root != null ) {
+            inRepository = new File(
+                    root,
+                    parentGroupId.replace( '.', File.separatorChar )
+                            + File.separatorChar + parentArtifactId
+                            + File.separatorChar + parentVersion
+                            + File.separatorChar + parentPomName );
+            if( inRepository.canRead() ) {
+                return inRepository;
+            }
+        }
+
+        // flat directory
+        File ret = new File( dir, parentPomName );
+        if( ret.canRead() ) {
+            return ret;
+        }
+
+        // the POM may still be installed later
+        if( tried != null ) {
+            if( inRepository != null ) {
+                tried.add( inRepository );
+            }
+            tried.add( ret );
+        }
+        return null;
+    }
+
+    /**
+     * Determine the root of the Maven repository that a directory belongs to, given the
+     * coordinates of the artifact in the directory.
+     *
+     * @param dir the directory
+     * @param groupId the groupId of the artifact
+     * @param artifactId the artifactId of the artifact
+     * @param version the version of the artifact
+     * @return the root of the Maven repository, or null if the directory is not laid out that way
+     */
+    protected static File repositoryRootOf(
+            File   dir,
+            String groupId,
+            String artifactId,
+            String version )
+    {
+        if( !isLiteral( groupId ) || !isLiteral( artifactId ) || !isLiteral( version )) {
+            return null;
+        }
+        if( !version.equals( dir.getName() )) {
+            return null;
+        }
+        dir = dir.getParentFile();
+        if( dir == null || !artifactId.equals( dir.getName() )) {
+            return null;
+        }
+        String [] groupIdParts = groupId.split( "\\." );
+        for( int i=groupIdParts.length-1 ; i>=0 ; --i ) {
+            dir = dir.getParentFile();
+            if( dir == null || !groupIdParts[i].equals( dir.getName() )) {
+                return null;
+            }
+        }
+        return dir.getParentFile();
+    }
+
+    /**
+     * Helper to determine whether a coordinate is given and does not need properties to be replaced.
+     *
+     * @param s the coordinate, or null
+     * @return true if it can be used as is
+     */
+    protected static boolean isLiteral(
+            String s )
+    {
+        return s != null && !s.isEmpty() && s.indexOf( '$' ) < 0;
+    }
+
+    /**
+     * The parent POMs parsed so far, with inheritance applied, keyed by their files.
+     */
+    protected final ConcurrentHashMap<File,ParsedPom> theParsed = new ConcurrentHashMap<>();
+
+    /**
+     * The versions managed by the BOMs imported so far, keyed by their files.
+     */
+    protected final ConcurrentHashMap<File,ManagedVersions> theManagedVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Marker for POM files that could not be read.
+     */
+    protected static final ParsedPom UNAVAILABLE = new ParsedPom();
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ParentPomCache.class.getName() );
+
+    /**
+     * The versions managed by a BOM, including those it imports itself.
+     */
+    protected static class ManagedVersions
+    {
+        /**
+         * The managed versions, keyed by groupId and artifactId, separated by a colon.
+         */
+        protected final LinkedHashMap<String,String> theVersions = new LinkedHashMap<>();
+
+        /**
+         * The parent POMs and imported BOMs that went into the managed versions.
+         */
+        protected final ArrayList<File> theInputs = new ArrayList<>();
+
+        /**
+         * Marker for BOMs that could not be read.
+         */
+        protected static final ManagedVersions UNAVAILABLE = new ManagedVersions();
+    }
+}
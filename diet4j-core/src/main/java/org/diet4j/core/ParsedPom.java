@@ -0,0 +1,864 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.CharConversionException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * The subset of the content of a Maven pom.xml file that diet4j cares about, as found
+ * in the file. No properties have been replaced, and nothing has been inherited from
+ * parent POMs, unless created by inheritFrom().
+ */
+public class ParsedPom
+{
+    /**
+     * Parse a POM by streaming through it, only looking at the elements we need.
+     *
+     * @param in the stream to read the POM from
+     * @return the ParsedPom, or null if the POM uses a character encoding the parser cannot handle
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    public static ParsedPom parseWithStax(
+            InputStream in )
+        throws
+            IOException,
+            SAXException
+    {
+        ParsedPom ret = new ParsedPom();
+
+        XMLStreamReader reader = null;
+        try {
+            reader = theXmlInputFactory.get().createXMLStreamReader( in );
+
+            while( reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT ) {
+                // skip to the root element
+            }
+            if( !reader.isStartElement() ) {
+                throw new SAXException( "No root element" );
+            }
+
+            while( nextChildElement( reader )) {
+                switch( reader.getLocalName() ) {
+                    case "groupId":
+                        ret.theGroupId = readText( reader );
+                        break;
+                    case "artifactId":
+                        ret.theArtifactId = readText( reader );
+                        break;
+                    case "version":
+                        ret.theVersion = readText( reader );
+                        break;
+                    case "properties":
+                        while( nextChildElement( reader )) {
+                            String name = reader.getLocalName();
+                            ret.theProperties.put( name, readText( reader ));
+                        }
+                        break;
+                    case "parent":
+                        while( nextChildElement( reader )) {
+                            switch( reader.getLocalName() ) {
+                                case "groupId":
+                                    ret.theParentGroupId = readText( reader );
+                                    break;
+                                case "artifactId":
+                                    ret.theParentArtifactId = readText( reader );
+                                    break;
+                                case "version":
+                                    ret.theParentVersion = readText( reader );
+                                    break;
+                                default:
+                                    skipElement( reader );
+                                    break;
+                            }
+                        }
+                        break;
+                    case "dependencies":
+                        readDependencies( reader, ret.theDependencies );
+                        break;
+                    case "dependencyManagement":
+                        while( nextChildElement( reader )) {
+                            if( "dependencies".equals( reader.getLocalName() )) {
+                                readDependencies( reader, ret.theDependencyManagement );
+                            } else {
+                                skipElement( reader );
+                            }
+                        }
+                        break;
+                    default:
+                        // build, profiles, reporting and the like
+                        skipElement( reader );
+                        break;
+                }
+            }
+            // we are at the end of the root element; do not bother reading the rest of the stream
+
+        } catch( XMLStreamException ex ) {
+            for( Throwable cause = ex ; cause != null ; cause = cause.getCause() ) {
+                if( cause instanceof CharConversionException ) {
+                    // happens when an XML document is in a weird character encoding, not something the parser can deal with
+                    return null;
+                }
+                if( cause instanceof XMLStreamException && ((XMLStreamException)cause).getNestedException() instanceof CharConversionException ) {
+                    return null;
+                }
+            }
+            throw new SAXException( ex.getMessage(), ex );
+
+        } finally {
+            if( reader != null ) {
+                try {
+                    reader.close();
+                } catch( XMLStreamException ex ) {
+                    // ignore
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Parse a POM by reading it into a DOM tree first. This is the traditional way of
+     * parsing, and mostly kept for comparison purposes.
+     *
+     * @param dbf the XML parser factory
+     * @param in the stream to read the POM from
+     * @return the ParsedPom, or null if the POM uses a character encoding the parser cannot handle
+     * @throws ParserConfigurationException misconfigured XML parser
+     * @throws IOException I/O error
+     * @throws SAXException XML syntax error
+     */
+    public static ParsedPom parseWithDom(
+            DocumentBuilderFactory dbf,
+            InputStream            in )
+        throws
+            ParserConfigurationException,
+            IOException,
+            SAXException
+    {
+        DocumentBuilder parser = dbf.newDocumentBuilder();
+        Document        doc;
+
+        // swallow everything, we get the exception anyway. If we don't set that error handler,
+        // some piece of code deep inside the JDK, in its wisdom, will print a "Fatal error"
+        // to stderr, having the guts to explain in a comment that this is a good thing because
+        // it addresses "the most frequent user complaint" with the parser.
+        parser.setErrorHandler( new ErrorHandler() {
+            @Override
+            public void fatalError( SAXParseException ex ) {}
+            @Override
+            public void error( SAXParseException ex ) {}
+            @Override
+            public void warning( SAXParseException ex ) {}
+        } );
+
+        try {
+            doc = parser.parse( in );
+        } catch( CharConversionException ex ) {
+            // happens when an XML document is in a weird character encoding, not something the parser can deal with
+            return null;
+        }
+
+        ParsedPom ret = new ParsedPom();
+
+        Element root = doc.getDocumentElement();
+        root.normalize();
+
+        NodeList rootChildren = root.getChildNodes();
+        for( int i=0 ; i<rootChildren.getLength(); ++i ) {
+            Node   rootChild     = rootChildren.item( i );
+            String rootChildName = rootChild.getNodeName();
+
+            if( rootChildName == null ) {
+                continue;
+            }
+
+            switch( rootChildName ) {
+                case "groupId":
+                    ret.theGroupId = rootChild.getTextContent();
+                    break;
+                case "artifactId":
+                    ret.theArtifactId = rootChild.getTextContent();
+                    break;
+                case "version":
+                    ret.theVersion = rootChild.getTextContent();
+                    break;
+                case "properties":
+                    NodeList propertiesChildren = rootChild.getChildNodes();
+                    for( int j=0 ; j<propertiesChildren.getLength() ; ++j ) {
+                        Node   propertiesChild     = propertiesChildren.item( j );
+                        String propertiesChildName = propertiesChild.getNodeName();
+
+                        if( propertiesChild.getNodeType() != Node.ELEMENT_NODE ) {
+                            continue;
+                        }
+                        if( propertiesChildName == null ) {
+                            continue;
+                        }
+                        ret.theProperties.put( propertiesChildName, propertiesChild.getTextContent() );
+                    }
+                    break;
+                case "parent":
+                    NodeList parentChildren = rootChild.getChildNodes();
+                    for( int j=0 ; j<parentChildren.getLength() ; ++j ) {
+                        Node   parentChild     = parentChildren.item( j );
+                        String parentChildName = parentChild.getNodeName();
+
+                        if( parentChildName == null ) {
+                            continue;
+                        }
+                        switch( parentChildName ) {
+                            case "groupId":
+                                ret.theParentGroupId = parentChild.getTextContent();
+                                break;
+                            case "artifactId":
+                                ret.theParentArtifactId = parentChild.getTextContent();
+                                break;
+                            case "version":
+                                ret.theParentVersion = parentChild.getTextContent();
+                                break;
+                        }
+                    }
+                    break;
+                case "dependencies":
+                    readDependencies( rootChild, ret.theDependencies );
+                    break;
+                case "dependencyManagement":
+                    NodeList managementChildren = rootChild.getChildNodes();
+                    for( int j=0 ; j<managementChildren.getLength() ; ++j ) {
+                        Node managementChild = managementChildren.item( j );
+
+                        if( "dependencies".equals( managementChild.getNodeName() )) {
+                            readDependencies( managementChild, ret.theDependencyManagement );
+                        }
+                    }
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to read a dependencies element from a stream.
+     *
+     * @param reader the stream, positioned at the start of the dependencies element
+     * @param result the list to add the Dependencies to
+     * @throws XMLStreamException XML syntax error
+     */
+    protected static void readDependencies(
+            XMLStreamReader  reader,
+            List<Dependency> result )
+        throws
+            XMLStreamException
+    {
+        while( nextChildElement( reader )) {
+            if( "dependency".equals( reader.getLocalName() )) {
+                result.add( readDependency( reader ));
+            } else {
+                skipElement( reader );
+            }
+        }
+    }
+
+    /**
+     * Helper to read a dependencies element from a DOM tree.
+     *
+     * @param node the dependencies element
+     * @param result the list to add the Dependencies to
+     */
+    protected static void readDependencies(
+            Node             node,
+            List<Dependency> result )
+    {
+        NodeList dependenciesChildren = node.getChildNodes();
+        for( int j=0 ; j<dependenciesChildren.getLength() ; ++j ) {
+            Node   dependenciesChild     = dependenciesChildren.item( j );
+            String dependenciesChildName = dependenciesChild.getNodeName();
+
+            if( "dependency".equals( dependenciesChildName )) {
+                result.add( readDependency( dependenciesChild ));
+            }
+        }
+    }
+
+    /**
+     * Helper to read a dependency element from a stream.
+     *
+     * @param reader the stream, positioned at the start of the dependency element
+     * @return the Dependency
+     * @throws XMLStreamException XML syntax error
+     */
+    protected static Dependency readDependency(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        Dependency ret = new Dependency();
+
+        while( nextChildElement( reader )) {
+            switch( reader.getLocalName() ) {
+                case "groupId":
+                    ret.theGroupId = readText( reader );
+                    break;
+                case "artifactId":
+                    ret.theArtifactId = readText( reader );
+                    break;
+                case "version":
+                    ret.theVersion = readText( reader );
+                    break;
+                case "scope":
+                    ret.theScope = readText( reader );
+                    break;
+                case "type":
+                    ret.theType = readText( reader );
+                    break;
+                case "optional":
+                    ret.theIsOptional = "true".equalsIgnoreCase( readText( reader ));
+                    break;
+                default:
+                    skipElement( reader );
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to read a dependency element from a DOM tree.
+     *
+     * @param node the dependency element
+     * @return the Dependency
+     */
+    protected static Dependency readDependency(
+            Node node )
+    {
+        Dependency ret = new Dependency();
+
+        NodeList dependencyChildren = node.getChildNodes();
+        for( int k=0 ; k<dependencyChildren.getLength() ; ++k ) {
+            Node   dependencyChild     = dependencyChildren.item( k );
+            String dependencyChildName = dependencyChild.getNodeName();
+
+            if( dependencyChildName == null ) {
+                continue;
+            }
+
+            switch( dependencyChildName ) {
+                case "groupId":
+                    ret.theGroupId = dependencyChild.getTextContent();
+                    break;
+                case "artifactId":
+                    ret.theArtifactId = dependencyChild.getTextContent();
+                    break;
+                case "version":
+                    ret.theVersion = dependencyChild.getTextContent();
+                    break;
+                case "scope":
+                    ret.theScope = dependencyChild.getTextContent();
+                    break;
+                case "type":
+                    ret.theType = dependencyChild.getTextContent();
+                    break;
+                case "optional":
+                    ret.theIsOptional = "true".equalsIgnoreCase( dependencyChild.getTextContent() );
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to advance to the next child element of the current element. Unlike
+     * XMLStreamReader.nextTag(), this tolerates text and other content between elements,
+     * which the DOM-based parser ignores as well.
+     *
+     * @param reader the stream
+     * @return true if positioned at the start of a child element, false if at the end of the current element
+     * @throws XMLStreamException XML syntax error
+     */
+    protected static boolean nextChildElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        while( true ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                case XMLStreamConstants.END_DOCUMENT:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Helper to read all text contained in the current element, including text in
+     * nested elements, like DOM's getTextContent(). Leaves the stream positioned at
+     * the end of the current element.
+     *
+     * @param reader the stream, positioned at the start of an element
+     * @return the text
+     * @throws XMLStreamException XML syntax error
+     */
+    protected static String readText(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        String        first = null; // avoid the StringBuilder in the common case of a single text event
+        StringBuilder buf   = null;
+        int           depth = 1;
+
+        while( depth > 0 ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if( first == null ) {
+                        first = reader.getText();
+                    } else {
+                        if( buf == null ) {
+                            buf = new StringBuilder( first );
+                        }
+                        buf.append( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+                    }
+                    break;
+            }
+        }
+        if( buf != null ) {
+            return buf.toString();
+        } else if( first != null ) {
+            return first;
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Helper to skip the current element and everything it contains.
+     * Leaves the stream positioned at the end of the current element.
+     *
+     * @param reader the stream, positioned at the start of an element
+     * @throws XMLStreamException XML syntax error
+     */
+    protected static void skipElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        int depth = 1;
+        while( depth > 0 ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Private constructor, use factory methods.
+     */
+    protected ParsedPom()
+    {}
+
+    /**
+     * Create a new ParsedPom that combines this one with what it inherits from its parent,
+     * the way Maven does: properties, dependencies and managed dependencies of the parent
+     * are inherited, unless this POM declares them itself. The coordinates are not
+     * inherited, as the parent's are available separately. Properties are not replaced,
+     * as in Maven, they need to be replaced in the context of the child.
+     *
+     * @param parent the parent, with everything it inherits from its own parents already applied
+     * @param parentFile the file the parent was read from
+     * @return the combined ParsedPom
+     */
+    public ParsedPom inheritFrom(
+            ParsedPom parent,
+            File      parentFile )
+    {
+        ParsedPom ret = new ParsedPom();
+
+        ret.theGroupId          = theGroupId;
+        ret.theArtifactId       = theArtifactId;
+        ret.theVersion          = theVersion;
+        ret.theParentGroupId    = theParentGroupId;
+        ret.theParentArtifactId = theParentArtifactId;
+        ret.theParentVersion    = theParentVersion;
+
+        ret.theProperties.putAll( parent.theProperties );
+        ret.theProperties.putAll( theProperties );
+
+        inheritDependencies( parent.theDependencies,         theDependencies,         ret.theDependencies );
+        inheritDependencies( parent.theDependencyManagement, theDependencyManagement, ret.theDependencyManagement );
+
+        ret.theInheritedFrom.add( parentFile );
+        ret.theInheritedFrom.addAll( parent.theInheritedFrom );
+        ret.theUnresolvedParents.addAll( theUnresolvedParents );
+        ret.theUnresolvedParents.addAll( parent.theUnresolvedParents );
+
+        return ret;
+    }
+
+    /**
+     * Helper to combine inherited and declared dependencies. Declared dependencies override
+     * inherited ones with the same groupId and artifactId.
+     *
+     * @param inherited the inherited dependencies
+     * @param declared the declared dependencies
+     * @param result the list to add the combined dependencies to
+     */
+    protected static void inheritDependencies(
+            List<Dependency> inherited,
+            List<Dependency> declared,
+            List<Dependency> result )
+    {
+        if( inherited.isEmpty() ) {
+            result.addAll( declared );
+            return;
+        }
+        HashSet<String> declaredKeys = new HashSet<>();
+        for( Dependency current : declared ) {
+            declaredKeys.add( current.theGroupId + ":" + current.theArtifactId );
+        }
+        for( Dependency current : inherited ) {
+            if( !declaredKeys.contains( current.theGroupId + ":" + current.theArtifactId )) {
+                result.add( current );
+            }
+        }
+        result.addAll( declared );
+    }
+
+    /**
+     * Obtain the groupId as given in the POM.
+     *
+     * @return the groupId, or null if not given
+     */
+    public String getGroupId()
+    {
+        return theGroupId;
+    }
+
+    /**
+     * Obtain the artifactId as given in the POM.
+     *
+     * @return the artifactId, or null if not given
+     */
+    public String getArtifactId()
+    {
+        return theArtifactId;
+    }
+
+    /**
+     * Obtain the version as given in the POM.
+     *
+     * @return the version, or null if not given
+     */
+    public String getVersion()
+    {
+        return theVersion;
+    }
+
+    /**
+     * Obtain the groupId of the parent POM.
+     *
+     * @return the groupId, or null if not given
+     */
+    public String getParentGroupId()
+    {
+        return theParentGroupId;
+    }
+
+    /**
+     * Obtain the artifactId of the parent POM.
+     *
+     * @return the artifactId, or null if not given
+     */
+    public String getParentArtifactId()
+    {
+        return theParentArtifactId;
+    }
+
+    /**
+     * Obtain the version of the parent POM.
+     *
+     * @return the version, or null if not given
+     */
+    public String getParentVersion()
+    {
+        return theParentVersion;
+    }
+
+    /**
+     * Obtain the properties defined in the POM's properties section.
+     *
+     * @return the properties, in the sequence they were given
+     */
+    public Map<String,String> getProperties()
+    {
+        return theProperties;
+    }
+
+    /**
+     * Obtain the dependencies declared in the POM's dependencies section.
+     *
+     * @return the dependencies, in the sequence they were given
+     */
+    public List<Dependency> getDependencies()
+    {
+        return theDependencies;
+    }
+
+    /**
+     * Obtain the dependencies declared in the POM's dependencyManagement section.
+     *
+     * @return the managed dependencies, in the sequence they were given
+     */
+    public List<Dependency> getDependencyManagement()
+    {
+        return theDependencyManagement;
+    }
+
+    /**
+     * Obtain the files of the parent POMs that this ParsedPom has inherited from.
+     *
+     * @return the files, starting with the immediate parent; empty if nothing has been inherited
+     */
+    public List<File> getInheritedFrom()
+    {
+        return theInheritedFrom;
+    }
+
+    /**
+     * Obtain the files where a parent POM of this ParsedPom, or of one of its parents, was
+     * looked for but could not be found or read. Once any of them appears or changes,
+     * inheritance needs to be applied again.
+     *
+     * @return the files; empty if all parents were found
+     */
+    public List<File> getUnresolvedParents()
+    {
+        return theUnresolvedParents;
+    }
+
+    /**
+     * The groupId as given in the POM.
+     */
+    protected String theGroupId;
+
+    /**
+     * The artifactId as given in the POM.
+     */
+    protected String theArtifactId;
+
+    /**
+     * The version as given in the POM.
+     */
+    protected String theVersion;
+
+    /**
+     * The groupId of the parent POM.
+     */
+    protected String theParentGroupId;
+
+    /**
+     * The artifactId of the parent POM.
+     */
+    protected String theParentArtifactId;
+
+    /**
+     * The version of the parent POM.
+     */
+    protected String theParentVersion;
+
+    /**
+     * The properties defined in the POM.
+     */
+    protected final LinkedHashMap<String,String> theProperties = new LinkedHashMap<>();
+
+    /**
+     * The dependencies declared in the POM.
+     */
+    protected final ArrayList<Dependency> theDependencies = new ArrayList<>();
+
+    /**
+     * The dependencies declared in the POM's dependencyManagement section.
+     */
+    protected final ArrayList<Dependency> theDependencyManagement = new ArrayList<>();
+
+    /**
+     * The files of the parent POMs inherited from, if any.
+     */
+    protected final ArrayList<File> theInheritedFrom = new ArrayList<>();
+
+    /**
+     * The files where a parent POM was looked for but could not be found or read, if any.
+     */
+    protected final ArrayList<File> theUnresolvedParents = new ArrayList<>();
+
+    /**
+     * Creating an XMLInputFactory is expensive, so we keep one per Thread.
+     */
+    protected static final ThreadLocal<XMLInputFactory> theXmlInputFactory = ThreadLocal.withInitial( () -> {
+            XMLInputFactory ret = XMLInputFactory.newInstance();
+            ret.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+            ret.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+            return ret;
+    } );
+
+    /**
+     * A dependency declared in a POM.
+     */
+    public static class Dependency
+    {
+        /**
+         * Obtain the groupId of the dependency.
+         *
+         * @return the groupId, or null if not given
+         */
+        public String getGroupId()
+        {
+            return theGroupId;
+        }
+
+        /**
+         * Obtain the artifactId of the dependency.
+         *
+         * @return the artifactId, or null if not given
+         */
+        public String getArtifactId()
+        {
+            return theArtifactId;
+        }
+
+        /**
+         * Obtain the version of the dependency.
+         *
+         * @return the version, or null if not given
+         */
+        public String getVersion()
+        {
+            return theVersion;
+        }
+
+        /**
+         * Obtain the scope of the dependency.
+         *
+         * @return the scope, or null if not given
+         */
+        public String getScope()
+        {
+            return theScope;
+        }
+
+        /**
+         * Obtain the type of the dependency.
+         *
+         * @return the type, or null if not given
+         */
+        public String getType()
+        {
+            return theType;
+        }
+
+        /**
+         * Determine whether the dependency is optional.
+         *
+         * @return true if optional
+         */
+        public boolean isOptional()
+        {
+            return theIsOptional;
+        }
+
+        /**
+         * Determine whether this is a managed dependency that imports the managed
+         * dependencies of a BOM, instead of being one itself.
+         *
+         * @return true if it is an import
+         */
+        public boolean isImport()
+        {
+            return "import".equals( theScope );
+        }
+
+        /**
+         * The groupId of the dependency.
+         */
+        protected String theGroupId;
+
+        /**
+         * The artifactId of the dependency.
+         */
+        protected String theArtifactId;
+
+        /**
+         * The version of the dependency.
+         */
+        protected String theVersion;
+
+        /**
+         * The scope of the dependency.
+         */
+        protected String theScope;
+
+        /**
+         * The type of the dependency.
+         */
+        protected String theType;
+
+        /**
+         * Is the dependency optional.
+         */
+        protected boolean theIsOptional;
+    }
+}
@@ -0,0 +1,366 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.Serializable;
+
+/**
+ * A version String, split once into its numeric and alphabetic segments, so it can be
+ * compared to other versions repeatedly without parsing or allocating. The ordering is
+ * the same as AbstractScanningModuleRegistry.rpmvercmp().
+ *
+ * Common versions that consist of up to four dot-separated numbers, like 1.2.3, are
+ * also packed into a single long, so two such versions compare with a single instruction.
+ */
+public class ParsedVersion
+        implements
+            Comparable<ParsedVersion>,
+            Serializable
+{
+    private static final long serialVersionUID = 1L; // helps with serialization
+
+    /**
+     * Factory method.
+     *
+     * @param version the version String; null is treated like "0", as rpmvercmp() does
+     * @return the created ParsedVersion
+     */
+    public static ParsedVersion parse(
+            String version )
+    {
+        if( version == null ) {
+            return NULL_VERSION;
+        }
+        int    len      = version.length();
+        int [] segments = new int[ 3 * len ]; // over-allocated
+        int    count    = 0;
+
+        int i = 0;
+        while( i < len ) {
+            char c = version.charAt( i );
+            if( Character.isDigit( c )) {
+                int start = i;
+                while( i < len && version.charAt( i ) == '0' ) {
+                    ++i;
+                }
+                int digits = i;
+                while( i < len && Character.isDigit( version.charAt( i ))) {
+                    ++i;
+                }
+                segments[count++] = start;
+                segments[count++] = digits;
+                segments[count++] = i;
+
+            } else if( Character.isLetter( c )) {
+                int start = i;
+                while( i < len && Character.isLetter( version.charAt( i ))) {
+                    ++i;
+                }
+                segments[count++] = start;
+                segments[count++] = -1;
+                segments[count++] = i;
+
+            } else {
+                ++i; // separator
+            }
+        }
+        if( count < segments.length ) {
+            int [] tmp = new int[ count ];
+            System.arraycopy( segments, 0, tmp, 0, count );
+            segments = tmp;
+        }
+        return new ParsedVersion( version, segments );
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param version the version String
+     * @param segments start index, start index of the significant digits (or -1 if alphabetic),
+     *        and end index of each segment, in sequence
+     */
+    protected ParsedVersion(
+            String version,
+            int [] segments )
+    {
+        theVersion  = version;
+        theSegments = segments;
+        thePacked   = pack( version );
+    }
+
+    /**
+     * Pack a version that consists of up to four dot-separated numbers without leading
+     * zeros into a long, 16 bits per number, most significant first. Each number is
+     * stored incremented by one, so that a missing number sorts before any number, as
+     * it does in rpmvercmp(): 1.2 comes before 1.2.0.
+     *
+     * Comparing two packed versions as unsigned longs then gives the same result as
+     * rpmvercmp(): without leading zeros, the numbers of both versions are at the same
+     * positions in the String until the first different number, which decides.
+     *
+     * @param version the version String
+     * @return the packed version, or NOT_PACKED if the version cannot be packed
+     */
+    protected static long pack(
+            String version )
+    {
+        int  len   = version.length();
+        long ret   = 0L;
+        int  count = 0;
+        int  i     = 0;
+
+        while( true ) {
+            if( count == PACKED_NUMBERS || i >= len ) {
+                return NOT_PACKED;
+            }
+            char c = version.charAt( i );
+            if( c < '0' || c > '9' ) {
+                return NOT_PACKED;
+            }
+            int value = c - '0';
+            ++i;
+            if( value != 0 ) {
+                while( i < len && ( c = version.charAt( i )) >= '0' && c <= '9' ) {
+                    value = value * 10 + ( c - '0' );
+                    if( value > PACKED_MAX_NUMBER ) {
+                        return NOT_PACKED;
+                    }
+                    ++i;
+                }
+            } // else no leading zeros
+
+            ret |= ( value + 1L ) << ( 16 * ( PACKED_NUMBERS - 1 - count ));
+            ++count;
+
+            if( i == len ) {
+                return ret;
+            }
+            if( version.charAt( i ) != '.' ) {
+                return NOT_PACKED;
+            }
+            ++i;
+        }
+    }
+
+    /**
+     * Obtain the version String.
+     *
+     * @return the version String
+     */
+    public String getVersion()
+    {
+        return theVersion;
+    }
+
+    /**
+     * Compare this version with another, the way rpmvercmp() does.
+     *
+     * @param other the other version
+     * @return -1, 0, or 1 like strcmp
+     */
+    @Override
+    public int compareTo(
+            ParsedVersion other )
+    {
+        if( this == other ) {
+            return 0;
+        }
+        if( thePacked != NOT_PACKED && other.thePacked != NOT_PACKED ) {
+            return Long.compareUnsigned( thePacked, other.thePacked );
+        }
+        String a = theVersion;
+        String b = other.theVersion;
+        if( a.equals( b )) {
+            return 0;
+        }
+        int [] aSegments = theSegments;
+        int [] bSegments = other.theSegments;
+        int    aLen      = a.length();
+        int    bLen      = b.length();
+
+        int one = 0;
+        int two = 0;
+        int k   = 0;
+
+        while( one < aLen && two < bLen ) {
+            // skip the separators to the start of the next segments
+            one = k < aSegments.length ? aSegments[k] : aLen;
+            two = k < bSegments.length ? bSegments[k] : bLen;
+
+            if( one >= aLen || two >= bLen ) {
+                break;
+            }
+            if( one != two ) {
+                return ( one < two ) ? -1 : 1;
+            }
+
+            boolean isnum = aSegments[k+1] >= 0;
+            if( isnum != ( bSegments[k+1] >= 0 )) {
+                // numeric segments are always newer than alpha segments
+                return isnum ? 1 : -1;
+            }
+
+            int i1 = aSegments[k+2];
+            int i2 = bSegments[k+2];
+            if( isnum ) {
+                // without leading zeros, whichever number has more digits wins
+                one = aSegments[k+1];
+                two = bSegments[k+1];
+                if( i1 - one != i2 - two ) {
+                    return ( i1 - one > i2 - two ) ? 1 : -1;
+                }
+            }
+
+            int rc = compareRegions( a, one, i1, b, two, i2 );
+            if( rc != 0 ) {
+                return rc < 0 ? -1 : 1;
+            }
+
+            one = i1;
+            two = i2;
+            k  += 3;
+        }
+
+        if( one == aLen && two == bLen ) {
+            return 0;
+        }
+
+        // a remaining alpha string never beats an empty string
+        if(    ( one == aLen && !Character.isLetter( b.charAt( two )))
+            || ( one < aLen && Character.isLetter( a.charAt( one ))))
+        {
+            return -1;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Helper to compare two regions of two Strings, like String.compareTo() would
+     * compare the corresponding substrings.
+     *
+     * @param a the first String
+     * @param aStart start index of the region in the first String
+     * @param aEnd end index of the region in the first String
+     * @param b the second String
+     * @param bStart start index of the region in the second String
+     * @param bEnd end index of the region in the second String
+     * @return negative, 0, or positive like String.compareTo()
+     */
+    protected static int compareRegions(
+            String a,
+            int    aStart,
+            int    aEnd,
+            String b,
+            int    bStart,
+            int    bEnd )
+    {
+        int aRegionLen = aEnd - aStart;
+        int bRegionLen = bEnd - bStart;
+        int max        = Math.min( aRegionLen, bRegionLen );
+
+        for( int i=0 ; i<max ; ++i ) {
+            char c1 = a.charAt( aStart + i );
+            char c2 = b.charAt( bStart + i );
+            if( c1 != c2 ) {
+                return c1 - c2;
+            }
+        }
+        return aRegionLen - bRegionLen;
+    }
+
+    /**
+     * Determine equality. Two ParsedVersions are equal if their version Strings are.
+     *
+     * @param other the Object to compare against
+     * @return true if the objects are equal
+     */
+    @Override
+    public boolean equals(
+            Object other )
+    {
+        if( this == other ) {
+            return true;
+        }
+        if( other instanceof ParsedVersion ) {
+            return theVersion.equals( ((ParsedVersion)other).theVersion );
+        }
+        return false;
+    }
+
+    /**
+     * Hash code.
+     *
+     * @return hash code
+     */
+    @Override
+    public int hashCode()
+    {
+        return theVersion.hashCode();
+    }
+
+    /**
+     * Obtain a String representation, for debugging purposes.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        return theVersion;
+    }
+
+    /**
+     * The version String.
+     */
+    protected final String theVersion;
+
+    /**
+     * For each segment: its start index, the start index of its significant digits
+     * (or -1 if the segment is alphabetic), and its end index.
+     */
+    protected final int [] theSegments;
+
+    /**
+     * The version packed into a long, or NOT_PACKED.
+     */
+    protected final long thePacked;
+
+    /**
+     * Value of thePacked if the version could not be packed. No packed version is 0,
+     * as its first number is stored incremented by one.
+     */
+    protected static final long NOT_PACKED = 0L;
+
+    /**
+     * The maximum number of numbers in a packed version.
+     */
+    protected static final int PACKED_NUMBERS = 4;
+
+    /**
+     * The largest number that can be packed, so it still fits 16 bits once incremented.
+     */
+    protected static final int PACKED_MAX_NUMBER = 0xfffe;
+
+    /**
+     * The ParsedVersion used for null versions.
+     */
+    public static final ParsedVersion NULL_VERSION = parse( "0" );
+}
@@ -0,0 +1,118 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces ${name} placeholders in Strings with the values of properties, in a single pass
+ * over the String, without regular expressions. Property values may contain placeholders
+ * themselves; they are expanded when first needed, and remembered, so the properties
+ * of a POM are only expanded once however often they are used. A property that refers to
+ * itself, directly or indirectly, and a property that is not defined, are replaced with
+ * nothing.
+ *
+ * The properties must not change while a PropertyExpander is in use. Not thread-safe.
+ */
+public class PropertyExpander
+{
+    /**
+     * Constructor.
+     *
+     * @param properties the properties, keyed by name; values may be null for undefined properties
+     */
+    public PropertyExpander(
+            Map<String,String> properties )
+    {
+        theProperties = properties;
+    }
+
+    /**
+     * Replace the placeholders in a String. If nothing remains, return null.
+     *
+     * @param s the String
+     * @return the String with all placeholders replaced, or null
+     */
+    public String expand(
+            String s )
+    {
+        if( s == null ) {
+            return null;
+        }
+        int start = s.indexOf( "${" );
+        if( start < 0 ) {
+            return s.isEmpty() ? null : s; // common case: nothing to replace
+        }
+
+        StringBuilder buf = new StringBuilder( s.length() + 16 );
+        int           pos = 0;
+        while( start >= 0 ) {
+            int end = s.indexOf( '}', start + 2 );
+            if( end < 0 ) {
+                break; // unterminated, keep as is
+            }
+            buf.append( s, pos, start );
+
+            String value = valueOf( s.substring( start + 2, end ));
+            if( value != null ) {
+                buf.append( value );
+            }
+            pos   = end + 1;
+            start = s.indexOf( "${", pos );
+        }
+        buf.append( s, pos, s.length() );
+
+        return buf.length() > 0 ? buf.toString() : null;
+    }
+
+    /**
+     * Determine the value of a property, with the placeholders in it replaced.
+     *
+     * @param name the name of the property
+     * @return the value, or null if not defined
+     */
+    protected String valueOf(
+            String name )
+    {
+        String ret = theProperties.get( name );
+        if( ret == null || ret.indexOf( "${" ) < 0 ) {
+            return ret;
+        }
+        if( theExpanded.containsKey( name )) {
+            return theExpanded.get( name );
+        }
+        theExpanded.put( name, null ); // while expanding, a reference back to this property is undefined
+        ret = expand( ret );
+        theExpanded.put( name, ret );
+
+        return ret;
+    }
+
+    /**
+     * The properties.
+     */
+    protected final Map<String,String> theProperties;
+
+    /**
+     * The expanded values of the properties whose values contain placeholders, as far as needed so far.
+     */
+    protected final HashMap<String,String> theExpanded = new HashMap<>();
+}
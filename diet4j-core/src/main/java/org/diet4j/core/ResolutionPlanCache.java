@@ -0,0 +1,550 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache of the results of resolving root Modules. For each root ModuleMeta,
+ * remembers which ModuleMetas were chosen to meet the ModuleRequirements of all the
+ * ModuleMetas it recursively depends on, together with a fingerprint of the resolution
+ * candidates that were considered, see AbstractModuleRegistry.determineResolutionFingerprint.
+ * As long as the fingerprint is unchanged, the next resolution of the same root ModuleMeta
+ * replays the plan instead of trying resolution candidates.
+ * Otherwise, or if replaying fails, the root ModuleMeta is resolved as usual, and the plan
+ * is updated.
+ *
+ * This class is not thread-safe.
+ */
+public class ResolutionPlanCache
+{
+    /**
+     * Factory method. Read the cache from the provided file. If the file does not exist
+     * or cannot be read, the returned cache is empty.
+     *
+     * @param file the file that contains the cache
+     * @return the created ResolutionPlanCache
+     */
+    public static ResolutionPlanCache load(
+            File file )
+    {
+        ResolutionPlanCache ret = new ResolutionPlanCache( file );
+
+        if( file.exists() ) {
+            try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file )))) {
+                ret.read( in );
+
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Cannot read resolution plans {0}, resolving: {1}", new Object[] { file.getAbsolutePath(), ex.getMessage() } );
+                ret.thePlans.clear();
+                ret.theIsDirty = true;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param file the file that contains the cache
+     */
+    protected ResolutionPlanCache(
+            File file )
+    {
+        theFile = file;
+    }
+
+    /**
+     * Obtain the file that contains the cache.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return theFile;
+    }
+
+    /**
+     * Recursively resolve a root ModuleMeta in a ModuleRegistry, replaying the plan from the
+     * previous resolution if the resolution candidates it considered have not changed since.
+     *
+     * @param registry the ModuleRegistry
+     * @param root the root ModuleMeta
+     * @return the resolved Module
+     * @throws ModuleNotFoundException thrown if the Module could not be found
+     * @throws ModuleResolutionException thrown if the Module could not be resolved
+     */
+    public Module resolve(
+            AbstractModuleRegistry registry,
+            ModuleMeta             root )
+        throws
+            ModuleNotFoundException,
+            ModuleResolutionException
+    {
+        String key  = root.toString();
+        Plan   plan = thePlans.get( key );
+
+        if( plan != null ) {
+            Map<ModuleMeta,ModuleMeta []> planned = plan.toPlanned( registry, root );
+            if( planned == null ) {
+                log.log( Level.FINE, "Resolution plan for {0} refers to unknown modules, resolving", root );
+
+            } else if( !plan.isCurrent( registry, planned )) {
+                log.log( Level.FINE, "Resolution candidates for {0} have changed, resolving", root );
+
+            } else {
+                try {
+                    Module ret = registry.resolve( root, planned );
+
+                    log.log( Level.FINE, "Replayed resolution plan for {0}", root );
+                    return ret;
+
+                } catch( ModuleNotFoundException | ModuleResolutionException ex ) {
+                    log.log( Level.WARNING, "Replaying the resolution plan for " + root + " failed, resolving", ex );
+                }
+            }
+        }
+
+        Module ret = registry.resolve( root );
+
+        Plan newPlan = Plan.create( registry, ret );
+        if( !newPlan.equals( plan )) {
+            thePlans.put( key, newPlan );
+            theIsDirty = true;
+        }
+        return ret;
+    }
+
+    /**
+     * Write the cache back to its file, if it has changed.
+     */
+    public void save()
+    {
+        if( !theIsDirty ) {
+            return;
+        }
+
+        File tmp = new File( theFile.getPath() + ".tmp" );
+        try {
+            File parent = theFile.getAbsoluteFile().getParentFile();
+            if( parent != null && !parent.isDirectory() ) {
+                parent.mkdirs();
+            }
+            try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp )))) {
+                write( out );
+            }
+            Files.move( tmp.toPath(), theFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            theIsDirty = false;
+
+        } catch( IOException ex ) {
+            log.log( Level.WARNING, "Cannot write resolution plans " + theFile.getAbsolutePath(), ex );
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Read the plans from a stream.
+     *
+     * @param in the stream
+     * @throws IOException thrown if the stream could not be read, or has the wrong format
+     */
+    protected void read(
+            DataInputStream in )
+        throws
+            IOException
+    {
+        if( in.readInt() != MAGIC ) {
+            throw new IOException( "Not a resolution plan cache" );
+        }
+        int formatVersion = in.readInt();
+        if( formatVersion != FORMAT_VERSION ) {
+            throw new IOException( "Unsupported resolution plan cache format version " + formatVersion );
+        }
+
+        int nPlans = in.readInt();
+        for( int i=0 ; i<nPlans ; ++i ) {
+            String key = in.readUTF();
+
+            byte [] fingerprint = new byte[ in.readInt() ];
+            in.readFully( fingerprint );
+
+            int       nEntries     = in.readInt();
+            String [] groupIds     = new String[ nEntries ];
+            String [] artifactIds  = new String[ nEntries ];
+            String [] versions     = new String[ nEntries ];
+            int [][]  dependencies = new int[ nEntries ][];
+
+            for( int j=0 ; j<nEntries ; ++j ) {
+                groupIds[j]     = ModuleMetaIndex.readNullableUTF( in );
+                artifactIds[j]  = in.readUTF();
+                versions[j]     = ModuleMetaIndex.readNullableUTF( in );
+                dependencies[j] = new int[ in.readInt() ];
+                for( int k=0 ; k<dependencies[j].length ; ++k ) {
+                    dependencies[j][k] = in.readInt();
+                    if( dependencies[j][k] >= j ) {
+                        throw new IOException( "Invalid dependency in resolution plan for " + key );
+                    }
+                }
+            }
+            thePlans.put( key, new Plan( fingerprint, groupIds, artifactIds, versions, dependencies ));
+        }
+    }
+
+    /**
+     * Write the plans to a stream.
+     *
+     * @param out the stream
+     * @throws IOException thrown if the stream could not be written
+     */
+    protected void write(
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        out.writeInt( MAGIC );
+        out.writeInt( FORMAT_VERSION );
+        out.writeInt( thePlans.size() );
+
+        for( Map.Entry<String,Plan> current : thePlans.entrySet() ) {
+            Plan plan = current.getValue();
+
+            out.writeUTF( current.getKey() );
+            out.writeInt( plan.theFingerprint.length );
+            out.write( plan.theFingerprint );
+
+            out.writeInt( plan.theArtifactIds.length );
+            for( int j=0 ; j<plan.theArtifactIds.length ; ++j ) {
+                ModuleMetaIndex.writeNullableUTF( out, plan.theGroupIds[j] );
+                out.writeUTF( plan.theArtifactIds[j] );
+                ModuleMetaIndex.writeNullableUTF( out, plan.theVersions[j] );
+                out.writeInt( plan.theDependencies[j].length );
+                for( int k=0 ; k<plan.theDependencies[j].length ; ++k ) {
+                    out.writeInt( plan.theDependencies[j][k] );
+                }
+            }
+        }
+    }
+
+    /**
+     * The file that contains the cache.
+     */
+    protected final File theFile;
+
+    /**
+     * The plans, keyed by the String representation of the root ModuleMeta.
+     */
+    protected final HashMap<String,Plan> thePlans = new HashMap<>();
+
+    /**
+     * Set to true if the cache needs to be written back.
+     */
+    protected boolean theIsDirty = false;
+
+    /**
+     * Identifies a file as a resolution plan cache.
+     */
+    protected static final int MAGIC = 0x64346a70; // "d4jp"
+
+    /**
+     * Version of the file format. Increment when making incompatible changes.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( ResolutionPlanCache.class.getName() );
+
+    /**
+     * The plan for one root ModuleMeta. Lists the ModuleMetas it recursively depends on,
+     * each one after the ModuleMetas it depends on, and the root ModuleMeta last.
+     */
+    public static class Plan
+    {
+        /**
+         * Factory method. Create the plan from a resolved Module.
+         *
+         * @param registry the ModuleRegistry that resolved the Module
+         * @param root the resolved root Module
+         * @return the created Plan
+         */
+        public static Plan create(
+                AbstractModuleRegistry registry,
+                Module                 root )
+        {
+            ArrayList<Module>               modules = new ArrayList<>();
+            ArrayList<int []>               deps    = new ArrayList<>();
+            IdentityHashMap<Module,Integer> indices = new IdentityHashMap<>();
+
+            add( registry, root, modules, deps, indices );
+
+            String []       groupIds    = new String[ modules.size() ];
+            String []       artifactIds = new String[ groupIds.length ];
+            String []       versions    = new String[ groupIds.length ];
+            ModuleMeta []   metas       = new ModuleMeta[ groupIds.length ];
+            ModuleMeta [][] chosen      = new ModuleMeta[ groupIds.length ][];
+            for( int i=0 ; i<groupIds.length ; ++i ) {
+                metas[i]       = modules.get( i ).getModuleMeta();
+                groupIds[i]    = metas[i].getModuleGroupId();
+                artifactIds[i] = metas[i].getModuleArtifactId();
+                versions[i]    = metas[i].getModuleVersion();
+
+                chosen[i] = new ModuleMeta[ deps.get( i ).length ];
+                for( int j=0 ; j<chosen[i].length ; ++j ) {
+                    if( deps.get( i )[j] >= 0 ) {
+                        chosen[i][j] = modules.get( deps.get( i )[j] ).getModuleMeta();
+                    }
+                }
+            }
+            byte [] fingerprint = registry.determineResolutionFingerprint( metas, chosen );
+
+            return new Plan( fingerprint, groupIds, artifactIds, versions, deps.toArray( new int[ deps.size() ][] ));
+        }
+
+        /**
+         * Helper to add a Module to the plan, after the Modules it depends on.
+         *
+         * @param registry the ModuleRegistry that resolved the Module
+         * @param module the Module
+         * @param modules the Modules in the plan so far
+         * @param deps the indices of the dependencies of the Modules in the plan so far
+         * @param indices the index of each Module in the plan so far
+         * @return the index of the Module
+         */
+        protected static int add(
+                ModuleRegistry                  registry,
+                Module                          module,
+                ArrayList<Module>               modules,
+                ArrayList<int []>               deps,
+                IdentityHashMap<Module,Integer> indices )
+        {
+            Integer found = indices.get( module );
+            if( found != null ) {
+                return found;
+            }
+            Module [] dependencies = registry.determineRuntimeDependencies( module );
+            int []    depIndices   = new int[ dependencies != null ? dependencies.length : 0 ];
+
+            for( int i=0 ; i<depIndices.length ; ++i ) {
+                if( dependencies[i] != null ) {
+                    depIndices[i] = add( registry, dependencies[i], modules, deps, indices );
+                } else {
+                    depIndices[i] = -1;
+                }
+            }
+            int ret = modules.size();
+            modules.add( module );
+            deps.add( depIndices );
+            indices.put( module, ret );
+            return ret;
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param fingerprint the fingerprint of the resolution candidates considered when the plan was created
+         * @param groupIds the groupIds of the ModuleMetas in the plan
+         * @param artifactIds the artifactIds of the ModuleMetas in the plan
+         * @param versions the versions of the ModuleMetas in the plan
+         * @param dependencies for each ModuleMeta in the plan, the indices of the ModuleMetas
+         *        chosen to meet its ModuleRequirements, or -1 if none
+         */
+        protected Plan(
+                byte []   fingerprint,
+                String [] groupIds,
+                String [] artifactIds,
+                String [] versions,
+                int [][]  dependencies )
+        {
+            theFingerprint  = fingerprint;
+            theGroupIds     = groupIds;
+            theArtifactIds  = artifactIds;
+            theVersions     = versions;
+            theDependencies = dependencies;
+        }
+
+        /**
+         * Look up the ModuleMetas in the plan in the ModuleRegistry, and assemble the planned
+         * dependencies in the form needed by AbstractModuleRegistry.resolve.
+         *
+         * @param registry the ModuleRegistry
+         * @param root the root ModuleMeta
+         * @return the planned dependencies, keyed by ModuleMeta, or null if the plan does not
+         *         fit the ModuleRegistry
+         */
+        public Map<ModuleMeta,ModuleMeta []> toPlanned(
+                ModuleRegistry registry,
+                ModuleMeta     root )
+        {
+            if( theArtifactIds.length == 0 ) {
+                return null;
+            }
+            ModuleMeta [] metas = new ModuleMeta[ theArtifactIds.length ];
+            for( int i=0 ; i<metas.length ; ++i ) {
+                metas[i] = find( registry, theGroupIds[i], theArtifactIds[i], theVersions[i] );
+                if( metas[i] == null ) {
+                    return null;
+                }
+            }
+            if( !root.equals( metas[ metas.length-1 ] )) {
+                return null;
+            }
+
+            HashMap<ModuleMeta,ModuleMeta []> ret = new HashMap<>();
+            for( int i=0 ; i<metas.length ; ++i ) {
+                ModuleMeta [] dependencies = new ModuleMeta[ theDependencies[i].length ];
+                for( int j=0 ; j<dependencies.length ; ++j ) {
+                    if( theDependencies[i][j] >= 0 ) {
+                        dependencies[j] = metas[ theDependencies[i][j] ];
+                    }
+                }
+                ret.put( metas[i], dependencies );
+            }
+            return ret;
+        }
+
+        /**
+         * Determine whether resolving the ModuleMetas in the plan would still make the same
+         * choices, because the relevant resolution candidates have not changed.
+         *
+         * @param registry the ModuleRegistry
+         * @param planned the planned dependencies, as returned by toPlanned
+         * @return true if the plan can be replayed
+         */
+        public boolean isCurrent(
+                AbstractModuleRegistry        registry,
+                Map<ModuleMeta,ModuleMeta []> planned )
+        {
+            ModuleMeta []   metas  = new ModuleMeta[ theArtifactIds.length ];
+            ModuleMeta [][] chosen = new ModuleMeta[ metas.length ][];
+            for( int i=0 ; i<metas.length ; ++i ) {
+                metas[i] = find( registry, theGroupIds[i], theArtifactIds[i], theVersions[i] );
+                if( metas[i] == null ) {
+                    return false;
+                }
+                chosen[i] = planned.get( metas[i] );
+            }
+            return Arrays.equals( theFingerprint, registry.determineResolutionFingerprint( metas, chosen ));
+        }
+
+        /**
+         * Helper to find the ModuleMeta with the given coordinates in the ModuleRegistry.
+         *
+         * @param registry the ModuleRegistry
+         * @param groupId the groupId
+         * @param artifactId the artifactId
+         * @param version the version
+         * @return the ModuleMeta, or null if not found
+         */
+        protected static ModuleMeta find(
+                ModuleRegistry registry,
+                String         groupId,
+                String         artifactId,
+                String         version )
+        {
+            // all versions, compared exactly: a version is not necessarily valid in a Maven range
+            ModuleRequirement req = ModuleRequirement.create( groupId, artifactId );
+
+            for( ModuleMeta candidate : registry.determineResolutionCandidates( req )) {
+                if(    Objects.equals( groupId, candidate.getModuleGroupId() )
+                    && Objects.equals( version, candidate.getModuleVersion() ))
+                {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Determine equality.
+         *
+         * @param other the Object to compare against
+         * @return true if the objects are equal
+         */
+        @Override
+        public boolean equals(
+                Object other )
+        {
+            if( !( other instanceof Plan )) {
+                return false;
+            }
+            Plan realOther = (Plan) other;
+            return Arrays.equals( theFingerprint, realOther.theFingerprint )
+                && Arrays.equals( theGroupIds, realOther.theGroupIds )
+                && Arrays.equals( theArtifactIds, realOther.theArtifactIds )
+                && Arrays.equals( theVersions, realOther.theVersions )
+                && Arrays.deepEquals( theDependencies, realOther.theDependencies );
+        }
+
+        /**
+         * Hash code.
+         *
+         * @return hash code
+         */
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode( theFingerprint );
+        }
+
+        /**
+         * The fingerprint of the resolution candidates considered when the plan was created.
+         */
+        protected final byte [] theFingerprint;
+
+        /**
+         * The groupIds of the ModuleMetas in the plan.
+         */
+        protected final String [] theGroupIds;
+
+        /**
+         * The artifactIds of the ModuleMetas in the plan.
+         */
+        protected final String [] theArtifactIds;
+
+        /**
+         * The versions of the ModuleMetas in the plan.
+         */
+        protected final String [] theVersions;
+
+        /**
+         * For each ModuleMeta in the plan, the indices of the ModuleMetas chosen to meet its
+         * ModuleRequirements, or -1 if none.
+         */
+        protected final int [][] theDependencies;
+    }
+}
@@ -25,7 +25,6 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.jar.JarFile;
 
 /**
  * A (mock) ModuleRegistry that can be used when all Modules are on the class path,
@@ -96,7 +95,7 @@ public class ScanningClasspathModuleRegistry
             IOException
     {
         Enumeration<URL>   metaInfoUrls = cl.getResources( "META-INF/" );
-        ArrayList<JarFile> jars         = new ArrayList<>();
+        ArrayList<File>    jars         = new ArrayList<>();
         ArrayList<File>    dirs         = new ArrayList<>();
 
         while( metaInfoUrls.hasMoreElements() ) {
@@ -115,8 +114,7 @@ public class ScanningClasspathModuleRegistry
                         jarFile = jarFile.substring( 0, excl );
                     }
 
-                    JarFile jar = new JarFile( jarFile );
-                    jars.add( jar );
+                    jars.add( new File( jarFile ));
                     break;
 
                 case "file":
@@ -129,7 +127,7 @@ public class ScanningClasspathModuleRegistry
         }
 
         HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
-        addParsedModuleMetasFromJars( jars, metas );          // looks into the JARs, from the top
+        addParsedModuleMetasFromJarFiles( jars, null, metas ); // looks into the JARs, from the top
         addParsedModuleMetasFromDirectories( dirs, metas );   // looks into META-INF dirs
 
         return metas;
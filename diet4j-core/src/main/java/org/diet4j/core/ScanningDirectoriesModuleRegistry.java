@@ -27,14 +27,16 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.jar.JarFile;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Upon instantiation, recursively scans the provided directory to look for available Modules.
- * Keeps list of available Modules in memory and does not rescan.
+ * Keeps list of available Modules in memory and does not rescan; see
+ * WatchingDirectoriesModuleRegistry for a ModuleRegistry that does.
  */
 public class ScanningDirectoriesModuleRegistry
     extends
@@ -62,12 +64,53 @@ public class ScanningDirectoriesModuleRegistry
     public static ScanningDirectoriesModuleRegistry create(
             File []   dirs,
             String [] doNotLoadClassPrefixes )
+    {
+        return create( dirs, doNotLoadClassPrefixes, null );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param dirs the directories to scan
+     * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
+     * @param indexFile file containing a ModuleMetaIndex that allows us to skip parsing JARs that have not changed
+     *        since the previous scan, or null if none. It will be created or updated as needed.
+     * @return the created ScanningDirectoriesModuleRegistry
+     */
+    public static ScanningDirectoriesModuleRegistry create(
+            File []   dirs,
+            String [] doNotLoadClassPrefixes,
+            File      indexFile )
     {
         if( dirs == null || dirs.length == 0 ) {
             dirs = DEFAULT_MODULE_DIRECTORIES;
         }
 
-        List<JarFile> jars     = new ArrayList<>();
+        List<File> jarFiles = findJarFiles( dirs );
+
+        ModuleMetaIndex index = indexFile != null ? ModuleMetaIndex.load( indexFile ) : null;
+
+        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
+        addParsedModuleMetasFromJarFiles( jarFiles, index, metas );
+
+        if( index != null ) {
+            index.save();
+        }
+
+        ScanningDirectoriesModuleRegistry ret = new ScanningDirectoriesModuleRegistry( dirs, metas, doNotLoadClassPrefixes );
+        return ret;
+    }
+
+    /**
+     * Recursively find the JAR and WAR files in the provided directories.
+     *
+     * @param dirs the directories
+     * @return the JAR and WAR files found
+     */
+    protected static List<File> findJarFiles(
+            File [] dirs )
+    {
+        List<File> jarFiles = new ArrayList<>();
         for( int i=0 ; i<dirs.length ; ++i ) {
 
             if( !dirs[i].exists() ) {
@@ -78,33 +121,32 @@ public class ScanningDirectoriesModuleRegistry
                 throw new IllegalArgumentException( "Not a directory: " + dirs[i].getAbsolutePath() );
             }
 
-            try {
-                List<JarFile> newJars = Files.walk( dirs[i].toPath() )
-                        .filter( ( Path f ) -> {
-                                String name = f.getFileName().toString();
-                                return name.endsWith( ".jar" ) || name.endsWith( ".war" ); } )
+            try( Stream<Path> walk = Files.walk( dirs[i].toPath() )) {
+                List<File> newJarFiles = walk
+                        .filter( ( Path f ) -> isJarFile( f ))
                         .filter( f -> Files.isRegularFile( f, LinkOption.NOFOLLOW_LINKS ))
-                        .map( (Path f ) -> {
-                                try {
-                                    return new JarFile( f.toFile() );
-                                } catch( IOException ex ) {
-                                    log.log( Level.SEVERE, "Cannot access {0}: {1}", new Object[]{ f.toString(), ex.getLocalizedMessage() });
-                                    return null;
-                                }} )
-                        .filter( f-> ( f != null )) // happens if previous step returned null
+                        .map( Path::toFile )
                         .collect( Collectors.toList() );
-                jars.addAll( newJars );
+                jarFiles.addAll( newJarFiles );
 
             } catch( IOException ex ) {
                 log.log( Level.SEVERE, "I/O Error", ex );
             }
         }
+        return jarFiles;
+    }
 
-        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
-        addParsedModuleMetasFromJars( jars, metas );
-
-        ScanningDirectoriesModuleRegistry ret = new ScanningDirectoriesModuleRegistry( dirs, metas, doNotLoadClassPrefixes );
-        return ret;
+    /**
+     * Determine whether a file is a JAR or WAR file, judging by its name.
+     *
+     * @param f the file
+     * @return true if it is
+     */
+    protected static boolean isJarFile(
+            Path f )
+    {
+        String name = f.getFileName().toString();
+        return name.endsWith( ".jar" ) || name.endsWith( ".war" );
     }
 
     /**
@@ -115,9 +157,9 @@ public class ScanningDirectoriesModuleRegistry
      * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
      */
     protected ScanningDirectoriesModuleRegistry(
-            File []                           dirs,
-            HashMap<String,MiniModuleMetaMap> metas,
-            String []                         doNotLoadClassPrefixes )
+            File []                       dirs,
+            Map<String,MiniModuleMetaMap> metas,
+            String []                     doNotLoadClassPrefixes )
     {
         super( metas, doNotLoadClassPrefixes );
 
@@ -0,0 +1,445 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Scans the provided directories like ScanningDirectoriesModuleRegistry, and then keeps
+ * watching them. JAR files that are added or modified later are parsed, and the Modules
+ * they contain are added to the registry, and announced to the ModuleRegistryListeners.
+ * Modules never go away: deleted JAR files are ignored, and a modified JAR file
+ * that provides a version of a Module that is known already does not replace it.
+ */
+public class WatchingDirectoriesModuleRegistry
+    extends
+        ScanningDirectoriesModuleRegistry
+{
+    /**
+     * Factory method. The returned registry does not watch until startWatching() has been called.
+     *
+     * @param dirs the directories to scan and to watch
+     * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
+     * @param indexFile file containing a ModuleMetaIndex that allows us to skip parsing JARs that have not changed
+     *        since the previous scan, or null if none. It will be created or updated as needed, also while watching.
+     * @return the created WatchingDirectoriesModuleRegistry
+     */
+    public static WatchingDirectoriesModuleRegistry create(
+            File []   dirs,
+            String [] doNotLoadClassPrefixes,
+            File      indexFile )
+    {
+        if( dirs == null || dirs.length == 0 ) {
+            dirs = DEFAULT_MODULE_DIRECTORIES;
+        }
+
+        List<File> jarFiles = findJarFiles( dirs );
+
+        ModuleMetaIndex index = indexFile != null ? ModuleMetaIndex.load( indexFile ) : null;
+
+        // later additions are published copy-on-write, see publishModuleMetas()
+        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
+        addParsedModuleMetasFromJarFiles( jarFiles, index, metas );
+
+        if( index != null ) {
+            index.save();
+        }
+
+        WatchingDirectoriesModuleRegistry ret = new WatchingDirectoriesModuleRegistry( dirs, metas, index, doNotLoadClassPrefixes );
+        for( File jarFile : jarFiles ) {
+            ret.theJarFileStamps.put( jarFile, stampOf( jarFile ));
+        }
+        return ret;
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param dirs the directories that were scanned
+     * @param metas the ModuleMetas found during boot, keyed by their name, and then ordered by version
+     * @param index the ModuleMetaIndex to keep up to date, or null
+     * @param doNotLoadClassPrefixes prefixes of classes always to be loaded through the system class loader, not this one
+     */
+    protected WatchingDirectoriesModuleRegistry(
+            File []                       dirs,
+            Map<String,MiniModuleMetaMap> metas,
+            ModuleMetaIndex               index,
+            String []                     doNotLoadClassPrefixes )
+    {
+        super( dirs, metas, doNotLoadClassPrefixes );
+
+        theIndex = index;
+    }
+
+    /**
+     * Start watching the directories in a background thread. Does nothing if watching already.
+     *
+     * @throws IOException thrown if the directories could not be watched
+     */
+    public synchronized void startWatching()
+        throws
+            IOException
+    {
+        if( theWatchThread != null ) {
+            return;
+        }
+        theWatchService = FileSystems.getDefault().newWatchService();
+        theWatchedDirectories.clear();
+
+        // JAR files may have been added since the scan, but before we started watching
+        LinkedHashSet<File> initial = new LinkedHashSet<>();
+        for( File dir : theDirectories ) {
+            if( dir.isDirectory() ) {
+                initial.addAll( registerRecursively( theWatchService, dir.toPath() ));
+            }
+        }
+
+        WatchService watchService = theWatchService;
+        theWatchThread = new Thread( () -> watch( watchService, initial ), "diet4j-watch" );
+        theWatchThread.setDaemon( true );
+        theWatchThread.start();
+    }
+
+    /**
+     * Stop watching the directories. Does nothing if not watching. Returns once the watching
+     * thread has finished processing any changes, unless called from the watching thread itself,
+     * e.g. by a ModuleRegistryListener.
+     */
+    public void stopWatching()
+    {
+        Thread watchThread;
+        synchronized( this ) {
+            if( theWatchThread == null ) {
+                return;
+            }
+            try {
+                theWatchService.close();
+            } catch( IOException ex ) {
+                log.log( Level.WARNING, "Failed to close WatchService", ex );
+            }
+            watchThread = theWatchThread;
+            watchThread.interrupt();
+
+            theWatchService = null;
+            theWatchThread  = null;
+        }
+
+        // not while holding our lock, which the watching thread needs to publish what it found
+        if( watchThread != Thread.currentThread() ) {
+            try {
+                watchThread.join();
+            } catch( InterruptedException ex ) {
+                log.log( Level.WARNING, "Interrupted while waiting for watching thread", ex );
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Determine whether the directories are being watched.
+     *
+     * @return true if they are
+     */
+    public synchronized boolean isWatching()
+    {
+        return theWatchThread != null;
+    }
+
+    /**
+     * Register a directory and all directories below it with the WatchService. Return the
+     * JAR files found in them while doing so, so files created before the registration
+     * of a new directory took effect are not missed.
+     *
+     * @param watchService the WatchService
+     * @param dir the directory
+     * @return the JAR files found
+     * @throws IOException thrown if the directory could not be walked or registered
+     */
+    protected List<File> registerRecursively(
+            WatchService watchService,
+            Path         dir )
+        throws
+            IOException
+    {
+        List<File> ret = new ArrayList<>();
+        try( Stream<Path> walk = Files.walk( dir )) {
+            for( Path p : (Iterable<Path>) walk::iterator ) {
+                if( Files.isDirectory( p, LinkOption.NOFOLLOW_LINKS )) {
+                    WatchKey key = p.register(
+                            watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY );
+                    theWatchedDirectories.put( key, p );
+
+                } else if( isJarFile( p ) && Files.isRegularFile( p, LinkOption.NOFOLLOW_LINKS )) {
+                    ret.add( p.toFile() );
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The main loop of the watching thread. Collects the changes until the directories have
+     * been quiet for a little while, so JAR files being copied are not parsed half-way,
+     * and then processes them as one batch.
+     *
+     * @param watchService the WatchService to take events from
+     * @param initial the JAR files found when starting to watch
+     */
+    protected void watch(
+            WatchService watchService,
+            Set<File>    initial )
+    {
+        try {
+            processChanges( initial );
+
+            while( true ) {
+                LinkedHashSet<File> changed = new LinkedHashSet<>();
+
+                WatchKey key = watchService.take();
+                while( key != null ) {
+                    collectChanges( watchService, key, changed );
+                    key = watchService.poll( QUIET_PERIOD, TimeUnit.MILLISECONDS );
+                }
+                if( !changed.isEmpty() ) {
+                    processChanges( changed );
+                }
+            }
+        } catch( InterruptedException|ClosedWatchServiceException ex ) {
+            // stopWatching() was called
+
+        } catch( RuntimeException ex ) {
+            log.log( Level.SEVERE, "Stopped watching, watching thread failed", ex );
+
+        } finally {
+            // unless stopWatching() was called, allow startWatching() again
+            synchronized( this ) {
+                if( theWatchThread == Thread.currentThread() ) {
+                    try {
+                        theWatchService.close();
+                    } catch( IOException ex ) {
+                        log.log( Level.WARNING, "Failed to close WatchService", ex );
+                    }
+                    theWatchService = null;
+                    theWatchThread  = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the JAR files affected by the events of a WatchKey, and reset the WatchKey.
+     *
+     * @param watchService the WatchService that produced the WatchKey
+     * @param key the WatchKey
+     * @param changed the set of changed JAR files to add to
+     */
+    protected void collectChanges(
+            WatchService watchService,
+            WatchKey     key,
+            Set<File>    changed )
+    {
+        Path dir = theWatchedDirectories.get( key );
+
+        for( WatchEvent<?> event : key.pollEvents() ) {
+            if( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                // we lost track, so look at everything again
+                changed.addAll( findJarFiles( theDirectories ));
+                continue;
+            }
+            if( dir == null ) {
+                continue;
+            }
+            Path p = dir.resolve( (Path) event.context() );
+
+            if( Files.isDirectory( p, LinkOption.NOFOLLOW_LINKS )) {
+                if( event.kind() == StandardWatchEventKinds.ENTRY_CREATE ) {
+                    try {
+                        changed.addAll( registerRecursively( watchService, p ));
+                    } catch( IOException|UncheckedIOException ex ) {
+                        log.log( Level.WARNING, "Cannot watch {0}: {1}", new Object[]{ p.toString(), ex.getLocalizedMessage() });
+                    }
+                }
+
+            } else if( isJarFile( p )) {
+                changed.add( p.toFile() );
+
+            } else if( p.getFileName().toString().endsWith( ".pom" )) {
+                // the POM sibling of a JAR file may override what is in the JAR file
+                String name = p.toString();
+                File   jar  = new File( name.substring( 0, name.length()-3 ) + "jar" );
+                if( jar.isFile() ) {
+                    changed.add( jar );
+                }
+            }
+        }
+        if( !key.reset() ) {
+            theWatchedDirectories.remove( key );
+        }
+    }
+
+    /**
+     * Parse the JAR files that are new or have changed since we last looked at them, add the
+     * Modules they contain, and tell the ModuleRegistryListeners. A failure only affects this
+     * batch; the JAR files whose Modules could not be added are looked at again when they change.
+     *
+     * @param changed the candidate JAR files
+     */
+    protected void processChanges(
+            Set<File> changed )
+    {
+        synchronized( theProcessingLock ) {
+            try {
+                processChangesLocked( changed );
+
+            } catch( RuntimeException ex ) {
+                log.log( Level.SEVERE, "Failed to process changes to " + changed, ex );
+            }
+        }
+    }
+
+    /**
+     * Parse the JAR files that are new or have changed, while holding theProcessingLock.
+     *
+     * @param changed the candidate JAR files
+     */
+    protected void processChangesLocked(
+            Set<File> changed )
+    {
+        List<File>    toParse = new ArrayList<>( changed.size() );
+        List<long []> stamps  = new ArrayList<>( changed.size() );
+        for( File jarFile : changed ) {
+            if( !jarFile.isFile() ) {
+                continue; // was deleted again
+            }
+            long [] stamp = stampOf( jarFile );
+            long [] known = theJarFileStamps.get( jarFile );
+            if( known == null || known[0] != stamp[0] || known[1] != stamp[1] ) {
+                toParse.add( jarFile );
+                stamps.add( stamp );
+            }
+        }
+        if( toParse.isEmpty() ) {
+            return;
+        }
+
+        ModuleMeta [] metas = parseModuleMetasFromJarFiles( toParse, theIndex, DEFAULT_SCAN_PARALLELISM );
+
+        ArrayList<ModuleMeta> found = new ArrayList<>( metas.length );
+        for( int i=0 ; i<metas.length ; ++i ) {
+            if( metas[i] != null ) {
+                found.add( metas[i] );
+            }
+        }
+        // all Modules of the batch become visible at the same time
+        List<ModuleMeta> added = publishModuleMetas( found );
+
+        for( int i=0 ; i<metas.length ; ++i ) {
+            // the stamp from before parsing: if the file was still being written, the next change is not skipped
+            theJarFileStamps.put( toParse.get( i ), stamps.get( i ));
+        }
+
+        if( theIndex != null ) {
+            theIndex.save();
+        }
+
+        for( ModuleMeta meta : added ) {
+            log.log( Level.INFO, "New module available: {0}", meta );
+            fireModuleAddedEvent( new ModuleRegistryEvent( this, meta ));
+        }
+    }
+
+    /**
+     * Determine what identifies a version of a JAR file: its length and its last modification time.
+     *
+     * @param jarFile the JAR file
+     * @return length and last modification time
+     */
+    protected static long [] stampOf(
+            File jarFile )
+    {
+        return new long[] { jarFile.length(), jarFile.lastModified() };
+    }
+
+    /**
+     * The ModuleMetaIndex to keep up to date, or null.
+     */
+    protected final ModuleMetaIndex theIndex;
+
+    /**
+     * The JAR files we have looked at, with the stamps they had when we did.
+     * Only used by the thread that created this registry, and then while holding theProcessingLock.
+     */
+    protected final HashMap<File,long []> theJarFileStamps = new HashMap<>();
+
+    /**
+     * Held while processing changes, so a watching thread that is still finishing up never
+     * overlaps with the next one on theJarFileStamps and the ModuleMetaIndex, which are not thread-safe.
+     */
+    protected final Object theProcessingLock = new Object();
+
+    /**
+     * The directories currently being watched, keyed by their WatchKeys.
+     */
+    protected final Map<WatchKey,Path> theWatchedDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * The WatchService, while watching.
+     */
+    protected WatchService theWatchService;
+
+    /**
+     * The watching thread, while watching.
+     */
+    protected Thread theWatchThread;
+
+    /**
+     * The time in milliseconds without further changes before the changes are processed.
+     */
+    public static final long QUIET_PERIOD = 1000L;
+
+    /**
+     * Logger.
+     */
+    private static final Logger log = Logger.getLogger( WatchingDirectoriesModuleRegistry.class.getName() );
+}
@@ -0,0 +1,112 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests AbstractScanningModuleRegistry.
+ */
+public class AbstractScanningModuleRegistryTest
+{
+    /**
+     * Readers looking up resolution candidates while ModuleMetas are being published see
+     * every batch either completely or not at all, and never fail.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testConcurrentPublish()
+        throws
+            Exception
+    {
+        AbstractScanningModuleRegistry registry = new AbstractScanningModuleRegistry( new HashMap<>(), new String[0] ) {};
+        ModuleRequirement              req      = ModuleRequirement.create( TestModules.GROUP_ID, "lib" );
+        AtomicReference<Throwable>     failure  = new AtomicReference<>();
+
+        Thread [] readers = new Thread[ READERS ];
+        for( int i=0 ; i<readers.length ; ++i ) {
+            readers[i] = new Thread( () -> {
+                try {
+                    int seen = 0;
+                    while( seen < 2 * BATCHES ) {
+                        ModuleMeta [] found = registry.determineResolutionCandidates( req );
+                        if( found.length % 2 != 0 ) {
+                            throw new AssertionError( "Partial batch: " + found.length );
+                        }
+                        if( found.length < seen ) {
+                            throw new AssertionError( "Lost ModuleMetas: " + found.length + " after " + seen );
+                        }
+                        seen = found.length;
+                        Thread.yield();
+                    }
+                } catch( Throwable ex ) {
+                    failure.compareAndSet( null, ex );
+                }
+            } );
+            readers[i].start();
+        }
+
+        for( int i=0 ; i<BATCHES ; ++i ) {
+            Assert.assertEquals(
+                    "published",
+                    2,
+                    registry.publishModuleMetas( Arrays.asList(
+                            createModuleMeta( i + ".0" ),
+                            createModuleMeta( i + ".1" ))).size() );
+            Thread.yield();
+        }
+        for( Thread reader : readers ) {
+            reader.join( 10000L );
+            Assert.assertFalse( "reader did not finish", reader.isAlive() );
+        }
+        if( failure.get() != null ) {
+            throw new AssertionError( "Reader failed", failure.get() );
+        }
+        Assert.assertEquals( "candidates", 2 * BATCHES, registry.determineResolutionCandidates( req ).length );
+    }
+
+    /**
+     * Create a version of the lib ModuleMeta without requirements or a JAR file.
+     *
+     * @param version the version of the Module
+     * @return the ModuleMeta
+     */
+    protected static ModuleMeta createModuleMeta(
+            String version )
+    {
+        return new ModuleMeta( TestModules.GROUP_ID, "lib", version, null, null, 0L, null, new ModuleRequirement[0], (File) null, null, null );
+    }
+
+    /**
+     * The number of batches to publish.
+     */
+    protected static final int BATCHES = 500;
+
+    /**
+     * The number of reading threads.
+     */
+    protected static final int READERS = 4;
+}
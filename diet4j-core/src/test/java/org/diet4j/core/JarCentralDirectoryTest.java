@@ -0,0 +1,281 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests JarCentralDirectory, comparing it with java.util.zip.
+ */
+public class JarCentralDirectoryTest
+{
+    /**
+     * Create the name of the JAR file.
+     *
+     * @throws IOException thrown if the file could not be created
+     */
+    @Before
+    public void setup()
+        throws
+            IOException
+    {
+        theJarFile = Files.createTempFile( "diet4j-dir", ".jar" ).toFile();
+    }
+
+    /**
+     * Delete the JAR file.
+     */
+    @After
+    public void cleanup()
+    {
+        theJarFile.delete();
+    }
+
+    /**
+     * Find entries, entry names and packages in a plain JAR, both read and mapped.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testFind()
+        throws
+            Exception
+    {
+        writeZip( theJarFile, null, createEntries(), null );
+
+        checkSameAsZipFile( JarCentralDirectory.read( theJarFile ));
+        checkSameAsZipFile( map( theJarFile ));
+    }
+
+    /**
+     * Find the end of the central directory before a trailing comment, also if the comment
+     * contains what looks like the signature of the end of the central directory.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testComment()
+        throws
+            Exception
+    {
+        StringBuilder comment = new StringBuilder();
+        for( int i=0 ; i<1000 ; ++i ) {
+            comment.append( "comment " );
+        }
+        writeZip( theJarFile, null, createEntries(), comment.toString() );
+        checkSameAsZipFile( JarCentralDirectory.read( theJarFile ));
+        checkSameAsZipFile( map( theJarFile ));
+
+        writeZip( theJarFile, null, createEntries(), "PK\u0005\u0006 looks like the end " + comment );
+        checkSameAsZipFile( JarCentralDirectory.read( theJarFile ));
+        checkSameAsZipFile( map( theJarFile ));
+    }
+
+    /**
+     * JARs with data prepended are left to java.util.zip.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testPrepended()
+        throws
+            Exception
+    {
+        writeZip( theJarFile, "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n", createEntries(), null );
+
+        try( ZipFile zip = new ZipFile( theJarFile )) {
+            Assert.assertNotNull( "java.util.zip cannot read it", zip.getEntry( "META-INF/MANIFEST.MF" ));
+        }
+        Assert.assertNull( "read", JarCentralDirectory.read( theJarFile ));
+        Assert.assertNull( "mapped", map( theJarFile ));
+    }
+
+    /**
+     * ZIP64 JARs are left to java.util.zip.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testZip64()
+        throws
+            Exception
+    {
+        LinkedHashMap<String,byte []> entries = new LinkedHashMap<>();
+        for( int i=0 ; i<=0xffff ; ++i ) { // one more than fits without ZIP64
+            entries.put( "e" + i, new byte[0] );
+        }
+        writeZip( theJarFile, null, entries, null );
+
+        try( ZipFile zip = new ZipFile( theJarFile )) {
+            Assert.assertEquals( "java.util.zip entries", entries.size(), zip.size() );
+        }
+        Assert.assertNull( "read", JarCentralDirectory.read( theJarFile ));
+        Assert.assertNull( "mapped", map( theJarFile ));
+    }
+
+    /**
+     * Check that a JarCentralDirectory of theJarFile finds what java.util.zip finds.
+     *
+     * @param dir the JarCentralDirectory
+     * @throws IOException thrown if reading failed
+     */
+    protected void checkSameAsZipFile(
+            JarCentralDirectory dir )
+        throws
+            IOException
+    {
+        Assert.assertNotNull( "cannot handle JAR", dir );
+
+        try( ZipFile zip = new ZipFile( theJarFile )) {
+            Assert.assertEquals( "entry count", zip.size(), dir.getEntryCount() );
+
+            ArrayList<String> metaInf  = new ArrayList<>();
+            HashSet<String>   packages = new HashSet<>();
+
+            Enumeration<? extends ZipEntry> iter = zip.entries();
+            while( iter.hasMoreElements() ) {
+                ZipEntry entry = iter.nextElement();
+                String   name  = entry.getName();
+
+                if( name.startsWith( "META-INF/" )) {
+                    metaInf.add( name );
+                }
+                if( name.endsWith( ".class" )) {
+                    int slash = name.lastIndexOf( '/' );
+                    packages.add( slash >= 0 ? name.substring( 0, slash ).replace( '/', '.' ) : "" );
+                }
+
+                int pos = dir.findEntry( name );
+                Assert.assertTrue( "not found: " + name, pos >= 0 );
+                Assert.assertEquals( "method of " + name,          entry.getMethod(),         dir.getMethod( pos ));
+                Assert.assertEquals( "size of " + name,            entry.getSize(),           dir.getSize( pos ));
+                Assert.assertEquals( "compressed size of " + name, entry.getCompressedSize(), dir.getCompressedSize( pos ));
+            }
+            Assert.assertEquals( "META-INF/ entries", metaInf,  dir.findEntryNames( "META-INF/" ));
+            Assert.assertEquals( "packages",          packages, dir.findPackages( "" ));
+            Assert.assertEquals( "missing entry",     -1,       dir.findEntry( "META-INF/missing" ));
+            Assert.assertEquals( "directory prefix",  -1,       dir.findEntry( "org/diet4j/" ));
+        }
+    }
+
+    /**
+     * Create the entries of a typical JAR.
+     *
+     * @return the content of the entries, keyed by name, in sequence
+     */
+    protected static Map<String,byte []> createEntries()
+    {
+        LinkedHashMap<String,byte []> ret = new LinkedHashMap<>();
+        ret.put( "META-INF/MANIFEST.MF",                          "Manifest-Version: 1.0\n".getBytes( StandardCharsets.UTF_8 ));
+        ret.put( "META-INF/maven/org.diet4j.test/test/pom.xml",   "<project/>".getBytes( StandardCharsets.UTF_8 ));
+        ret.put( "META-INF/services/org.diet4j.test.Service",     "org.diet4j.test.Impl\n".getBytes( StandardCharsets.UTF_8 ));
+        ret.put( "META-INF/\u00fcml\u00e4ut.txt",                   new byte[ 100 ] );
+        ret.put( "Default.class",                                 new byte[ 10 ] );
+        ret.put( "org/",                                          new byte[0] );
+        ret.put( "org/diet4j/test/A.class",                       new byte[ 1000 ] );
+        ret.put( "org/diet4j/test/B.class",                       new byte[ 2000 ] );
+        ret.put( "org/diet4j/test/sub/C.class",                   new byte[ 10 ] );
+        ret.put( "org/diet4j/test/resource.properties",           "a=b\n".getBytes( StandardCharsets.UTF_8 ));
+        ret.put( "org/diet4j/other/D.class",                      new byte[ 10 ] );
+        ret.put( "org/diet4j/test/E.class",                       new byte[ 10 ] ); // back in a package seen before
+        return ret;
+    }
+
+    /**
+     * Write a ZIP file.
+     *
+     * @param file the file to write
+     * @param prepend text to write before the ZIP content, or null
+     * @param entries the content of the entries, keyed by name, in sequence
+     * @param comment the comment of the ZIP file, or null
+     * @throws IOException thrown if writing failed
+     */
+    protected static void writeZip(
+            File                file,
+            String              prepend,
+            Map<String,byte []> entries,
+            String              comment )
+        throws
+            IOException
+    {
+        try( OutputStream out = new FileOutputStream( file )) {
+            if( prepend != null ) {
+                out.write( prepend.getBytes( StandardCharsets.UTF_8 ));
+            }
+            try( ZipOutputStream zip = new ZipOutputStream( out )) {
+                for( Map.Entry<String,byte []> entry : entries.entrySet() ) {
+                    zip.putNextEntry( new ZipEntry( entry.getKey() ));
+                    zip.write( entry.getValue() );
+                    zip.closeEntry();
+                }
+                if( comment != null ) {
+                    zip.setComment( comment );
+                }
+            }
+        }
+    }
+
+    /**
+     * Map a file and find its central directory.
+     *
+     * @param file the file
+     * @return the JarCentralDirectory, or null
+     * @throws IOException thrown if the file could not be mapped
+     */
+    protected static JarCentralDirectory map(
+            File file )
+        throws
+            IOException
+    {
+        ByteBuffer mapping;
+        try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ )) {
+            mapping = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        mapping.order( ByteOrder.LITTLE_ENDIAN );
+
+        return JarCentralDirectory.fromMapping( file, mapping );
+    }
+
+    /**
+     * The JAR file.
+     */
+    protected File theJarFile;
+}
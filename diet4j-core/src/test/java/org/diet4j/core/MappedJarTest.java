@@ -0,0 +1,246 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests MappedJar.
+ */
+public class MappedJarTest
+{
+    /**
+     * Compile the classes.
+     *
+     * @throws IOException thrown if the classes could not be compiled
+     */
+    @Before
+    public void setup()
+        throws
+            IOException
+    {
+        theClassFiles = TestJars.compileClasses( PACKAGES, CLASSES_PER_PACKAGE );
+        theJarFile    = Files.createTempFile( "diet4j-mapped", ".jar" ).toFile();
+    }
+
+    /**
+     * Delete the JAR file.
+     */
+    @After
+    public void cleanup()
+    {
+        theJarFile.delete();
+    }
+
+    /**
+     * Load classes from a JAR whose entries are stored.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testStored()
+        throws
+            Exception
+    {
+        checkLoadClasses( ZipEntry.STORED );
+    }
+
+    /**
+     * Load classes from a JAR whose entries are deflated.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testDeflated()
+        throws
+            Exception
+    {
+        checkLoadClasses( ZipEntry.DEFLATED );
+    }
+
+    /**
+     * Buffers that have not been recycled yet are never handed out again, and keep their
+     * content while others are recycled and reused.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testRecycle()
+        throws
+            Exception
+    {
+        TestJars.writeJar( theJarFile, theClassFiles, ZipEntry.DEFLATED );
+        MappedJar mapped = MappedJar.map( theJarFile );
+        Assert.assertNotNull( "not mapped", mapped );
+
+        String [] names = theClassFiles.keySet().toArray( new String[ theClassFiles.size() ] );
+
+        // hold more buffers than the pool holds, then recycle every other one and take more
+        ArrayList<String>     heldNames = new ArrayList<>();
+        ArrayList<ByteBuffer> held      = new ArrayList<>();
+        for( int round=0 ; round<3 ; ++round ) {
+            for( int i=0 ; i<2 * MappedJar.POOL_SIZE ; ++i ) {
+                String name = names[ ( round * 2 * MappedJar.POOL_SIZE + i ) % names.length ];
+                heldNames.add( name );
+                held.add( mapped.getEntryBytes( name ));
+            }
+
+            IdentityHashMap<byte [],String> inUse = new IdentityHashMap<>();
+            for( int i=0 ; i<held.size() ; ++i ) {
+                String name = heldNames.get( i );
+                Assert.assertTrue( "not an array: " + name, held.get( i ).hasArray() );
+                Assert.assertNull( "handed out twice: " + name, inUse.put( held.get( i ).array(), name ));
+                Assert.assertEquals( "wrong content: " + name, ByteBuffer.wrap( theClassFiles.get( name )), held.get( i ));
+            }
+
+            for( int i=held.size()-1 ; i>=0 ; i -= 2 ) {
+                mapped.recycle( held.remove( i ));
+                heldNames.remove( i );
+            }
+        }
+        for( ByteBuffer buf : held ) {
+            mapped.recycle( buf );
+        }
+    }
+
+    /**
+     * Define all classes from the JAR, written with the provided compression method,
+     * through a MappedJar.
+     *
+     * @param method the compression method, ZipEntry.STORED or ZipEntry.DEFLATED
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    protected void checkLoadClasses(
+            int method )
+        throws
+            Exception
+    {
+        TestJars.writeJar( theJarFile, theClassFiles, method );
+        MappedJar mapped = MappedJar.map( theJarFile );
+        Assert.assertNotNull( "not mapped", mapped );
+        Assert.assertNull( "found missing entry", mapped.getEntryBytes( "testjar/Missing.class" ));
+
+        MappedJarClassLoader loader = new MappedJarClassLoader( mapped );
+        for( Map.Entry<String,byte []> entry : theClassFiles.entrySet() ) {
+            ByteBuffer buf = mapped.getEntryBytes( entry.getKey() );
+            try {
+                Assert.assertEquals( "wrong content: " + entry.getKey(), ByteBuffer.wrap( entry.getValue() ), buf );
+                if( method == ZipEntry.STORED ) {
+                    Assert.assertFalse( "stored entry copied: " + entry.getKey(), buf.hasArray() );
+                }
+            } finally {
+                mapped.recycle( buf );
+            }
+
+            String   name  = TestJars.toClassName( entry.getKey() );
+            Class<?> found = loader.loadClass( name );
+            Assert.assertSame( "wrong ClassLoader for " + name, loader, found.getClassLoader() );
+            Assert.assertEquals( "wrong class", name, found.getDeclaredConstructor().newInstance().toString() );
+        }
+    }
+
+    /**
+     * A ClassLoader that defines classes from the entries of a MappedJar.
+     */
+    protected static class MappedJarClassLoader
+            extends
+                ClassLoader
+    {
+        /**
+         * Constructor.
+         *
+         * @param mapped the MappedJar
+         */
+        public MappedJarClassLoader(
+                MappedJar mapped )
+        {
+            super( MappedJarTest.class.getClassLoader() );
+
+            theMappedJar = mapped;
+        }
+
+        /**
+         * Define a class from the MappedJar.
+         *
+         * @param name the name of the class
+         * @return the defined class
+         * @throws ClassNotFoundException thrown if the MappedJar does not contain the class
+         */
+        @Override
+        protected Class<?> findClass(
+                String name )
+            throws
+                ClassNotFoundException
+        {
+            ByteBuffer buf = null;
+            try {
+                buf = theMappedJar.getEntryBytes( name.replace( '.', '/' ) + ".class" );
+                if( buf == null ) {
+                    throw new ClassNotFoundException( name );
+                }
+                return defineClass( name, buf, null );
+
+            } catch( IOException ex ) {
+                throw new ClassNotFoundException( name, ex );
+
+            } finally {
+                if( buf != null ) {
+                    theMappedJar.recycle( buf );
+                }
+            }
+        }
+
+        /**
+         * The MappedJar.
+         */
+        protected final MappedJar theMappedJar;
+    }
+
+    /**
+     * The compiled class files, keyed by their JAR entry names.
+     */
+    protected Map<String,byte []> theClassFiles;
+
+    /**
+     * The JAR file.
+     */
+    protected File theJarFile;
+
+    /**
+     * The number of packages.
+     */
+    protected static final int PACKAGES = 2;
+
+    /**
+     * The number of classes in each package.
+     */
+    protected static final int CLASSES_PER_PACKAGE = 20;
+}
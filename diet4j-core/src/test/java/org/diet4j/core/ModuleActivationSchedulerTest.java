@@ -0,0 +1,86 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests ModuleActivationScheduler.
+ */
+public class ModuleActivationSchedulerTest
+{
+    /**
+     * Activate a Module whose dependencies share a dependency, on several threads.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testSharedDependency()
+        throws
+            Exception
+    {
+        TestModules               modules   = new TestModules( USERS );
+        ModuleActivationScheduler scheduler = new ModuleActivationScheduler( USERS );
+        TestModuleActivator       activator = new TestModuleActivator( modules.theRoot, null, null );
+
+        scheduler.activateRecursively( modules.theRoot, activator );
+
+        Assert.assertEquals( "activations", USERS + 2, activator.getActivations() );
+        Assert.assertEquals( "activation count of root",   1,     modules.theRoot.getActivationCount() );
+        Assert.assertEquals( "activation count of user",   1,     modules.theUsers[0].getActivationCount() );
+        Assert.assertEquals( "activation count of shared", USERS, modules.theShared.getActivationCount() );
+    }
+
+    /**
+     * A scheduler whose activation failed can still be used for other activations.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testReuseAfterFailure()
+        throws
+            Exception
+    {
+        ModuleActivationScheduler scheduler = new ModuleActivationScheduler( USERS );
+
+        TestModules failing = new TestModules( USERS );
+        try {
+            scheduler.activateRecursively( failing.theRoot, new TestModuleActivator( failing.theRoot, "shared", null ));
+            Assert.fail( "Activation should have failed" );
+        } catch( ModuleActivationException ex ) {
+            // expected
+        }
+        Assert.assertFalse( "root active after failure", failing.theRoot.isActive() );
+
+        TestModules         modules   = new TestModules( USERS );
+        TestModuleActivator activator = new TestModuleActivator( modules.theRoot, null, null );
+
+        scheduler.activateRecursively( modules.theRoot, activator );
+
+        Assert.assertEquals( "activations", USERS + 2, activator.getActivations() );
+        Assert.assertTrue( "root not active", modules.theRoot.isActive() );
+    }
+
+    /**
+     * The number of Modules using the shared Module.
+     */
+    protected static final int USERS = 4;
+}
@@ -0,0 +1,167 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ModuleClassLoader.
+ */
+public class ModuleClassLoaderTest
+{
+    /**
+     * Create the JAR file.
+     *
+     * @throws IOException thrown if the JAR file could not be created
+     */
+    @Before
+    public void setup()
+        throws
+            IOException
+    {
+        theClassFiles = TestJars.compileClasses( PACKAGES, CLASSES_PER_PACKAGE );
+        theJarFile    = Files.createTempFile( "diet4j-classes", ".jar" ).toFile();
+
+        TestJars.writeJar( theJarFile, theClassFiles, ZipEntry.DEFLATED );
+    }
+
+    /**
+     * Delete the JAR file.
+     */
+    @After
+    public void cleanup()
+    {
+        theJarFile.delete();
+    }
+
+    /**
+     * Define many classes in many packages on several threads at the same time, and report
+     * the throughput. Every class must be defined once, by the Module's ModuleClassLoader,
+     * in its package.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testDefinitionThroughput()
+        throws
+            Exception
+    {
+        ModuleMeta meta = new ModuleMeta(
+                TestModules.GROUP_ID, "classes", "1.0", null, null, 0L, null, new ModuleRequirement[0], theJarFile, null, null );
+
+        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
+        AbstractScanningModuleRegistry.addModuleMeta( meta, metas );
+
+        AbstractScanningModuleRegistry registry = new AbstractScanningModuleRegistry(
+                metas,
+                AbstractModuleRegistry.DEFAULT_DO_NOT_LOAD_CLASS_PREFIXES ) {};
+        ClassLoader loader = registry.resolve( meta ).getClassLoader();
+
+        String [] names = theClassFiles.keySet().stream().map( TestJars::toClassName ).toArray( String[]::new );
+
+        Class<?> [][]              loaded  = new Class<?>[ THREADS ][ names.length ];
+        CyclicBarrier              start   = new CyclicBarrier( THREADS + 1 );
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread []                  threads = new Thread[ THREADS ];
+
+        for( int i=0 ; i<THREADS ; ++i ) {
+            final int thread = i;
+            threads[i] = new Thread( () -> {
+                try {
+                    start.await();
+                    // each thread starts at a different class, so they compete for some, but not all
+                    for( int j=0 ; j<names.length ; ++j ) {
+                        int index = ( j + thread * names.length / THREADS ) % names.length;
+                        loaded[thread][index] = Class.forName( names[index], false, loader );
+                    }
+                } catch( Throwable ex ) {
+                    failure.compareAndSet( null, ex );
+                }
+            } );
+            threads[i].start();
+        }
+        start.await();
+        long startTime = System.nanoTime();
+        for( Thread thread : threads ) {
+            thread.join();
+        }
+        long duration = System.nanoTime() - startTime;
+
+        if( failure.get() != null ) {
+            throw new AssertionError( "Loading failed", failure.get() );
+        }
+        log.log( Level.INFO, "Defined {0} classes on {1} threads in {2} ms, {3} classes/s", new Object[] {
+                names.length,
+                THREADS,
+                duration / 1000000L,
+                names.length * 1000000000L / Math.max( duration, 1L ) } );
+
+        for( int j=0 ; j<names.length ; ++j ) {
+            Class<?> found = loaded[0][j];
+            Assert.assertSame( "wrong ClassLoader for " + names[j], loader, found.getClassLoader() );
+            Assert.assertEquals( "wrong package for " + names[j], names[j].substring( 0, names[j].lastIndexOf( '.' )), found.getPackage().getName() );
+            Assert.assertEquals( "wrong class", names[j], found.getDeclaredConstructor().newInstance().toString() );
+
+            for( int i=1 ; i<THREADS ; ++i ) {
+                Assert.assertSame( "defined more than once: " + names[j], found, loaded[i][j] );
+            }
+        }
+    }
+
+    /**
+     * The compiled class files, keyed by their JAR entry names.
+     */
+    protected Map<String,byte []> theClassFiles;
+
+    /**
+     * The JAR file containing the classes.
+     */
+    protected File theJarFile;
+
+    /**
+     * The number of packages.
+     */
+    protected static final int PACKAGES = 10;
+
+    /**
+     * The number of classes in each package.
+     */
+    protected static final int CLASSES_PER_PACKAGE = 100;
+
+    /**
+     * The number of loading threads.
+     */
+    protected static final int THREADS = 4;
+
+    private static final Logger log = Logger.getLogger( ModuleClassLoaderTest.class.getName() );
+}
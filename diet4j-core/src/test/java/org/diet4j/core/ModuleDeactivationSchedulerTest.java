@@ -0,0 +1,104 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.concurrent.CyclicBarrier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests ModuleDeactivationScheduler.
+ */
+public class ModuleDeactivationSchedulerTest
+{
+    /**
+     * Deactivate several users of the same dependency concurrently. All of them complete at
+     * the same time, so decrementing the dependency's activation count races, but none of the
+     * decrements may be lost.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testSharedDependency()
+        throws
+            Exception
+    {
+        TestModules                 modules   = new TestModules( USERS );
+        ModuleDeactivationScheduler scheduler = new ModuleDeactivationScheduler( USERS, 0L );
+
+        for( int i=0 ; i<ITERATIONS ; ++i ) {
+            TestModuleActivator activator = new TestModuleActivator( modules.theRoot, null, new CyclicBarrier( USERS ));
+
+            modules.theRoot.activateRecursively( activator );
+            Assert.assertEquals( "activation count after activation", USERS, modules.theShared.getActivationCount() );
+
+            scheduler.deactivateRecursively( modules.theRoot, activator );
+
+            Assert.assertEquals( "activation count of root, iteration " + i,   0, modules.theRoot.getActivationCount() );
+            Assert.assertEquals( "activation count of shared, iteration " + i, 0, modules.theShared.getActivationCount() );
+            Assert.assertEquals( "deactivations of shared, iteration " + i,    1, activator.getSharedDeactivations() );
+        }
+    }
+
+    /**
+     * A scheduler whose deactivation failed can still be used for other deactivations.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testReuseAfterFailure()
+        throws
+            Exception
+    {
+        ModuleDeactivationScheduler scheduler = new ModuleDeactivationScheduler( USERS, 0L );
+
+        TestModules         failing          = new TestModules( USERS );
+        TestModuleActivator failingActivator = new TestModuleActivator( failing.theRoot, "root", null );
+        failing.theRoot.activateRecursively( new TestModuleActivator( failing.theRoot, null, null ));
+        try {
+            scheduler.deactivateRecursively( failing.theRoot, failingActivator );
+            Assert.fail( "Deactivation should have failed" );
+        } catch( ModuleDeactivationException ex ) {
+            // expected
+        }
+        Assert.assertTrue( "users still active after failure", failing.theUsers[0].isActive() );
+
+        TestModules         modules   = new TestModules( USERS );
+        TestModuleActivator activator = new TestModuleActivator( modules.theRoot, null, null );
+        modules.theRoot.activateRecursively( activator );
+
+        scheduler.deactivateRecursively( modules.theRoot, activator );
+
+        Assert.assertFalse( "root still active",   modules.theRoot.isActive() );
+        Assert.assertFalse( "user still active",   modules.theUsers[0].isActive() );
+        Assert.assertFalse( "shared still active", modules.theShared.isActive() );
+        Assert.assertEquals( "deactivations of shared", 1, activator.getSharedDeactivations() );
+    }
+
+    /**
+     * The number of Modules using the shared Module.
+     */
+    protected static final int USERS = 8;
+
+    /**
+     * How often to run the test, to make the race likely to show up.
+     */
+    protected static final int ITERATIONS = 200;
+}
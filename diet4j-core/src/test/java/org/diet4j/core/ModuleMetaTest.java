@@ -0,0 +1,117 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests ModuleMeta.
+ */
+public class ModuleMetaTest
+{
+    /**
+     * The hash codes of many similar ModuleMetas are distinct, and spread evenly over the
+     * buckets of a hash table.
+     */
+    @Test
+    public void testHashDistribution()
+    {
+        HashSet<Integer> hashes  = new HashSet<>();
+        int []           buckets = new int[ BUCKETS ];
+
+        for( int i=0 ; i<ARTIFACTS ; ++i ) {
+            for( int j=0 ; j<VERSIONS ; ++j ) {
+                int hash = createModuleMeta( "artifact" + i, "1." + j ).hashCode();
+                hashes.add( hash );
+                ++buckets[ ( hash ^ ( hash >>> 16 )) & ( BUCKETS-1 ) ]; // as java.util.HashMap does
+            }
+        }
+        int count = ARTIFACTS * VERSIONS;
+        Assert.assertTrue( "too many identical hash codes: " + hashes.size(), hashes.size() >= count * 99 / 100 );
+
+        int max = 0;
+        for( int bucket : buckets ) {
+            max = Math.max( max, bucket );
+        }
+        Assert.assertTrue( "uneven buckets, max " + max, max <= 4 * count / BUCKETS );
+    }
+
+    /**
+     * Coordinates whose hash code is zero, and missing coordinates, do not break hashCode or equals.
+     */
+    @Test
+    public void testDegenerateCoordinates()
+    {
+        ModuleMeta one = createModuleMeta( "", null );
+        ModuleMeta two = createModuleMeta( "", null );
+
+        Assert.assertEquals( "hash codes", one.hashCode(), two.hashCode() );
+        Assert.assertEquals( "not equal", one, two );
+        Assert.assertNotEquals( "equal to other version", one, createModuleMeta( "", "" ));
+    }
+
+    /**
+     * ModuleMetas with the same coordinates share the same String instances.
+     */
+    @Test
+    public void testInterning()
+    {
+        ModuleMeta one = createModuleMeta( new String( "interned" ), new String( "1.0" ));
+        ModuleMeta two = createModuleMeta( new String( "interned" ), new String( "1.0" ));
+
+        Assert.assertSame( "groupId",    one.getModuleGroupId(),    two.getModuleGroupId() );
+        Assert.assertSame( "artifactId", one.getModuleArtifactId(), two.getModuleArtifactId() );
+        Assert.assertSame( "version",    one.getModuleVersion(),    two.getModuleVersion() );
+        Assert.assertEquals( "hash codes", one.hashCode(), two.hashCode() );
+        Assert.assertEquals( "not equal", one, two );
+    }
+
+    /**
+     * Create a ModuleMeta without requirements or a JAR file.
+     *
+     * @param artifactId the artifactId of the Module
+     * @param version the version of the Module
+     * @return the ModuleMeta
+     */
+    protected static ModuleMeta createModuleMeta(
+            String artifactId,
+            String version )
+    {
+        return new ModuleMeta( TestModules.GROUP_ID, artifactId, version, null, null, 0L, null, new ModuleRequirement[0], (File) null, null, null );
+    }
+
+    /**
+     * The number of artifacts whose ModuleMetas to hash.
+     */
+    protected static final int ARTIFACTS = 1000;
+
+    /**
+     * The number of versions of each artifact.
+     */
+    protected static final int VERSIONS = 5;
+
+    /**
+     * The number of hash table buckets, a power of two.
+     */
+    protected static final int BUCKETS = 1024;
+}
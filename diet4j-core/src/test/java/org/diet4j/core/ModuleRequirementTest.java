@@ -0,0 +1,168 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that ModuleRequirement finds the matching versions among ordered candidates.
+ */
+public class ModuleRequirementTest
+{
+    /**
+     * Version ranges with inclusive and exclusive bounds.
+     */
+    @Test
+    public void testBounds()
+    {
+        checkMatches( "[1.0,2.0]", "2.0", "1.5", "1.0" );
+        checkMatches( "(1.0,2.0)", "1.5" );
+        checkMatches( "[1.0,2.0)", "1.5", "1.0" );
+        checkMatches( "(1.0,2.0]", "2.0", "1.5" );
+        checkMatches( "[0.1,9.0]", CANDIDATE_VERSIONS );
+    }
+
+    /**
+     * Version ranges without a lower or an upper bound.
+     */
+    @Test
+    public void testOpenEnded()
+    {
+        checkMatches( "[2.0,)", "3.0", "2.1", "2.0" );
+        checkMatches( "(2.0,)", "3.0", "2.1" );
+        checkMatches( "(,1.5]", "1.5", "1.0", "0.9" );
+        checkMatches( "(,1.5)", "1.0", "0.9" );
+        checkMatches( null,     CANDIDATE_VERSIONS );
+    }
+
+    /**
+     * Exact versions.
+     */
+    @Test
+    public void testExact()
+    {
+        checkMatches( "[1.5]", "1.5" );
+        checkMatches( "[3.0]", "3.0" );
+        checkMatches( "[0.9]", "0.9" );
+    }
+
+    /**
+     * Soft versions match any version, but prefer the given one if it is available.
+     */
+    @Test
+    public void testSoft()
+    {
+        checkMatches( "1.5", CANDIDATE_VERSIONS );
+        checkPreferredFirst( "1.5", "1.5", "3.0", "2.1", "2.0", "1.0", "0.9" );
+        checkPreferredFirst( "3.0", CANDIDATE_VERSIONS );
+        checkPreferredFirst( "1.6", CANDIDATE_VERSIONS ); // not available
+        checkPreferredFirst( "[1.0,2.0]", "2.0", "1.5", "1.0" );
+    }
+
+    /**
+     * Ranges that no candidate falls into.
+     */
+    @Test
+    public void testEmpty()
+    {
+        checkMatches( "[1.6]" );
+        checkMatches( "(3.0,)" );
+        checkMatches( "(,0.9)" );
+        checkMatches( "[1.2,1.4]" );
+        checkMatches( "(1.0,1.5)" );
+
+        ModuleRequirement req = ModuleRequirement.create( TestModules.GROUP_ID, "lib", "[1.0,2.0]" );
+        Assert.assertEquals( "no candidates", 0, req.findVersionMatchesFromOrdered( new ModuleMeta[0] ).length );
+    }
+
+    /**
+     * Check that findVersionMatchesFromOrdered finds the expected versions among the
+     * candidates, and the same as the linear findVersionMatchesFrom.
+     *
+     * @param version the required version
+     * @param expected the expected versions, newest first
+     */
+    protected static void checkMatches(
+            String     version,
+            String ... expected )
+    {
+        ModuleRequirement req        = ModuleRequirement.create( TestModules.GROUP_ID, "lib", version );
+        ModuleMeta []     candidates = createCandidates();
+
+        Assert.assertArrayEquals( "binary search for " + version, expected, versionsOf( req.findVersionMatchesFromOrdered( candidates )));
+        Assert.assertArrayEquals( "linear search for " + version, expected, versionsOf( req.findVersionMatchesFrom( candidates )));
+    }
+
+    /**
+     * Check that findVersionMatchesPreferredFirst finds the expected versions among the
+     * candidates, in the expected sequence.
+     *
+     * @param version the required version
+     * @param expected the expected versions, the preferred one first
+     */
+    protected static void checkPreferredFirst(
+            String     version,
+            String ... expected )
+    {
+        ModuleRequirement req = ModuleRequirement.create( TestModules.GROUP_ID, "lib", version );
+
+        Assert.assertArrayEquals( "preferred first for " + version, expected, versionsOf( req.findVersionMatchesPreferredFirst( createCandidates() )));
+    }
+
+    /**
+     * Create the candidate ModuleMetas, newest first.
+     *
+     * @return the candidates
+     */
+    protected static ModuleMeta [] createCandidates()
+    {
+        ModuleMeta [] ret = new ModuleMeta[ CANDIDATE_VERSIONS.length ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = new ModuleMeta( TestModules.GROUP_ID, "lib", CANDIDATE_VERSIONS[i], null, null, 0L, null, new ModuleRequirement[0], (File) null, null, null );
+            if( i > 0 ) {
+                Assert.assertTrue( "candidates out of order", ret[i-1].getParsedModuleVersion().compareTo( ret[i].getParsedModuleVersion() ) > 0 );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to obtain the versions of ModuleMetas.
+     *
+     * @param metas the ModuleMetas
+     * @return their versions, in the same sequence
+     */
+    protected static String [] versionsOf(
+            ModuleMeta [] metas )
+    {
+        String [] ret = new String[ metas.length ];
+        for( int i=0 ; i<metas.length ; ++i ) {
+            ret[i] = metas[i].getModuleVersion();
+        }
+        return ret;
+    }
+
+    /**
+     * The versions of the candidates, newest first.
+     */
+    protected static final String [] CANDIDATE_VERSIONS = { "3.0", "2.1", "2.0", "1.5", "1.0", "0.9" };
+}
@@ -0,0 +1,323 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that ParsedVersion and the current rpmvercmp() order versions exactly as the
+ * original String-based rpmvercmp() did.
+ */
+public class ParsedVersionTest
+{
+    /**
+     * Compare all pairs of a generated corpus of versions.
+     */
+    @Test
+    public void testCorpus()
+    {
+        List<String> corpus = createCorpus();
+
+        ParsedVersion [] parsed = new ParsedVersion[ corpus.size() ];
+        for( int i=0 ; i<parsed.length ; ++i ) {
+            parsed[i] = ParsedVersion.parse( corpus.get( i ));
+        }
+
+        for( int i=0 ; i<parsed.length ; ++i ) {
+            for( int j=0 ; j<parsed.length ; ++j ) {
+                String a        = corpus.get( i );
+                String b        = corpus.get( j );
+                int    expected = originalRpmvercmp( a, b );
+
+                Assert.assertEquals( "rpmvercmp( " + a + ", " + b + " )",     expected, Integer.signum( AbstractScanningModuleRegistry.rpmvercmp( a, b )));
+                Assert.assertEquals( "compareTo( " + a + ", " + b + " )",     expected, Integer.signum( parsed[i].compareTo( parsed[j] )));
+                Assert.assertEquals( "parse+compareTo( " + a + ", " + b + " )", expected, Integer.signum( ParsedVersion.parse( a ).compareTo( ParsedVersion.parse( b ))));
+            }
+        }
+    }
+
+    /**
+     * Cases that the packed representation could easily get wrong.
+     */
+    @Test
+    public void testBoundaries()
+    {
+        Assert.assertTrue( ParsedVersion.pack( "65534" ) != ParsedVersion.NOT_PACKED );
+        Assert.assertEquals( ParsedVersion.NOT_PACKED, ParsedVersion.pack( "65535" ));
+        Assert.assertEquals( ParsedVersion.NOT_PACKED, ParsedVersion.pack( "1.2.3.4.5" ));
+        Assert.assertEquals( ParsedVersion.NOT_PACKED, ParsedVersion.pack( "1.02" ));
+
+        assertOrder( "65533",   "65534" );
+        assertOrder( "65534",   "65535" );
+        assertOrder( "1.65534", "1.65535" );
+        assertOrder( "1.2",     "1.2.0" );
+        assertOrder( "1.2.0",   "1.2.1" );
+        assertOrder( "1a",      "1" );
+        assertOrder( "1.9",     "1.10" );
+        assertOrder( null,      "1" );
+        assertOrder( "1.0.0",   "1.000.0" ); // the last segments start at different positions
+
+        assertSame( "1.01",   "1.1" );
+        assertSame( "1.2.01", "1.2.001" );
+        assertSame( "1.2",    "1-2" );
+        assertSame( null,     "0" );
+    }
+
+    /**
+     * Assert that one version comes before another, in both directions and with all comparisons.
+     *
+     * @param older the older version
+     * @param newer the newer version
+     */
+    protected static void assertOrder(
+            String older,
+            String newer )
+    {
+        Assert.assertEquals( older + " < " + newer, -1, originalRpmvercmp( older, newer ));
+        Assert.assertEquals( newer + " > " + older,  1, originalRpmvercmp( newer, older ));
+        Assert.assertEquals( older + " < " + newer, -1, Integer.signum( AbstractScanningModuleRegistry.rpmvercmp( older, newer )));
+        Assert.assertEquals( newer + " > " + older,  1, Integer.signum( AbstractScanningModuleRegistry.rpmvercmp( newer, older )));
+        Assert.assertEquals( older + " < " + newer, -1, Integer.signum( ParsedVersion.parse( older ).compareTo( ParsedVersion.parse( newer ))));
+        Assert.assertEquals( newer + " > " + older,  1, Integer.signum( ParsedVersion.parse( newer ).compareTo( ParsedVersion.parse( older ))));
+    }
+
+    /**
+     * Assert that two versions are considered the same, with all comparisons.
+     *
+     * @param a the first version
+     * @param b the second version
+     */
+    protected static void assertSame(
+            String a,
+            String b )
+    {
+        Assert.assertEquals( a + " = " + b, 0, originalRpmvercmp( a, b ));
+        Assert.assertEquals( a + " = " + b, 0, AbstractScanningModuleRegistry.rpmvercmp( a, b ));
+        Assert.assertEquals( a + " = " + b, 0, ParsedVersion.parse( a ).compareTo( ParsedVersion.parse( b )));
+    }
+
+    /**
+     * Generate versions from numbers that straddle the packing limits, with and without
+     * leading zeros, alpha segments and various separators.
+     *
+     * @return the versions
+     */
+    protected static List<String> createCorpus()
+    {
+        String [] numbers    = { "0", "00", "01", "1", "2", "9", "10", "010", "65533", "65534", "65535", "65536", "99999999999999999999" };
+        String [] alphas     = { "a", "b", "alpha", "beta", "rc", "SNAPSHOT", "Z" };
+        String [] separators = { ".", "-", "_", "..", "+", "~" };
+
+        ArrayList<String> ret = new ArrayList<>();
+        for( String n1 : numbers ) {
+            ret.add( n1 );
+            for( String n2 : numbers ) {
+                ret.add( n1 + "." + n2 );
+                ret.add( "1." + n1 + "." + n2 );
+            }
+            for( String alpha : alphas ) {
+                ret.add( n1 + alpha );
+                ret.add( "1." + n1 + "-" + alpha );
+            }
+            for( String separator : separators ) {
+                ret.add( n1 + separator + "2" );
+                ret.add( "1.2" + separator + n1 );
+            }
+        }
+        for( String alpha : alphas ) {
+            ret.add( alpha );
+            ret.add( alpha + "1" );
+            ret.add( "1." + alpha + ".1" );
+        }
+        ret.add( "1.2.3.4" );
+        ret.add( "1.2.3.4.0" );
+        ret.add( "1.2.3.4.5" );
+        ret.add( "1.2.3.65534" );
+        ret.add( "1.2.3.65535" );
+        ret.add( "1.2." );
+        ret.add( ".1.2" );
+        ret.add( "1..2" );
+        ret.add( "" );
+        ret.add( "-" );
+        ret.add( "1.\u00e4" ); // LATIN SMALL LETTER A WITH DIAERESIS
+        ret.add( "1.\u0663" ); // ARABIC-INDIC DIGIT THREE
+        return ret;
+    }
+
+    /**
+     * Frozen copy of rpmvercmp() as it was before versions were pre-parsed,
+     * which defines the expected order.
+     *
+     * @param a: version 1 to compare
+     * @param b: version 2 to compare
+     * @return: -1, 0, or 1 like strcmp
+     */
+    protected static int originalRpmvercmp(
+            String a,
+            String b )
+    {
+        if( a == null ) {
+            a = "0";
+        }
+        if( b == null ) {
+            b = "0";
+        }
+
+        int ret;
+
+        // easy comparison to see if versions are identical
+        if( a.equals( b )) {
+            return 0;
+        }
+
+        int aLen = a.length();
+        int bLen = b.length();
+
+        int one = 0; // Need indices instead of pointers in Perl vs C
+        int two = 0;
+        int i1;
+        int i2;
+
+        // loop through each version segment of str1 and str2 and compare them
+        while( one < aLen && two < bLen ) {
+            while( one < aLen && !Character.isLetterOrDigit(a.charAt( one ))) {
+                ++one;
+            }
+
+            while( two < bLen && !Character.isLetterOrDigit( b.charAt( two ))) {
+                ++two;
+            }
+
+            // If we ran to the end of either, we are finished with the loop
+            if( one >= aLen || two >= bLen ) {
+                break;
+            }
+
+            // If the separator lengths were different, we are also finished
+            if( one != two ) {
+                return ( one < two ) ? -1 : 1;
+            }
+
+            i1 = one;
+            i2 = two;
+
+            // grab first completely alpha or completely numeric segment
+            // leave one and two pointing to the start of the alpha or numeric
+            // segment and walk i1 and i2 to end of segment
+            boolean isnum;
+            if( Character.isDigit( a.charAt( i1 )) ) {
+                while( i1 < aLen && Character.isDigit( a.charAt( i1 ))) {
+                    ++i1;
+                }
+                while( i2 < bLen && Character.isDigit( b.charAt( i2 ))) {
+                    ++i2;
+                }
+                isnum = true;
+
+            } else {
+                while( i1 < aLen && Character.isLetter(a.charAt( i1 ))) {
+                    ++i1;
+                }
+                while( i2 < bLen && Character.isLetter( b.charAt( i2 ))) {
+                    ++i2;
+                }
+                isnum = false;
+            }
+
+            // this cannot happen, as we previously tested to make sure that
+            // the first string has a non-null segment
+            if( one == i1 ) {
+                ret = -1; // arbitrary
+                return ret;
+            }
+
+            // take care of the case where the two version segments are
+            // different types: one numeric, the other alpha (i.e. empty)
+            // numeric segments are always newer than alpha segments
+            // XXX See patch #60884 (and details) from bugzilla #50977.
+            if( two == i2 ) {
+                ret = isnum ? 1 : -1;
+                return ret;
+            }
+
+            if( isnum ) {
+                // this used to be done by converting the digit segments
+                // to ints using atoi() - it's changed because long
+                // digit segments can overflow an int - this should fix that.
+
+                // throw away any leading zeros - it's a number, right? */
+                while( one < aLen && a.charAt( one ) == '0' ) {
+                    one++;
+                }
+                while( two < bLen && b.charAt( two ) == '0' ) {
+                    two++;
+                }
+
+                // whichever number has more digits wins
+                if( i1 - one > i2 - two ) {
+                    ret = 1;
+                    return ret;
+                }
+                if( i2 - two > i1 - one ) {
+                    ret = -1;
+                    return ret;
+                }
+            }
+
+            // strcmp will return which one is greater - even if the two
+            // segments are alpha or if they are numeric.  don't return
+            // if they are equal because there might be more segments to
+            // compare
+            int rc = a.substring( one, i1 ).compareTo( b.substring( two, i2 ));
+            if( rc != 0 ) {
+                ret = rc < 1 ? -1 : 1;
+                return ret;
+            }
+
+            one = i1;
+            two = i2;
+        }
+
+        // this catches the case where all numeric and alpha segments have */
+        // compared identically but the segment separating characters were */
+        // different */
+        if( one == aLen && two == bLen ) {
+            ret = 0;
+            return ret;
+        }
+
+        // the final showdown. we never want a remaining alpha string to
+        // beat an empty string. the logic is a bit weird, but:
+        // - if one is empty and two is not an alpha, two is newer.
+        // - if one is an alpha, two is newer.
+        // - otherwise one is newer.
+        if(    ( one == aLen && !Character.isLetter( b.charAt( two )))
+            || ( one < aLen && Character.isLetter( a.charAt( one ))))
+        {
+            ret = -1;
+        } else {
+            ret = 1;
+        }
+        return ret;
+    }
+}
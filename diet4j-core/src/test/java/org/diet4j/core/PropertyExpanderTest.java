@@ -0,0 +1,122 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests PropertyExpander.
+ */
+public class PropertyExpanderTest
+{
+    /**
+     * Several placeholders in one String, and undefined properties.
+     */
+    @Test
+    public void testSeveralPlaceholders()
+    {
+        PropertyExpander expander = createExpander( "a", "1", "b", "2" );
+
+        Assert.assertEquals( "two placeholders", "1-2",    expander.expand( "${a}-${b}" ));
+        Assert.assertEquals( "adjacent",         "12",     expander.expand( "${a}${b}" ));
+        Assert.assertEquals( "repeated",         "x1y1z",  expander.expand( "x${a}y${a}z" ));
+        Assert.assertEquals( "undefined",        "x-1",    expander.expand( "x${undefined}-${a}" ));
+        Assert.assertEquals( "no placeholder",   "plain",  expander.expand( "plain" ));
+        Assert.assertEquals( "braces only",      "{a}$",   expander.expand( "{a}$" ));
+    }
+
+    /**
+     * Property values that contain placeholders themselves.
+     */
+    @Test
+    public void testNested()
+    {
+        PropertyExpander expander = createExpander(
+                "version", "${major}.${minor}",
+                "major",   "${one}",
+                "minor",   "2",
+                "one",     "1" );
+
+        Assert.assertEquals( "nested",       "v1.2",   expander.expand( "v${version}" ));
+        Assert.assertEquals( "nested again", "1.2-1",  expander.expand( "${version}-${major}" ));
+    }
+
+    /**
+     * Properties that refer to themselves, directly or indirectly, do not recurse forever.
+     */
+    @Test
+    public void testSelfReference()
+    {
+        PropertyExpander expander = createExpander(
+                "self", "x${self}",
+                "ping", "p${pong}",
+                "pong", "q${ping}" );
+
+        Assert.assertEquals( "direct",   "x",  expander.expand( "${self}" ));
+        Assert.assertEquals( "indirect", "pq", expander.expand( "${ping}" ));
+    }
+
+    /**
+     * A placeholder without a closing brace is kept as it is.
+     */
+    @Test
+    public void testUnterminated()
+    {
+        PropertyExpander expander = createExpander( "a", "1" );
+
+        Assert.assertEquals( "only",      "x${a",     expander.expand( "x${a" ));
+        Assert.assertEquals( "after one", "1-${a",    expander.expand( "${a}-${a" ));
+        Assert.assertEquals( "opening",   "${",       expander.expand( "${" ));
+    }
+
+    /**
+     * If nothing remains, the result is null.
+     */
+    @Test
+    public void testEmptyToNull()
+    {
+        PropertyExpander expander = createExpander( "empty", "", "a", "1" );
+
+        Assert.assertNull( "null",              expander.expand( null ));
+        Assert.assertNull( "empty",             expander.expand( "" ));
+        Assert.assertNull( "undefined",         expander.expand( "${undefined}" ));
+        Assert.assertNull( "empty property",    expander.expand( "${empty}" ));
+        Assert.assertNull( "several undefined", expander.expand( "${undefined}${empty}" ));
+        Assert.assertEquals( "not empty", "1", expander.expand( "${empty}${a}" ));
+    }
+
+    /**
+     * Create a PropertyExpander.
+     *
+     * @param namesAndValues alternating names and values of the properties
+     * @return the PropertyExpander
+     */
+    protected static PropertyExpander createExpander(
+            String ... namesAndValues )
+    {
+        HashMap<String,String> properties = new HashMap<>();
+        for( int i=0 ; i<namesAndValues.length ; i += 2 ) {
+            properties.put( namesAndValues[i], namesAndValues[i+1] );
+        }
+        return new PropertyExpander( properties );
+    }
+}
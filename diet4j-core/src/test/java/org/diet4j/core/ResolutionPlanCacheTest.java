@@ -0,0 +1,143 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests ResolutionPlanCache.
+ */
+public class ResolutionPlanCacheTest
+{
+    /**
+     * A Module that none of the ModuleRequirements in the plan match does not change its fingerprint.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testUnrelatedModule()
+        throws
+            Exception
+    {
+        AbstractScanningModuleRegistry registry = createRegistry( "1.0" );
+        ModuleMeta                     root     = registry.determineSingleResolutionCandidate( ModuleRequirement.create( TestModules.GROUP_ID, "root" ));
+        ResolutionPlanCache.Plan       plan     = ResolutionPlanCache.Plan.create( registry, registry.resolve( root ));
+
+        registry.publishModuleMetas( Arrays.asList( createModuleMeta( "other", "1.0" )));
+
+        Map<ModuleMeta,ModuleMeta []> planned = plan.toPlanned( registry, root );
+        Assert.assertNotNull( "plan not found", planned );
+        Assert.assertTrue( "plan not current", plan.isCurrent( registry, planned ));
+    }
+
+    /**
+     * A new resolution candidate for a ModuleRequirement in the plan changes its fingerprint.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testNewCandidate()
+        throws
+            Exception
+    {
+        AbstractScanningModuleRegistry registry = createRegistry( "1.0" );
+        ModuleMeta                     root     = registry.determineSingleResolutionCandidate( ModuleRequirement.create( TestModules.GROUP_ID, "root" ));
+        ResolutionPlanCache.Plan       plan     = ResolutionPlanCache.Plan.create( registry, registry.resolve( root ));
+
+        registry.publishModuleMetas( Arrays.asList( createModuleMeta( "lib", "2.0" )));
+
+        Map<ModuleMeta,ModuleMeta []> planned = plan.toPlanned( registry, root );
+        Assert.assertNotNull( "plan not found", planned );
+        Assert.assertFalse( "plan still current", plan.isCurrent( registry, planned ));
+    }
+
+    /**
+     * A plan survives saving and loading, and finds ModuleMetas whose versions look like
+     * version ranges.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testSaveAndLoad()
+        throws
+            Exception
+    {
+        File file = Files.createTempFile( "diet4j-plans", ".bin" ).toFile();
+        file.delete(); // start without plans
+        try {
+            AbstractScanningModuleRegistry registry = createRegistry( "1,0]" );
+            ModuleMeta                     root     = registry.determineSingleResolutionCandidate( ModuleRequirement.create( TestModules.GROUP_ID, "root" ));
+
+            ResolutionPlanCache cache = ResolutionPlanCache.load( file );
+            cache.resolve( registry, root );
+            cache.save();
+
+            ResolutionPlanCache loaded = ResolutionPlanCache.load( file );
+            ResolutionPlanCache.Plan plan = loaded.thePlans.get( root.toString() );
+            Assert.assertNotNull( "plan not loaded", plan );
+
+            Map<ModuleMeta,ModuleMeta []> planned = plan.toPlanned( registry, root );
+            Assert.assertNotNull( "plan not found", planned );
+            Assert.assertEquals( "planned version", "1,0]", planned.get( root )[0].getModuleVersion() );
+            Assert.assertTrue( "plan not current", plan.isCurrent( registry, planned ));
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Create a ModuleRegistry with a root Module that requires any version of a lib Module.
+     *
+     * @param libVersion the version of the lib Module
+     * @return the ModuleRegistry
+     */
+    protected static AbstractScanningModuleRegistry createRegistry(
+            String libVersion )
+    {
+        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
+        AbstractScanningModuleRegistry.addModuleMeta(
+                TestModules.createModuleMeta( "root", new ModuleRequirement[] { ModuleRequirement.create( TestModules.GROUP_ID, "lib" ) } ),
+                metas );
+        AbstractScanningModuleRegistry.addModuleMeta( createModuleMeta( "lib", libVersion ), metas );
+
+        return new AbstractScanningModuleRegistry( metas, new String[0] ) {};
+    }
+
+    /**
+     * Create a ModuleMeta without requirements or a JAR file.
+     *
+     * @param artifactId the artifactId of the Module
+     * @param version the version of the Module
+     * @return the ModuleMeta
+     */
+    protected static ModuleMeta createModuleMeta(
+            String artifactId,
+            String version )
+    {
+        return new ModuleMeta( TestModules.GROUP_ID, artifactId, version, null, null, 0L, null, new ModuleRequirement[0], (File) null, null, null );
+    }
+}
@@ -0,0 +1,165 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles generated classes and writes them into JAR files, so tests can load real
+ * class files.
+ */
+public class TestJars
+{
+    /**
+     * Private constructor, this class cannot be instantiated.
+     */
+    private TestJars() {}
+
+    /**
+     * Compile classes named testjar.p&lt;i&gt;.C&lt;j&gt;, each of which returns its own name
+     * from toString().
+     *
+     * @param packages the number of packages
+     * @param classesPerPackage the number of classes in each package
+     * @return the class files, keyed by their JAR entry names
+     * @throws IOException thrown if the classes could not be compiled
+     */
+    public static Map<String,byte []> compileClasses(
+            int packages,
+            int classesPerPackage )
+        throws
+            IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if( compiler == null ) {
+            throw new IOException( "No Java compiler available, tests must run on a JDK" );
+        }
+
+        Path dir = Files.createTempDirectory( "diet4j-classes" );
+        try {
+            ArrayList<String> args = new ArrayList<>();
+            args.add( "-d" );
+            args.add( dir.toString() );
+
+            for( int i=0 ; i<packages ; ++i ) {
+                Path pkgDir = dir.resolve( PACKAGE_PREFIX + i );
+                Files.createDirectories( pkgDir );
+                for( int j=0 ; j<classesPerPackage ; ++j ) {
+                    Path source = pkgDir.resolve( "C" + j + ".java" );
+                    Files.write( source, (
+                              "package " + PACKAGE_PREFIX.replace( '/', '.' ) + i + ";\n"
+                            + "public class C" + j + " {\n"
+                            + "    public String toString() { return getClass().getName(); }\n"
+                            + "}\n" ).getBytes( "UTF-8" ));
+                    args.add( source.toString() );
+                }
+            }
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            if( compiler.run( null, null, errors, args.toArray( new String[ args.size() ] )) != 0 ) {
+                throw new IOException( "Compiling test classes failed: " + errors.toString( "UTF-8" ));
+            }
+
+            TreeMap<String,byte []> ret = new TreeMap<>();
+            try( Stream<Path> walk = Files.walk( dir )) {
+                for( Path found : (Iterable<Path>) walk::iterator ) {
+                    String name = dir.relativize( found ).toString().replace( File.separatorChar, '/' );
+                    if( name.endsWith( ".class" )) {
+                        ret.put( name, Files.readAllBytes( found ));
+                    }
+                }
+            }
+            return ret;
+
+        } finally {
+            try( Stream<Path> walk = Files.walk( dir )) {
+                walk.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+            }
+        }
+    }
+
+    /**
+     * Write a JAR file.
+     *
+     * @param file the JAR file to write
+     * @param entries the content of the entries, keyed by their names
+     * @param method the compression method, ZipEntry.STORED or ZipEntry.DEFLATED
+     * @throws IOException thrown if the JAR file could not be written
+     */
+    public static void writeJar(
+            File                file,
+            Map<String,byte []> entries,
+            int                 method )
+        throws
+            IOException
+    {
+        try( JarOutputStream out = new JarOutputStream( new FileOutputStream( file ))) {
+            for( Map.Entry<String,byte []> entry : entries.entrySet() ) {
+                byte []  content  = entry.getValue();
+                JarEntry jarEntry = new JarEntry( entry.getKey() );
+
+                jarEntry.setMethod( method );
+                if( method == ZipEntry.STORED ) {
+                    CRC32 crc = new CRC32();
+                    crc.update( content );
+
+                    jarEntry.setSize( content.length );
+                    jarEntry.setCompressedSize( content.length );
+                    jarEntry.setCrc( crc.getValue() );
+                }
+                out.putNextEntry( jarEntry );
+                out.write( content );
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Convert the JAR entry name of a class file into the name of the class.
+     *
+     * @param entryName the JAR entry name
+     * @return the class name
+     */
+    public static String toClassName(
+            String entryName )
+    {
+        return entryName.substring( 0, entryName.length() - ".class".length() ).replace( '/', '.' );
+    }
+
+    /**
+     * The directory of the packages of the generated classes, without the number.
+     */
+    public static final String PACKAGE_PREFIX = "testjar/p";
+}
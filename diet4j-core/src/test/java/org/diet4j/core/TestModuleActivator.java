@@ -0,0 +1,177 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Activates and deactivates TestModules without loading any classes. Counts activations
+ * and deactivations, may fail for one of the Modules, and may make the user Modules wait
+ * for each other before completing their deactivation.
+ */
+public class TestModuleActivator
+    implements
+        ModuleActivator
+{
+    /**
+     * Constructor.
+     *
+     * @param module the Module to activate
+     * @param failing the artifactId of the Module whose activation and deactivation fails, or null
+     * @param barrier the barrier the users of the shared Module wait at during deactivation, or null
+     */
+    public TestModuleActivator(
+            Module        module,
+            String        failing,
+            CyclicBarrier barrier )
+    {
+        this( module, failing, barrier, new AtomicInteger(), new AtomicInteger() );
+    }
+
+    /**
+     * Constructor for the ModuleActivators of dependent Modules, which share the counters.
+     *
+     * @param module the Module to activate
+     * @param failing the artifactId of the Module whose activation and deactivation fails, or null
+     * @param barrier the barrier the users of the shared Module wait at during deactivation, or null
+     * @param activations counts all activations
+     * @param sharedDeactivations counts the deactivations of the shared Module
+     */
+    protected TestModuleActivator(
+            Module        module,
+            String        failing,
+            CyclicBarrier barrier,
+            AtomicInteger activations,
+            AtomicInteger sharedDeactivations )
+    {
+        theModule              = module;
+        theFailing             = failing;
+        theBarrier             = barrier;
+        theActivations         = activations;
+        theSharedDeactivations = sharedDeactivations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Module getModule()
+    {
+        return theModule;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object activate()
+        throws
+            ModuleActivationException
+    {
+        if( theModule.getModuleArtifactId().equals( theFailing )) {
+            throw new ModuleActivationException( theModule.getModuleMeta(), "boom" );
+        }
+        theActivations.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deactivate()
+        throws
+            ModuleDeactivationException
+    {
+        String artifactId = theModule.getModuleArtifactId();
+        if( artifactId.equals( theFailing )) {
+            throw new ModuleDeactivationException( theModule.getModuleMeta(), "boom" );
+        }
+        if( "shared".equals( artifactId )) {
+            theSharedDeactivations.incrementAndGet();
+
+        } else if( theBarrier != null && artifactId.startsWith( "user" )) {
+            try {
+                theBarrier.await( 10, TimeUnit.SECONDS );
+            } catch( InterruptedException|BrokenBarrierException|TimeoutException ex ) {
+                throw new ModuleDeactivationException( theModule.getModuleMeta(), ex );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ModuleActivator dependentModuleActivator(
+            Module dependentModule )
+    {
+        return new TestModuleActivator( dependentModule, theFailing, theBarrier, theActivations, theSharedDeactivations );
+    }
+
+    /**
+     * Obtain the number of successful activations.
+     *
+     * @return the number
+     */
+    public int getActivations()
+    {
+        return theActivations.get();
+    }
+
+    /**
+     * Obtain the number of deactivations of the shared Module.
+     *
+     * @return the number
+     */
+    public int getSharedDeactivations()
+    {
+        return theSharedDeactivations.get();
+    }
+
+    /**
+     * The Module to activate.
+     */
+    protected final Module theModule;
+
+    /**
+     * The artifactId of the Module whose activation and deactivation fails, or null.
+     */
+    protected final String theFailing;
+
+    /**
+     * The barrier the users of the shared Module wait at, or null.
+     */
+    protected final CyclicBarrier theBarrier;
+
+    /**
+     * Counts all activations.
+     */
+    protected final AtomicInteger theActivations;
+
+    /**
+     * Counts the deactivations of the shared Module.
+     */
+    protected final AtomicInteger theSharedDeactivations;
+}
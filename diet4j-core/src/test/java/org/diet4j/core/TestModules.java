@@ -0,0 +1,102 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.util.HashMap;
+
+/**
+ * A root Module that depends on a number of user Modules, which all depend on the same
+ * shared Module, in their own ModuleRegistry. None of them have JAR files.
+ */
+public class TestModules
+{
+    /**
+     * Constructor.
+     *
+     * @param users the number of user Modules
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public TestModules(
+            int users )
+        throws
+            Exception
+    {
+        ModuleRequirement [] userReqs = new ModuleRequirement[ users ];
+        for( int i=0 ; i<users ; ++i ) {
+            userReqs[i] = ModuleRequirement.create( GROUP_ID, "user" + i );
+        }
+        HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
+        AbstractScanningModuleRegistry.addModuleMeta( createModuleMeta( "root", userReqs ), metas );
+        for( int i=0 ; i<users ; ++i ) {
+            AbstractScanningModuleRegistry.addModuleMeta(
+                    createModuleMeta( "user" + i, new ModuleRequirement[] { ModuleRequirement.create( GROUP_ID, "shared" ) } ),
+                    metas );
+        }
+        AbstractScanningModuleRegistry.addModuleMeta( createModuleMeta( "shared", new ModuleRequirement[0] ), metas );
+
+        theRegistry = new AbstractScanningModuleRegistry( metas, new String[0] ) {};
+        theRoot     = theRegistry.resolve( theRegistry.determineSingleResolutionCandidate( ModuleRequirement.create( GROUP_ID, "root" )));
+        theShared   = theRegistry.resolve( theRegistry.determineSingleResolutionCandidate( ModuleRequirement.create( GROUP_ID, "shared" )));
+        theUsers    = new Module[ users ];
+        for( int i=0 ; i<users ; ++i ) {
+            theUsers[i] = theRegistry.resolve( theRegistry.determineSingleResolutionCandidate( userReqs[i] ));
+        }
+    }
+
+    /**
+     * Create a ModuleMeta without a JAR file.
+     *
+     * @param artifactId the artifactId of the Module
+     * @param requirements the ModuleRequirements of the Module
+     * @return the ModuleMeta
+     */
+    public static ModuleMeta createModuleMeta(
+            String               artifactId,
+            ModuleRequirement [] requirements )
+    {
+        return new ModuleMeta( GROUP_ID, artifactId, "1.0", null, null, 0L, null, requirements, (File) null, null, null );
+    }
+
+    /**
+     * The ModuleRegistry containing the Modules.
+     */
+    public final AbstractScanningModuleRegistry theRegistry;
+
+    /**
+     * The root Module.
+     */
+    public final Module theRoot;
+
+    /**
+     * The user Modules.
+     */
+    public final Module [] theUsers;
+
+    /**
+     * The shared Module.
+     */
+    public final Module theShared;
+
+    /**
+     * The groupId of the test Modules.
+     */
+    public static final String GROUP_ID = "org.diet4j.test";
+}
@@ -0,0 +1,203 @@
+//
+// The rights holder(s) license this file to you under the
+// Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License. You
+// may obtain a copy of the License at
+//
+//  http://www.apache.org/licenses/LICENSE-2.0
+//
+// For information about copyright ownership, see the NOTICE
+// file distributed with this work.
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.diet4j.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests WatchingDirectoriesModuleRegistry.
+ */
+public class WatchingDirectoriesModuleRegistryTest
+{
+    /**
+     * Create the directory to watch.
+     *
+     * @throws IOException thrown if the directory could not be created
+     */
+    @Before
+    public void setup()
+        throws
+            IOException
+    {
+        theDir = Files.createTempDirectory( "diet4j-watch" ).toFile();
+    }
+
+    /**
+     * Delete the directory to watch.
+     *
+     * @throws IOException thrown if the directory could not be deleted
+     */
+    @After
+    public void cleanup()
+        throws
+            IOException
+    {
+        try( Stream<Path> walk = Files.walk( theDir.toPath() )) {
+            walk.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+    /**
+     * A ModuleRegistryListener that throws neither keeps the other listeners from hearing about
+     * a new Module, nor stops the watching.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testFailingListener()
+        throws
+            Exception
+    {
+        WatchingDirectoriesModuleRegistry registry = WatchingDirectoriesModuleRegistry.create(
+                new File[] { theDir },
+                new String[0],
+                null );
+
+        BlockingQueue<ModuleMeta> heard = new LinkedBlockingQueue<>();
+        registry.addModuleRegistryListener( ( ModuleRegistryEvent e ) -> {
+            throw new IllegalStateException( "listener failure for " + e.getModuleMeta() );
+        } );
+        registry.addModuleRegistryListener( ( ModuleRegistryEvent e ) -> heard.add( e.getModuleMeta() ));
+
+        registry.startWatching();
+        try {
+            writeModuleJar( "a" );
+            ModuleMeta meta = heard.poll( TIMEOUT, TimeUnit.MILLISECONDS );
+            Assert.assertNotNull( "no event for a", meta );
+            Assert.assertEquals( "a", meta.getModuleArtifactId() );
+
+            writeModuleJar( "b" );
+            meta = heard.poll( TIMEOUT, TimeUnit.MILLISECONDS );
+            Assert.assertNotNull( "no event for b", meta );
+            Assert.assertEquals( "b", meta.getModuleArtifactId() );
+
+            Assert.assertTrue( "not watching any more", registry.isWatching() );
+            Assert.assertEquals( 1, registry.determineResolutionCandidates( ModuleRequirement.create( "b" )).length );
+
+        } finally {
+            registry.stopWatching();
+        }
+        Assert.assertFalse( "still watching", registry.isWatching() );
+    }
+
+    /**
+     * If the watching thread fails, the registry no longer claims to be watching, and watching
+     * can be started again.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    @Test
+    public void testFailingWatchThread()
+        throws
+            Exception
+    {
+        WatchingDirectoriesModuleRegistry registry = new WatchingDirectoriesModuleRegistry(
+                new File[] { theDir },
+                new HashMap<>(),
+                null,
+                new String[0] )
+        {
+            @Override
+            protected void collectChanges(
+                    WatchService watchService,
+                    WatchKey     key,
+                    Set<File>    changed )
+            {
+                throw new IllegalStateException( "watch failure" );
+            }
+        };
+
+        registry.startWatching();
+        try {
+            writeModuleJar( "a" );
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while( registry.isWatching() && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 50 );
+            }
+            Assert.assertFalse( "still claims to be watching", registry.isWatching() );
+
+            registry.startWatching();
+            Assert.assertTrue( "did not start watching again", registry.isWatching() );
+
+        } finally {
+            registry.stopWatching();
+        }
+    }
+
+    /**
+     * Write a module JAR file with a POM into the watched directory.
+     *
+     * @param artifactId the artifactId of the module
+     * @throws IOException thrown if the JAR file could not be written
+     */
+    protected void writeModuleJar(
+            String artifactId )
+        throws
+            IOException
+    {
+        String pom = "<project><modelVersion>4.0.0</modelVersion><groupId>" + GROUP_ID + "</groupId><artifactId>"
+                + artifactId + "</artifactId><version>1.0</version></project>";
+
+        // write elsewhere and move, so the watcher does not see a partial file
+        File tmp = new File( theDir.getParentFile(), theDir.getName() + "-" + artifactId + ".tmp" );
+        try( JarOutputStream out = new JarOutputStream( new FileOutputStream( tmp ))) {
+            out.putNextEntry( new JarEntry( "META-INF/maven/" + GROUP_ID + "/" + artifactId + "/pom.xml" ));
+            out.write( pom.getBytes( StandardCharsets.UTF_8 ));
+            out.closeEntry();
+        }
+        Files.move( tmp.toPath(), new File( theDir, artifactId + "-1.0.jar" ).toPath() );
+    }
+
+    /**
+     * The directory being watched.
+     */
+    protected File theDir;
+
+    /**
+     * The groupId of the test modules.
+     */
+    protected static final String GROUP_ID = "org.diet4j.test";
+
+    /**
+     * How long to wait for the watching thread to notice a change, in milliseconds.
+     */
+    protected static final long TIMEOUT = 10000L;
+}
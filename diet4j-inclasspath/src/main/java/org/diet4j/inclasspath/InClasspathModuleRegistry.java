@@ -25,7 +25,6 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.jar.JarFile;
 import org.diet4j.core.AbstractScanningModuleRegistry;
 import org.diet4j.core.MiniModuleMetaMap;
 import org.diet4j.core.Module;
@@ -128,7 +127,7 @@ public class InClasspathModuleRegistry
             IOException
     {
         Enumeration<URL>   metaInfoUrls = cl.getResources( "META-INF/" );
-        ArrayList<JarFile> jars         = new ArrayList<>();
+        ArrayList<File>    jars         = new ArrayList<>();
         ArrayList<File>    dirs         = new ArrayList<>();
 
         while( metaInfoUrls.hasMoreElements() ) {
@@ -146,8 +145,7 @@ public class InClasspathModuleRegistry
                         jarFile = jarFile.substring( 0, excl );
                     }
 
-                    JarFile jar = new JarFile( jarFile );
-                    jars.add( jar );
+                    jars.add( new File( jarFile ));
                     break;
 
                 case "file":
@@ -160,7 +158,7 @@ public class InClasspathModuleRegistry
         }
 
         HashMap<String,MiniModuleMetaMap> metas = new HashMap<>();
-        addParsedModuleMetasFromJars( jars, metas );          // looks into the JARs, from the top
+        addParsedModuleMetasFromJarFiles( jars, null, metas ); // looks into the JARs, from the top
         addParsedModuleMetasFromDirectories( dirs, metas );   // looks into META-INF dirs
 
         return metas;
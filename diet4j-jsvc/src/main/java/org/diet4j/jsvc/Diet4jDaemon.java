@@ -31,6 +31,7 @@ import org.diet4j.cmdline.CmdlineParameters;
 import org.diet4j.core.Module;
 import org.diet4j.core.ModuleActivationException;
 import org.diet4j.core.ModuleDeactivationException;
+import org.diet4j.core.ModuleDeactivationScheduler;
 import org.diet4j.core.ModuleMeta;
 import org.diet4j.core.ModuleNotFoundException;
 import org.diet4j.core.ModuleRegistry;
@@ -38,7 +39,9 @@ import org.diet4j.core.ModuleRequirement;
 import org.diet4j.core.ModuleResolutionException;
 import org.diet4j.core.ModuleRunException;
 import org.diet4j.core.NoRunMethodException;
+import org.diet4j.core.ResolutionPlanCache;
 import org.diet4j.core.ScanningDirectoriesModuleRegistry;
+import org.diet4j.core.WatchingDirectoriesModuleRegistry;
 
 /**
  * An implementation of the jsvc Daemon interface that enables jsvc to
@@ -55,6 +58,9 @@ public class Diet4jDaemon
     {
         CmdlineParameters parameters = new CmdlineParameters(
             new CmdlineParameters.Parameter( "directory", 1, true ),
+            new CmdlineParameters.Parameter( "indexfile", 1 ),
+            new CmdlineParameters.Parameter( "planfile",  1 ),
+            new CmdlineParameters.Parameter( "watch",     0 ),
             new CmdlineParameters.Parameter( "run",       1 ),
             new CmdlineParameters.Parameter( "method",    1 )
         );
@@ -89,11 +95,37 @@ public class Diet4jDaemon
         theModuleDirectories = new File[ fileDirs.size() ];
         fileDirs.toArray( theModuleDirectories );
 
+        String indexFile = parameters.get( "indexfile" );
+        theIndexFile = indexFile != null ? new File( indexFile ) : null;
+
+        String planFile = parameters.get( "planfile" );
+        thePlanFile = planFile != null ? new File( planFile ) : null;
+
         theRunClassName  = parameters.get( "run" );
         theRunMethodName = parameters.get( "method" );
 
         // create ModuleRegistry
-        theModuleRegistry = ScanningDirectoriesModuleRegistry.create( theModuleDirectories );
+        ScanningDirectoriesModuleRegistry registry;
+        if( parameters.containsKey( "watch" )) {
+            // long-running daemons may want to pick up modules installed later
+            WatchingDirectoriesModuleRegistry watching = WatchingDirectoriesModuleRegistry.create(
+                    theModuleDirectories,
+                    ScanningDirectoriesModuleRegistry.DEFAULT_DO_NOT_LOAD_CLASS_PREFIXES,
+                    theIndexFile );
+            try {
+                watching.startWatching();
+            } catch( IOException ex ) {
+                throw new DaemonInitException( "Cannot watch module directories", ex );
+            }
+            registry = watching;
+
+        } else {
+            registry = ScanningDirectoriesModuleRegistry.create(
+                    theModuleDirectories,
+                    ScanningDirectoriesModuleRegistry.DEFAULT_DO_NOT_LOAD_CLASS_PREFIXES,
+                    theIndexFile );
+        }
+        theModuleRegistry = registry;
 
         try {
             theRootModuleMeta = theModuleRegistry.determineSingleResolutionCandidate( theRootModuleRequirement );
@@ -102,7 +134,13 @@ public class Diet4jDaemon
             throw new DaemonInitException( "Cannot find module " + theRootModuleRequirement );
         }
         try {
-            theRootModule = theModuleRegistry.resolve( theRootModuleMeta );
+            if( thePlanFile != null ) {
+                ResolutionPlanCache plans = ResolutionPlanCache.load( thePlanFile );
+                theRootModule = plans.resolve( registry, theRootModuleMeta );
+                plans.save();
+            } else {
+                theRootModule = theModuleRegistry.resolve( theRootModuleMeta );
+            }
         } catch( Throwable ex ) {
             throw new DaemonInitException( "Cannot resolve module " + theRootModuleMeta.toString() );
         }
@@ -134,7 +172,10 @@ public class Diet4jDaemon
             ModuleDeactivationException
     {
         if( theRootModule != null ) {
-            theRootModule.deactivateRecursively();
+            ModuleDeactivationScheduler.create().deactivateRecursively( theRootModule );
+        }
+        if( theModuleRegistry instanceof WatchingDirectoriesModuleRegistry ) {
+            ((WatchingDirectoriesModuleRegistry) theModuleRegistry).stopWatching();
         }
     }
 
@@ -150,6 +191,8 @@ public class Diet4jDaemon
     protected ModuleRequirement theRootModuleRequirement;
     protected String [] theRunArguments;
     protected File [] theModuleDirectories;
+    protected File theIndexFile;
+    protected File thePlanFile;
     protected String theRunClassName;
     protected String theRunMethodName;
 }
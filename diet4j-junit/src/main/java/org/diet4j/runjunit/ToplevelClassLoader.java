@@ -37,6 +37,10 @@ public class ToplevelClassLoader
     extends
         ModuleClassLoader
 {
+    static {
+        registerAsParallelCapable();
+    }
+
     /**
       * Construct one with the Module whose classes this ModuleClassLoader is
       * supposed to load, the parent/system ClassLoader, and the ClassLoaders of dependent Modules.
@@ -66,99 +70,90 @@ public class ToplevelClassLoader
      * @throws ClassNotFoundException loading the class failed, it could not be found
      */
     @Override
-    public synchronized Class loadClass(
+    public Class loadClass(
             String  name,
             boolean resolve )
         throws
             ClassNotFoundException
     {
-        boolean closeReporting = false;
+        synchronized( getClassLoadingLock( name )) {
+            boolean closeReporting = false;
 
-        Class c = findLoadedClass( name );
-        if( c == null ) {
-            closeReporting = true;
-            log.log( Level.FINER, "loadClassAttemptStart: {0} ({1})", new Object [] { getClass().getName(), name } );
+            Class c = findLoadedClass( name );
+            if( c == null ) {
+                closeReporting = true;
+                log.log( Level.FINER, "loadClassAttemptStart: {0} ({1})", new Object [] { getClass().getName(), name } );
 
-            if( cannotFindTable.get( name ) == null ) {
+                if( !theNegativeLookupCache.contains( this, name )) {
 
-                ClassLoader consultDefaultClassLoader = null;
-                for( String prefix : theDoNotLoadClassPrefixes ) {
-                    if( name.startsWith( prefix )) {
-                        consultDefaultClassLoader = getClass().getClassLoader();
-                        break; // we won't have more than one prefix match
+                    ClassLoader consultDefaultClassLoader = null;
+                    for( String prefix : theDoNotLoadClassPrefixes ) {
+                        if( name.startsWith( prefix )) {
+                            consultDefaultClassLoader = getClass().getClassLoader();
+                            break; // we won't have more than one prefix match
+                        }
                     }
-                }
-                if( consultDefaultClassLoader != null ) {
-                    try {
-                        c = consultDefaultClassLoader.loadClass( name );
-                    } catch( ClassNotFoundException ex ) {
-                        // do nothing
+                    if( consultDefaultClassLoader != null ) {
+                        try {
+                            c = consultDefaultClassLoader.loadClass( name );
+                        } catch( ClassNotFoundException ex ) {
+                            // do nothing
+                        }
                     }
-                }
 
-                if( c == null ) {
-                    String  path  = name.replace('.', '/').concat(".class");
+                    if( c == null ) {
+                        String  path  = name.replace('.', '/').concat(".class");
                     
-                    for( File dir : theDirs ) {
-                        File file = new File( dir, path );
-                        if( file.canRead() ) {
-                            try {
-                                byte [] classBytes = slurpFile( file );
-                                if( classBytes != null && classBytes.length > 0 ) {
+                        for( File dir : theDirs ) {
+                            File file = new File( dir, path );
+                            if( file.canRead() ) {
+                                try {
+                                    byte [] classBytes = slurpFile( file );
+                                    if( classBytes != null && classBytes.length > 0 ) {
 
-                                    c = defineClass( name, classBytes, 0, classBytes.length );
+                                        c = defineClass( name, classBytes, 0, classBytes.length );
 
-                                }
-                            } catch( IOException ex ) {
-                                log.log( Level.WARNING, "Failed to read from " + file.getPath(), ex );
+                                    }
+                                } catch( IOException ex ) {
+                                    log.log( Level.WARNING, "Failed to read from " + file.getPath(), ex );
 
-                            } catch( NoClassDefFoundWithClassLoaderError ex ) {
-                                throw ex; // just rethrow
+                                } catch( NoClassDefFoundWithClassLoaderError ex ) {
+                                    throw ex; // just rethrow
 
-                            } catch( NoClassDefFoundError ex ) {
-                                throw new NoClassDefFoundWithClassLoaderError( ex.getMessage(), this );
+                                } catch( NoClassDefFoundError ex ) {
+                                    throw new NoClassDefFoundWithClassLoaderError( ex.getMessage(), this );
 
-                            } catch( ClassFormatError ex ) {
-                                log.log( Level.SEVERE, "loadClassAttemptStart: " + this + " (" + name + ")", ex );
+                                } catch( ClassFormatError ex ) {
+                                    log.log( Level.SEVERE, "loadClassAttemptStart: " + this + " (" + name + ")", ex );
+                                }
                             }
                         }
                     }
-                }
 
-                if( c == null ) {
-                    for( int i=0 ; i<theDependencyClassLoaders.length ; ++i ) {
-                        if( theDependencyClassLoaders[i] != null ) {
-                            try {
-                                c = theDependencyClassLoaders[i].loadClass( name, false );
-                            } catch( ClassNotFoundException ex ) {
-                                // do nothing
-                            }
-                            if( c != null ) {
-                                break;
-                            }
-                        }
+                    if( c == null ) {
+                        c = loadClassFromDependencies( name );
                     }
                 }
             }
-        }
-        if( c == null ) {
-            // we caught all exceptions, so we need to throw ourselves
-            cannotFindTable.put( name, CANNOT_FIND_OBJECT );
+            if( c == null ) {
+                // we caught all exceptions, so we need to throw ourselves
+                theNegativeLookupCache.add( this, name );
+
+                if( closeReporting ) {
+                    log.log( Level.FINE, "loadClass failed: Module {0} (class: {1})", new Object[] { getClass().getName(), name } );
+                }
+                throw new ClassNotFoundException( name + " (" + getClass().getName() + ")" );
+            }
 
+            if( resolve ) {
+                resolveClass( c );
+            }
             if( closeReporting ) {
-                log.log( Level.FINE, "loadClass failed: Module {0} (class: {1})", new Object[] { getClass().getName(), name } );
+                log.log( Level.FINER, "loadClass succeeded: {0} ({1})", new Object[] { getClass().getName(), name } );
             }
-            throw new ClassNotFoundException( name + " (" + getClass().getName() + ")" );
-        }
 
-        if( resolve ) {
-            resolveClass( c );
+            return c;
         }
-        if( closeReporting ) {
-            log.log( Level.FINER, "loadClass succeeded: {0} ({1})", new Object[] { getClass().getName(), name } );
-        }
-
-        return c;
     }
 
     /**
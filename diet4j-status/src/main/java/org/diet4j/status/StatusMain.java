@@ -235,7 +235,7 @@ public class StatusMain
             out.print( mod.toString() );
             if( verbose ) {
                 out.print( " (" );
-                out.print( mod.getModuleMeta().getProvidesJar().getName());
+                out.print( mod.getModuleMeta().getProvidesJarFile().getPath());
                 if( req.isOptional() ) {
                     out.println( " optional" );
                 }
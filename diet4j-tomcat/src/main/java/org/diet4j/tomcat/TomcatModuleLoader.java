@@ -45,11 +45,14 @@ import org.diet4j.core.ScanningDirectoriesModuleRegistry;
  * &lt;Context path='/context-path'&gt;
  *  &lt;Loader className='org.diet4j.tomcat.TomcatModuleLoader'
  *          rootmodule='com.example.mywebapp'
- *          moduledirectory='/usr/share/java' /&gt;
+ *          moduledirectory='/usr/share/java'
+ *          moduleindexfile='/var/cache/diet4j/mywebapp.index' /&gt;
  * &lt;/Context&gt;
  * </pre>
  * where <code>com.example.mywebapp</code> is the the name of the root module for this app,
- * and <code>moduledirectory</code> is the directory where JARs of Modules can be found.
+ * <code>moduledirectory</code> is the directory where JARs of Modules can be found, and
+ * the optional <code>moduleindexfile</code> is a file in which diet4j remembers the Modules it
+ * found, so it does not need to parse unchanged JARs again on the next start.
  */
 public class TomcatModuleLoader
     extends
@@ -122,6 +125,30 @@ public class TomcatModuleLoader
         return theModuledirectory;
     }
 
+    /**
+     * Set the file in which to remember the modules found, so unchanged module JARs
+     * do not need to be parsed again.
+     *
+     * @param newValue the value
+     * @see #getModuleindexfile
+     */
+    public void setModuleindexfile(
+            String newValue )
+    {
+        theModuleindexfile = newValue;
+    }
+
+    /**
+     * Get the file in which to remember the modules found.
+     *
+     * @return the value
+     * @see #setModuleindexfile
+     */
+    public String getModuleindexfile()
+    {
+        return theModuleindexfile;
+    }
+
     /**
      * Start it.
      *
@@ -150,7 +177,10 @@ public class TomcatModuleLoader
         File [] dirArray = new File[ dirs.size() ];
         dirs.keySet().toArray( dirArray );
 
-        theModuleRegistry = ScanningDirectoriesModuleRegistry.create( dirArray, TOMCAT_DO_NOT_LOAD_CLASS_PREFIXES );
+        theModuleRegistry = ScanningDirectoriesModuleRegistry.create(
+                dirArray,
+                TOMCAT_DO_NOT_LOAD_CLASS_PREFIXES,
+                theModuleindexfile != null ? new File( theModuleindexfile ) : null );
 
         // I would have liked to invoke super.startInternal() last but that's the only way I can get at our ClassLoader.
         super.startInternal();
@@ -229,6 +259,11 @@ public class TomcatModuleLoader
      */
     protected String theModuledirectory = DEFAULT_MODULEDIRECTORY;
 
+    /**
+     * File in which to remember the modules found, if any.
+     */
+    protected String theModuleindexfile;
+
     /**
      * Keep a reference to the ModuleRegistries that we are using so they won't be garbage collected.
      */
@@ -38,6 +38,11 @@ public class TomcatWebAppClassLoader
         extends
             WebappClassLoader
 {
+    static {
+        // WebappClassLoader is parallel capable, so we can be, too
+        registerAsParallelCapable();
+    }
+
     public TomcatWebAppClassLoader(
             ClassLoader parent )
     {
@@ -186,42 +191,44 @@ public class TomcatWebAppClassLoader
      * @throws ClassNotFoundException loading the class failed, it could not be found
      */
     @Override
-    public synchronized Class loadClass(
+    public Class loadClass(
             String  name,
             boolean resolve )
         throws
             ClassNotFoundException
     {
-        Class c = findLoadedClass( name );
-        if( c == null ) {
-            try {
-                c = super.loadClass( name, resolve );
-            } catch( ClassNotFoundException ex ) {
-                // do nothing
-            }
-
+        synchronized( getClassLoadingLock( name )) {
+            Class c = findLoadedClass( name );
             if( c == null ) {
-                for( int i=0 ; i<theDependencyClassLoaders.length ; ++i ) {
-                    try {
-                        c = theDependencyClassLoaders[i].loadClass( name, false );
-                    } catch( ClassNotFoundException ex ) {
-                        // do nothing
-                    }
-                    if( c != null ) {
-                        break;
+                try {
+                    c = super.loadClass( name, resolve );
+                } catch( ClassNotFoundException ex ) {
+                    // do nothing
+                }
+
+                if( c == null ) {
+                    for( int i=0 ; i<theDependencyClassLoaders.length ; ++i ) {
+                        try {
+                            c = theDependencyClassLoaders[i].loadClass( name, false );
+                        } catch( ClassNotFoundException ex ) {
+                            // do nothing
+                        }
+                        if( c != null ) {
+                            break;
+                        }
                     }
                 }
             }
-        }
-        if( c == null ) {
-            throw new ClassNotFoundException( name );
-        }
+            if( c == null ) {
+                throw new ClassNotFoundException( name );
+            }
 
-        if( resolve ) {
-            resolveClass( c );
-        }
+            if( resolve ) {
+                resolveClass( c );
+            }
 
-        return c;
+            return c;
+        }
     }
 
     /**
@@ -231,7 +238,7 @@ public class TomcatWebAppClassLoader
      * @return the URL of the resource, if found
      */
     @Override
-    public synchronized URL findResource(
+    public URL findResource(
             String name )
     {
         URL ret = super.findResource( name );